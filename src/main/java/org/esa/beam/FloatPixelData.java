@@ -0,0 +1,67 @@
+package org.esa.beam;
+
+import org.esa.beam.atmosphere.operator.GlintCorrectionOperator;
+
+/**
+ * Single precision counterpart of {@link PixelData}.
+ * <p/>
+ * The spectral arrays are allocated once, so an instance can be reused for all pixels of a tile.
+ */
+public class FloatPixelData {
+
+    public int pixelX;
+    public int pixelY;
+    public int nadirColumnIndex;
+    public boolean isFullResolution;
+
+    public final float[] toa_radiance;     /* toa radiance in W m-2 sr-1 µm-1 */
+    public final float[] solar_flux;     /* at toa W m-2 µm-1, incl. sun-earth distance */
+    public float altitude;
+    public float solzen;       /* Solar zenith angle in deg [0,90].........*/
+    public float solazi;       /* Solar azimuth angle in deg [0-360I]		*/
+    public float satzen;       /* Satellite zenith angle in deg [0,90]		*/
+    public float satazi;       /* Satellite azimuth angle as viewed from pixel in deg [0-360I]	*/
+    public float pressure;     /* Surface pressure in hPa	    	   	*/
+    public float ozone;        /* Total ozone concentration in DU		*/
+    public int l1Flag;          /* Flags of the L1b product     */
+    public int validation;
+    public int detectorIndex;
+
+    public float flintValue = (float) GlintCorrectionOperator.NO_FLINT_VALUE;   /* value of the FLINT processor */
+
+    /**
+     * @param spectralBandCount the number of spectral bands
+     */
+    public FloatPixelData(int spectralBandCount) {
+        toa_radiance = new float[spectralBandCount];
+        solar_flux = new float[spectralBandCount];
+    }
+
+    /**
+     * Sets all values from the given double precision pixel data.
+     *
+     * @param pixelData the pixel data, with as many spectral bands as this one
+     */
+    public void set(PixelData pixelData) {
+        pixelX = pixelData.pixelX;
+        pixelY = pixelData.pixelY;
+        nadirColumnIndex = pixelData.nadirColumnIndex;
+        isFullResolution = pixelData.isFullResolution;
+        for (int i = 0; i < toa_radiance.length; i++) {
+            toa_radiance[i] = (float) pixelData.toa_radiance[i];
+            solar_flux[i] = (float) pixelData.solar_flux[i];
+        }
+        altitude = (float) pixelData.altitude;
+        solzen = (float) pixelData.solzen;
+        solazi = (float) pixelData.solazi;
+        satzen = (float) pixelData.satzen;
+        satazi = (float) pixelData.satazi;
+        pressure = (float) pixelData.pressure;
+        ozone = (float) pixelData.ozone;
+        l1Flag = pixelData.l1Flag;
+        validation = pixelData.validation;
+        detectorIndex = pixelData.detectorIndex;
+        flintValue = (float) pixelData.flintValue;
+    }
+
+}
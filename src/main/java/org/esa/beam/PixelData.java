@@ -31,4 +31,17 @@ public class PixelData {
     // todo - find better name
     public double flintValue = GlintCorrectionOperator.NO_FLINT_VALUE;   /* value of the FLINT processor */
 
+    public PixelData() {
+    }
+
+    /**
+     * Creates an instance with allocated spectral arrays, so it can be reused for all pixels of a tile.
+     *
+     * @param spectralBandCount the number of spectral bands
+     */
+    public PixelData(int spectralBandCount) {
+        toa_radiance = new double[spectralBandCount];
+        solar_flux = new double[spectralBandCount];
+    }
+
 }
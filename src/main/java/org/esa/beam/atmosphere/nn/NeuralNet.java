@@ -0,0 +1,328 @@
+package org.esa.beam.atmosphere.nn;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable feed-forward back-propagation neural net, as written by the FFBP training tools
+ * into the text based '.net' format.
+ * <p/>
+ * The net is parsed once and can be shared between threads. Evaluation is done by a
+ * {@link NeuralNetEvaluator}, which holds the per-thread working buffers.
+ */
+public final class NeuralNet {
+
+    final int[] layerSizes;
+    final double[] inputMin;
+    final double[] inputMax;
+    final double[] outputMin;
+    final double[] outputMax;
+    final double[][] bias;
+    final double[][][] weights;
+
+    // single precision copies used by the float evaluation
+    final float[] inputMinF;
+    final float[] inputScaleF;
+    final float[] outputMinF;
+    final float[] outputRangeF;
+    final float[][] biasF;
+    final float[][][] weightsF;
+
+    /**
+     * @param layerSizes the number of neurons per layer, including input and output layer
+     * @param inputMin   the lower bounds of the input ranges
+     * @param inputMax   the upper bounds of the input ranges
+     * @param outputMin  the lower bounds of the output ranges
+     * @param outputMax  the upper bounds of the output ranges
+     * @param bias       the bias per layer and neuron, starting with the first hidden layer
+     * @param weights    the weights per layer, indexed as [layer][to][from]
+     */
+    public NeuralNet(int[] layerSizes, double[] inputMin, double[] inputMax, double[] outputMin,
+                     double[] outputMax, double[][] bias, double[][][] weights) {
+        checkStructure(layerSizes, inputMin, inputMax, outputMin, outputMax, bias, weights);
+        this.layerSizes = layerSizes.clone();
+        this.inputMin = inputMin.clone();
+        this.inputMax = inputMax.clone();
+        this.outputMin = outputMin.clone();
+        this.outputMax = outputMax.clone();
+        this.bias = bias;
+        this.weights = weights;
+
+        final int inputCount = getInputCount();
+        inputMinF = new float[inputCount];
+        inputScaleF = new float[inputCount];
+        for (int i = 0; i < inputCount; i++) {
+            inputMinF[i] = (float) inputMin[i];
+            inputScaleF[i] = (float) (1.0 / (inputMax[i] - inputMin[i]));
+        }
+        final int outputCount = getOutputCount();
+        outputMinF = new float[outputCount];
+        outputRangeF = new float[outputCount];
+        for (int i = 0; i < outputCount; i++) {
+            outputMinF[i] = (float) outputMin[i];
+            outputRangeF[i] = (float) (outputMax[i] - outputMin[i]);
+        }
+        biasF = new float[bias.length][];
+        weightsF = new float[weights.length][][];
+        for (int layer = 0; layer < weights.length; layer++) {
+            biasF[layer] = toFloat(bias[layer]);
+            weightsF[layer] = new float[weights[layer].length][];
+            for (int to = 0; to < weights[layer].length; to++) {
+                weightsF[layer][to] = toFloat(weights[layer][to]);
+            }
+        }
+    }
+
+    /**
+     * Reads a neural net in '.net' format from the given stream. The stream is closed afterwards.
+     *
+     * @param stream the stream
+     *
+     * @return the neural net
+     *
+     * @throws IOException if the net could not be read
+     */
+    public static NeuralNet read(InputStream stream) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, "US-ASCII"))) {
+            return read(reader);
+        }
+    }
+
+    /**
+     * Parses a neural net in '.net' format.
+     *
+     * @param text the content of a '.net' file
+     *
+     * @return the neural net
+     *
+     * @throws IOException if the net could not be parsed
+     */
+    public static NeuralNet parse(String text) throws IOException {
+        return read(new BufferedReader(new StringReader(text)));
+    }
+
+    public int getInputCount() {
+        return layerSizes[0];
+    }
+
+    public int getOutputCount() {
+        return layerSizes[layerSizes.length - 1];
+    }
+
+    public int[] getLayerSizes() {
+        return layerSizes.clone();
+    }
+
+    public double[] getInputMin() {
+        return inputMin.clone();
+    }
+
+    public double[] getInputMax() {
+        return inputMax.clone();
+    }
+
+    public double[] getOutputMin() {
+        return outputMin.clone();
+    }
+
+    public double[] getOutputMax() {
+        return outputMax.clone();
+    }
+
+    /**
+     * @param layer the layer, starting with the first hidden layer at 0
+     *
+     * @return a copy of the bias of the given layer
+     */
+    public double[] getBias(int layer) {
+        return bias[layer].clone();
+    }
+
+    /**
+     * @param layer the layer, 0 connects the input layer with the first hidden layer
+     *
+     * @return a copy of the weights of the given layer, indexed as [to][from]
+     */
+    public double[][] getWeights(int layer) {
+        final double[][] copy = new double[weights[layer].length][];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = weights[layer][i].clone();
+        }
+        return copy;
+    }
+
+    private static NeuralNet read(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        while (line != null && !line.trim().equals("#")) {
+            line = reader.readLine();
+        }
+        if (line == null) {
+            throw new IOException("Invalid neural net: missing range section");
+        }
+        final Tokenizer ranges = new Tokenizer(reader, "$");
+        final int inputCount = ranges.nextInt();
+        final double[] inputMin = new double[inputCount];
+        final double[] inputMax = new double[inputCount];
+        for (int i = 0; i < inputCount; i++) {
+            inputMin[i] = ranges.nextDouble();
+            inputMax[i] = ranges.nextDouble();
+        }
+        final int outputCount = ranges.nextInt();
+        final double[] outputMin = new double[outputCount];
+        final double[] outputMax = new double[outputCount];
+        for (int i = 0; i < outputCount; i++) {
+            outputMin[i] = ranges.nextDouble();
+            outputMax[i] = ranges.nextDouble();
+        }
+        ranges.skipSection();
+
+        final Tokenizer tokens = new Tokenizer(reader, null);
+        final String planesToken = tokens.next();
+        if (!planesToken.startsWith("#planes=")) {
+            throw new IOException("Invalid neural net: expected '#planes=' but found '" + planesToken + "'");
+        }
+        final int planeCount = Integer.parseInt(planesToken.substring("#planes=".length()));
+        final int[] layerSizes = new int[planeCount];
+        for (int i = 0; i < planeCount; i++) {
+            layerSizes[i] = tokens.nextInt();
+        }
+
+        final double[][] bias = new double[planeCount - 1][];
+        for (int layer = 0; layer < planeCount - 1; layer++) {
+            tokens.expect("bias");
+            tokens.expectInt(layer + 1);
+            tokens.expectInt(layerSizes[layer + 1]);
+            bias[layer] = new double[layerSizes[layer + 1]];
+            for (int i = 0; i < bias[layer].length; i++) {
+                bias[layer][i] = tokens.nextDouble();
+            }
+        }
+        final double[][][] weights = new double[planeCount - 1][][];
+        for (int layer = 0; layer < planeCount - 1; layer++) {
+            tokens.expect("wgt");
+            tokens.expectInt(layer);
+            tokens.expectInt(layerSizes[layer]);
+            tokens.expectInt(layerSizes[layer + 1]);
+            weights[layer] = new double[layerSizes[layer + 1]][layerSizes[layer]];
+            for (int to = 0; to < layerSizes[layer + 1]; to++) {
+                for (int from = 0; from < layerSizes[layer]; from++) {
+                    weights[layer][to][from] = tokens.nextDouble();
+                }
+            }
+        }
+        return new NeuralNet(layerSizes, inputMin, inputMax, outputMin, outputMax, bias, weights);
+    }
+
+    private static void checkStructure(int[] layerSizes, double[] inputMin, double[] inputMax, double[] outputMin,
+                                       double[] outputMax, double[][] bias, double[][][] weights) {
+        if (layerSizes.length < 2) {
+            throw new IllegalArgumentException("A neural net needs at least two layers");
+        }
+        final int inputCount = layerSizes[0];
+        final int outputCount = layerSizes[layerSizes.length - 1];
+        if (inputMin.length != inputCount || inputMax.length != inputCount) {
+            throw new IllegalArgumentException("Input ranges do not match the size of the input layer");
+        }
+        if (outputMin.length != outputCount || outputMax.length != outputCount) {
+            throw new IllegalArgumentException("Output ranges do not match the size of the output layer");
+        }
+        if (bias.length != layerSizes.length - 1 || weights.length != layerSizes.length - 1) {
+            throw new IllegalArgumentException("Bias or weights do not match the number of layers");
+        }
+        for (int layer = 0; layer < weights.length; layer++) {
+            if (bias[layer].length != layerSizes[layer + 1] || weights[layer].length != layerSizes[layer + 1]) {
+                throw new IllegalArgumentException("Bias or weights do not match the size of layer " + (layer + 1));
+            }
+            for (double[] neuronWeights : weights[layer]) {
+                if (neuronWeights.length != layerSizes[layer]) {
+                    throw new IllegalArgumentException("Weights do not match the size of layer " + layer);
+                }
+            }
+        }
+    }
+
+    private static float[] toFloat(double[] values) {
+        final float[] floats = new float[values.length];
+        for (int i = 0; i < values.length; i++) {
+            floats[i] = (float) values[i];
+        }
+        return floats;
+    }
+
+    private static final class Tokenizer {
+
+        private final BufferedReader reader;
+        private final String terminator;
+        private final List<String> pending = new ArrayList<>();
+        private int position;
+
+        private Tokenizer(BufferedReader reader, String terminator) {
+            this.reader = reader;
+            this.terminator = terminator;
+        }
+
+        String next() throws IOException {
+            while (position >= pending.size()) {
+                final String line = reader.readLine();
+                if (line == null || (terminator != null && line.trim().equals(terminator))) {
+                    throw new IOException("Invalid neural net: unexpected end of section");
+                }
+                pending.clear();
+                position = 0;
+                for (String token : line.trim().split("\\s+")) {
+                    if (!token.isEmpty()) {
+                        pending.add(token);
+                    }
+                }
+            }
+            return pending.get(position++);
+        }
+
+        void skipSection() throws IOException {
+            String line = reader.readLine();
+            while (line != null && !line.trim().equals(terminator)) {
+                line = reader.readLine();
+            }
+            if (line == null) {
+                throw new IOException("Invalid neural net: missing '" + terminator + "'");
+            }
+        }
+
+        int nextInt() throws IOException {
+            final String token = next();
+            try {
+                return Integer.parseInt(token);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid neural net: expected integer but found '" + token + "'", e);
+            }
+        }
+
+        double nextDouble() throws IOException {
+            final String token = next();
+            try {
+                return Double.parseDouble(token);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid neural net: expected number but found '" + token + "'", e);
+            }
+        }
+
+        void expect(String expected) throws IOException {
+            final String token = next();
+            if (!expected.equals(token)) {
+                throw new IOException("Invalid neural net: expected '" + expected + "' but found '" + token + "'");
+            }
+        }
+
+        void expectInt(int expected) throws IOException {
+            final int value = nextInt();
+            if (value != expected) {
+                throw new IOException("Invalid neural net: expected " + expected + " but found " + value);
+            }
+        }
+    }
+}
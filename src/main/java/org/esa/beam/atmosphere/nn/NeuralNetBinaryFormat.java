@@ -0,0 +1,228 @@
+package org.esa.beam.atmosphere.nn;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary format of a {@link NeuralNet}.
+ * <p/>
+ * All values are stored in big endian byte order:
+ * <pre>
+ *   int      magic number 'BNET'
+ *   int      format version
+ *   int      number of layers L
+ *   int[L]   layer sizes
+ *   double[] input minima, input maxima, output minima, output maxima
+ *   double[] per layer: the bias followed by the weights, indexed as [to][from]
+ *   int      CRC32 checksum of all preceding bytes
+ * </pre>
+ * Files are memory mapped when read, so the values are copied in bulk from the page cache into
+ * the arrays of the net, without any parsing.
+ */
+public final class NeuralNetBinaryFormat {
+
+    public static final String FILE_EXTENSION = ".nnb";
+    public static final String TEXT_FILE_EXTENSION = ".net";
+
+    static final int MAGIC = 0x424E4554; // 'BNET'
+    static final int VERSION = 1;
+
+    private static final int MAX_LAYER_COUNT = 64;
+
+    private NeuralNetBinaryFormat() {
+    }
+
+    /**
+     * @param netName the name of a neural net in '.net' format
+     *
+     * @return the name of the binary sibling, which has the extension '.nnb' instead of '.net'
+     */
+    public static String getBinaryName(String netName) {
+        if (netName.endsWith(TEXT_FILE_EXTENSION)) {
+            return netName.substring(0, netName.length() - TEXT_FILE_EXTENSION.length()) + FILE_EXTENSION;
+        }
+        return netName + FILE_EXTENSION;
+    }
+
+    /**
+     * Writes the given net in binary format. The stream is not closed.
+     *
+     * @param net    the neural net
+     * @param stream the stream to write to
+     *
+     * @throws IOException if the net could not be written
+     */
+    public static void write(NeuralNet net, OutputStream stream) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(getByteCount(net.layerSizes));
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(net.layerSizes.length);
+        for (int layerSize : net.layerSizes) {
+            out.writeInt(layerSize);
+        }
+        writeDoubles(out, net.inputMin);
+        writeDoubles(out, net.inputMax);
+        writeDoubles(out, net.outputMin);
+        writeDoubles(out, net.outputMax);
+        for (int layer = 0; layer < net.weights.length; layer++) {
+            writeDoubles(out, net.bias[layer]);
+            for (double[] neuronWeights : net.weights[layer]) {
+                writeDoubles(out, neuronWeights);
+            }
+        }
+        out.flush();
+        final CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+        out.flush();
+        bytes.writeTo(stream);
+        stream.flush();
+    }
+
+    /**
+     * Reads a net from a memory mapped file.
+     *
+     * @param file the file in binary format
+     *
+     * @return the neural net
+     *
+     * @throws IOException if the file could not be read or is corrupt
+     */
+    public static NeuralNet read(File file) throws IOException {
+        try (FileInputStream stream = new FileInputStream(file)) {
+            final FileChannel channel = stream.getChannel();
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            throw new IOException("Could not read neural net from " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads a net in binary format from the given stream, e.g. a class path resource, which cannot be
+     * memory mapped. The stream is closed afterwards.
+     *
+     * @param stream the stream
+     *
+     * @return the neural net
+     *
+     * @throws IOException if the stream could not be read or the content is corrupt
+     */
+    public static NeuralNet read(InputStream stream) throws IOException {
+        try (InputStream in = stream) {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+            final byte[] buffer = new byte[64 * 1024];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, count);
+            }
+            return read(ByteBuffer.wrap(bytes.toByteArray()));
+        }
+    }
+
+    /**
+     * Reads a net in binary format from the given buffer, starting at its current position.
+     *
+     * @param buffer the buffer
+     *
+     * @return the neural net
+     *
+     * @throws IOException if the content is corrupt
+     */
+    public static NeuralNet read(ByteBuffer buffer) throws IOException {
+        final ByteBuffer data = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+        if (data.remaining() < 16) {
+            throw new IOException("Not a binary neural net: too short");
+        }
+        if (data.getInt() != MAGIC) {
+            throw new IOException("Not a binary neural net: wrong magic number");
+        }
+        final int version = data.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary neural net version " + version);
+        }
+        final int layerCount = data.getInt();
+        if (layerCount < 2 || layerCount > MAX_LAYER_COUNT || data.remaining() < layerCount * 4) {
+            throw new IOException("Corrupt binary neural net: invalid number of layers " + layerCount);
+        }
+        final int[] layerSizes = new int[layerCount];
+        for (int i = 0; i < layerCount; i++) {
+            layerSizes[i] = data.getInt();
+            if (layerSizes[i] <= 0) {
+                throw new IOException("Corrupt binary neural net: invalid layer size " + layerSizes[i]);
+            }
+        }
+        final int byteCount = getByteCount(layerSizes);
+        if (data.limit() != byteCount) {
+            throw new IOException("Corrupt binary neural net: expected " + byteCount + " bytes, but found " +
+                                  data.limit());
+        }
+        final CRC32 crc = new CRC32();
+        final ByteBuffer checked = data.duplicate();
+        checked.position(0).limit(byteCount - 4);
+        crc.update(toArray(checked));
+        if ((int) crc.getValue() != data.getInt(byteCount - 4)) {
+            throw new IOException("Corrupt binary neural net: checksum mismatch");
+        }
+
+        final DoubleBuffer values = data.asDoubleBuffer();
+        final int inputCount = layerSizes[0];
+        final int outputCount = layerSizes[layerCount - 1];
+        final double[] inputMin = readDoubles(values, inputCount);
+        final double[] inputMax = readDoubles(values, inputCount);
+        final double[] outputMin = readDoubles(values, outputCount);
+        final double[] outputMax = readDoubles(values, outputCount);
+        final double[][] bias = new double[layerCount - 1][];
+        final double[][][] weights = new double[layerCount - 1][][];
+        for (int layer = 0; layer < layerCount - 1; layer++) {
+            bias[layer] = readDoubles(values, layerSizes[layer + 1]);
+            weights[layer] = new double[layerSizes[layer + 1]][];
+            for (int to = 0; to < layerSizes[layer + 1]; to++) {
+                weights[layer][to] = readDoubles(values, layerSizes[layer]);
+            }
+        }
+        return new NeuralNet(layerSizes, inputMin, inputMax, outputMin, outputMax, bias, weights);
+    }
+
+    private static int getByteCount(int[] layerSizes) {
+        final int inputCount = layerSizes[0];
+        final int outputCount = layerSizes[layerSizes.length - 1];
+        long valueCount = 2L * inputCount + 2L * outputCount;
+        for (int layer = 0; layer < layerSizes.length - 1; layer++) {
+            valueCount += layerSizes[layer + 1] + (long) layerSizes[layer] * layerSizes[layer + 1];
+        }
+        final long byteCount = 4L * (3 + layerSizes.length) + 8L * valueCount + 4L;
+        if (byteCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Neural net too large");
+        }
+        return (int) byteCount;
+    }
+
+    private static void writeDoubles(DataOutputStream out, double[] values) throws IOException {
+        for (double value : values) {
+            out.writeDouble(value);
+        }
+    }
+
+    private static double[] readDoubles(DoubleBuffer buffer, int count) {
+        final double[] values = new double[count];
+        buffer.get(values);
+        return values;
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
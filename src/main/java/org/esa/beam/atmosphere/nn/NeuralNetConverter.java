@@ -0,0 +1,85 @@
+package org.esa.beam.atmosphere.nn;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Converts neural nets from the text based '.net' format into the binary format
+ * described in {@link NeuralNetBinaryFormat}.
+ * <p/>
+ * The binary file is written next to the text file and read back to verify the conversion. Nets in the
+ * Jnn '.nna' format cannot be converted, as they use different activation functions per layer.
+ * <p/>
+ * Usage: {@code NeuralNetConverter <net-file>...}
+ */
+public class NeuralNetConverter {
+
+    private NeuralNetConverter() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: NeuralNetConverter <net-file>...");
+            System.exit(1);
+        }
+        int failureCount = 0;
+        for (String arg : args) {
+            final File netFile = new File(arg);
+            try {
+                final File binaryFile = convert(netFile);
+                System.out.println(netFile + " -> " + binaryFile);
+            } catch (IOException e) {
+                System.err.println(netFile + ": " + e.getMessage());
+                failureCount++;
+            }
+        }
+        if (failureCount > 0) {
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Converts the given net into a binary sibling.
+     *
+     * @param netFile a neural net in '.net' format
+     *
+     * @return the binary file
+     *
+     * @throws IOException if the net could not be converted
+     */
+    public static File convert(File netFile) throws IOException {
+        if (!netFile.getName().endsWith(NeuralNetBinaryFormat.TEXT_FILE_EXTENSION)) {
+            throw new IOException("Only neural nets in '" + NeuralNetBinaryFormat.TEXT_FILE_EXTENSION +
+                                  "' format can be converted");
+        }
+        final NeuralNet net = NeuralNet.read(new FileInputStream(netFile));
+        final File binaryFile = new File(netFile.getParentFile(),
+                                         NeuralNetBinaryFormat.getBinaryName(netFile.getName()));
+        try (OutputStream stream = new FileOutputStream(binaryFile)) {
+            NeuralNetBinaryFormat.write(net, stream);
+        }
+        if (!isEqual(net, NeuralNetBinaryFormat.read(binaryFile))) {
+            throw new IOException("Verification of " + binaryFile + " failed");
+        }
+        return binaryFile;
+    }
+
+    static boolean isEqual(NeuralNet net1, NeuralNet net2) {
+        if (!Arrays.equals(net1.layerSizes, net2.layerSizes) ||
+            !Arrays.equals(net1.inputMin, net2.inputMin) || !Arrays.equals(net1.inputMax, net2.inputMax) ||
+            !Arrays.equals(net1.outputMin, net2.outputMin) || !Arrays.equals(net1.outputMax, net2.outputMax)) {
+            return false;
+        }
+        for (int layer = 0; layer < net1.weights.length; layer++) {
+            if (!Arrays.equals(net1.bias[layer], net2.bias[layer]) ||
+                !Arrays.deepEquals(net1.weights[layer], net2.weights[layer])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,143 @@
+package org.esa.beam.atmosphere.nn;
+
+import org.esa.beam.nn.NNffbpAlphaTabFast;
+
+/**
+ * Evaluates a {@link NeuralNet} in double or single precision.
+ * <p/>
+ * The evaluator holds the activation buffers of all layers, so evaluation does not allocate memory.
+ * Instances are therefore not thread-safe; each thread needs its own evaluator, while the
+ * {@link NeuralNet} can be shared.
+ * <p/>
+ * Inputs are normalised to the training range of the net, every layer applies the logistic activation
+ * and the outputs are scaled back to the output range. Additional input values beyond the input layer
+ * of the net are ignored.
+ * <p/>
+ * The activation function is tabulated like in {@link NNffbpAlphaTabFast}, the evaluator the nets were
+ * validated with, so the double precision evaluation gives exactly its results, see {@link Sigmoid}.
+ */
+public final class NeuralNetEvaluator {
+
+    private final NeuralNet net;
+    private final double[][] activations;
+    private final float[][] activationsF;
+
+    public NeuralNetEvaluator(NeuralNet net) {
+        this.net = net;
+        final int[] layerSizes = net.layerSizes;
+        activations = new double[layerSizes.length][];
+        activationsF = new float[layerSizes.length][];
+        for (int i = 0; i < layerSizes.length; i++) {
+            activations[i] = new double[layerSizes[i]];
+            activationsF[i] = new float[layerSizes[i]];
+        }
+    }
+
+    public NeuralNet getNet() {
+        return net;
+    }
+
+    public double[] getInmin() {
+        return net.inputMin;
+    }
+
+    public double[] getInmax() {
+        return net.inputMax;
+    }
+
+    public double[] getOutmin() {
+        return net.outputMin;
+    }
+
+    public double[] getOutmax() {
+        return net.outputMax;
+    }
+
+    /**
+     * Evaluates the net and returns the outputs in a new array.
+     *
+     * @param input the input values
+     *
+     * @return the output values
+     */
+    public double[] calc(double[] input) {
+        final double[] output = new double[net.getOutputCount()];
+        calc(input, output);
+        return output;
+    }
+
+    /**
+     * Evaluates the net in double precision.
+     *
+     * @param input  the input values
+     * @param output the array receiving the output values
+     */
+    public void calc(double[] input, double[] output) {
+        checkArguments(input.length, output.length);
+        final double[] first = activations[0];
+        for (int i = 0; i < first.length; i++) {
+            first[i] = (input[i] - net.inputMin[i]) / (net.inputMax[i] - net.inputMin[i]);
+        }
+        for (int layer = 0; layer < net.weights.length; layer++) {
+            final double[] source = activations[layer];
+            final double[] target = activations[layer + 1];
+            final double[][] weights = net.weights[layer];
+            final double[] bias = net.bias[layer];
+            for (int to = 0; to < target.length; to++) {
+                final double[] neuronWeights = weights[to];
+                double sum = bias[to];
+                for (int from = 0; from < source.length; from++) {
+                    sum += neuronWeights[from] * source[from];
+                }
+                target[to] = Sigmoid.activation(sum);
+            }
+        }
+        final double[] last = activations[activations.length - 1];
+        for (int i = 0; i < last.length; i++) {
+            output[i] = last[i] * (net.outputMax[i] - net.outputMin[i]) + net.outputMin[i];
+        }
+    }
+
+    /**
+     * Evaluates the net in single precision.
+     *
+     * @param input  the input values
+     * @param output the array receiving the output values
+     */
+    public void calc(float[] input, float[] output) {
+        checkArguments(input.length, output.length);
+        final float[] first = activationsF[0];
+        for (int i = 0; i < first.length; i++) {
+            first[i] = (input[i] - net.inputMinF[i]) * net.inputScaleF[i];
+        }
+        for (int layer = 0; layer < net.weightsF.length; layer++) {
+            final float[] source = activationsF[layer];
+            final float[] target = activationsF[layer + 1];
+            final float[][] weights = net.weightsF[layer];
+            final float[] bias = net.biasF[layer];
+            for (int to = 0; to < target.length; to++) {
+                final float[] neuronWeights = weights[to];
+                float sum = bias[to];
+                for (int from = 0; from < source.length; from++) {
+                    sum += neuronWeights[from] * source[from];
+                }
+                target[to] = Sigmoid.activation(sum);
+            }
+        }
+        final float[] last = activationsF[activationsF.length - 1];
+        for (int i = 0; i < last.length; i++) {
+            output[i] = last[i] * net.outputRangeF[i] + net.outputMinF[i];
+        }
+    }
+
+    private void checkArguments(int inputLength, int outputLength) {
+        if (inputLength < net.getInputCount()) {
+            throw new IllegalArgumentException(
+                    "Expected at least " + net.getInputCount() + " input values, but got " + inputLength);
+        }
+        if (outputLength < net.getOutputCount()) {
+            throw new IllegalArgumentException(
+                    "Expected space for " + net.getOutputCount() + " output values, but got " + outputLength);
+        }
+    }
+}
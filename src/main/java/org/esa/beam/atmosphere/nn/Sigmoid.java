@@ -0,0 +1,57 @@
+package org.esa.beam.atmosphere.nn;
+
+/**
+ * Tabulated logistic activation function {@code 1 / (1 + exp(-x))}.
+ * <p/>
+ * The table and the lookup are those of {@link org.esa.beam.nn.NNffbpAlphaTabFast}, the evaluator the nets were
+ * validated with: the range [-10, 10) is divided into 100000 intervals, each represented by the value at its
+ * centre, and a value is mapped to the entry of its interval without interpolation. Outside of the tabulated
+ * range the function is saturated. The double precision activation therefore gives exactly the results of
+ * {@link org.esa.beam.nn.NNffbpAlphaTabFast}.
+ */
+final class Sigmoid {
+
+    private static final double X_START = -10.0;
+    private static final int TABLE_SIZE = 100000;
+    private static final double RECIPROCAL_DELTA = -TABLE_SIZE / X_START / 2.0;
+
+    private static final double[] TABLE = new double[TABLE_SIZE];
+    private static final float[] TABLE_F = new float[TABLE_SIZE];
+
+    static {
+        final double delta = -2.0 * X_START / TABLE_SIZE;
+        // accumulated like in NNffbpAlphaTabFast, so that the entries are identical
+        double x = X_START + 0.5 * delta;
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            TABLE[i] = 1.0 / (1.0 + Math.exp(-x));
+            TABLE_F[i] = (float) TABLE[i];
+            x += delta;
+        }
+    }
+
+    private Sigmoid() {
+    }
+
+    static double activation(double x) {
+        final int index = (int) ((x - X_START) * RECIPROCAL_DELTA);
+        if (index < 0) {
+            return TABLE[0];
+        }
+        if (index >= TABLE_SIZE) {
+            return TABLE[TABLE_SIZE - 1];
+        }
+        return TABLE[index];
+    }
+
+    static float activation(float x) {
+        // the index is computed in double precision, so that both precisions select the same entry
+        final int index = (int) ((x - X_START) * RECIPROCAL_DELTA);
+        if (index < 0) {
+            return TABLE_F[0];
+        }
+        if (index >= TABLE_SIZE) {
+            return TABLE_F[TABLE_SIZE - 1];
+        }
+        return TABLE_F[index];
+    }
+}
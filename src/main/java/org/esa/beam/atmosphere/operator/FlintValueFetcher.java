@@ -0,0 +1,251 @@
+package org.esa.beam.atmosphere.operator;
+
+import org.esa.beam.framework.datamodel.Band;
+import org.esa.beam.framework.datamodel.GeoCoding;
+import org.esa.beam.framework.datamodel.GeoPos;
+import org.esa.beam.framework.datamodel.PixelPos;
+import org.esa.beam.framework.datamodel.RasterDataNode;
+import org.esa.beam.framework.gpf.OperatorException;
+
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Fetches the FLINT values of the pixels of a target rectangle in the background.
+ * <p/>
+ * {@link #fetch} locates the pixels of the target rectangle in the FLINT product and reads the AATSR nadir view
+ * elevation of the covered area, which is cheap compared to the FLINT values. The FLINT processor yields
+ * {@link #OUTSIDE_SWATH_VALUE} for pixels whose view elevation is not positive, i.e. outside the AATSR swath, so
+ * only the FLINT values of the pixels inside the swath are requested, as one raster on a background thread.
+ * Meanwhile the caller can correct the pixels which are not {@link FlintTile#isPending pending} with the MERIS net.
+ * The values of the pending pixels are then taken from the {@link FlintTile}, which waits for the background
+ * request.
+ */
+public class FlintValueFetcher {
+
+    /**
+     * The FLINT value of the pixels outside the AATSR swath.
+     */
+    public static final double OUTSIDE_SWATH_VALUE = 0.0;
+
+    private final GeoCoding targetGeoCoding;
+    private final GeoCoding flintGeoCoding;
+    private final Band flintBand;
+    private final RasterDataNode viewElevationRaster;
+    private final ExecutorService executor;
+
+    /**
+     * @param targetGeoCoding     the geo-coding of the target product
+     * @param flintBand           the band of the FLINT values
+     * @param viewElevationRaster the AATSR nadir view elevation on the raster of the FLINT band, {@code null} if
+     *                            all pixels covered by the FLINT product shall be fetched
+     * @param threadCount         the number of background threads
+     */
+    public FlintValueFetcher(GeoCoding targetGeoCoding, Band flintBand, RasterDataNode viewElevationRaster,
+                             int threadCount) {
+        this.targetGeoCoding = targetGeoCoding;
+        this.flintGeoCoding = flintBand.getProduct().getGeoCoding();
+        this.flintBand = flintBand;
+        this.viewElevationRaster = viewElevationRaster;
+        executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "FlintValueFetcher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Locates the pixels of the target rectangle in the FLINT product and starts fetching their FLINT values.
+     *
+     * @param targetRectangle the target rectangle
+     * @param regionMask      the pixels to be looked up, {@code null} for all pixels
+     *
+     * @return the FLINT values of the target rectangle
+     */
+    public FlintTile fetch(Rectangle targetRectangle, boolean[] regionMask) {
+        final int pixelCount = targetRectangle.width * targetRectangle.height;
+        final int[] flintX = new int[pixelCount];
+        final int[] flintY = new int[pixelCount];
+        final boolean[] pending = new boolean[pixelCount];
+        final int flintWidth = flintBand.getSceneRasterWidth();
+        final int flintHeight = flintBand.getSceneRasterHeight();
+        final GeoPos geoPos = new GeoPos();
+        final PixelPos targetPos = new PixelPos();
+        final PixelPos flintPos = new PixelPos();
+        for (int y = 0; y < targetRectangle.height; y++) {
+            for (int x = 0; x < targetRectangle.width; x++) {
+                final int pixelIndex = y * targetRectangle.width + x;
+                flintX[pixelIndex] = -1;
+                if (regionMask != null && !regionMask[pixelIndex]) {
+                    continue;
+                }
+                targetPos.setLocation(targetRectangle.x + x + 0.5f, targetRectangle.y + y + 0.5f);
+                targetGeoCoding.getGeoPos(targetPos, geoPos);
+                flintGeoCoding.getPixelPos(geoPos, flintPos);
+                if (!flintPos.isValid() || flintPos.x < 0.0f || flintPos.y < 0.0f) {
+                    continue;
+                }
+                final int fx = (int) Math.floor(flintPos.x);
+                final int fy = (int) Math.floor(flintPos.y);
+                if (fx >= flintWidth || fy >= flintHeight) {
+                    continue;
+                }
+                flintX[pixelIndex] = fx;
+                flintY[pixelIndex] = fy;
+                pending[pixelIndex] = true;
+            }
+        }
+        Rectangle flintRectangle = getBounds(flintX, flintY, pending);
+        if (flintRectangle != null && viewElevationRaster != null) {
+            final Raster viewElevation = viewElevationRaster.getGeophysicalImage().getData(flintRectangle);
+            for (int pixelIndex = 0; pixelIndex < pixelCount; pixelIndex++) {
+                // the same condition as in the FLINT processor, which also holds for NaN
+                if (pending[pixelIndex] &&
+                    !(viewElevation.getSampleDouble(flintX[pixelIndex], flintY[pixelIndex], 0) > 0.0)) {
+                    pending[pixelIndex] = false;
+                }
+            }
+            flintRectangle = getBounds(flintX, flintY, pending);
+        }
+        if (flintRectangle == null) {
+            return new FlintTile(flintX, flintY, pending, null, null);
+        }
+        final Rectangle requestRectangle = flintRectangle;
+        final Future<Raster[]> rasters = executor.submit(new Callable<Raster[]>() {
+            @Override
+            public Raster[] call() {
+                final RenderedImage validMaskImage = flintBand.getValidMaskImage();
+                return new Raster[]{
+                        flintBand.getGeophysicalImage().getData(requestRectangle),
+                        validMaskImage != null ? validMaskImage.getData(requestRectangle) : null
+                };
+            }
+        });
+        return new FlintTile(flintX, flintY, pending, flintRectangle, rasters);
+    }
+
+    private static Rectangle getBounds(int[] flintX, int[] flintY, boolean[] pending) {
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = -1;
+        int maxY = -1;
+        for (int pixelIndex = 0; pixelIndex < pending.length; pixelIndex++) {
+            if (pending[pixelIndex]) {
+                minX = Math.min(minX, flintX[pixelIndex]);
+                minY = Math.min(minY, flintY[pixelIndex]);
+                maxX = Math.max(maxX, flintX[pixelIndex]);
+                maxY = Math.max(maxY, flintY[pixelIndex]);
+            }
+        }
+        if (maxX < 0) {
+            return null;
+        }
+        return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+    }
+
+    /**
+     * Stops the background threads.
+     */
+    public void dispose() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * The FLINT values of a target rectangle. Not thread-safe.
+     */
+    public static final class FlintTile {
+
+        private final int[] flintX;
+        private final int[] flintY;
+        private final boolean[] pending;
+        private final Rectangle flintRectangle;
+        private final Future<Raster[]> pendingRasters;
+        private Raster values;
+        private Raster validMask;
+
+        private FlintTile(int[] flintX, int[] flintY, boolean[] pending, Rectangle flintRectangle,
+                          Future<Raster[]> pendingRasters) {
+            this.flintX = flintX;
+            this.flintY = flintY;
+            this.pending = pending;
+            this.flintRectangle = flintRectangle;
+            this.pendingRasters = pendingRasters;
+        }
+
+        /**
+         * @param pixelIndex the index of the pixel within the target rectangle
+         *
+         * @return {@code true} if the pixel is covered by the FLINT product
+         */
+        public boolean isCovered(int pixelIndex) {
+            return flintX[pixelIndex] >= 0;
+        }
+
+        /**
+         * @param pixelIndex the index of the pixel within the target rectangle
+         *
+         * @return {@code true} if the FLINT value of the pixel is fetched in the background, {@code false} if it
+         *         is available immediately, because the pixel is not covered or outside the AATSR swath
+         */
+        public boolean isPending(int pixelIndex) {
+            return pending[pixelIndex];
+        }
+
+        /**
+         * Gets the FLINT value of a pixel, waits for the background request if necessary.
+         *
+         * @param pixelIndex the index of the pixel within the target rectangle
+         *
+         * @return the FLINT value, {@link #OUTSIDE_SWATH_VALUE} if the pixel is outside the AATSR swath, or
+         *         {@link GlintCorrectionOperator#NO_FLINT_VALUE} if the pixel is not covered or its FLINT value is
+         *         invalid
+         */
+        public double getFlintValue(int pixelIndex) {
+            if (!isCovered(pixelIndex)) {
+                return GlintCorrectionOperator.NO_FLINT_VALUE;
+            }
+            if (!isPending(pixelIndex)) {
+                return OUTSIDE_SWATH_VALUE;
+            }
+            if (values == null) {
+                awaitRasters();
+            }
+            final int x = flintX[pixelIndex];
+            final int y = flintY[pixelIndex];
+            if (validMask != null && validMask.getSample(x, y, 0) == 0) {
+                return GlintCorrectionOperator.NO_FLINT_VALUE;
+            }
+            return values.getSampleDouble(x, y, 0);
+        }
+
+        /**
+         * @return the area of the FLINT product whose values are fetched, {@code null} if there is none
+         */
+        public Rectangle getFlintRectangle() {
+            return flintRectangle;
+        }
+
+        private void awaitRasters() {
+            try {
+                final Raster[] rasters = pendingRasters.get();
+                values = rasters[0];
+                validMask = rasters[1];
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new OperatorException("Interrupted while fetching FLINT values", e);
+            } catch (ExecutionException e) {
+                throw new OperatorException("Could not fetch FLINT values", e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package org.esa.beam.atmosphere.operator;
+
+import org.esa.beam.FloatPixelData;
+import org.esa.beam.atmosphere.nn.NeuralNetEvaluator;
+import org.esa.beam.glint.util.ProcessingStatistics;
+import org.esa.beam.meris.radiometry.smilecorr.SmileCorrectionAuxdata;
+
+import java.util.Arrays;
+
+/**
+ * Single precision counterpart of {@link GlintCorrection}.
+ * <p/>
+ * The algorithm is the same, but all intermediate values are kept in {@code float} and all working
+ * arrays are allocated once. An instance must therefore not be shared between threads.
+ */
+public class FloatGlintCorrection {
+
+    private static final float MAX_TAU_FACTOR = 0.84f;
+    private static final float[] H2O_COR_POLY = new float[]{
+            0.3832989f, 1.6527957f, -1.5635101f, 0.5311913f
+    }; // polynom coefficients for band708 correction
+    private static final float LOG_443_865 = (float) Math.log(GlintCorrection.MERIS_WAVELENGTHS[1] /
+                                                              GlintCorrection.MERIS_WAVELENGTHS[11]);
+
+    private final NeuralNetEvaluator atmosphereNet;
+    private final NeuralNetEvaluator normalizationNet;
+    private final NeuralNetEvaluator autoAssocNet;
+    private final FloatTosa tosa;
+    private final ReflectanceEnum outputReflecAs;
+    private final float tauMax;
+    private final float glintRatioMax;
+    private final float solzenMin;
+    private final float solzenMax;
+    private final float[] logTosaMin;
+    private final float[] logTosaMax;
+    private final float[] atmoInnet;
+    private final float[] atmoOutnet;
+    private final float[] aaNNOutnet;
+    private final float[] normInNet;
+    private final float[] normOutNet;
+    private ProcessingStatistics statistics = ProcessingStatistics.DISABLED;
+    private QuantisedResultCache resultCache;
+    // the pixel last passed to correctAtmosphere, used to derive the reflectances
+    private float tetaSunSurfDeg;
+    private float tetaViewSurfDeg;
+    private float aziDiffSurfDeg;
+    private float transuExponent;
+    private float trans708;
+
+    /**
+     * @param atmosphereNet    the neural net for atmospheric correction
+     * @param smileAuxdata     can be {@code null} if SMILE correction shall not be performed
+     * @param normalizationNet can be {@code null} if normalization shall not be performed
+     * @param autoAssocNet     the auto associative neural net
+     * @param outputReflecAs   whether reflectances are computed as radiance or irradiance reflectances
+     */
+    public FloatGlintCorrection(NeuralNetEvaluator atmosphereNet, SmileCorrectionAuxdata smileAuxdata,
+                                NeuralNetEvaluator normalizationNet, NeuralNetEvaluator autoAssocNet,
+                                ReflectanceEnum outputReflecAs) {
+        this.atmosphereNet = atmosphereNet;
+        this.normalizationNet = normalizationNet;
+        this.autoAssocNet = autoAssocNet;
+        tosa = new FloatTosa(smileAuxdata);
+        this.outputReflecAs = outputReflecAs;
+
+        final double[] inmin = atmosphereNet.getInmin();
+        final double[] inmax = atmosphereNet.getInmax();
+        final double[] outmax = atmosphereNet.getOutmax();
+        solzenMin = (float) inmin[0];
+        solzenMax = (float) inmax[0];
+        logTosaMin = new float[12];
+        logTosaMax = new float[12];
+        for (int i = 0; i < 12; i++) {
+            logTosaMin[i] = (float) inmin[i + 4];
+            logTosaMax[i] = (float) inmax[i + 4];
+        }
+        tauMax = (float) outmax[37] * MAX_TAU_FACTOR;
+        glintRatioMax = outmax.length == 43 ? (float) outmax[40] * 0.97f : Float.NaN;
+
+        atmoInnet = new float[inmin.length];
+        atmoOutnet = new float[outmax.length];
+        aaNNOutnet = new float[autoAssocNet.getOutmax().length];
+        normInNet = new float[15];
+        normOutNet = normalizationNet != null ? new float[normalizationNet.getOutmax().length] : null;
+    }
+
+    /**
+     * @param statistics the statistics the stage timings are recorded in
+     */
+    public void setStatistics(ProcessingStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * @param resultCache the cache of the net results keyed on the net inputs, {@code null} to compute all pixels
+     */
+    public void setResultCache(QuantisedResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    public QuantisedResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * This method performs the Glint correction.
+     *
+     * @param pixel            the pixel input data
+     * @param deriveRwFromPath whether to derive the water leaving reflectance from the path reflectance
+     * @param glintResult      the result, which is reset before it is filled
+     */
+    public void perform(FloatPixelData pixel, boolean deriveRwFromPath, FloatGlintResult glintResult) {
+        if (correctAtmosphere(pixel, glintResult)) {
+            deriveReflectances(deriveRwFromPath, outputReflecAs, normalizationNet != null, glintResult);
+        }
+    }
+
+    /**
+     * Performs the part of the Glint correction which is independent of how the water leaving reflectances are
+     * derived, see {@link GlintCorrection#correctAtmosphere}.
+     *
+     * @param pixel       the pixel input data
+     * @param glintResult the result, which is reset before it is filled
+     *
+     * @return whether the pixel is valid, only then the reflectances can be derived
+     */
+    public boolean correctAtmosphere(FloatPixelData pixel, FloatGlintResult glintResult) {
+        glintResult.reset();
+
+        tetaViewSurfDeg = correctViewAngle(pixel.satzen, pixel.pixelX, pixel.nadirColumnIndex,
+                                           pixel.isFullResolution); /* viewing zenith angle */
+        final float tetaViewSurfRad = (float) Math.toRadians(tetaViewSurfDeg);
+        tetaSunSurfDeg = pixel.solzen; /* sun zenith angle */
+        final float tetaSunSurfRad = (float) Math.toRadians(tetaSunSurfDeg);
+        aziDiffSurfDeg = getAzimuthDifference(pixel);
+        final float aziDiffSurfRad = (float) Math.toRadians(aziDiffSurfDeg);
+        final float cosTetaViewSurfRad = (float) Math.cos(tetaViewSurfRad);
+        final float cosTetaSunSurfRad = (float) Math.cos(tetaSunSurfRad);
+
+        if (isSet(pixel.validation, ToaReflectanceValidationOp.LAND_FLAG_MASK)) {
+            glintResult.raiseFlag(GlintCorrection.LAND);
+        }
+        if (isSet(pixel.validation, ToaReflectanceValidationOp.CLOUD_ICE_FLAG_MASK)) {
+            glintResult.raiseFlag(GlintCorrection.CLOUD_ICE);
+        }
+        if (isSet(pixel.validation, ToaReflectanceValidationOp.RLTOA_OOR_FLAG_MASK)) {
+            glintResult.raiseFlag(GlintCorrection.TOA_OOR);
+        }
+        if (isSet(glintResult.getFlag(), GlintCorrection.LAND) || isSet(glintResult.getFlag(), GlintCorrection.CLOUD_ICE) ||
+            isSet(pixel.l1Flag, GlintCorrection.L1_INVALID_FLAG)) {
+            glintResult.raiseFlag(GlintCorrection.INVALID);
+            return false;
+        }
+
+        long stageStart = statistics.startTimer();
+        final float[] rlTosa = glintResult.tosaReflec;
+        tosa.perform(pixel, tetaViewSurfRad, tetaSunSurfRad, rlTosa);
+        statistics.stopTimer(ProcessingStatistics.Stage.TOSA, stageStart);
+
+        /* test if tosa reflectances are out of training range */
+        boolean tosaValid = true;
+        for (int i = 0; i < rlTosa.length; i++) {
+            final float logRlTosa = (float) Math.log(rlTosa[i]);
+            if (logRlTosa > logTosaMax[i] || logRlTosa < logTosaMin[i]) {
+                tosaValid = false;
+                break;
+            }
+        }
+        if (!tosaValid) {
+            glintResult.raiseFlag(GlintCorrection.TOSA_OOR);
+        }
+        if (tetaSunSurfDeg > solzenMax || tetaSunSurfDeg < solzenMin) {
+            glintResult.raiseFlag(GlintCorrection.SOLZEN);
+        }
+        final boolean ozoneValid = pixel.ozone >= 200 && pixel.ozone <= 500;
+        final boolean pressureValid = pixel.pressure >= 500 && pixel.pressure <= 1100;
+        if (!(ozoneValid && pressureValid)) {
+            glintResult.raiseFlag(GlintCorrection.ANCIL);
+        }
+
+        // water vapour correction for band 9 (708 nm), only applied to the net input
+        final float rho_885 = pixel.toa_radiance[13] / pixel.solar_flux[13];
+        final float rho_900 = pixel.toa_radiance[14] / pixel.solar_flux[14];
+        final float x2 = rho_900 / rho_885;
+        trans708 = H2O_COR_POLY[0] + H2O_COR_POLY[1] * x2 + H2O_COR_POLY[2] * x2 * x2 + H2O_COR_POLY[3] * x2 * x2 * x2;
+
+        atmoInnet[0] = tetaSunSurfDeg;
+        // calculate xyz coordinates
+        final float sinTetaViewSurfRad = (float) Math.sin(tetaViewSurfRad);
+        atmoInnet[1] = -sinTetaViewSurfRad * (float) Math.cos(aziDiffSurfRad);
+        atmoInnet[2] = Math.abs(-sinTetaViewSurfRad * (float) Math.sin(aziDiffSurfRad));
+        atmoInnet[3] = cosTetaViewSurfRad;
+        for (int i = 0; i < rlTosa.length; i++) {
+            final float rl = i == 8 ? rlTosa[i] / trans708 : rlTosa[i];
+            atmoInnet[i + 4] = (float) Math.log(rl);
+        }
+        // last input is log_rlglint_13 in synergyMode
+        if (GlintCorrection.isFlintValueValid(pixel.flintValue)) {
+            atmoInnet[atmoInnet.length - 1] = pixel.flintValue;
+        } else if (atmoInnet.length > rlTosa.length + 4) {
+            // the buffer is reused, clear the value of the previous pixel
+            atmoInnet[atmoInnet.length - 1] = 0.0f;
+        }
+
+        // atmoInnet is also the input of the aaNN, the time of both nets is recorded as ATMOSPHERE_NET
+        stageStart = statistics.startTimer();
+        if (resultCache == null) {
+            calcNets();
+        } else if (resultCache.lookup(atmoInnet)) {
+            resultCache.load(atmoOutnet, 0);
+            resultCache.load(aaNNOutnet, atmoOutnet.length);
+            if (resultCache.isVerificationDue()) {
+                calcNets();
+                resultCache.verify(atmoOutnet, 0);
+                resultCache.verify(aaNNOutnet, atmoOutnet.length);
+            }
+        } else {
+            calcNets();
+            resultCache.store(atmoOutnet, 0);
+            resultCache.store(aaNNOutnet, atmoOutnet.length);
+        }
+        statistics.stopTimer(ProcessingStatistics.Stage.ATMOSPHERE_NET, stageStart);
+
+        stageStart = statistics.startTimer();
+        computeError(atmoInnet, glintResult);
+        statistics.stopTimer(ProcessingStatistics.Stage.AUTO_ASSOC_NET, stageStart);
+
+        transuExponent = cosTetaSunSurfRad / cosTetaViewSurfRad;
+        for (int i = 0; i < 12; i++) {
+            glintResult.path[i] = (float) Math.exp(atmoOutnet[i + 12]);
+            glintResult.trans[i] = (float) Math.exp(atmoOutnet[i + 24]) / cosTetaSunSurfRad; //outnet is Ed_boa, not transmittance
+        }
+
+        /* compute angstrom coefficient from band 12 and 13 778 and 865 nm */
+        glintResult.angstrom = -(float) Math.log(atmoOutnet[36] / atmoOutnet[39]) / LOG_443_865;
+        glintResult.tau550 = atmoOutnet[37];
+        glintResult.tau778 = atmoOutnet[38];
+        glintResult.tau865 = atmoOutnet[39];
+        if (!(atmoOutnet[37] <= tauMax)) {
+            glintResult.raiseFlag(GlintCorrection.ATC_OOR);
+        }
+
+        if (atmoOutnet.length == 43) {
+            // glint ratio available as output only for 'non-flint' case (RD, 28.10.09)
+            glintResult.glintRatio = atmoOutnet[40];
+            glintResult.btsm = (float) Math.exp(atmoOutnet[41]);
+            glintResult.atot = (float) Math.exp(atmoOutnet[42]);
+
+            if (atmoOutnet[40] > glintRatioMax) {
+                glintResult.raiseFlag(GlintCorrection.SUNGLINT);
+            }
+        } else {
+            glintResult.glintRatio = pixel.flintValue;    // test
+            glintResult.btsm = (float) Math.exp(atmoOutnet[40]);
+            glintResult.atot = (float) Math.exp(atmoOutnet[41]);
+        }
+        return true;
+    }
+
+    /**
+     * Derives the water leaving reflectances and, if requested, the normalised reflectances of the pixel last
+     * passed to {@link #correctAtmosphere}, which must have been valid.
+     *
+     * @param deriveRwFromPath whether to derive the water leaving reflectance from the path reflectance
+     * @param outputReflecAs   whether the reflectances are radiance or irradiance reflectances
+     * @param normalize        whether to compute the normalised reflectances, requires the normalization net
+     * @param glintResult      the result filled by {@link #correctAtmosphere}
+     */
+    public void deriveReflectances(boolean deriveRwFromPath, ReflectanceEnum outputReflecAs, boolean normalize,
+                                   FloatGlintResult glintResult) {
+        final float reflecFactor;
+        if (ReflectanceEnum.IRRADIANCE_REFLECTANCES.equals(outputReflecAs)) {
+            reflecFactor = (float) Math.PI; // irradiance reflectance, comparable with MERIS
+        } else {
+            reflecFactor = 1.0f; // radiance reflectance
+        }
+        final float[] rlTosa = glintResult.tosaReflec;
+        final float[] reflec = glintResult.reflec;
+        for (int i = 0; i < 12; i++) {
+            if (deriveRwFromPath) {
+                final float rl = i == 8 ? rlTosa[i] / trans708 : rlTosa[i];
+                final float transu = (float) Math.exp(Math.log(glintResult.trans[i]) * transuExponent);
+                reflec[i] = (rl - glintResult.path[i]) / transu * reflecFactor;
+            } else {
+                reflec[i] = (float) Math.exp(atmoOutnet[i]) * reflecFactor;
+            }
+        }
+
+        if (normalize) {
+            final long stageStart = statistics.startTimer();
+            normInNet[0] = tetaSunSurfDeg;
+            normInNet[1] = tetaViewSurfDeg;
+            normInNet[2] = aziDiffSurfDeg;
+            for (int i = 0; i < 12; i++) {
+                normInNet[i + 3] = (float) Math.log(reflec[i]);
+            }
+            normalizationNet.calc(normInNet, normOutNet);
+            for (int i = 0; i < 12; i++) {
+                glintResult.normReflec[i] = (float) Math.exp(normOutNet[i]);
+            }
+            statistics.stopTimer(ProcessingStatistics.Stage.NORMALIZATION_NET, stageStart);
+        } else {
+            Arrays.fill(glintResult.normReflec, 0.0f);
+        }
+    }
+
+    private void calcNets() {
+        // the aaNN ignores the additional inputs of the atmosphere net
+        atmosphereNet.calc(atmoInnet, atmoOutnet);
+        autoAssocNet.calc(atmoInnet, aaNNOutnet);
+    }
+
+    private void computeError(float[] atmoInnet, FloatGlintResult glintResult) {
+        float chi_sum = 0.0f;
+        for (int i = 0; i < 12; i++) {
+            glintResult.autoTosaReflec[i] = (float) Math.exp(aaNNOutnet[i]);
+            // the net input holds the logarithm of the water vapour corrected TOSA reflectance
+            final float logRlTosa = atmoInnet[i + 4];
+            final float relativeDifference = (logRlTosa - aaNNOutnet[i]) / logRlTosa;
+            chi_sum += relativeDifference * relativeDifference; //RD20110116
+        }
+        glintResult.tosaQualityIndicator = (float) Math.sqrt(chi_sum / 12);
+    }
+
+    private static float correctViewAngle(float teta_view_deg, int pixelX, int centerPixel,
+                                          boolean isFullResolution) {
+        final float ang_coef_1 = -0.004793f;
+        final float ang_coef_2 = isFullResolution ? 0.0093247f / 4 : 0.0093247f;
+        return teta_view_deg + Math.abs(pixelX - centerPixel) * ang_coef_2 + ang_coef_1;
+    }
+
+    private static float getAzimuthDifference(FloatPixelData pixel) {
+        float azi_diff_deg = Math.abs(pixel.solazi - pixel.satazi); /* azimuth difference */
+
+        /* reverse azi difference */
+        azi_diff_deg = 180.0f - azi_diff_deg; /* different definitions in MERIS data and MC /HL simulation */
+
+        if (azi_diff_deg > 180.0f) {
+            azi_diff_deg = 360.0f - azi_diff_deg;
+        }
+        return azi_diff_deg;
+    }
+
+    private static boolean isSet(int value, int mask) {
+        return (value & mask) == mask;
+    }
+
+}
@@ -0,0 +1,141 @@
+package org.esa.beam.atmosphere.operator;
+
+import java.util.Arrays;
+
+/**
+ * Single precision counterpart of {@link GlintResult}.
+ * <p/>
+ * The spectral arrays are allocated once and filled in place, so an instance can be reused
+ * for all pixels of a tile after calling {@link #reset()}.
+ */
+public class FloatGlintResult {
+
+    final float[] tosaReflec = new float[12];
+    final float[] autoTosaReflec = new float[12];
+    final float[] reflec = new float[12];
+    final float[] normReflec = new float[12];
+    final float[] path = new float[12];
+    final float[] trans = new float[12];
+    float tosaQualityIndicator;
+    float angstrom;
+    float tau550;
+    float tau778;
+    float tau865;
+    float glintRatio;
+    float btsm;
+    float atot;
+    private int flag;
+
+    public void reset() {
+        Arrays.fill(tosaReflec, 0.0f);
+        Arrays.fill(autoTosaReflec, 0.0f);
+        Arrays.fill(reflec, 0.0f);
+        Arrays.fill(normReflec, 0.0f);
+        Arrays.fill(path, 0.0f);
+        Arrays.fill(trans, 0.0f);
+        tosaQualityIndicator = 0;
+        angstrom = 0;
+        tau550 = 0;
+        tau778 = 0;
+        tau865 = 0;
+        glintRatio = 0;
+        btsm = 0;
+        atot = 0;
+        flag = 0;
+    }
+
+    public float[] getTosaReflec() {
+        return tosaReflec;
+    }
+
+    public float[] getAutoTosaReflec() {
+        return autoTosaReflec;
+    }
+
+    public float[] getReflec() {
+        return reflec;
+    }
+
+    public float getTosaQualityIndicator() {
+        return tosaQualityIndicator;
+    }
+
+    public float[] getNormReflec() {
+        return normReflec;
+    }
+
+    public float[] getPath() {
+        return path;
+    }
+
+    public float[] getTrans() {
+        return trans;
+    }
+
+    public float getAngstrom() {
+        return angstrom;
+    }
+
+    public float getTau550() {
+        return tau550;
+    }
+
+    public float getTau778() {
+        return tau778;
+    }
+
+    public float getTau865() {
+        return tau865;
+    }
+
+    public float getGlintRatio() {
+        return glintRatio;
+    }
+
+    public float getBtsm() {
+        return btsm;
+    }
+
+    public float getAtot() {
+        return atot;
+    }
+
+    public void raiseFlag(int flag) {
+        this.flag |= flag;
+    }
+
+    public int getFlag() {
+        return flag;
+    }
+
+    /**
+     * Copies this result into the given double precision result.
+     *
+     * @param result the result, which is reset before it is filled
+     */
+    void copyTo(GlintResult result) {
+        result.reset();
+        copy(tosaReflec, result.getTosaReflec());
+        copy(autoTosaReflec, result.getAutoTosaReflec());
+        copy(reflec, result.getReflec());
+        copy(normReflec, result.getNormReflec());
+        copy(path, result.getPath());
+        copy(trans, result.getTrans());
+        result.setTosaQualityIndicator(tosaQualityIndicator);
+        result.setAngstrom(angstrom);
+        result.setTau550(tau550);
+        result.setTau778(tau778);
+        result.setTau865(tau865);
+        result.setGlintRatio(glintRatio);
+        result.setBtsm(btsm);
+        result.setAtot(atot);
+        result.raiseFlag(flag);
+    }
+
+    private static void copy(float[] source, double[] target) {
+        for (int i = 0; i < source.length; i++) {
+            target[i] = source[i];
+        }
+    }
+
+}
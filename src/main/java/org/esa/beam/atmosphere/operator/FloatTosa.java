@@ -0,0 +1,124 @@
+package org.esa.beam.atmosphere.operator;
+
+import org.esa.beam.FloatPixelData;
+import org.esa.beam.meris.radiometry.smilecorr.SmileCorrectionAuxdata;
+
+/**
+ * Single precision counterpart of {@link Tosa}.
+ * <p/>
+ * All working arrays are allocated once, an instance must therefore not be shared between threads.
+ */
+class FloatTosa {
+
+    private static final float[] OZON_ABSORPTION = {
+            -8.2e-004f, -2.82e-003f, -2.076e-002f, -3.96e-002f, -1.022e-001f,
+            -1.059e-001f, -5.313e-002f, -3.552e-002f, -1.895e-002f, -8.38e-003f,
+            -7.2e-004f, -0.0f
+    };
+    private static final float[] TAU_RAYL_STANDARD = new float[12];
+
+    static {
+        for (int i = 0; i < TAU_RAYL_STANDARD.length; i++) {
+            TAU_RAYL_STANDARD[i] = (float) (0.008735 * Math.pow(GlintCorrection.MERIS_WAVELENGTHS[i] / 1000.0,
+                                                                -4.08));/* lam in µm */
+        }
+    }
+
+    private final float[] sunToa = new float[12];
+    private final float[] lToa = new float[12];
+    private final SmileCorrectionAuxdata smileAuxdata;
+
+    /**
+     * Creates instance of this class
+     *
+     * @param smileAuxdata can be {@code null} if SMILE correction shall not be performed
+     */
+    FloatTosa(SmileCorrectionAuxdata smileAuxdata) {
+        this.smileAuxdata = smileAuxdata;
+    }
+
+    /**
+     * Computes the TOSA reflectances.
+     *
+     * @param pixel              the pixel input data
+     * @param teta_view_surf_rad the viewing zenith angle
+     * @param teta_sun_surf_rad  the sun zenith angle
+     * @param rlTosa             the array receiving the 12 TOSA reflectances
+     */
+    public void perform(FloatPixelData pixel, float teta_view_surf_rad, float teta_sun_surf_rad, float[] rlTosa) {
+
+        /* angles */
+        final float cos_teta_sun_surf = (float) Math.cos(teta_sun_surf_rad);
+        final float sin_teta_sun_surf = (float) Math.sin(teta_sun_surf_rad);
+        final float cos_teta_view_surf = (float) Math.cos(teta_view_surf_rad);
+        final float sin_teta_view_surf = (float) Math.sin(teta_view_surf_rad);
+
+        final double azi_view_surf_rad = Math.toRadians(pixel.satazi);
+        final double azi_sun_surf_rad = Math.toRadians(pixel.solazi);
+        final float cos_azi_diff_surf = (float) Math.cos(azi_view_surf_rad - azi_sun_surf_rad);
+
+        if (smileAuxdata != null) {
+            retrieveSmileCorrectedToa(pixel.detectorIndex, pixel.solar_flux, smileAuxdata, sunToa);
+        } else {
+            retrieveToa(pixel.solar_flux, sunToa);
+        }
+        retrieveToa(pixel.toa_radiance, lToa);
+
+        /* calculate relative airmass rayleigh correction for correction layer*/
+        if (pixel.altitude < 1.0f) {
+            pixel.altitude = 1.0f;
+        }
+
+        final float altitude_pressure = pixel.pressure * (float) Math.pow((1.0 - 0.0065 * pixel.altitude / 288.15),
+                                                                          5.255);
+        final float rayl_rest_mass = (altitude_pressure - 1013.2f) / 1013.2f;
+
+        /* calculate phase function for rayleigh path radiance*/
+        final float cos_scat_ang_surf = -cos_teta_view_surf * cos_teta_sun_surf - sin_teta_view_surf * sin_teta_sun_surf * cos_azi_diff_surf;
+        final float phase_rayl_surf = 0.75f * (1.0f + cos_scat_ang_surf * cos_scat_ang_surf);
+        final float pathFactor = phase_rayl_surf / (float) (4 * Math.PI * cos_teta_view_surf * cos_teta_sun_surf);
+
+        /* ozon and rayleigh correction layer transmission */
+        final float ozon_rest_mass = (pixel.ozone / 1000.0f - 0.35f); /* conc ozone from MERIS is in DU */
+        final float ozone = pixel.ozone / 1000.0f;
+        for (int i = 0; i < rlTosa.length; i++) {
+            final float ozonAbsorption = OZON_ABSORPTION[i];
+            final float tau_rayl_toa_tosa = TAU_RAYL_STANDARD[i] * rayl_rest_mass;
+            final float scaledTauToaTosa = -tau_rayl_toa_tosa * 0.5f; /* 0.5 because diffuse trans */
+
+            final float trans_oz_toa_tosa_down_surf = (float) Math.exp(ozonAbsorption * ozon_rest_mass / cos_teta_sun_surf);
+            final float trans_oz_toa_tosa_up_surf = (float) Math.exp(ozonAbsorption * ozon_rest_mass / cos_teta_view_surf);
+            final float trans_ozon_down_surf = (float) Math.exp(ozonAbsorption * ozone / cos_teta_sun_surf);
+            final float trans_ozon_up_surf = (float) Math.exp(ozonAbsorption * ozone / cos_teta_view_surf);
+            final float trans_rayl_down_surf = (float) Math.exp(scaledTauToaTosa / cos_teta_sun_surf);
+
+            /* compute Ed_toa from sun_toa using  cos_teta_sun */
+            final float ed_toa = sunToa[i] * cos_teta_sun_surf;
+            /* Rayleigh path radiance of correction layer */
+            final float lrcPath = ed_toa * tau_rayl_toa_tosa * trans_ozon_down_surf * pathFactor;
+            /* Calculate Ed_tosa */
+            final float edTosa = ed_toa * trans_oz_toa_tosa_down_surf * trans_rayl_down_surf;
+            /* Calculate L_tosa */
+            final float lTosa = (lToa[i] - lrcPath * trans_ozon_up_surf) / trans_oz_toa_tosa_up_surf;
+            /* Calculate Lsat_tosa radiance reflectance as input to NN */
+            rlTosa[i] = lTosa / edTosa;
+        }
+    }
+
+    private static void retrieveSmileCorrectedToa(int detectorIndex, float[] solarFlux,
+                                                  SmileCorrectionAuxdata smileAuxData, float[] toa) {
+        /* correct solar flux for this pixel */
+        final double[] detectorSunSpectralFlux = smileAuxData.getDetectorSunSpectralFluxes()[detectorIndex];
+        final double[] theoreticalSunSpectralFluxes = smileAuxData.getTheoreticalSunSpectralFluxes();
+        for (int i = 0; i < toa.length; i++) {
+            final int bandIndex = i < 10 ? i : i + 1;
+            toa[i] = solarFlux[bandIndex] * (float) (detectorSunSpectralFlux[bandIndex] / theoreticalSunSpectralFluxes[bandIndex]);
+        }
+    }
+
+    private static void retrieveToa(float[] values, float[] toa) {
+        System.arraycopy(values, 0, toa, 0, 10);
+        System.arraycopy(values, 11, toa, 10, 2);
+    }
+
+}
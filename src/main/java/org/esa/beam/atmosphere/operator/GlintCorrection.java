@@ -1,13 +1,17 @@
 package org.esa.beam.atmosphere.operator;
 
 import org.esa.beam.PixelData;
+import org.esa.beam.atmosphere.nn.NeuralNetEvaluator;
+import org.esa.beam.glint.util.ProcessingStatistics;
 import org.esa.beam.meris.radiometry.smilecorr.SmileCorrectionAuxdata;
-import org.esa.beam.nn.NNffbpAlphaTabFast;
 
 import java.util.Arrays;
 
 /**
  * Class providing the AGC Glint correction.
+ * <p/>
+ * All working arrays are allocated once, so {@link #perform(PixelData, boolean, GlintResult)} does not allocate
+ * memory. An instance must therefore not be shared between threads.
  */
 public class GlintCorrection {
 
@@ -37,11 +41,26 @@ public class GlintCorrection {
     }; // polynom coefficients for band708 correction
 
 
-    private final NNffbpAlphaTabFast atmosphereNet;
+    private final NeuralNetEvaluator atmosphereNet;
     private final SmileCorrectionAuxdata smileAuxdata;
-    private NNffbpAlphaTabFast normalizationNet;
-    private NNffbpAlphaTabFast autoAssocNet;
+    private NeuralNetEvaluator normalizationNet;
+    private NeuralNetEvaluator autoAssocNet;
     private ReflectanceEnum outputReflecAs;
+    private ProcessingStatistics statistics = ProcessingStatistics.DISABLED;
+    private QuantisedResultCache resultCache;
+    private final Tosa tosa;
+    private final double[] rlTosa;
+    private final double[] atmoInnet;
+    private final double[] atmoOutnet;
+    private final double[] aaNNOutnet;
+    private final double[] normInNet;
+    private final double[] normOutNet;
+    // the geometry of the pixel last passed to correctAtmosphere, used to derive the reflectances
+    private double tetaSunSurfDeg;
+    private double tetaViewSurfDeg;
+    private double aziDiffSurfDeg;
+    private double cosTetaSunSurfRad;
+    private double cosTetaViewSurfRad;
 
 
     /**
@@ -50,14 +69,40 @@ public class GlintCorrection {
      * @param normalizationNet can be {@code null} if normalization shall not be performed
      * @param outputReflecAs
      */
-    public GlintCorrection(NNffbpAlphaTabFast atmosphereNet, SmileCorrectionAuxdata smileAuxdata,
-                           NNffbpAlphaTabFast normalizationNet, NNffbpAlphaTabFast autoAssocNet,
+    public GlintCorrection(NeuralNetEvaluator atmosphereNet, SmileCorrectionAuxdata smileAuxdata,
+                           NeuralNetEvaluator normalizationNet, NeuralNetEvaluator autoAssocNet,
                            ReflectanceEnum outputReflecAs) {
         this.atmosphereNet = atmosphereNet;
         this.smileAuxdata = smileAuxdata;
         this.normalizationNet = normalizationNet;
         this.autoAssocNet = autoAssocNet;
         this.outputReflecAs = outputReflecAs;
+        tosa = new Tosa(smileAuxdata);
+        tosa.init();
+        rlTosa = new double[12];
+        atmoInnet = new double[atmosphereNet.getInmin().length];
+        atmoOutnet = new double[atmosphereNet.getOutmax().length];
+        aaNNOutnet = new double[autoAssocNet.getOutmax().length];
+        normInNet = new double[15];
+        normOutNet = normalizationNet != null ? new double[normalizationNet.getOutmax().length] : null;
+    }
+
+    /**
+     * @param statistics the statistics the stage timings are recorded in
+     */
+    public void setStatistics(ProcessingStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * @param resultCache the cache of the net results keyed on the net inputs, {@code null} to compute all pixels
+     */
+    public void setResultCache(QuantisedResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    public QuantisedResultCache getResultCache() {
+        return resultCache;
     }
 
     protected double correctViewAngle(double teta_view_deg, int pixelX, int centerPixel, boolean isFullResolution) {
@@ -76,20 +121,48 @@ public class GlintCorrection {
      * @return GlintResult
      */
     public GlintResult perform(PixelData pixel, boolean deriveRwFromPath) {
+        final GlintResult glintResult = new GlintResult();
+        perform(pixel, deriveRwFromPath, glintResult);
+        return glintResult;
+    }
 
-        double tetaViewSurfDeg = pixel.satzen; /* viewing zenith angle */
+    /**
+     * This method performs the Glint correction without allocating memory.
+     *
+     * @param pixel            the pixel input data
+     * @param deriveRwFromPath whether to derive the water leaving reflectance from the path reflectance
+     * @param glintResult      the result, which is reset before it is filled
+     */
+    public void perform(PixelData pixel, boolean deriveRwFromPath, GlintResult glintResult) {
+        if (correctAtmosphere(pixel, glintResult)) {
+            deriveReflectances(deriveRwFromPath, outputReflecAs, normalizationNet != null, glintResult);
+        }
+    }
+
+    /**
+     * Performs the part of the Glint correction which is independent of how the water leaving reflectances are
+     * derived: the TOSA reflectances, the neural nets and the flags. The reflectances are derived by
+     * {@link #deriveReflectances}, which can be called repeatedly for different settings.
+     *
+     * @param pixel       the pixel input data
+     * @param glintResult the result, which is reset before it is filled
+     *
+     * @return whether the pixel is valid, only then the reflectances can be derived
+     */
+    public boolean correctAtmosphere(PixelData pixel, GlintResult glintResult) {
+        glintResult.reset();
+
+        tetaViewSurfDeg = pixel.satzen; /* viewing zenith angle */
         tetaViewSurfDeg = correctViewAngle(tetaViewSurfDeg, pixel.pixelX, pixel.nadirColumnIndex,
                                            pixel.isFullResolution);
         final double tetaViewSurfRad = Math.toRadians(tetaViewSurfDeg);
-        final double tetaSunSurfDeg = pixel.solzen; /* sun zenith angle */
+        tetaSunSurfDeg = pixel.solzen; /* sun zenith angle */
         final double tetaSunSurfRad = Math.toRadians(tetaSunSurfDeg);
-        final double aziDiffSurfDeg = getAzimuthDifference(pixel);
+        aziDiffSurfDeg = getAzimuthDifference(pixel);
         final double aziDiffSurfRad = Math.toRadians(aziDiffSurfDeg);
-        final double cosTetaViewSurfRad = Math.cos(tetaViewSurfRad);
-        final double cosTetaSunSurfRad = Math.cos(tetaSunSurfRad);
-
+        cosTetaViewSurfRad = Math.cos(tetaViewSurfRad);
+        cosTetaSunSurfRad = Math.cos(tetaSunSurfRad);
 
-        final GlintResult glintResult = new GlintResult();
 
         if (isLand(pixel)) {
             glintResult.raiseFlag(LAND);
@@ -106,13 +179,13 @@ public class GlintCorrection {
         if ((glintResult.getFlag() & LAND) == LAND || (glintResult.getFlag() & CLOUD_ICE) == CLOUD_ICE ||
             (pixel.l1Flag & L1_INVALID_FLAG) == L1_INVALID_FLAG) {
             glintResult.raiseFlag(INVALID);
-            return glintResult;
+            return false;
         }
 
-        Tosa tosa = new Tosa(smileAuxdata);
-        tosa.init();
-        final double[] rlTosa = tosa.perform(pixel, tetaViewSurfRad, tetaSunSurfRad, aziDiffSurfRad);
-        glintResult.setTosaReflec(rlTosa.clone());
+        long stageStart = statistics.startTimer();
+        tosa.perform(pixel, tetaViewSurfRad, tetaSunSurfRad, aziDiffSurfRad, rlTosa);
+        statistics.stopTimer(ProcessingStatistics.Stage.TOSA, stageStart);
+        System.arraycopy(rlTosa, 0, glintResult.getTosaReflec(), 0, rlTosa.length);
 
         /* test if tosa reflectances are out of training range */
         if (!isTosaReflectanceValid(rlTosa, atmosphereNet)) {
@@ -134,7 +207,6 @@ public class GlintCorrection {
         double trans708 = H2O_COR_POLY[0] + H2O_COR_POLY[1] * x2 + H2O_COR_POLY[2] * x2 * x2 + H2O_COR_POLY[3] * x2 * x2 * x2;
         rlTosa[8] /= trans708;
 
-        double[] atmoInnet = new double[atmosphereNet.getInmin().length];
         atmoInnet[0] = tetaSunSurfDeg;   // replace by tetaSunDeg
         // calculate xyz coordinates
         atmoInnet[1] = -Math.sin(tetaViewSurfRad) * Math.cos(aziDiffSurfRad);
@@ -146,13 +218,33 @@ public class GlintCorrection {
         // last input is log_rlglint_13 in synergyMode
         if (isFlintValueValid(pixel.flintValue)) {
             atmoInnet[atmoInnet.length - 1] = pixel.flintValue;
+        } else if (atmoInnet.length > rlTosa.length + 4) {
+            // the buffer is reused, clear the value of the previous pixel
+            atmoInnet[atmoInnet.length - 1] = 0.0;
         }
 
-        // atmoInnet can also be used for aaNN
-        computeError(rlTosa, atmoInnet, glintResult);
-
+        // atmoInnet is also the input of the aaNN, the time of both nets is recorded as ATMOSPHERE_NET
+        stageStart = statistics.startTimer();
+        if (resultCache == null) {
+            calcNets();
+        } else if (resultCache.lookup(atmoInnet)) {
+            resultCache.load(atmoOutnet, 0);
+            resultCache.load(aaNNOutnet, atmoOutnet.length);
+            if (resultCache.isVerificationDue()) {
+                calcNets();
+                resultCache.verify(atmoOutnet, 0);
+                resultCache.verify(aaNNOutnet, atmoOutnet.length);
+            }
+        } else {
+            calcNets();
+            resultCache.store(atmoOutnet, 0);
+            resultCache.store(aaNNOutnet, atmoOutnet.length);
+        }
+        statistics.stopTimer(ProcessingStatistics.Stage.ATMOSPHERE_NET, stageStart);
 
-        double[] atmoOutnet = atmosphereNet.calc(atmoInnet);
+        stageStart = statistics.startTimer();
+        computeError(rlTosa, glintResult);
+        statistics.stopTimer(ProcessingStatistics.Stage.AUTO_ASSOC_NET, stageStart);
 
         for (int i = 0; i < 12; i++) {
             atmoOutnet[i] = Math.exp(atmoOutnet[i]);
@@ -160,43 +252,8 @@ public class GlintCorrection {
             atmoOutnet[i + 24] = Math.exp(atmoOutnet[i + 24]) / cosTetaSunSurfRad; //outnet is Ed_boa, not transmittance
         }
 
-        final double[] transds = Arrays.copyOfRange(atmoOutnet, 24, 36);
-        glintResult.setTrans(transds);
-        final double[] rwPaths = Arrays.copyOfRange(atmoOutnet, 12, 24);
-        glintResult.setPath(rwPaths);
-        final double[] reflec = Arrays.copyOfRange(atmoOutnet, 0, 12);
-        double factor;
-        if (ReflectanceEnum.IRRADIANCE_REFLECTANCES.equals(outputReflecAs)) {
-            factor = Math.PI; // irradiance reflectance, comparable with MERIS
-        } else {
-            factor = 1.0; // radiance reflectance
-        }
-        for (int i = 0; i < reflec.length; i++) {
-            if (deriveRwFromPath) {
-                final double v = transds[i]; /*probably a bug: / cosTetaSunRad **/
-                double transu = Math.exp(Math.log(v) * (cosTetaSunSurfRad / cosTetaViewSurfRad));
-                reflec[i] = (rlTosa[i] - rwPaths[i]) / transu * factor;
-            } else {
-                reflec[i] *= factor;
-            }
-        }
-        glintResult.setReflec(reflec);
-
-        if (normalizationNet != null) {
-            double[] normInNet = new double[15];
-            normInNet[0] = tetaSunSurfDeg;
-            normInNet[1] = tetaViewSurfDeg;
-            normInNet[2] = aziDiffSurfDeg;
-            for (int i = 0; i < 12; i++) {
-                normInNet[i + 3] = Math.log(reflec[i]);
-            }
-            final double[] normOutNet = normalizationNet.calc(normInNet);
-            final double[] normReflec = new double[reflec.length];
-            for (int i = 0; i < 12; i++) {
-                normReflec[i] = Math.exp(normOutNet[i]);
-            }
-            glintResult.setNormReflec(normReflec);
-        }
+        System.arraycopy(atmoOutnet, 24, glintResult.getTrans(), 0, 12);
+        System.arraycopy(atmoOutnet, 12, glintResult.getPath(), 0, 12);
 
         /* compute angstrom coefficient from band 12 and 13 778 and 865 nm */
         double ang_443_865 = -Math.log(atmoOutnet[36] / atmoOutnet[39]) / Math.log(
@@ -223,18 +280,69 @@ public class GlintCorrection {
             glintResult.setBtsm(Math.exp(atmoOutnet[40]));
             glintResult.setAtot(Math.exp(atmoOutnet[41]));
         }
+        return true;
+    }
 
+    /**
+     * Derives the water leaving reflectances and, if requested, the normalised reflectances of the pixel last
+     * passed to {@link #correctAtmosphere}, which must have been valid.
+     *
+     * @param deriveRwFromPath whether to derive the water leaving reflectance from the path reflectance
+     * @param outputReflecAs   whether the reflectances are radiance or irradiance reflectances
+     * @param normalize        whether to compute the normalised reflectances, requires the normalization net
+     * @param glintResult      the result filled by {@link #correctAtmosphere}
+     */
+    public void deriveReflectances(boolean deriveRwFromPath, ReflectanceEnum outputReflecAs, boolean normalize,
+                                   GlintResult glintResult) {
+        final double[] transds = glintResult.getTrans();
+        final double[] rwPaths = glintResult.getPath();
+        final double[] reflec = glintResult.getReflec();
+        double factor;
+        if (ReflectanceEnum.IRRADIANCE_REFLECTANCES.equals(outputReflecAs)) {
+            factor = Math.PI; // irradiance reflectance, comparable with MERIS
+        } else {
+            factor = 1.0; // radiance reflectance
+        }
+        for (int i = 0; i < reflec.length; i++) {
+            if (deriveRwFromPath) {
+                final double v = transds[i]; /*probably a bug: / cosTetaSunRad **/
+                double transu = Math.exp(Math.log(v) * (cosTetaSunSurfRad / cosTetaViewSurfRad));
+                reflec[i] = (rlTosa[i] - rwPaths[i]) / transu * factor;
+            } else {
+                reflec[i] = atmoOutnet[i] * factor;
+            }
+        }
 
-        return glintResult;
+        final double[] normReflec = glintResult.getNormReflec();
+        if (normalize) {
+            final long stageStart = statistics.startTimer();
+            normInNet[0] = tetaSunSurfDeg;
+            normInNet[1] = tetaViewSurfDeg;
+            normInNet[2] = aziDiffSurfDeg;
+            for (int i = 0; i < 12; i++) {
+                normInNet[i + 3] = Math.log(reflec[i]);
+            }
+            normalizationNet.calc(normInNet, normOutNet);
+            for (int i = 0; i < 12; i++) {
+                normReflec[i] = Math.exp(normOutNet[i]);
+            }
+            statistics.stopTimer(ProcessingStatistics.Stage.NORMALIZATION_NET, stageStart);
+        } else {
+            Arrays.fill(normReflec, 0.0);
+        }
+    }
+
+    private void calcNets() {
+        // the aaNN ignores the additional inputs of the atmosphere net
+        atmosphereNet.calc(atmoInnet, atmoOutnet);
+        autoAssocNet.calc(atmoInnet, aaNNOutnet);
     }
 
-    private void computeError(double[] rlTosa, double[] atmoInnet, GlintResult glintResult) {
-        double[] aaNNOutnet = autoAssocNet.calc(atmoInnet);
-        double[] autoRlTosa = aaNNOutnet.clone();
+    private void computeError(double[] rlTosa, GlintResult glintResult) {
+        final double[] autoRlTosa = glintResult.getAutoTosaReflec();
         for (int i = 0; i < autoRlTosa.length; i++) {
-            autoRlTosa[i] = Math.exp(autoRlTosa[i]);
+            autoRlTosa[i] = Math.exp(aaNNOutnet[i]);
         }
-        glintResult.setAutoTosaReflec(autoRlTosa);
         double chi_sum = 0.0;
         for (int i = 0; i < rlTosa.length; i++) {
             double logRlTosa = Math.log(rlTosa[i]);
@@ -281,7 +389,7 @@ public class GlintCorrection {
      **  with band_nu 17/3/05 R.D.
     --------------------------------------------------------------------------*/
 
-    private static boolean isTosaReflectanceValid(double[] tosaRefl, NNffbpAlphaTabFast atmosphereNet) {
+    private static boolean isTosaReflectanceValid(double[] tosaRefl, NeuralNetEvaluator atmosphereNet) {
         for (int i = 0; i < tosaRefl.length; i++) {
             double currentRlTosa = Math.log(tosaRefl[i]);
             if (currentRlTosa > atmosphereNet.getInmax()[i + 4] || currentRlTosa < atmosphereNet.getInmin()[i + 4]) {
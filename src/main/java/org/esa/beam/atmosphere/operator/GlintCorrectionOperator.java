@@ -1,16 +1,22 @@
 package org.esa.beam.atmosphere.operator;
 
+import com.bc.ceres.binding.converters.RectangleConverter;
 import com.bc.ceres.core.ProgressMonitor;
+import com.bc.jexp.ParseException;
+import com.vividsolutions.jts.geom.Geometry;
+import org.esa.beam.FloatPixelData;
 import org.esa.beam.PixelData;
+import org.esa.beam.atmosphere.nn.NeuralNet;
+import org.esa.beam.atmosphere.nn.NeuralNetBinaryFormat;
+import org.esa.beam.atmosphere.nn.NeuralNetEvaluator;
 import org.esa.beam.collocation.CollocateOp;
 import org.esa.beam.dataio.envisat.EnvisatConstants;
+import org.esa.beam.framework.dataio.ProductSubsetDef;
 import org.esa.beam.framework.datamodel.Band;
 import org.esa.beam.framework.datamodel.FlagCoding;
-import org.esa.beam.framework.datamodel.GeoPos;
 import org.esa.beam.framework.datamodel.Mask;
 import org.esa.beam.framework.datamodel.MetadataAttribute;
 import org.esa.beam.framework.datamodel.MetadataElement;
-import org.esa.beam.framework.datamodel.PixelPos;
 import org.esa.beam.framework.datamodel.Product;
 import org.esa.beam.framework.datamodel.ProductData;
 import org.esa.beam.framework.datamodel.ProductNodeGroup;
@@ -25,27 +31,37 @@ import org.esa.beam.framework.gpf.annotations.Parameter;
 import org.esa.beam.framework.gpf.annotations.SourceProduct;
 import org.esa.beam.framework.gpf.annotations.TargetProduct;
 import org.esa.beam.glint.operators.FlintOp;
+import org.esa.beam.glint.util.ProcessingStatistics;
+import org.esa.beam.glint.util.QuantisedEncoding;
+import org.esa.beam.glint.util.RegionOfInterest;
+import org.esa.beam.glint.util.SourceTilePrefetcher;
+import org.esa.beam.glint.util.TileComputationEvent;
+import org.esa.beam.glint.util.TileSizeTuner;
 import org.esa.beam.meris.radiometry.smilecorr.SmileCorrectionAuxdata;
-import org.esa.beam.nn.NNffbpAlphaTabFast;
 import org.esa.beam.util.ProductUtils;
+import org.esa.beam.util.converters.JtsGeometryConverter;
+import org.esa.beam.util.logging.BeamLogManager;
 
 import java.awt.Color;
+import java.awt.Dimension;
 import java.awt.Rectangle;
-import java.awt.image.Raster;
-import java.io.BufferedReader;
+import java.awt.image.RenderedImage;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
 
 import static org.esa.beam.dataio.envisat.EnvisatConstants.*;
 
@@ -67,7 +83,7 @@ public class GlintCorrectionOperator extends Operator {
 
     private static final String AGC_FLAG_BAND_NAME = "agc_flags";
     private static final String RADIANCE_MERIS_BAND_NAME = "result_radiance_rr89";
-    private static final String VALID_EXPRESSION = String.format("!%s.INVALID", AGC_FLAG_BAND_NAME);
+    private static final String AATSR_VIEW_ELEVATION_BAND_NAME = "view_elev_nadir_S";
     private static final String MERIS_ATMOSPHERIC_NET_NAME = "atmo_correct_meris/20x25x45_55990.1.net";
     private static final String FLINT_ATMOSPHERIC_NET_NAME = "atmo_correct_flint/25x30x40_6936.3.net";
     private static final String NORMALIZATION_NET_NAME = "atmo_normalization/90_2.8.net";
@@ -85,6 +101,21 @@ public class GlintCorrectionOperator extends Operator {
 
     private static final String[] REQUIRED_AATSR_TPG_NAMES = AATSR_TIE_POINT_GRID_NAMES;
 
+    private static final String[] AGC_FLAG_NAMES = {
+            "LAND", "CLOUD_ICE", "ATC_OOR", "TOA_OOR", "TOSA_OOR", "SOLZEN", "ANCIL", "SUNGLINT", "HAS_FLINT", "INVALID"
+    };
+    private static final int[] AGC_FLAG_MASKS = {
+            GlintCorrection.LAND, GlintCorrection.CLOUD_ICE, GlintCorrection.ATC_OOR, GlintCorrection.TOA_OOR,
+            GlintCorrection.TOSA_OOR, GlintCorrection.SOLZEN, GlintCorrection.ANCIL, GlintCorrection.SUNGLINT,
+            GlintCorrection.HAS_FLINT, GlintCorrection.INVALID
+    };
+
+    // rough per pixel memory footprint of a stripe, used to derive the stripe height from the memory budget
+    private static final int SOURCE_RASTER_COUNT = MERIS_L1B_SPECTRAL_BAND_NAMES.length + REQUIRED_MERIS_TPG_NAMES.length + 3;
+    private static final int VALIDATION_RASTER_COUNT = MERIS_L1B_SPECTRAL_BAND_NAMES.length + 4;
+    private static final int FLINT_RASTER_COUNT = 24;
+    private static final int BYTES_PER_SAMPLE = 4;
+
     private static final String ANG_443_865 = "ang_443_865";
     private static final String TAU_550 = "tau_550";
     private static final String TAU_778 = "tau_778";
@@ -219,13 +250,92 @@ public class GlintCorrectionOperator extends Operator {
                notNull = false)
     private File atmoNetFlintFile;
 
+    @Parameter(defaultValue = "0", interval = "[0,*)", unit = "MB",
+               label = "Memory budget for stripe-wise processing",
+               description = "If greater than zero, the scene is processed in full-width horizontal stripes " +
+                             "whose height is derived from this memory budget (in MB).")
+    private int memoryBudget;
+
+    @Parameter(defaultValue = "false", label = "Collect processing statistics",
+               description = "Collects stage timings, pixel counts and flag histograms and publishes them via JMX.")
+    private boolean collectStatistics;
+
+    @Parameter(label = "Statistics report file",
+               description = "The file the processing statistics are written to in JSON format when processing has finished.")
+    private File statisticsReportFile;
+
+    @Parameter(defaultValue = "false", label = "Compute in single precision",
+               description = "Computes the atmospheric correction in single instead of double precision. " +
+                             "Faster, but results may deviate slightly from the double precision computation.")
+    private boolean singlePrecision;
+
+    @Parameter(defaultValue = "0", interval = "[0,*)", label = "Number of prefetched tiles",
+               description = "If greater than zero, the source tiles of this number of upcoming target tiles are " +
+                             "read in the background while the current tile is computed.")
+    private int prefetchTiles;
+
+    @Parameter(converter = RectangleConverter.class, label = "Pixel region",
+               description = "The region of interest in pixel coordinates ('x,y,width,height'). Pixels outside " +
+                             "are flagged as invalid and tiles outside are neither read nor computed.")
+    private Rectangle region;
+
+    @Parameter(converter = JtsGeometryConverter.class, label = "Geographical region",
+               description = "The region of interest as polygon in WKT format. Pixels outside are flagged as " +
+                             "invalid and tiles outside are neither read nor computed.")
+    private Geometry geoRegion;
+
+    @Parameter(defaultValue = "1", interval = "[1,*)", label = "Preview subsampling",
+               description = "If greater than one, the scene is subsampled by this factor in both directions " +
+                             "before the correction, which gives a quick low-resolution preview.")
+    private int previewSubsampling;
+
+    @Parameter(defaultValue = "false", label = "Write quantised spectral bands",
+               description = "Writes the spectral bands as 16 bit integers, which are scaled to the value range " +
+                             "of the neural nets. This reduces the product size considerably.")
+    private boolean quantiseSpectralBands;
+
+    @Parameter(defaultValue = "0.0", interval = "[0.0,0.1]", label = "Result memoisation step",
+               description = "If greater than zero, pixels whose neural net inputs agree within this fraction of " +
+                             "the training range reuse the net results of an earlier pixel. This speeds up " +
+                             "homogeneous regions at a bounded loss of accuracy.")
+    private double memoisationStep;
+
+    @Parameter(label = "Processing variants",
+               description = "Additional configurations processed in the same pass, separated by ';'. Each is a " +
+                             "comma-separated list of settings of deriveRwFromPath, outputReflecAs, " +
+                             "doSmileCorrection or atmoNetMerisFile, e.g. 'deriveRwFromPath=true'. The bands of " +
+                             "the n-th variant get the suffix _v<n>. Variants with the same net and SMILE " +
+                             "correction share the computation of the nets.")
+    private String variants;
+
+    @Parameter(defaultValue = "false", label = "Compute auxiliary bands on demand",
+               description = "The auto-associative TOSA, normalised, path and transmittance bands are computed " +
+                             "by a separate correction pass only when they are read, instead of with every tile. " +
+                             "That pass repeats the TOSA computation and the atmosphere and auto-associative " +
+                             "nets, so reading these bands doubles the cost of the nets for their tiles.")
+    private boolean auxiliaryBandsOnDemand;
+
+    @Parameter(defaultValue = "-1", interval = "[-1,*)", label = "Nadir column index",
+               description = "The nadir column used by the view angle correction. If negative, it is determined " +
+                             "from the first row of the source product. Stripes of a scene processed separately " +
+                             "should all use the value of the full scene.")
+    private int nadirColumn;
+
+    @Parameter(label = "Tile size",
+               description = "The size of the target tiles as <width>x<height>, 'auto' to derive it from the " +
+                             "scene size, the number of cores and a short calibration run of the source reads, " +
+                             "or empty for the tiling of the source product. Ignored if a memory budget is given.")
+    private String tileSize;
+
+    private static final int RESULT_CACHE_CAPACITY = 4096;
+    private static final int RESULT_CACHE_VERIFICATION_INTERVAL = 64;
+
+    private static final String VALIDATION_SAMPLES_NAME = "rlToa_flags";
+
+    private ToaValidationKernel validationKernel;
     private Band validationBand;
 
     public static final double NO_FLINT_VALUE = -1.0;
-    private String merisNeuralNetString;
-    private String flintNeuralNetString;
-    private String normalizationNeuralNetString;
-    private String atmoAaNeuralNetString;
     private SmileCorrectionAuxdata smileAuxData;
     private RasterDataNode l1FlagsNode;
     private RasterDataNode solzenNode;
@@ -237,9 +347,42 @@ public class GlintCorrectionOperator extends Operator {
     private RasterDataNode pressureNode;
     private RasterDataNode ozoneNode;
     private Band[] spectralNodes;
+    private RasterDataNode[] merisSourceNodes;
     private int nadirColumnIndex;
     private boolean isFullResolution;
-
+    private ProcessingStatistics statistics;
+    private NeuralNet merisNeuralNet;
+    private NeuralNet flintNeuralNet;
+    private NeuralNet normalizationNeuralNet;
+    private NeuralNet atmoAaNeuralNet;
+    private final Queue<AgcWorkspace> workspacePool = new ConcurrentLinkedQueue<>();
+    private final Queue<AgcWorkspace> auxiliaryWorkspacePool = new ConcurrentLinkedQueue<>();
+    private SourceTilePrefetcher prefetcher;
+    private RegionOfInterest regionOfInterest;
+    private List<Product> subsampledProducts;
+    private Map<String, QuantisedEncoding> quantisedEncodings;
+    private List<VariantOutput> variantOutputs;
+    private List<VariantOutput> auxiliaryOutputs;
+    private Product auxiliaryProduct;
+    private FlintValueFetcher flintValueFetcher;
+
+
+    /**
+     * Creates an operator which only computes the given region of interest, instead of deriving it from the
+     * region parameters.
+     *
+     * @param merisProduct     the MERIS L1b product
+     * @param regionOfInterest the region of interest
+     *
+     * @return the operator
+     */
+    static GlintCorrectionOperator create(Product merisProduct, RegionOfInterest regionOfInterest) {
+        final GlintCorrectionOperator op = new GlintCorrectionOperator();
+        op.setParameterDefaultValues();
+        op.merisProduct = merisProduct;
+        op.regionOfInterest = regionOfInterest;
+        return op;
+    }
 
     @Override
     public void initialize() throws OperatorException {
@@ -248,23 +391,40 @@ public class GlintCorrectionOperator extends Operator {
             throw new OperatorException("Missing required AATSR L1b product for FLINT computation.");
         }
         validateAatsrProduct(aatsrProduct);
+        // the view angle correction needs the nadir column of the full resolution scene
+        if (nadirColumn >= 0) {
+            nadirColumnIndex = nadirColumn;
+        } else {
+            nadirColumnIndex = MerisFlightDirection.findNadirColumnIndex(merisProduct);
+        }
+        isFullResolution = isProductMerisFullResolution(merisProduct);
+        Rectangle pixelRegion = region;
+        if (previewSubsampling > 1) {
+            subsampledProducts = new ArrayList<>(2);
+            merisProduct = createSubsampledProduct(merisProduct, previewSubsampling);
+            if (aatsrProduct != null) {
+                aatsrProduct = createSubsampledProduct(aatsrProduct, previewSubsampling);
+            }
+            if (pixelRegion != null) {
+                pixelRegion = new Rectangle(pixelRegion.x / previewSubsampling, pixelRegion.y / previewSubsampling,
+                                            (pixelRegion.width + previewSubsampling - 1) / previewSubsampling,
+                                            (pixelRegion.height + previewSubsampling - 1) / previewSubsampling);
+            }
+        }
+        if (regionOfInterest == null) {
+            regionOfInterest = RegionOfInterest.create(merisProduct, pixelRegion, geoRegion);
+        }
 
-        if (useFlint && aatsrProduct != null) {
-            // create collocation product...
-            Map<String, Product> collocateInput = new HashMap<>(2);
-            collocateInput.put("masterProduct", merisProduct);
-            collocateInput.put("slaveProduct", aatsrProduct);
-            Product collocateProduct =
-                    GPF.createProduct(OperatorSpi.getOperatorAlias(CollocateOp.class), GPF.NO_PARAMS, collocateInput);
-
-            // create FLINT product
-            Map<String, Product> flintInput = new HashMap<>(1);
-            flintInput.put("l1bCollocate", collocateProduct);
-            Map<String, Object> flintParameters = new HashMap<>();
-            flintProduct = GPF.createProduct(OperatorSpi.getOperatorAlias(FlintOp.class), flintParameters, flintInput);
-            validateFlintProduct(flintProduct);
+        if (collectStatistics) {
+            statistics = new ProcessingStatistics(merisProduct.getName(), AGC_FLAG_NAMES, AGC_FLAG_MASKS);
+            statistics.register();
+        } else {
+            statistics = ProcessingStatistics.DISABLED;
         }
 
+        final int rasterHeight = merisProduct.getSceneRasterHeight();
+        final int rasterWidth = merisProduct.getSceneRasterWidth();
+
         l1FlagsNode = merisProduct.getRasterDataNode(MERIS_L1B_FLAGS_DS_NAME);
         solzenNode = merisProduct.getRasterDataNode(MERIS_SUN_ZENITH_DS_NAME);
         solaziNode = merisProduct.getRasterDataNode(MERIS_SUN_AZIMUTH_DS_NAME);
@@ -278,14 +438,52 @@ public class GlintCorrectionOperator extends Operator {
         for (int i = 0; i < MERIS_L1B_SPECTRAL_BAND_NAMES.length; i++) {
             spectralNodes[i] = merisProduct.getBand(MERIS_L1B_SPECTRAL_BAND_NAMES[i]);
         }
+        final List<RasterDataNode> sourceNodes = new ArrayList<>(Arrays.asList(
+                l1FlagsNode, solzenNode, solaziNode, satzenNode, sataziNode, detectorNode,
+                altitudeNode, pressureNode, ozoneNode));
+        sourceNodes.addAll(Arrays.asList(spectralNodes));
+        merisSourceNodes = sourceNodes.toArray(new RasterDataNode[sourceNodes.size()]);
+
+        int stripeHeight = 0;
+        final Dimension targetTileSize;
+        if (memoryBudget > 0) {
+            stripeHeight = computeStripeHeight(rasterWidth, rasterHeight, estimateBytesPerPixel(),
+                                               memoryBudget * 1024L * 1024L);
+            targetTileSize = new Dimension(rasterWidth, stripeHeight);
+        } else {
+            targetTileSize = TileSizeTuner.resolve(tileSize, merisProduct, Runtime.getRuntime().availableProcessors(),
+                                                   TileSizeTuner.createReadCalibration(merisSourceNodes));
+        }
 
-        final int rasterHeight = merisProduct.getSceneRasterHeight();
-        final int rasterWidth = merisProduct.getSceneRasterWidth();
+        RasterDataNode aatsrViewElevationNode = null;
+        if (useFlint && aatsrProduct != null) {
+            // create collocation product...
+            Map<String, Product> collocateInput = new HashMap<>(2);
+            collocateInput.put("masterProduct", merisProduct);
+            collocateInput.put("slaveProduct", aatsrProduct);
+            Product collocateProduct =
+                    GPF.createProduct(OperatorSpi.getOperatorAlias(CollocateOp.class), GPF.NO_PARAMS, collocateInput);
+
+            // create FLINT product
+            // the FLINT tiles are aligned with the target tiles
+            final String flintTileSize = targetTileSize != null ?
+                                         targetTileSize.width + "x" + targetTileSize.height : "";
+            final FlintOp flintOp = FlintOp.create(collocateProduct, stripeHeight, flintTileSize,
+                                                   collectStatistics);
+            flintProduct = flintOp.getTargetProduct();
+            aatsrViewElevationNode = collocateProduct.getBand(AATSR_VIEW_ELEVATION_BAND_NAME);
+            statistics.addChild(flintOp.getStatistics());
+            validateFlintProduct(flintProduct);
+        }
 
         Product outputProduct = new Product(merisProduct.getName() + "_AC", "MERIS_L2_AC", rasterWidth, rasterHeight);
         outputProduct.setStartTime(merisProduct.getStartTime());
         outputProduct.setEndTime(merisProduct.getEndTime());
         ProductUtils.copyMetadata(merisProduct, outputProduct);
+        if (targetTileSize != null) {
+            TileSizeTuner.applyTileSize(outputProduct, targetTileSize,
+                                        memoryBudget > 0 ? "memoryBudget" : TileSizeTuner.getOrigin(tileSize));
+        }
         ProductUtils.copyTiePointGrids(merisProduct, outputProduct);
         ProductUtils.copyGeoCoding(merisProduct, outputProduct);
         // copy altitude band if it exists and 'beam.envisat.usePixelGeoCoding' is set to true
@@ -296,41 +494,49 @@ public class GlintCorrectionOperator extends Operator {
 
         setTargetProduct(outputProduct);
 
-        addTargetBands(outputProduct);
+        // the nets are loaded first, their value ranges determine the scaling of quantised bands
+        merisNeuralNet = loadNeuralNet(MERIS_ATMOSPHERIC_NET_NAME, atmoNetMerisFile);
+        if (useFlint && aatsrProduct != null) {
+            flintNeuralNet = loadNeuralNet(FLINT_ATMOSPHERIC_NET_NAME, atmoNetFlintFile);
+        }
+        if (outputNormReflec) {
+            normalizationNeuralNet = loadNeuralNet(NORMALIZATION_NET_NAME, null);
+        }
+        atmoAaNeuralNet = loadNeuralNet(ATMO_AANN_NET, null);
+        if (quantiseSpectralBands) {
+            quantisedEncodings = new HashMap<>();
+        }
+        // the main configuration comes first, followed by the variants
+        final boolean withAuxiliaryProduct = auxiliaryBandsOnDemand &&
+                                             (outputAutoTosa || outputNormReflec || outputPath || outputTransmittance);
+        variantOutputs = createVariantOutputs(withAuxiliaryProduct);
+        if (withAuxiliaryProduct) {
+            // the auxiliary bands of the main configuration, computed by a second pass over the sources
+            final VariantOutput mainOutput = variantOutputs.get(0);
+            auxiliaryOutputs = Collections.singletonList(new VariantOutput(mainOutput.variant, mainOutput.merisNet,
+                                                                           mainOutput.smileAuxData, false, true));
+            auxiliaryProduct = new AuxiliaryBandsOp(this, outputProduct).getTargetProduct();
+        }
+        for (VariantOutput output : variantOutputs) {
+            addTargetBands(outputProduct, output);
+        }
 
         Band agcFlagsBand = outputProduct.addBand(AGC_FLAG_BAND_NAME, ProductData.TYPE_UINT16);
         final FlagCoding agcFlagCoding = createAgcFlagCoding();
         agcFlagsBand.setSampleCoding(agcFlagCoding);
         outputProduct.getFlagCodingGroup().add(agcFlagCoding);
+        for (VariantOutput output : variantOutputs.subList(1, variantOutputs.size())) {
+            outputProduct.addBand(output.flagBandName, ProductData.TYPE_UINT16).setSampleCoding(agcFlagCoding);
+        }
         addAgcMasks(outputProduct);
 
-        final ToaReflectanceValidationOp validationOp = ToaReflectanceValidationOp.create(merisProduct,
-                                                                                          landExpression,
-                                                                                          cloudIceExpression);
-        validationBand = validationOp.getTargetProduct().getBandAt(0);
-
-        InputStream merisNeuralNetStream = getNeuralNetStream(MERIS_ATMOSPHERIC_NET_NAME, atmoNetMerisFile);
-        merisNeuralNetString = readNeuralNetFromStream(merisNeuralNetStream);
-
-        if (useFlint && aatsrProduct != null) {
-            InputStream neuralNetStream = getNeuralNetStream(FLINT_ATMOSPHERIC_NET_NAME, atmoNetFlintFile);
-            flintNeuralNetString = readNeuralNetFromStream(neuralNetStream);
-        }
-        if (outputNormReflec) {
-            final InputStream neuralNetStream = getClass().getResourceAsStream(NORMALIZATION_NET_NAME);
-            normalizationNeuralNetString = readNeuralNetFromStream(neuralNetStream);
-        }
-        final InputStream neuralNetStream = getClass().getResourceAsStream(ATMO_AANN_NET);
-        atmoAaNeuralNetString = readNeuralNetFromStream(neuralNetStream);
-        if (doSmileCorrection) {
-            try {
-                smileAuxData = SmileCorrectionAuxdata.loadAuxdata(merisProduct.getProductType());
-            } catch (IOException e) {
-                throw new OperatorException("Not able to load auxiliary data for SMILE correction.", e);
-            }
+        if (flintProduct != null) {
+            flintValueFetcher = new FlintValueFetcher(outputProduct.getGeoCoding(),
+                                                      flintProduct.getBand(RADIANCE_MERIS_BAND_NAME),
+                                                      aatsrViewElevationNode,
+                                                      Runtime.getRuntime().availableProcessors());
         }
-        nadirColumnIndex = MerisFlightDirection.findNadirColumnIndex(merisProduct);
-        isFullResolution = isProductMerisFullResolution(merisProduct);
+        initValidation();
 
         ProductUtils.copyFlagBands(merisProduct, outputProduct, true);
 
@@ -342,30 +548,82 @@ public class GlintCorrectionOperator extends Operator {
     }
 
 
+    /**
+     * @return the processing statistics, only available after initialisation
+     */
+    ProcessingStatistics getStatistics() {
+        return statistics;
+    }
+
     @Override
     public void computeTileStack(Map<Band, Tile> targetTiles, Rectangle targetRectangle, ProgressMonitor pm) throws
                                                                                                              OperatorException {
+        computeTiles(targetTiles, targetRectangle, false, pm);
+    }
+
+    /**
+     * Computes the tiles of the target product or, if {@code auxiliary} is set, those of the auxiliary product.
+     */
+    private void computeTiles(Map<Band, Tile> targetTiles, Rectangle targetRectangle, boolean auxiliary,
+                              ProgressMonitor pm) throws OperatorException {
         pm.beginTask("Correcting atmosphere...", targetRectangle.height);
+        final String operatorName = auxiliary ? AuxiliaryBandsOp.class.getSimpleName() : getClass().getSimpleName();
+        final TileComputationEvent tileEvent = TileComputationEvent.begin(operatorName, targetRectangle,
+                                                                          targetTiles.size());
         try {
-            final Map<String, ProductData> merisSampleDataMap = preLoadMerisSources(targetRectangle);
+            if (!auxiliary) {
+                statistics.countTile();
+                final SourceTilePrefetcher tilePrefetcher = getPrefetcher();
+                if (tilePrefetcher != null) {
+                    tilePrefetcher.prefetchFollowing(targetRectangle);
+                }
+            }
             final Map<String, ProductData> targetSampleDataMap = getTargetSampleData(targetTiles);
 
-            NNffbpAlphaTabFast normalizationNet = null;
-            if (outputNormReflec) {
-                normalizationNet = new NNffbpAlphaTabFast(normalizationNeuralNetString);
+            int validPixelCount = 0;
+            final AgcWorkspace workspace = acquireWorkspace(auxiliary);
+            try {
+                if (regionOfInterest != null && !regionOfInterest.intersects(targetRectangle)) {
+                    // neither the sources nor the FLINT product are read for tiles outside the region of interest
+                    for (int pixelIndex = 0; pixelIndex < targetRectangle.width * targetRectangle.height; pixelIndex++) {
+                        fillOutsideRegion(targetSampleDataMap, pixelIndex, workspace);
+                    }
+                    pm.worked(targetRectangle.height);
+                } else {
+                    final Map<String, ProductData> merisSampleDataMap = preLoadMerisSources(targetRectangle);
+                    final boolean[] regionMask = regionOfInterest != null ?
+                                                 regionOfInterest.createMask(targetRectangle) : null;
+                    validPixelCount = correctPixels(targetRectangle, merisSampleDataMap, targetSampleDataMap,
+                                                    regionMask, workspace, pm);
+                }
+            } finally {
+                releaseWorkspace(workspace);
             }
+            final long stageStart = statistics.startTimer();
+            commitSampleData(targetSampleDataMap, targetTiles);
+            statistics.stopTimer(ProcessingStatistics.Stage.WRITE_BACK, stageStart);
+            tileEvent.commit(validPixelCount);
+        } catch (Exception e) {
+            e.printStackTrace();
+            throw new OperatorException(e);
+        } finally {
+            pm.done();
+        }
 
-            NNffbpAlphaTabFast autoAssocNet = new NNffbpAlphaTabFast(atmoAaNeuralNetString);
-
-            GlintCorrection merisGlintCorrection = new GlintCorrection(new NNffbpAlphaTabFast(merisNeuralNetString),
-                                                                       smileAuxData, normalizationNet, autoAssocNet,
-                                                                       outputReflecAs);
-            GlintCorrection aatsrFlintCorrection = null;
-            if (useFlint && flintProduct != null) {
-                aatsrFlintCorrection = new GlintCorrection(new NNffbpAlphaTabFast(flintNeuralNetString), smileAuxData,
-                                                           normalizationNet, autoAssocNet, outputReflecAs);
-            }
+    }
 
+    private int correctPixels(Rectangle targetRectangle, Map<String, ProductData> merisSampleDataMap,
+                              Map<String, ProductData> targetSampleDataMap, boolean[] regionMask,
+                              AgcWorkspace workspace, ProgressMonitor pm) {
+        final PixelCorrector corrector = workspace.corrector;
+        final PixelData inputData = corrector.pixelData;
+
+        int validPixelCount = 0;
+        final FlintValueFetcher.FlintTile flintTile = fetchFlintValues(targetRectangle, regionMask);
+        // the pixels inside the AATSR swath are corrected in a second pass, their FLINT values are fetched in
+        // the background while the first pass corrects the other pixels with the MERIS net
+        final int passCount = flintTile != null ? 2 : 1;
+        for (int pass = 0; pass < passCount; pass++) {
             for (int y = 0; y < targetRectangle.getHeight(); y++) {
                 checkForCancellation();
                 final int lineIndex = y * targetRectangle.width;
@@ -373,32 +631,157 @@ public class GlintCorrectionOperator extends Operator {
 
                 for (int x = 0; x < targetRectangle.getWidth(); x++) {
                     final int pixelIndex = lineIndex + x;
-                    final PixelData inputData = loadMerisPixelData(merisSampleDataMap, pixelIndex);
+                    if (flintTile != null && flintTile.isPending(pixelIndex) != (pass == 1)) {
+                        continue;
+                    }
+                    if (regionMask != null && !regionMask[pixelIndex]) {
+                        fillOutsideRegion(targetSampleDataMap, pixelIndex, workspace);
+                        continue;
+                    }
+                    loadMerisPixelData(merisSampleDataMap, pixelIndex, inputData);
                     final int pixelX = targetRectangle.x + x;
-                    inputData.flintValue = getFlintValue(pixelX, pixelY);
-                    inputData.pixelX = pixelX;
+                    long stageStart = statistics.startTimer();
+                    inputData.flintValue = flintTile != null ? flintTile.getFlintValue(pixelIndex) :
+                                           NO_FLINT_VALUE;
+                    statistics.stopTimer(ProcessingStatistics.Stage.FLINT_LOOKUP, stageStart);
+                    // the view angle correction works on full resolution columns
+                    inputData.pixelX = pixelX * previewSubsampling;
                     inputData.pixelY = pixelY;
-
-                    GlintResult glintResult;
-                    if (aatsrFlintCorrection != null && GlintCorrection.isFlintValueValid(inputData.flintValue)) {
-                        glintResult = aatsrFlintCorrection.perform(inputData, deriveRwFromPath);
-                        glintResult.raiseFlag(GlintCorrection.HAS_FLINT);
-                    } else {
-                        glintResult = merisGlintCorrection.perform(inputData, deriveRwFromPath);
+                    corrector.preparePixel();
+
+                    // the variants share the source samples, the main configuration is processed last and
+                    // its result is counted
+                    GlintResult glintResult = null;
+                    for (int v = workspace.outputs.size() - 1; v >= 0; v--) {
+                        final VariantOutput output = workspace.outputs.get(v);
+                        glintResult = corrector.correct(v);
+
+                        stageStart = statistics.startTimer();
+                        fillTargetSampleData(targetSampleDataMap, pixelIndex, inputData, glintResult, output);
+                        statistics.stopTimer(ProcessingStatistics.Stage.WRITE_BACK, stageStart);
                     }
-
-                    fillTargetSampleData(targetSampleDataMap, pixelIndex, inputData, glintResult);
+                    if (!workspace.auxiliary) {
+                        statistics.countPixel(glintResult.getFlag());
+                    }
+                    if ((glintResult.getFlag() & GlintCorrection.INVALID) == 0) {
+                        validPixelCount++;
+                    }
+                }
+                if (pass == passCount - 1) {
+                    pm.worked(1);
                 }
-                pm.worked(1);
             }
-            commitSampleData(targetSampleDataMap, targetTiles);
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new OperatorException(e);
-        } finally {
-            pm.done();
         }
+        return validPixelCount;
+    }
 
+    /**
+     * Writes the result of a pixel outside the region of interest, which is flagged as invalid like pixels
+     * rejected by the validation.
+     */
+    private void fillOutsideRegion(Map<String, ProductData> targetSampleDataMap, int pixelIndex,
+                                   AgcWorkspace workspace) {
+        final PixelCorrector corrector = workspace.corrector;
+        final GlintResult glintResult = corrector.setInvalid();
+        for (VariantOutput output : workspace.outputs) {
+            fillTargetSampleData(targetSampleDataMap, pixelIndex, corrector.pixelData, glintResult, output);
+        }
+        if (!workspace.auxiliary) {
+            statistics.countPixel(glintResult.getFlag());
+        }
+    }
+
+    private synchronized SourceTilePrefetcher getPrefetcher() {
+        if (prefetcher == null && prefetchTiles > 0) {
+            final List<RenderedImage> sourceImages = new ArrayList<>();
+            if (validationBand != null) {
+                sourceImages.add(validationBand.getSourceImage());
+            }
+            for (RasterDataNode node : merisSourceNodes) {
+                sourceImages.add(node.getSourceImage());
+            }
+            // the target tiles are laid out like the tiles of the target images
+            final RenderedImage targetImage = targetProduct.getBandAt(0).getSourceImage();
+            final int tileWidth = targetImage.getTileWidth();
+            final int tileHeight = targetImage.getTileHeight();
+            final Rectangle sceneBounds = new Rectangle(targetProduct.getSceneRasterWidth(),
+                                                        targetProduct.getSceneRasterHeight());
+            Rectangle prefetchBounds = sceneBounds;
+            if (regionOfInterest != null) {
+                // only the tiles covering the region of interest are prefetched
+                final Rectangle regionBounds = regionOfInterest.getBounds();
+                final int minX = regionBounds.x / tileWidth * tileWidth;
+                final int minY = regionBounds.y / tileHeight * tileHeight;
+                prefetchBounds = new Rectangle(minX, minY,
+                                               regionBounds.x + regionBounds.width - minX,
+                                               regionBounds.y + regionBounds.height - minY);
+            }
+            prefetcher = SourceTilePrefetcher.create(sourceImages.toArray(new RenderedImage[sourceImages.size()]),
+                                                     prefetchBounds, tileWidth, tileHeight, prefetchTiles);
+        }
+        return prefetcher;
+    }
+
+    private Product createSubsampledProduct(Product product, int subsampling) {
+        final ProductSubsetDef subsetDef = new ProductSubsetDef();
+        subsetDef.setSubSampling(subsampling, subsampling);
+        final Product subsampledProduct;
+        try {
+            subsampledProduct = product.createSubset(subsetDef, product.getName(), product.getDescription());
+        } catch (IOException e) {
+            throw new OperatorException("Not able to subsample product " + product.getName(), e);
+        }
+        subsampledProducts.add(subsampledProduct);
+        return subsampledProduct;
+    }
+
+    private AgcWorkspace acquireWorkspace(boolean auxiliary) {
+        final AgcWorkspace workspace = (auxiliary ? auxiliaryWorkspacePool : workspacePool).poll();
+        return workspace != null ? workspace : new AgcWorkspace(auxiliary);
+    }
+
+    private void releaseWorkspace(AgcWorkspace workspace) {
+        (workspace.auxiliary ? auxiliaryWorkspacePool : workspacePool).offer(workspace);
+    }
+
+    @Override
+    public void dispose() {
+        synchronized (this) {
+            if (prefetcher != null) {
+                prefetcher.cancel();
+                prefetcher = null;
+            }
+        }
+        if (flintValueFetcher != null) {
+            flintValueFetcher.dispose();
+            flintValueFetcher = null;
+        }
+        if (memoisationStep > 0.0) {
+            logResultCacheStatistics();
+        }
+        workspacePool.clear();
+        auxiliaryWorkspacePool.clear();
+        if (statistics != null && statistics.isEnabled()) {
+            if (statisticsReportFile != null) {
+                try {
+                    statistics.writeReport(statisticsReportFile);
+                } catch (IOException e) {
+                    BeamLogManager.getSystemLogger().log(Level.WARNING, "Could not write processing statistics report", e);
+                }
+            }
+            statistics.unregister();
+        }
+        if (auxiliaryProduct != null) {
+            auxiliaryProduct.dispose();
+            auxiliaryProduct = null;
+        }
+        if (subsampledProducts != null) {
+            for (Product subsampledProduct : subsampledProducts) {
+                subsampledProduct.dispose();
+            }
+            subsampledProducts = null;
+        }
+        super.dispose();
     }
 
     static boolean isProductMerisFullResolution(final Product product) {
@@ -428,23 +811,46 @@ public class GlintCorrectionOperator extends Operator {
         return !productType.contains("RR");
     }
 
-    private double getFlintValue(int pixelX, int pixelY) {
-        if (flintProduct == null) {
-            return NO_FLINT_VALUE;
-        }
+    /**
+     * Computes the height of full-width stripes which fit into the given memory budget.
+     *
+     * @param sceneWidth    the width of the scene
+     * @param sceneHeight   the height of the scene
+     * @param bytesPerPixel the estimated memory needed per pixel of a stripe
+     * @param budgetBytes   the memory budget in bytes
+     *
+     * @return the stripe height, at least one row and at most the scene height
+     */
+    static int computeStripeHeight(int sceneWidth, int sceneHeight, long bytesPerPixel, long budgetBytes) {
+        final long bytesPerRow = Math.max(1L, sceneWidth * bytesPerPixel);
+        final long rows = budgetBytes / bytesPerRow;
+        return (int) Math.max(1L, Math.min(sceneHeight, rows));
+    }
 
-        GeoPos geoPos = targetProduct.getGeoCoding().getGeoPos(new PixelPos(pixelX + 0.5f, pixelY + 0.5f), null);
-        PixelPos pixelPos = flintProduct.getGeoCoding().getPixelPos(geoPos, null);
-        if (!pixelPos.isValid() || pixelPos.x < 0.0f || pixelPos.y < 0.0f) {
-            return NO_FLINT_VALUE;
+    private long estimateBytesPerPixel() {
+        int spectralGroupCount = 0;
+        for (boolean enabled : new boolean[]{outputTosa, outputAutoTosa, outputReflec, outputNormReflec,
+                outputPath, outputTransmittance}) {
+            if (enabled) {
+                spectralGroupCount++;
+            }
         }
-        Band flintBand = flintProduct.getBand(RADIANCE_MERIS_BAND_NAME);
-        Rectangle rect = new Rectangle((int) Math.floor(pixelPos.x), (int) Math.floor(pixelPos.y), 1, 1);
-        Raster data = flintBand.getGeophysicalImage().getData(rect);
-        if (!flintBand.isPixelValid(rect.x, rect.y)) {
-            return NO_FLINT_VALUE;
+        final int targetRasterCount = 8 + spectralGroupCount * (MERIS_L1B_SPECTRAL_BAND_NAMES.length - 3);
+        int rasterCount = SOURCE_RASTER_COUNT + VALIDATION_RASTER_COUNT + targetRasterCount;
+        if (useFlint) {
+            rasterCount += FLINT_RASTER_COUNT;
+        }
+        return (long) rasterCount * BYTES_PER_SAMPLE;
+    }
+
+    private FlintValueFetcher.FlintTile fetchFlintValues(Rectangle targetRectangle, boolean[] regionMask) {
+        if (flintValueFetcher == null) {
+            return null;
         }
-        return data.getSampleDouble(rect.x, rect.y, 0);
+        final long stageStart = statistics.startTimer();
+        final FlintValueFetcher.FlintTile flintTile = flintValueFetcher.fetch(targetRectangle, regionMask);
+        statistics.stopTimer(ProcessingStatistics.Stage.FLINT_LOOKUP, stageStart);
+        return flintTile;
     }
 
     private static Map<String, ProductData> getTargetSampleData(Map<Band, Tile> targetTiles) {
@@ -467,52 +873,63 @@ public class GlintCorrectionOperator extends Operator {
     }
 
     private void fillTargetSampleData(Map<String, ProductData> targetSampleData, int pixelIndex, PixelData inputData,
-                                      GlintResult glintResult) {
-        final ProductData agcFlagTile = targetSampleData.get(AGC_FLAG_BAND_NAME);
+                                      GlintResult glintResult, VariantOutput output) {
+        if (output.auxiliaryBandsOnly) {
+            fillAuxiliarySampleData(targetSampleData, pixelIndex, glintResult, output);
+            return;
+        }
+        final ProductData agcFlagTile = targetSampleData.get(output.flagBandName);
         agcFlagTile.setElemIntAt(pixelIndex, glintResult.getFlag());
-        final ProductData angTile = targetSampleData.get(ANG_443_865);
+        final ProductData angTile = targetSampleData.get(output.angBandName);
         angTile.setElemDoubleAt(pixelIndex, glintResult.getAngstrom());
-        final ProductData tau550Tile = targetSampleData.get(TAU_550);
+        final ProductData tau550Tile = targetSampleData.get(output.tau550BandName);
         tau550Tile.setElemDoubleAt(pixelIndex, glintResult.getTau550());
-        final ProductData tau778Tile = targetSampleData.get(TAU_778);
+        final ProductData tau778Tile = targetSampleData.get(output.tau778BandName);
         tau778Tile.setElemDoubleAt(pixelIndex, glintResult.getTau778());
-        final ProductData tau865Tile = targetSampleData.get(TAU_865);
+        final ProductData tau865Tile = targetSampleData.get(output.tau865BandName);
         tau865Tile.setElemDoubleAt(pixelIndex, glintResult.getTau865());
         if (flintProduct == null) {
             // glint ratio available as output only for 'non-flint' case (RD, 28.10.09)
-            final ProductData glintTile = targetSampleData.get(GLINT_RATIO);
+            final ProductData glintTile = targetSampleData.get(output.glintRatioBandName);
             glintTile.setElemDoubleAt(pixelIndex, glintResult.getGlintRatio());
-        } else {
+        } else if (output.isMain()) {
             final ProductData flintTile = targetSampleData.get(FLINT_VALUE);
             flintTile.setElemDoubleAt(pixelIndex, inputData.flintValue);
         }
-        final ProductData btsmTile = targetSampleData.get(BTSM);
+        final ProductData btsmTile = targetSampleData.get(output.btsmBandName);
         btsmTile.setElemDoubleAt(pixelIndex, glintResult.getBtsm());
-        final ProductData atotTile = targetSampleData.get(ATOT);
+        final ProductData atotTile = targetSampleData.get(output.atotBandName);
         atotTile.setElemDoubleAt(pixelIndex, glintResult.getAtot());
 
         if (outputTosa) {
-            fillTargetSample(TOSA_REFLEC_BAND_NAMES, pixelIndex, targetSampleData, glintResult.getTosaReflec());
-            final ProductData quality = targetSampleData.get(TOSA_QUALITY_INDICATOR_BAND_NAME);
+            fillTargetSample(output.tosaReflecBandNames, pixelIndex, targetSampleData, glintResult.getTosaReflec());
+            final ProductData quality = targetSampleData.get(output.tosaQualityBandName);
             quality.setElemDoubleAt(pixelIndex, glintResult.getTosaQualityIndicator());
         }
+        if (outputReflec) {
+            fillTargetSample(output.reflecBandNames, pixelIndex, targetSampleData, glintResult.getReflec());
+        }
+        if (!output.auxiliaryBandsOnDemand) {
+            fillAuxiliarySampleData(targetSampleData, pixelIndex, glintResult, output);
+        }
+
+    }
+
+    private void fillAuxiliarySampleData(Map<String, ProductData> targetSampleData, int pixelIndex,
+                                         GlintResult glintResult, VariantOutput output) {
         if (outputAutoTosa) {
-            fillTargetSample(AUTO_TOSA_REFLEC_BAND_NAMES, pixelIndex, targetSampleData,
+            fillTargetSample(output.autoTosaReflecBandNames, pixelIndex, targetSampleData,
                              glintResult.getAutoTosaReflec());
         }
-        if (outputReflec) {
-            fillTargetSample(REFLEC_BAND_NAMES, pixelIndex, targetSampleData, glintResult.getReflec());
-        }
         if (outputNormReflec) {
-            fillTargetSample(NORM_REFLEC_BAND_NAMES, pixelIndex, targetSampleData, glintResult.getNormReflec());
+            fillTargetSample(output.normReflecBandNames, pixelIndex, targetSampleData, glintResult.getNormReflec());
         }
         if (outputPath) {
-            fillTargetSample(PATH_BAND_NAMES, pixelIndex, targetSampleData, glintResult.getPath());
+            fillTargetSample(output.pathBandNames, pixelIndex, targetSampleData, glintResult.getPath());
         }
         if (outputTransmittance) {
-            fillTargetSample(TRANS_BAND_NAMES, pixelIndex, targetSampleData, glintResult.getTrans());
+            fillTargetSample(output.transBandNames, pixelIndex, targetSampleData, glintResult.getTrans());
         }
-
     }
 
     private void fillTargetSample(String[] bandNames, int pixelIndex,
@@ -522,16 +939,22 @@ public class GlintCorrectionOperator extends Operator {
             if (bandName != null) {
                 int bandIndex = i > 10 ? i - 1 : i;
                 final ProductData tile = targetData.get(bandName);
-                tile.setElemDoubleAt(pixelIndex, values[bandIndex]);
+                final QuantisedEncoding encoding = getQuantisedEncoding(bandName);
+                if (encoding != null) {
+                    tile.setElemIntAt(pixelIndex, encoding.encode(values[bandIndex]));
+                } else {
+                    tile.setElemDoubleAt(pixelIndex, values[bandIndex]);
+                }
             }
         }
     }
 
-    private PixelData loadMerisPixelData(Map<String, ProductData> sourceTileMap, int index) {
-        final PixelData pixelData = new PixelData();
-        pixelData.isFullResolution = isFullResolution;
-        pixelData.nadirColumnIndex = nadirColumnIndex;
-        pixelData.validation = sourceTileMap.get(validationBand.getName()).getElemIntAt(index);
+    private QuantisedEncoding getQuantisedEncoding(String bandName) {
+        return quantisedEncodings != null ? quantisedEncodings.get(bandName) : null;
+    }
+
+    private void loadMerisPixelData(Map<String, ProductData> sourceTileMap, int index, PixelData pixelData) {
+        pixelData.validation = sourceTileMap.get(VALIDATION_SAMPLES_NAME).getElemIntAt(index);
         pixelData.l1Flag = sourceTileMap.get(MERIS_L1B_FLAGS_DS_NAME).getElemIntAt(index);
         pixelData.detectorIndex = sourceTileMap.get(MERIS_DETECTOR_INDEX_DS_NAME).getElemIntAt(index);
 
@@ -543,14 +966,11 @@ public class GlintCorrectionOperator extends Operator {
         pixelData.pressure = getScaledValue(sourceTileMap, pressureNode, index);
         pixelData.ozone = getScaledValue(sourceTileMap, ozoneNode, index);
 
-        pixelData.toa_radiance = new double[spectralNodes.length];
-        pixelData.solar_flux = new double[spectralNodes.length];
         for (int i = 0; i < spectralNodes.length; i++) {
             final Band spectralNode = spectralNodes[i];
             pixelData.toa_radiance[i] = getScaledValue(sourceTileMap, spectralNode, index);
             pixelData.solar_flux[i] = spectralNode.getSolarFlux();
         }
-        return pixelData;
     }
 
     private static double getScaledValue(Map<String, ProductData> sourceTileMap, RasterDataNode rasterDataNode,
@@ -563,43 +983,29 @@ public class GlintCorrectionOperator extends Operator {
     private Map<String, ProductData> preLoadMerisSources(Rectangle targetRectangle) {
         final Map<String, ProductData> map = new HashMap<>(27);
 
-        final Tile validationTile = getSourceTile(validationBand, targetRectangle);
-        map.put(validationBand.getName(), validationTile.getRawSamples());
-
-        final Tile l1FlagTile = getSourceTile(l1FlagsNode, targetRectangle);
-        map.put(l1FlagTile.getRasterDataNode().getName(), l1FlagTile.getRawSamples());
-
-        final Tile solzenTile = getSourceTile(solzenNode, targetRectangle);
-        map.put(solzenTile.getRasterDataNode().getName(), solzenTile.getRawSamples());
-
-        final Tile solaziTile = getSourceTile(solaziNode, targetRectangle);
-        map.put(solaziTile.getRasterDataNode().getName(), solaziTile.getRawSamples());
-
-        final Tile satzenTile = getSourceTile(satzenNode, targetRectangle);
-        map.put(satzenTile.getRasterDataNode().getName(), satzenTile.getRawSamples());
-
-        final Tile sataziTile = getSourceTile(sataziNode, targetRectangle);
-        map.put(sataziTile.getRasterDataNode().getName(), sataziTile.getRawSamples());
-
-        final Tile detectorTile = getSourceTile(detectorNode, targetRectangle);
-        map.put(detectorTile.getRasterDataNode().getName(), detectorTile.getRawSamples());
-
-        final Tile altitudeTile = getSourceTile(altitudeNode, targetRectangle);
-        map.put(altitudeTile.getRasterDataNode().getName(), altitudeTile.getRawSamples());
-
-        final Tile pressureTile = getSourceTile(pressureNode, targetRectangle);
-        map.put(pressureTile.getRasterDataNode().getName(), pressureTile.getRawSamples());
-
-        final Tile ozoneTile = getSourceTile(ozoneNode, targetRectangle);
-        map.put(ozoneTile.getRasterDataNode().getName(), ozoneTile.getRawSamples());
+        long stageStart = statistics.startTimer();
+        for (RasterDataNode node : merisSourceNodes) {
+            putSourceSamples(map, node, targetRectangle);
+        }
+        statistics.stopTimer(ProcessingStatistics.Stage.SOURCE_FETCH, stageStart);
 
-        for (RasterDataNode spectralNode : spectralNodes) {
-            final Tile spectralTile = getSourceTile(spectralNode, targetRectangle);
-            map.put(spectralTile.getRasterDataNode().getName(), spectralTile.getRawSamples());
+        stageStart = statistics.startTimer();
+        final ProductData validationSamples;
+        if (validationKernel != null) {
+            validationSamples = validationKernel.computeFlags(map, targetRectangle.width * targetRectangle.height);
+        } else {
+            validationSamples = getSourceTile(validationBand, targetRectangle).getRawSamples();
         }
+        map.put(VALIDATION_SAMPLES_NAME, validationSamples);
+        statistics.stopTimer(ProcessingStatistics.Stage.VALIDATION, stageStart);
         return map;
     }
 
+    private void putSourceSamples(Map<String, ProductData> map, RasterDataNode rasterDataNode,
+                                  Rectangle targetRectangle) {
+        map.put(rasterDataNode.getName(), getSourceTile(rasterDataNode, targetRectangle).getRawSamples());
+    }
+
     private static FlagCoding createAgcFlagCoding() {
         final FlagCoding flagCoding = new FlagCoding(AGC_FLAG_BAND_NAME);
         flagCoding.setDescription("Atmosphere Correction - Flag Coding");
@@ -627,95 +1033,212 @@ public class GlintCorrectionOperator extends Operator {
         flagCoding.addAttribute(attribute);
     }
 
-    private void addTargetBands(Product product) {
+    private void addTargetBands(Product product, VariantOutput output) {
+        final ProcessingVariant variant = output.variant;
+        final String validExpression = output.validExpression;
         final List<String> groupList = new ArrayList<String>();
         if (outputAutoTosa) {
             groupList.add("tosa_reflec_auto");
         }
         if (outputTosa) {
-            addSpectralTargetBands(product, TOSA_REFLEC_BAND_NAMES, "TOSA Reflectance at {0} nm", "sr^-1");
+            // the TOSA reflectances are net inputs, values outside the input range are flagged as TOSA_OOR
+            addSpectralTargetBands(product, output.tosaReflecBandNames, "TOSA Reflectance at {0} nm", "sr^-1",
+                                   validExpression,
+                                   getValueRanges(true, 4, 1.0, 1.0, output.merisNet, flintNeuralNet));
             groupList.add("tosa_reflec");
-            addNonSpectralTargetBand(product, TOSA_QUALITY_INDICATOR_BAND_NAME, "Input spectrum out of range check",
-                                     "dl");
+            addNonSpectralTargetBand(product, output.tosaQualityBandName, "Input spectrum out of range check",
+                                     "dl", validExpression);
 
         }
         if (outputAutoTosa) {
-            addSpectralTargetBands(product, AUTO_TOSA_REFLEC_BAND_NAMES, "TOSA Reflectance at {0} nm", "sr^-1");
+            if (output.auxiliaryBandsOnDemand) {
+                addAuxiliaryBands(product, output.autoTosaReflecBandNames);
+            } else {
+                addAutoTosaTargetBands(product, output);
+            }
         }
         if (outputReflec) {
             String reflecType;
             final String reflecUnit;
-            if (ReflectanceEnum.RADIANCE_REFLECTANCES.equals(outputReflecAs)) {
+            final double reflecFactor;
+            if (ReflectanceEnum.RADIANCE_REFLECTANCES.equals(variant.getOutputReflecAs())) {
                 reflecType = "radiance";
                 reflecUnit = "sr^-1";
+                reflecFactor = 1.0;
             } else {
                 reflecType = "irradiance";
                 reflecUnit = "dl";
+                reflecFactor = Math.PI;
             }
             String descriptionPattern = "Water leaving " + reflecType + " reflectance at {0} nm";
-            addSpectralTargetBands(product, REFLEC_BAND_NAMES, descriptionPattern, reflecUnit);
+            // reflectances derived from the path reflectance are not bounded by the net outputs
+            final double[][] reflecRanges = variant.isDeriveRwFromPath() ? null :
+                                            getValueRanges(false, 0, reflecFactor, reflecFactor,
+                                                           output.merisNet, flintNeuralNet);
+            addSpectralTargetBands(product, output.reflecBandNames, descriptionPattern, reflecUnit, validExpression,
+                                   reflecRanges);
             groupList.add("reflec");
 
         }
         if (outputNormReflec) {
-            String descriptionPattern = "Normalised water leaving radiance reflectance at {0} nm";
-            addSpectralTargetBands(product, NORM_REFLEC_BAND_NAMES, descriptionPattern, "sr^-1");
+            if (output.auxiliaryBandsOnDemand) {
+                addAuxiliaryBands(product, output.normReflecBandNames);
+            } else {
+                addNormReflecTargetBands(product, output);
+            }
             groupList.add("norm_refl");
         }
         if (outputPath) {
-            addSpectralTargetBands(product, PATH_BAND_NAMES, "Water leaving radiance reflectance path at {0} nm",
-                                   "dxd");
+            if (output.auxiliaryBandsOnDemand) {
+                addAuxiliaryBands(product, output.pathBandNames);
+            } else {
+                addPathTargetBands(product, output);
+            }
             groupList.add("path");
         }
         if (outputTransmittance) {
-            addSpectralTargetBands(product, TRANS_BAND_NAMES,
-                                   "Downwelling irradiance transmittance (Ed_Boa/Ed_Tosa) at {0} nm", "dl");
+            if (output.auxiliaryBandsOnDemand) {
+                addAuxiliaryBands(product, output.transBandNames);
+            } else {
+                addTransTargetBands(product, output);
+            }
             groupList.add("trans");
         }
-        final StringBuilder sb = new StringBuilder();
-        final Iterator<String> iterator = groupList.iterator();
-        while (iterator.hasNext()) {
-            sb.append(iterator.next());
-            if (iterator.hasNext()) {
-                sb.append(":");
+        if (output.isMain()) {
+            final StringBuilder sb = new StringBuilder();
+            final Iterator<String> iterator = groupList.iterator();
+            while (iterator.hasNext()) {
+                sb.append(iterator.next());
+                if (iterator.hasNext()) {
+                    sb.append(":");
+                }
             }
+            product.setAutoGrouping(sb.toString());
         }
-        product.setAutoGrouping(sb.toString());
-        addNonSpectralTargetBand(product, TAU_550, "Spectral aerosol optical depth at 550", "dl");
-        addNonSpectralTargetBand(product, TAU_778, "Spectral aerosol optical depth at 778", "dl");
-        addNonSpectralTargetBand(product, TAU_865, "Spectral aerosol optical depth at 865", "dl");
+        addNonSpectralTargetBand(product, output.tau550BandName, "Spectral aerosol optical depth at 550", "dl",
+                                 validExpression);
+        addNonSpectralTargetBand(product, output.tau778BandName, "Spectral aerosol optical depth at 778", "dl",
+                                 validExpression);
+        addNonSpectralTargetBand(product, output.tau865BandName, "Spectral aerosol optical depth at 865", "dl",
+                                 validExpression);
 
         if (flintProduct == null) {
-            addNonSpectralTargetBand(product, GLINT_RATIO, "Glint ratio", "dl");
-        } else {
-            addNonSpectralTargetBand(product, FLINT_VALUE, "Flint value", "1/sr");
+            addNonSpectralTargetBand(product, output.glintRatioBandName, "Glint ratio", "dl", validExpression);
+        } else if (output.isMain()) {
+            addNonSpectralTargetBand(product, FLINT_VALUE, "Flint value", "1/sr", validExpression);
         }
 
-        addNonSpectralTargetBand(product, BTSM, "Total suspended matter scattering", "m^-1");
-        addNonSpectralTargetBand(product, ATOT, "Absorption at 443 nm of all water constituents", "m^-1");
-        addNonSpectralTargetBand(product, ANG_443_865, "\"Aerosol Angstrom coefficient\"", "dl");
+        addNonSpectralTargetBand(product, output.btsmBandName, "Total suspended matter scattering", "m^-1",
+                                 validExpression);
+        addNonSpectralTargetBand(product, output.atotBandName, "Absorption at 443 nm of all water constituents",
+                                 "m^-1", validExpression);
+        addNonSpectralTargetBand(product, output.angBandName, "\"Aerosol Angstrom coefficient\"", "dl",
+                                 validExpression);
     }
 
-    private Band addNonSpectralTargetBand(Product product, String name, String description, String unit) {
+    private void addAutoTosaTargetBands(Product product, VariantOutput output) {
+        addSpectralTargetBands(product, output.autoTosaReflecBandNames, "TOSA Reflectance at {0} nm", "sr^-1",
+                               output.validExpression, getValueRanges(false, 0, 1.0, 1.0, atmoAaNeuralNet));
+    }
+
+    private void addNormReflecTargetBands(Product product, VariantOutput output) {
+        addSpectralTargetBands(product, output.normReflecBandNames,
+                               "Normalised water leaving radiance reflectance at {0} nm", "sr^-1",
+                               output.validExpression, getValueRanges(false, 0, 1.0, 1.0, normalizationNeuralNet));
+    }
+
+    private void addPathTargetBands(Product product, VariantOutput output) {
+        addSpectralTargetBands(product, output.pathBandNames, "Water leaving radiance reflectance path at {0} nm",
+                               "dxd", output.validExpression,
+                               getValueRanges(false, 12, 1.0, 1.0, output.merisNet, flintNeuralNet));
+    }
+
+    private void addTransTargetBands(Product product, VariantOutput output) {
+        // the net computes Ed_boa, which is divided by the cosine of the sun zenith angle (the first input)
+        final double maxTransFactor = 1.0 / Math.cos(Math.toRadians(output.merisNet.getInputMax()[0]));
+        addSpectralTargetBands(product, output.transBandNames,
+                               "Downwelling irradiance transmittance (Ed_Boa/Ed_Tosa) at {0} nm", "dl",
+                               output.validExpression,
+                               getValueRanges(false, 24, 1.0, maxTransFactor, output.merisNet, flintNeuralNet));
+    }
+
+    private void addAuxiliaryBands(Product product, String[] bandNames) {
+        for (String bandName : bandNames) {
+            if (bandName != null) {
+                ProductUtils.copyBand(bandName, auxiliaryProduct, product, true);
+            }
+        }
+    }
+
+    private Band addNonSpectralTargetBand(Product product, String name, String description, String unit,
+                                          String validExpression) {
         final Band band = product.addBand(name, ProductData.TYPE_FLOAT32);
         band.setDescription(description);
         band.setUnit(unit);
-        band.setValidPixelExpression(VALID_EXPRESSION);
+        band.setValidPixelExpression(validExpression);
         return band;
     }
 
-    private void addSpectralTargetBands(Product product, String[] bandNames, String descriptionPattern, String unit) {
+    private void addSpectralTargetBands(Product product, String[] bandNames, String descriptionPattern, String unit,
+                                        String validExpression, double[][] valueRanges) {
         for (int i = 0; i < MERIS_L1B_SPECTRAL_BAND_NAMES.length; i++) {
             String bandName = bandNames[i];
             if (bandName != null) {
                 final Band radBand = merisProduct.getBandAt(i);
                 final String descr = MessageFormat.format(descriptionPattern, radBand.getSpectralWavelength());
-                final Band band = addNonSpectralTargetBand(product, bandName, descr, unit);
+                final Band band;
+                if (valueRanges != null) {
+                    int valueIndex = i > 10 ? i - 1 : i;
+                    final QuantisedEncoding encoding = QuantisedEncoding.create(valueRanges[0][valueIndex],
+                                                                                valueRanges[1][valueIndex]);
+                    band = product.addBand(bandName, QuantisedEncoding.DATA_TYPE);
+                    band.setDescription(descr);
+                    band.setUnit(unit);
+                    band.setValidPixelExpression(validExpression);
+                    encoding.applyTo(band);
+                    quantisedEncodings.put(bandName, encoding);
+                } else {
+                    band = addNonSpectralTargetBand(product, bandName, descr, unit, validExpression);
+                }
                 ProductUtils.copySpectralBandProperties(radBand, band);
             }
         }
     }
 
+    /**
+     * Gets the value ranges of the twelve spectral values computed from logarithmic inputs or outputs of the
+     * given nets, or {@code null} if the spectral bands are not quantised.
+     *
+     * @param fromInputs whether the values are net inputs rather than outputs
+     * @param offset     the index of the first spectral value in the net inputs or outputs
+     * @param minFactor  the factor applied to the lower limits
+     * @param maxFactor  the factor applied to the upper limits
+     * @param nets       the nets, {@code null} elements are ignored
+     *
+     * @return the lower and the upper limits, or {@code null}
+     */
+    private double[][] getValueRanges(boolean fromInputs, int offset, double minFactor, double maxFactor,
+                                      NeuralNet... nets) {
+        if (quantisedEncodings == null) {
+            return null;
+        }
+        final double[][] valueRanges = new double[2][12];
+        Arrays.fill(valueRanges[0], Double.POSITIVE_INFINITY);
+        Arrays.fill(valueRanges[1], Double.NEGATIVE_INFINITY);
+        for (NeuralNet net : nets) {
+            if (net == null) {
+                continue;
+            }
+            final double[] minValues = fromInputs ? net.getInputMin() : net.getOutputMin();
+            final double[] maxValues = fromInputs ? net.getInputMax() : net.getOutputMax();
+            for (int i = 0; i < 12; i++) {
+                valueRanges[0][i] = Math.min(valueRanges[0][i], Math.exp(minValues[offset + i]) * minFactor);
+                valueRanges[1][i] = Math.max(valueRanges[1][i], Math.exp(maxValues[offset + i]) * maxFactor);
+            }
+        }
+        return valueRanges;
+    }
+
     private static void addAgcMasks(Product product) {
         final ProductNodeGroup<Mask> maskGroup = product.getMaskGroup();
         maskGroup.add(createMask(product, "agc_land", "Land pixels", "agc_flags.LAND", Color.GREEN, 0.5f));
@@ -741,38 +1264,35 @@ public class GlintCorrectionOperator extends Operator {
                                          expression, color, transparency);
     }
 
-    private InputStream getNeuralNetStream(String resourceNetName, File neuralNetFile) {
-        InputStream neuralNetStream;
-        if (neuralNetFile == null || resourceNetName.contains(neuralNetFile.getName())) {
-            neuralNetStream = getClass().getResourceAsStream(resourceNetName);
-        } else {
-            try {
-                neuralNetStream = new FileInputStream(neuralNetFile);
-            } catch (FileNotFoundException e) {
-                throw new OperatorException(e);
-            }
-        }
-        return neuralNetStream;
-    }
-
-    private String readNeuralNetFromStream(InputStream neuralNetStream) {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(neuralNetStream));
+    /**
+     * Loads a neural net, either the given file or the resource with the given name. A binary sibling of the
+     * net (same name, extension '.nnb'), which is not older than the net itself, is loaded instead if it exists.
+     */
+    private NeuralNet loadNeuralNet(String resourceNetName, File neuralNetFile) {
         try {
-            String line = reader.readLine();
-            final StringBuilder sb = new StringBuilder();
-            while (line != null) {
-                // have to append line terminator, cause it's not included in line
-                sb.append(line).append('\n');
-                line = reader.readLine();
+            if (neuralNetFile == null || resourceNetName.contains(neuralNetFile.getName())) {
+                final String binaryName = NeuralNetBinaryFormat.getBinaryName(resourceNetName);
+                final InputStream binaryStream = getClass().getResourceAsStream(binaryName);
+                if (binaryStream != null) {
+                    return NeuralNetBinaryFormat.read(binaryStream);
+                }
+                final InputStream neuralNetStream = getClass().getResourceAsStream(resourceNetName);
+                if (neuralNetStream == null) {
+                    throw new OperatorException("Missing neural net resource " + resourceNetName);
+                }
+                return NeuralNet.read(neuralNetStream);
             }
-            return sb.toString();
+            if (!neuralNetFile.isFile()) {
+                throw new OperatorException(new FileNotFoundException(neuralNetFile.getPath()));
+            }
+            final File binaryFile = new File(neuralNetFile.getParentFile(),
+                                             NeuralNetBinaryFormat.getBinaryName(neuralNetFile.getName()));
+            if (binaryFile.isFile() && binaryFile.lastModified() >= neuralNetFile.lastModified()) {
+                return NeuralNetBinaryFormat.read(binaryFile);
+            }
+            return NeuralNet.read(new FileInputStream(neuralNetFile));
         } catch (IOException ioe) {
             throw new OperatorException("Could not initialize neural net", ioe);
-        } finally {
-            try {
-                reader.close();
-            } catch (IOException ignore) {
-            }
         }
     }
 
@@ -870,6 +1390,483 @@ public class GlintCorrectionOperator extends Operator {
         return "";
     }
 
+    /**
+     * The per-thread working objects of the correction. Workspaces are pooled and handed to one tile
+     * computation at a time, so the per-pixel path does not allocate memory.
+     */
+    private final class AgcWorkspace {
+
+        private final PixelCorrector corrector;
+        // the outputs of the auxiliary product, whose pixels are already counted by the target product
+        private final boolean auxiliary;
+        private final List<VariantOutput> outputs;
+
+        private AgcWorkspace(boolean auxiliary) {
+            this.auxiliary = auxiliary;
+            outputs = auxiliary ? auxiliaryOutputs : variantOutputs;
+            corrector = singlePrecision ? new FloatPixelCorrector(outputs) : new DoublePixelCorrector(outputs);
+        }
+
+        private void addResultCacheStatistics(QuantisedResultCache total) {
+            for (QuantisedResultCache cache : corrector.resultCaches) {
+                total.add(cache);
+            }
+        }
+    }
+
+    /**
+     * The correction of single pixels in double or single precision. The tile loop and the writing of the
+     * target samples are shared by both precisions: the source samples are loaded into {@link #pixelData} and
+     * the result is provided as a {@link GlintResult}, only the correction in between depends on the precision.
+     * <p/>
+     * Variants with the same atmosphere net and SMILE correction form a group, for which the TOSA reflectances
+     * and the nets are computed once per pixel. Only the reflectances are derived for each variant.
+     */
+    private abstract class PixelCorrector {
+
+        final PixelData pixelData;
+        final NeuralNetEvaluator normalizationNet;
+        final NeuralNetEvaluator autoAssocNet;
+        final boolean withFlint;
+        // the first output of each group, which configures the corrections of the group
+        final List<VariantOutput> groupOutputs = new ArrayList<>();
+        // the caches of the corrections, whose statistics are logged on disposal
+        final List<QuantisedResultCache> resultCaches = new ArrayList<>();
+        private final GlintResult invalidResult = new GlintResult();
+        private final List<VariantOutput> outputs;
+        private final int[] variantGroups;
+        private final boolean[] groupCorrected;
+        private final boolean[] groupValid;
+
+        PixelCorrector(List<VariantOutput> outputs) {
+            this.outputs = outputs;
+            pixelData = new PixelData(spectralNodes.length);
+            pixelData.isFullResolution = isFullResolution;
+            pixelData.nadirColumnIndex = nadirColumnIndex;
+            normalizationNet = normalizationNeuralNet != null ? new NeuralNetEvaluator(normalizationNeuralNet) : null;
+            autoAssocNet = new NeuralNetEvaluator(atmoAaNeuralNet);
+            withFlint = useFlint && flintProduct != null;
+            invalidResult.raiseFlag(GlintCorrection.INVALID);
+
+            variantGroups = new int[outputs.size()];
+            for (int v = 0; v < outputs.size(); v++) {
+                final VariantOutput output = outputs.get(v);
+                int group = 0;
+                while (group < groupOutputs.size() && !(groupOutputs.get(group).merisNet == output.merisNet &&
+                                                        groupOutputs.get(group).smileAuxData == output.smileAuxData)) {
+                    group++;
+                }
+                if (group == groupOutputs.size()) {
+                    groupOutputs.add(output);
+                }
+                variantGroups[v] = group;
+            }
+            groupCorrected = new boolean[groupOutputs.size()];
+            groupValid = new boolean[groupOutputs.size()];
+        }
+
+        /**
+         * @return the normalization net for the corrections of the given group, if any of its variants needs it
+         */
+        NeuralNetEvaluator getNormalizationNet(int group) {
+            for (int v = 0; v < outputs.size(); v++) {
+                if (variantGroups[v] == group && isNormalized(outputs.get(v))) {
+                    return normalizationNet;
+                }
+            }
+            return null;
+        }
+
+        QuantisedResultCache addResultCache(NeuralNet atmosphereNet) {
+            final QuantisedResultCache cache = createResultCache(atmosphereNet);
+            if (cache != null) {
+                resultCaches.add(cache);
+            }
+            return cache;
+        }
+
+        /**
+         * Prepares the correction of the pixel loaded into {@link #pixelData}.
+         */
+        void preparePixel() {
+            Arrays.fill(groupCorrected, false);
+        }
+
+        /**
+         * Corrects the prepared pixel for the variant with the given index, using the FLINT net if the pixel has
+         * a valid FLINT value.
+         *
+         * @return the result, valid until the next call
+         */
+        final GlintResult correct(int variantIndex) {
+            final int group = variantGroups[variantIndex];
+            if (!groupCorrected[group]) {
+                groupValid[group] = correctAtmosphere(group);
+                groupCorrected[group] = true;
+            }
+            if (groupValid[group]) {
+                final VariantOutput output = outputs.get(variantIndex);
+                deriveReflectances(group, output.variant.isDeriveRwFromPath(), output.variant.getOutputReflecAs(),
+                                   normalizationNet != null && isNormalized(output));
+            }
+            return getResult(group);
+        }
+
+        /**
+         * Sets the FLINT value of a pixel which is not corrected.
+         *
+         * @return the result of such a pixel
+         */
+        final GlintResult setInvalid() {
+            pixelData.flintValue = NO_FLINT_VALUE;
+            return invalidResult;
+        }
+
+        private boolean isNormalized(VariantOutput output) {
+            // the normalised reflectances of the auxiliary product are computed by its own workspaces
+            return !output.auxiliaryBandsOnDemand;
+        }
+
+        /**
+         * Computes the TOSA reflectances and the nets of the given group.
+         *
+         * @return whether the pixel is valid
+         */
+        abstract boolean correctAtmosphere(int group);
+
+        abstract void deriveReflectances(int group, boolean deriveRwFromPath, ReflectanceEnum outputReflecAs,
+                                         boolean normalize);
+
+        abstract GlintResult getResult(int group);
+    }
+
+    private final class DoublePixelCorrector extends PixelCorrector {
+
+        // one correction per group, indexed like the group outputs
+        private final GlintCorrection[] merisGlintCorrections;
+        private final GlintCorrection[] aatsrFlintCorrections;
+        private final GlintCorrection[] activeCorrections;
+        private final GlintResult[] groupResults;
+
+        private DoublePixelCorrector(List<VariantOutput> outputs) {
+            super(outputs);
+            final int groupCount = groupOutputs.size();
+            merisGlintCorrections = new GlintCorrection[groupCount];
+            aatsrFlintCorrections = withFlint ? new GlintCorrection[groupCount] : null;
+            activeCorrections = new GlintCorrection[groupCount];
+            groupResults = new GlintResult[groupCount];
+            for (int g = 0; g < groupCount; g++) {
+                final VariantOutput output = groupOutputs.get(g);
+                final ReflectanceEnum reflecAs = output.variant.getOutputReflecAs();
+                merisGlintCorrections[g] = new GlintCorrection(new NeuralNetEvaluator(output.merisNet),
+                                                               output.smileAuxData, getNormalizationNet(g),
+                                                               autoAssocNet, reflecAs);
+                merisGlintCorrections[g].setStatistics(statistics);
+                merisGlintCorrections[g].setResultCache(addResultCache(output.merisNet));
+                if (withFlint) {
+                    aatsrFlintCorrections[g] = new GlintCorrection(new NeuralNetEvaluator(flintNeuralNet),
+                                                                   output.smileAuxData, getNormalizationNet(g),
+                                                                   autoAssocNet, reflecAs);
+                    aatsrFlintCorrections[g].setStatistics(statistics);
+                    aatsrFlintCorrections[g].setResultCache(addResultCache(flintNeuralNet));
+                }
+                groupResults[g] = new GlintResult();
+            }
+        }
+
+        @Override
+        boolean correctAtmosphere(int group) {
+            final GlintResult glintResult = groupResults[group];
+            if (aatsrFlintCorrections != null && GlintCorrection.isFlintValueValid(pixelData.flintValue)) {
+                activeCorrections[group] = aatsrFlintCorrections[group];
+                final boolean valid = activeCorrections[group].correctAtmosphere(pixelData, glintResult);
+                glintResult.raiseFlag(GlintCorrection.HAS_FLINT);
+                return valid;
+            }
+            activeCorrections[group] = merisGlintCorrections[group];
+            return activeCorrections[group].correctAtmosphere(pixelData, glintResult);
+        }
+
+        @Override
+        void deriveReflectances(int group, boolean deriveRwFromPath, ReflectanceEnum outputReflecAs,
+                                boolean normalize) {
+            activeCorrections[group].deriveReflectances(deriveRwFromPath, outputReflecAs, normalize,
+                                                        groupResults[group]);
+        }
+
+        @Override
+        GlintResult getResult(int group) {
+            return groupResults[group];
+        }
+    }
+
+    private final class FloatPixelCorrector extends PixelCorrector {
+
+        private final FloatPixelData floatPixelData;
+        private final GlintResult glintResult = new GlintResult();
+        // one correction per group, indexed like the group outputs
+        private final FloatGlintCorrection[] merisGlintCorrections;
+        private final FloatGlintCorrection[] aatsrFlintCorrections;
+        private final FloatGlintCorrection[] activeCorrections;
+        private final FloatGlintResult[] groupResults;
+
+        private FloatPixelCorrector(List<VariantOutput> outputs) {
+            super(outputs);
+            floatPixelData = new FloatPixelData(spectralNodes.length);
+            final int groupCount = groupOutputs.size();
+            merisGlintCorrections = new FloatGlintCorrection[groupCount];
+            aatsrFlintCorrections = withFlint ? new FloatGlintCorrection[groupCount] : null;
+            activeCorrections = new FloatGlintCorrection[groupCount];
+            groupResults = new FloatGlintResult[groupCount];
+            for (int g = 0; g < groupCount; g++) {
+                final VariantOutput output = groupOutputs.get(g);
+                final ReflectanceEnum reflecAs = output.variant.getOutputReflecAs();
+                merisGlintCorrections[g] = new FloatGlintCorrection(new NeuralNetEvaluator(output.merisNet),
+                                                                    output.smileAuxData, getNormalizationNet(g),
+                                                                    autoAssocNet, reflecAs);
+                merisGlintCorrections[g].setStatistics(statistics);
+                merisGlintCorrections[g].setResultCache(addResultCache(output.merisNet));
+                if (withFlint) {
+                    aatsrFlintCorrections[g] = new FloatGlintCorrection(new NeuralNetEvaluator(flintNeuralNet),
+                                                                        output.smileAuxData,
+                                                                        getNormalizationNet(g), autoAssocNet,
+                                                                        reflecAs);
+                    aatsrFlintCorrections[g].setStatistics(statistics);
+                    aatsrFlintCorrections[g].setResultCache(addResultCache(flintNeuralNet));
+                }
+                groupResults[g] = new FloatGlintResult();
+            }
+        }
+
+        @Override
+        void preparePixel() {
+            super.preparePixel();
+            floatPixelData.set(pixelData);
+        }
+
+        @Override
+        boolean correctAtmosphere(int group) {
+            final FloatGlintResult floatGlintResult = groupResults[group];
+            if (aatsrFlintCorrections != null && GlintCorrection.isFlintValueValid(floatPixelData.flintValue)) {
+                activeCorrections[group] = aatsrFlintCorrections[group];
+                final boolean valid = activeCorrections[group].correctAtmosphere(floatPixelData, floatGlintResult);
+                floatGlintResult.raiseFlag(GlintCorrection.HAS_FLINT);
+                return valid;
+            }
+            activeCorrections[group] = merisGlintCorrections[group];
+            return activeCorrections[group].correctAtmosphere(floatPixelData, floatGlintResult);
+        }
+
+        @Override
+        void deriveReflectances(int group, boolean deriveRwFromPath, ReflectanceEnum outputReflecAs,
+                                boolean normalize) {
+            activeCorrections[group].deriveReflectances(deriveRwFromPath, outputReflecAs, normalize,
+                                                        groupResults[group]);
+        }
+
+        @Override
+        GlintResult getResult(int group) {
+            // float values are exact in double precision, writing them through the double result keeps them
+            groupResults[group].copyTo(glintResult);
+            return glintResult;
+        }
+    }
+
+    /**
+     * The configuration and the target band names of the main configuration or of a processing variant.
+     */
+    private static final class VariantOutput {
+
+        private final ProcessingVariant variant;
+        private final NeuralNet merisNet;
+        private final SmileCorrectionAuxdata smileAuxData;
+        private final String flagBandName;
+        private final String validExpression;
+        private final String angBandName;
+        private final String tau550BandName;
+        private final String tau778BandName;
+        private final String tau865BandName;
+        private final String glintRatioBandName;
+        private final String btsmBandName;
+        private final String atotBandName;
+        private final String tosaQualityBandName;
+        private final String[] tosaReflecBandNames;
+        private final String[] autoTosaReflecBandNames;
+        private final String[] reflecBandNames;
+        private final String[] normReflecBandNames;
+        private final String[] pathBandNames;
+        private final String[] transBandNames;
+        // whether the auxiliary bands are taken from the auxiliary product instead of being computed
+        private final boolean auxiliaryBandsOnDemand;
+        // whether only the auxiliary bands are computed, for the auxiliary product
+        private final boolean auxiliaryBandsOnly;
+
+        private VariantOutput(ProcessingVariant variant, NeuralNet merisNet, SmileCorrectionAuxdata smileAuxData,
+                              boolean auxiliaryBandsOnDemand, boolean auxiliaryBandsOnly) {
+            this.variant = variant;
+            this.auxiliaryBandsOnDemand = auxiliaryBandsOnDemand;
+            this.auxiliaryBandsOnly = auxiliaryBandsOnly;
+            this.merisNet = merisNet;
+            this.smileAuxData = smileAuxData;
+            final String suffix = variant.getSuffix();
+            flagBandName = AGC_FLAG_BAND_NAME + suffix;
+            validExpression = String.format("!%s.INVALID", flagBandName);
+            angBandName = ANG_443_865 + suffix;
+            tau550BandName = TAU_550 + suffix;
+            tau778BandName = TAU_778 + suffix;
+            tau865BandName = TAU_865 + suffix;
+            glintRatioBandName = GLINT_RATIO + suffix;
+            btsmBandName = BTSM + suffix;
+            atotBandName = ATOT + suffix;
+            tosaQualityBandName = TOSA_QUALITY_INDICATOR_BAND_NAME + suffix;
+            tosaReflecBandNames = withSuffix(TOSA_REFLEC_BAND_NAMES, suffix);
+            autoTosaReflecBandNames = withSuffix(AUTO_TOSA_REFLEC_BAND_NAMES, suffix);
+            reflecBandNames = withSuffix(REFLEC_BAND_NAMES, suffix);
+            normReflecBandNames = withSuffix(NORM_REFLEC_BAND_NAMES, suffix);
+            pathBandNames = withSuffix(PATH_BAND_NAMES, suffix);
+            transBandNames = withSuffix(TRANS_BAND_NAMES, suffix);
+        }
+
+        private boolean isMain() {
+            return variant.getSuffix().isEmpty();
+        }
+
+        private static String[] withSuffix(String[] bandNames, String suffix) {
+            final String[] names = new String[bandNames.length];
+            for (int i = 0; i < bandNames.length; i++) {
+                names[i] = bandNames[i] != null ? bandNames[i] + suffix : null;
+            }
+            return names;
+        }
+    }
+
+    private List<VariantOutput> createVariantOutputs(boolean withAuxiliaryProduct) {
+        final ProcessingVariant mainVariant = new ProcessingVariant("", deriveRwFromPath, outputReflecAs,
+                                                                    doSmileCorrection, null);
+        final List<VariantOutput> outputs = new ArrayList<>();
+        outputs.add(new VariantOutput(mainVariant, merisNeuralNet, doSmileCorrection ? getSmileAuxData() : null,
+                                      withAuxiliaryProduct, false));
+        // variants with the same net share it, so that their nets are computed once per pixel
+        final Map<String, NeuralNet> variantNets = new HashMap<>();
+        for (ProcessingVariant variant : ProcessingVariant.parse(variants, mainVariant)) {
+            NeuralNet net;
+            if (variant.getAtmoNetMeris() == null) {
+                net = merisNeuralNet;
+            } else {
+                net = variantNets.get(variant.getAtmoNetMeris());
+                if (net == null) {
+                    if (new File(variant.getAtmoNetMeris()).isFile()) {
+                        net = loadNeuralNet(MERIS_ATMOSPHERIC_NET_NAME, new File(variant.getAtmoNetMeris()));
+                    } else {
+                        // resources of the operator, e.g. the nets in 'old'
+                        net = loadNeuralNet(variant.getAtmoNetMeris(), null);
+                    }
+                    variantNets.put(variant.getAtmoNetMeris(), net);
+                }
+            }
+            outputs.add(new VariantOutput(variant, net, variant.isDoSmileCorrection() ? getSmileAuxData() : null,
+                                          false, false));
+        }
+        return outputs;
+    }
+
+    private void initValidation() {
+        try {
+            validationKernel = ToaValidationKernel.create(merisSourceNodes, spectralNodes, solzenNode, l1FlagsNode,
+                                                          landExpression, cloudIceExpression,
+                                                          ToaReflectanceValidationOp.RLTOA_OOR_EXPRESSION);
+        } catch (ParseException e) {
+            // the expressions refer to rasters not read by this operator, band maths evaluates them on the product
+            BeamLogManager.getSystemLogger().info("Validation expressions are evaluated by band maths: " +
+                                                  e.getMessage());
+            final ToaReflectanceValidationOp validationOp = ToaReflectanceValidationOp.create(merisProduct,
+                                                                                              landExpression,
+                                                                                              cloudIceExpression);
+            validationBand = validationOp.getTargetProduct().getBandAt(0);
+        }
+    }
+
+    private SmileCorrectionAuxdata getSmileAuxData() {
+        if (smileAuxData == null) {
+            try {
+                smileAuxData = SmileCorrectionAuxdata.loadAuxdata(merisProduct.getProductType());
+            } catch (IOException e) {
+                throw new OperatorException("Not able to load auxiliary data for SMILE correction.", e);
+            }
+        }
+        return smileAuxData;
+    }
+
+    private QuantisedResultCache createResultCache(NeuralNet atmosphereNet) {
+        if (memoisationStep <= 0.0) {
+            return null;
+        }
+        // the results of the atmosphere net followed by those of the aaNN, both are keyed on the same inputs
+        return new QuantisedResultCache(RESULT_CACHE_CAPACITY, atmosphereNet.getInputMin(),
+                                        atmosphereNet.getInputMax(),
+                                        atmosphereNet.getOutputCount() + atmoAaNeuralNet.getOutputCount(),
+                                        memoisationStep, RESULT_CACHE_VERIFICATION_INTERVAL);
+    }
+
+    private void logResultCacheStatistics() {
+        final QuantisedResultCache total = new QuantisedResultCache(1, new double[0], new double[0], 0,
+                                                                    memoisationStep, 1);
+        for (AgcWorkspace workspace : workspacePool) {
+            workspace.addResultCacheStatistics(total);
+        }
+        for (AgcWorkspace workspace : auxiliaryWorkspacePool) {
+            workspace.addResultCacheStatistics(total);
+        }
+        BeamLogManager.getSystemLogger().info(total.toString());
+    }
+
+    /**
+     * Computes the auxiliary bands of the main configuration when they are read. The correction is performed by
+     * the operator which creates it, with its sources, nets and region of interest, in a second pass over the
+     * sources of a tile.
+     */
+    private static final class AuxiliaryBandsOp extends Operator {
+
+        private final GlintCorrectionOperator correctionOp;
+        private final Product correctionProduct;
+
+        private AuxiliaryBandsOp(GlintCorrectionOperator correctionOp, Product correctionProduct) {
+            this.correctionOp = correctionOp;
+            this.correctionProduct = correctionProduct;
+        }
+
+        @Override
+        public void initialize() throws OperatorException {
+            final Product product = new Product(correctionProduct.getName() + "_AUX", "MERIS_L2_AC_AUX",
+                                                correctionProduct.getSceneRasterWidth(),
+                                                correctionProduct.getSceneRasterHeight());
+            final Dimension preferredTileSize = correctionProduct.getPreferredTileSize();
+            if (preferredTileSize != null) {
+                product.setPreferredTileSize(preferredTileSize);
+            }
+            final VariantOutput output = correctionOp.auxiliaryOutputs.get(0);
+            if (correctionOp.outputAutoTosa) {
+                correctionOp.addAutoTosaTargetBands(product, output);
+            }
+            if (correctionOp.outputNormReflec) {
+                correctionOp.addNormReflecTargetBands(product, output);
+            }
+            if (correctionOp.outputPath) {
+                correctionOp.addPathTargetBands(product, output);
+            }
+            if (correctionOp.outputTransmittance) {
+                correctionOp.addTransTargetBands(product, output);
+            }
+            setTargetProduct(product);
+        }
+
+        @Override
+        public void computeTileStack(Map<Band, Tile> targetTiles, Rectangle targetRectangle,
+                                     ProgressMonitor pm) throws OperatorException {
+            correctionOp.computeTiles(targetTiles, targetRectangle, true, pm);
+        }
+    }
+
     public static class Spi extends OperatorSpi {
 
         public Spi() {
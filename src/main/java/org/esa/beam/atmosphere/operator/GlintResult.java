@@ -1,5 +1,7 @@
 package org.esa.beam.atmosphere.operator;
 
+import java.util.Arrays;
+
 /**
  * Class representing a result from the AGC Glint correction.
  *
@@ -42,6 +44,28 @@ public class GlintResult {
         flag = 0;
     }
 
+    /**
+     * Resets all values to their initial state, so the instance can be reused for the next pixel.
+     * The arrays are kept and cleared.
+     */
+    public void reset() {
+        Arrays.fill(tosaReflec, 0.0);
+        Arrays.fill(autoTosaReflec, 0.0);
+        Arrays.fill(reflec, 0.0);
+        tosaQualityIndicator = 0;
+        Arrays.fill(normReflec, 0.0);
+        Arrays.fill(path, 0.0);
+        Arrays.fill(trans, 0.0);
+        angstrom = 0;
+        tau550 = 0;
+        tau778 = 0;
+        tau865 = 0;
+        glintRatio = 0;
+        btsm = 0;
+        atot = 0;
+        flag = 0;
+    }
+
     public void setTosaReflec(double[] tosaReflec) {
         this.tosaReflec = tosaReflec;
     }
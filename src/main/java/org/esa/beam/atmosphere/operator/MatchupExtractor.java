@@ -0,0 +1,353 @@
+package org.esa.beam.atmosphere.operator;
+
+import org.esa.beam.framework.dataio.ProductIO;
+import org.esa.beam.framework.datamodel.Band;
+import org.esa.beam.framework.datamodel.GeoCoding;
+import org.esa.beam.framework.datamodel.GeoPos;
+import org.esa.beam.framework.datamodel.PixelPos;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.datamodel.ProductData;
+import org.esa.beam.framework.gpf.GPF;
+import org.esa.beam.glint.util.RegionOfInterest;
+
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Runs the AGC Glint correction only at the pixel windows around in-situ stations and writes the results as a
+ * tab-separated table, one row per window pixel.
+ * <p/>
+ * The in-situ coordinates are read from a CSV file with a header line naming the columns. The columns
+ * {@code lat} and {@code lon} are required, {@code name} and {@code time} ({@code yyyy-MM-dd HH:mm:ss} in UTC)
+ * are optional. The pixels are located through the MERIS geo-coding, and coordinates whose time is too far from
+ * the acquisition time of the product are skipped. Only the target tiles covering the windows are computed, so
+ * that neither the remaining source tiles nor the FLINT product are read.
+ * <p/>
+ * Usage: {@code MatchupExtractor <coordinates.csv> <window-size> <max-hours> <output.txt> <meris-l1b>...}
+ */
+public class MatchupExtractor {
+
+    private static final String TIME_PATTERN = "yyyy-MM-dd HH:mm:ss";
+    private static final String SEPARATOR = "\t";
+
+    private final int windowSize;
+    private final double maxTimeDifferenceHours;
+
+    /**
+     * Creates an extractor.
+     *
+     * @param windowSize             the edge length of the pixel windows, an odd number
+     * @param maxTimeDifferenceHours the maximum difference between the in-situ time and the acquisition period
+     *                               of the product in hours
+     */
+    public MatchupExtractor(int windowSize, double maxTimeDifferenceHours) {
+        if (windowSize < 1 || windowSize % 2 == 0) {
+            throw new IllegalArgumentException("Window size must be a positive odd number");
+        }
+        this.windowSize = windowSize;
+        this.maxTimeDifferenceHours = maxTimeDifferenceHours;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 5) {
+            System.err.println(
+                    "Usage: MatchupExtractor <coordinates.csv> <window-size> <max-hours> <output.txt> <meris-l1b>...");
+            System.exit(1);
+        }
+        GPF.getDefaultInstance().getOperatorSpiRegistry().loadOperatorSpis();
+
+        final List<Matchup> matchups;
+        try (Reader reader = new InputStreamReader(new FileInputStream(args[0]), "UTF-8")) {
+            matchups = readMatchups(reader);
+        }
+        final MatchupExtractor extractor = new MatchupExtractor(Integer.parseInt(args[1]),
+                                                                Double.parseDouble(args[2]));
+        int rowCount = 0;
+        try (PrintWriter writer = new PrintWriter(new File(args[3]), "UTF-8")) {
+            for (int i = 4; i < args.length; i++) {
+                final Product merisProduct = ProductIO.readProduct(args[i]);
+                if (merisProduct == null) {
+                    System.err.println("Cannot read product: " + args[i]);
+                    continue;
+                }
+                try {
+                    rowCount += extractor.extract(merisProduct, matchups, writer, rowCount == 0);
+                } finally {
+                    merisProduct.dispose();
+                }
+            }
+        }
+        System.out.printf(Locale.ENGLISH, "%d match-up pixels written to %s%n", rowCount, args[3]);
+    }
+
+    /**
+     * Reads the in-situ coordinates.
+     *
+     * @param reader the CSV source, separated by comma, semicolon or tab
+     *
+     * @return the coordinates
+     *
+     * @throws IOException if the header misses a required column or a line cannot be parsed
+     */
+    public static List<Matchup> readMatchups(Reader reader) throws IOException {
+        final BufferedReader bufferedReader = new BufferedReader(reader);
+        String line = readDataLine(bufferedReader);
+        if (line == null) {
+            throw new IOException("Missing header line");
+        }
+        final String[] header = line.split("[,;\t]");
+        int nameIndex = -1;
+        int latIndex = -1;
+        int lonIndex = -1;
+        int timeIndex = -1;
+        for (int i = 0; i < header.length; i++) {
+            final String column = header[i].trim().toLowerCase(Locale.ENGLISH);
+            if ("name".equals(column) || "station".equals(column)) {
+                nameIndex = i;
+            } else if ("lat".equals(column) || "latitude".equals(column)) {
+                latIndex = i;
+            } else if ("lon".equals(column) || "longitude".equals(column)) {
+                lonIndex = i;
+            } else if ("time".equals(column) || "date_time".equals(column)) {
+                timeIndex = i;
+            }
+        }
+        if (latIndex < 0 || lonIndex < 0) {
+            throw new IOException("Header must contain the columns 'lat' and 'lon'");
+        }
+
+        final SimpleDateFormat timeFormat = createTimeFormat();
+        final List<Matchup> matchups = new ArrayList<>();
+        int recordNumber = 0;
+        while ((line = readDataLine(bufferedReader)) != null) {
+            recordNumber++;
+            final String[] values = line.split("[,;\t]");
+            try {
+                final String name = nameIndex >= 0 ? values[nameIndex].trim() : String.valueOf(matchups.size() + 1);
+                final float lat = Float.parseFloat(values[latIndex].trim());
+                final float lon = Float.parseFloat(values[lonIndex].trim());
+                Date time = null;
+                if (timeIndex >= 0 && timeIndex < values.length && !values[timeIndex].trim().isEmpty()) {
+                    time = timeFormat.parse(values[timeIndex].trim().replace('T', ' ').replace("Z", ""));
+                }
+                matchups.add(new Matchup(name, lat, lon, time));
+            } catch (NumberFormatException | ParseException | ArrayIndexOutOfBoundsException e) {
+                throw new IOException(String.format("Cannot parse record %d: %s", recordNumber, line), e);
+            }
+        }
+        return matchups;
+    }
+
+    /**
+     * Processes the windows of all coordinates located in the product and writes their results.
+     *
+     * @param merisProduct the MERIS L1b product
+     * @param matchups     the in-situ coordinates
+     * @param writer       the writer receiving the table
+     * @param writeHeader  whether to write the header line
+     *
+     * @return the number of rows written
+     */
+    public int extract(Product merisProduct, List<Matchup> matchups, PrintWriter writer, boolean writeHeader) {
+        final List<MatchupWindow> windows = locate(merisProduct, matchups);
+        if (windows.isEmpty()) {
+            return 0;
+        }
+        final List<Rectangle> rectangles = new ArrayList<>(windows.size());
+        for (MatchupWindow window : windows) {
+            rectangles.add(window.rectangle);
+        }
+        final GlintCorrectionOperator operator =
+                GlintCorrectionOperator.create(merisProduct, RegionOfInterest.create(merisProduct, rectangles));
+        final Product targetProduct = operator.getTargetProduct();
+        try {
+            final Band[] bands = targetProduct.getBands();
+            if (writeHeader) {
+                writeHeader(writer, bands);
+            }
+            final SimpleDateFormat timeFormat = createTimeFormat();
+            final GeoCoding geoCoding = merisProduct.getGeoCoding();
+            final PixelPos pixelPos = new PixelPos();
+            final GeoPos geoPos = new GeoPos();
+            int rowCount = 0;
+            for (MatchupWindow window : windows) {
+                final Rectangle rectangle = window.rectangle;
+                final Raster[] rasters = new Raster[bands.length];
+                for (int i = 0; i < bands.length; i++) {
+                    rasters[i] = bands[i].getSourceImage().getData(rectangle);
+                }
+                for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+                    for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                        pixelPos.setLocation(x + 0.5f, y + 0.5f);
+                        geoCoding.getGeoPos(pixelPos, geoPos);
+                        final Matchup matchup = window.matchup;
+                        final StringBuilder row = new StringBuilder();
+                        row.append(merisProduct.getName());
+                        row.append(SEPARATOR).append(matchup.getName());
+                        row.append(SEPARATOR).append(matchup.getLat());
+                        row.append(SEPARATOR).append(matchup.getLon());
+                        row.append(SEPARATOR).append(matchup.getTime() != null ?
+                                                     timeFormat.format(matchup.getTime()) : "");
+                        row.append(SEPARATOR).append(x);
+                        row.append(SEPARATOR).append(y);
+                        row.append(SEPARATOR).append(geoPos.lat);
+                        row.append(SEPARATOR).append(geoPos.lon);
+                        for (int i = 0; i < bands.length; i++) {
+                            row.append(SEPARATOR);
+                            if (bands[i].isFlagBand()) {
+                                row.append(rasters[i].getSample(x, y, 0));
+                            } else {
+                                row.append(bands[i].scale(rasters[i].getSampleDouble(x, y, 0)));
+                            }
+                        }
+                        writer.println(row);
+                        rowCount++;
+                    }
+                }
+            }
+            writer.flush();
+            return rowCount;
+        } finally {
+            targetProduct.dispose();
+        }
+    }
+
+    /**
+     * Locates the coordinates in the product.
+     *
+     * @param product  the product
+     * @param matchups the in-situ coordinates
+     *
+     * @return the windows of the coordinates inside the scene and within the time difference
+     */
+    List<MatchupWindow> locate(Product product, List<Matchup> matchups) {
+        final List<MatchupWindow> windows = new ArrayList<>();
+        final GeoCoding geoCoding = product.getGeoCoding();
+        if (geoCoding == null || !geoCoding.canGetPixelPos()) {
+            return windows;
+        }
+        final Rectangle sceneBounds = new Rectangle(product.getSceneRasterWidth(), product.getSceneRasterHeight());
+        final PixelPos pixelPos = new PixelPos();
+        final int halfWindowSize = windowSize / 2;
+        for (Matchup matchup : matchups) {
+            if (!isWithinTimeDifference(product, matchup.getTime())) {
+                continue;
+            }
+            geoCoding.getPixelPos(new GeoPos(matchup.getLat(), matchup.getLon()), pixelPos);
+            if (!pixelPos.isValid() || !sceneBounds.contains(pixelPos.x, pixelPos.y)) {
+                continue;
+            }
+            final int centerX = (int) Math.floor(pixelPos.x);
+            final int centerY = (int) Math.floor(pixelPos.y);
+            final Rectangle rectangle = new Rectangle(centerX - halfWindowSize, centerY - halfWindowSize,
+                                                      windowSize, windowSize).intersection(sceneBounds);
+            windows.add(new MatchupWindow(matchup, rectangle));
+        }
+        return windows;
+    }
+
+    private boolean isWithinTimeDifference(Product product, Date time) {
+        final ProductData.UTC startTime = product.getStartTime();
+        final ProductData.UTC endTime = product.getEndTime();
+        if (time == null || startTime == null || endTime == null) {
+            return true;
+        }
+        final long maxDifference = Math.round(maxTimeDifferenceHours * 3600.0 * 1000.0);
+        return time.getTime() >= startTime.getAsDate().getTime() - maxDifference &&
+               time.getTime() <= endTime.getAsDate().getTime() + maxDifference;
+    }
+
+    private static void writeHeader(PrintWriter writer, Band[] bands) {
+        final StringBuilder header = new StringBuilder();
+        header.append("product").append(SEPARATOR).append("name");
+        header.append(SEPARATOR).append("insitu_lat").append(SEPARATOR).append("insitu_lon");
+        header.append(SEPARATOR).append("insitu_time");
+        header.append(SEPARATOR).append("pixel_x").append(SEPARATOR).append("pixel_y");
+        header.append(SEPARATOR).append("pixel_lat").append(SEPARATOR).append("pixel_lon");
+        for (Band band : bands) {
+            header.append(SEPARATOR).append(band.getName());
+        }
+        writer.println(header);
+    }
+
+    private static String readDataLine(BufferedReader reader) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.trim().isEmpty() && !line.startsWith("#")) {
+                return line;
+            }
+        }
+        return null;
+    }
+
+    private static SimpleDateFormat createTimeFormat() {
+        final SimpleDateFormat format = new SimpleDateFormat(TIME_PATTERN, Locale.ENGLISH);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format;
+    }
+
+    /**
+     * An in-situ coordinate.
+     */
+    public static class Matchup {
+
+        private final String name;
+        private final float lat;
+        private final float lon;
+        private final Date time;
+
+        public Matchup(String name, float lat, float lon, Date time) {
+            this.name = name;
+            this.lat = lat;
+            this.lon = lon;
+            this.time = time;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public float getLat() {
+            return lat;
+        }
+
+        public float getLon() {
+            return lon;
+        }
+
+        /**
+         * @return the in-situ time, or {@code null} if unknown
+         */
+        public Date getTime() {
+            return time;
+        }
+    }
+
+    /**
+     * The pixel window of an in-situ coordinate within a product.
+     */
+    static class MatchupWindow {
+
+        final Matchup matchup;
+        final Rectangle rectangle;
+
+        MatchupWindow(Matchup matchup, Rectangle rectangle) {
+            this.matchup = matchup;
+            this.rectangle = rectangle;
+        }
+    }
+}
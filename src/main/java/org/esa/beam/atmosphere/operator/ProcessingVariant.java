@@ -0,0 +1,129 @@
+package org.esa.beam.atmosphere.operator;
+
+import org.esa.beam.framework.gpf.OperatorException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A configuration of the AGC Glint correction which is processed in addition to the main configuration of the
+ * operator, sharing the reading and validation of the sources.
+ * <p/>
+ * Variants are given as semicolon-separated list, each variant as comma-separated list of parameter settings
+ * which override the main configuration, e.g.
+ * {@code deriveRwFromPath=true;outputReflecAs=IRRADIANCE_REFLECTANCES,doSmileCorrection=true}. The supported
+ * parameters are {@code deriveRwFromPath}, {@code outputReflecAs}, {@code doSmileCorrection} and
+ * {@code atmoNetMerisFile}, the latter is either a file or the name of a net resource of the operator, e.g.
+ * {@code old/25x30x40_5365.2.net}. The bands of the n-th variant get the suffix {@code _v<n>}.
+ */
+public final class ProcessingVariant {
+
+    private final String suffix;
+    private final boolean deriveRwFromPath;
+    private final ReflectanceEnum outputReflecAs;
+    private final boolean doSmileCorrection;
+    private final String atmoNetMeris;
+
+    ProcessingVariant(String suffix, boolean deriveRwFromPath, ReflectanceEnum outputReflecAs,
+                      boolean doSmileCorrection, String atmoNetMeris) {
+        this.suffix = suffix;
+        this.deriveRwFromPath = deriveRwFromPath;
+        this.outputReflecAs = outputReflecAs;
+        this.doSmileCorrection = doSmileCorrection;
+        this.atmoNetMeris = atmoNetMeris;
+    }
+
+    /**
+     * Parses variant definitions.
+     *
+     * @param definitions the definitions, may be {@code null} or empty
+     * @param main        the main configuration, which provides the settings not overridden by the variants
+     *
+     * @return the variants, in the order of their definitions
+     *
+     * @throws OperatorException if a definition is invalid
+     */
+    public static List<ProcessingVariant> parse(String definitions, ProcessingVariant main) {
+        if (definitions == null || definitions.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<ProcessingVariant> variants = new ArrayList<>();
+        for (String definition : definitions.split(";")) {
+            if (definition.trim().isEmpty()) {
+                continue;
+            }
+            boolean deriveRwFromPath = main.deriveRwFromPath;
+            ReflectanceEnum outputReflecAs = main.outputReflecAs;
+            boolean doSmileCorrection = main.doSmileCorrection;
+            String atmoNetMeris = main.atmoNetMeris;
+            for (String setting : definition.split(",")) {
+                final int separatorIndex = setting.indexOf('=');
+                if (separatorIndex < 0) {
+                    throw new OperatorException("Invalid variant setting '" + setting.trim() + "', expected name=value");
+                }
+                final String name = setting.substring(0, separatorIndex).trim();
+                final String value = setting.substring(separatorIndex + 1).trim();
+                switch (name) {
+                    case "deriveRwFromPath":
+                        deriveRwFromPath = parseBoolean(name, value);
+                        break;
+                    case "outputReflecAs":
+                        try {
+                            outputReflecAs = ReflectanceEnum.valueOf(value);
+                        } catch (IllegalArgumentException e) {
+                            throw new OperatorException("Invalid value of variant setting " + name + ": " + value);
+                        }
+                        break;
+                    case "doSmileCorrection":
+                        doSmileCorrection = parseBoolean(name, value);
+                        break;
+                    case "atmoNetMerisFile":
+                        atmoNetMeris = value;
+                        break;
+                    default:
+                        throw new OperatorException("Unsupported variant setting: " + name);
+                }
+            }
+            variants.add(new ProcessingVariant("_v" + (variants.size() + 1), deriveRwFromPath, outputReflecAs,
+                                               doSmileCorrection, atmoNetMeris));
+        }
+        return variants;
+    }
+
+    /**
+     * @return the suffix of the band names, empty for the main configuration
+     */
+    public String getSuffix() {
+        return suffix;
+    }
+
+    public boolean isDeriveRwFromPath() {
+        return deriveRwFromPath;
+    }
+
+    public ReflectanceEnum getOutputReflecAs() {
+        return outputReflecAs;
+    }
+
+    public boolean isDoSmileCorrection() {
+        return doSmileCorrection;
+    }
+
+    /**
+     * @return the file or resource name of the MERIS atmosphere net, {@code null} for the default net
+     */
+    public String getAtmoNetMeris() {
+        return atmoNetMeris;
+    }
+
+    private static boolean parseBoolean(String name, String value) {
+        if ("true".equalsIgnoreCase(value)) {
+            return true;
+        }
+        if ("false".equalsIgnoreCase(value)) {
+            return false;
+        }
+        throw new OperatorException("Invalid value of variant setting " + name + ": " + value);
+    }
+}
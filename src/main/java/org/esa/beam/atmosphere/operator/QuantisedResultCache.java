@@ -0,0 +1,269 @@
+package org.esa.beam.atmosphere.operator;
+
+import java.util.Locale;
+
+/**
+ * A fixed-size cache of neural net results keyed on the quantised net inputs, which lets pixels with nearly
+ * identical geometry and spectra, e.g. in homogeneous open-ocean regions, reuse the result of an earlier pixel.
+ * <p/>
+ * Each input is scaled to the training range of the net and quantised to the given step, which is thus a fraction
+ * of the training range. Two pixels whose quantised inputs agree share the result of the first one, so the step
+ * bounds the deviation of the inputs and the accuracy can be traded for speed. The results are stored in an
+ * open-addressed hash table of primitive arrays with linear probing; if no free slot is found within a few probes,
+ * the home slot is overwritten. Every n-th hit is verified by the caller, the maximum deviation of the cached
+ * from the computed values is recorded.
+ * <p/>
+ * Usage per pixel: {@link #lookup} the inputs; on a hit {@link #load} the values and, if
+ * {@link #isVerificationDue()}, compute them and {@link #verify} them; on a miss compute and {@link #store} them.
+ * Instances are not thread-safe, each thread needs its own cache.
+ */
+public final class QuantisedResultCache {
+
+    private static final int MAX_PROBES = 4;
+
+    private final int capacityMask;
+    private final int keyLength;
+    private final int valueLength;
+    private final double[] keyMin;
+    private final double[] keyScale;
+    private final int verificationInterval;
+    private final int[] keys;
+    private final double[] values;
+    private final boolean[] occupied;
+    private final int[] quantisedKey;
+    private int currentSlot;
+    private long hitCount;
+    private long missCount;
+    private long verificationCount;
+    private double maxError;
+
+    /**
+     * @param capacity             the number of entries, rounded up to a power of two
+     * @param keyMin               the lower limits of the training ranges of the inputs
+     * @param keyMax               the upper limits of the training ranges of the inputs
+     * @param valueLength          the number of values per entry
+     * @param step                 the quantisation step as fraction of the training ranges
+     * @param verificationInterval every how many hits the caller shall verify the cached values
+     */
+    public QuantisedResultCache(int capacity, double[] keyMin, double[] keyMax, int valueLength, double step,
+                                int verificationInterval) {
+        if (!(step > 0.0)) {
+            throw new IllegalArgumentException("Quantisation step must be positive");
+        }
+        final int tableSize = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        capacityMask = tableSize - 1;
+        keyLength = keyMin.length;
+        this.valueLength = valueLength;
+        this.keyMin = keyMin.clone();
+        keyScale = new double[keyLength];
+        for (int i = 0; i < keyLength; i++) {
+            keyScale[i] = 1.0 / ((keyMax[i] - keyMin[i]) * step);
+        }
+        this.verificationInterval = Math.max(1, verificationInterval);
+        keys = new int[tableSize * keyLength];
+        values = new double[tableSize * valueLength];
+        occupied = new boolean[tableSize];
+        quantisedKey = new int[keyLength];
+        currentSlot = -1;
+    }
+
+    /**
+     * Looks up the entry of the given inputs. Afterwards the entry is the current entry, which is
+     * {@link #load loaded}, {@link #store stored} or {@link #verify verified}.
+     *
+     * @param input the net inputs, additional values are ignored
+     *
+     * @return {@code true} if an entry for the inputs exists
+     */
+    public boolean lookup(double[] input) {
+        for (int i = 0; i < keyLength; i++) {
+            if (!quantise(input[i], i)) {
+                return miss(-1);
+            }
+        }
+        return find();
+    }
+
+    /**
+     * Single precision counterpart of {@link #lookup(double[])}.
+     *
+     * @param input the net inputs, additional values are ignored
+     *
+     * @return {@code true} if an entry for the inputs exists
+     */
+    public boolean lookup(float[] input) {
+        for (int i = 0; i < keyLength; i++) {
+            if (!quantise(input[i], i)) {
+                return miss(-1);
+            }
+        }
+        return find();
+    }
+
+    /**
+     * @return {@code true} if the values of the current hit shall be verified
+     */
+    public boolean isVerificationDue() {
+        return hitCount % verificationInterval == 0;
+    }
+
+    /**
+     * Copies values of the current entry.
+     *
+     * @param target the array receiving the values
+     * @param offset the index of the first value within the entry
+     */
+    public void load(double[] target, int offset) {
+        System.arraycopy(values, currentSlot * valueLength + offset, target, 0, target.length);
+    }
+
+    public void load(float[] target, int offset) {
+        final int start = currentSlot * valueLength + offset;
+        for (int i = 0; i < target.length; i++) {
+            target[i] = (float) values[start + i];
+        }
+    }
+
+    /**
+     * Stores values into the current entry after a miss. Nothing is stored if the inputs could not be quantised.
+     *
+     * @param source the values
+     * @param offset the index of the first value within the entry
+     */
+    public void store(double[] source, int offset) {
+        if (currentSlot >= 0) {
+            System.arraycopy(source, 0, values, currentSlot * valueLength + offset, source.length);
+        }
+    }
+
+    public void store(float[] source, int offset) {
+        if (currentSlot >= 0) {
+            final int start = currentSlot * valueLength + offset;
+            for (int i = 0; i < source.length; i++) {
+                values[start + i] = source[i];
+            }
+        }
+    }
+
+    /**
+     * Compares computed values with those of the current entry and records the maximum absolute deviation.
+     *
+     * @param computed the computed values
+     * @param offset   the index of the first value within the entry
+     */
+    public void verify(double[] computed, int offset) {
+        final int start = currentSlot * valueLength + offset;
+        for (int i = 0; i < computed.length; i++) {
+            maxError = Math.max(maxError, Math.abs(computed[i] - values[start + i]));
+        }
+        if (offset == 0) {
+            verificationCount++;
+        }
+    }
+
+    public void verify(float[] computed, int offset) {
+        final int start = currentSlot * valueLength + offset;
+        for (int i = 0; i < computed.length; i++) {
+            maxError = Math.max(maxError, Math.abs(computed[i] - values[start + i]));
+        }
+        if (offset == 0) {
+            verificationCount++;
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public long getVerificationCount() {
+        return verificationCount;
+    }
+
+    /**
+     * @return the maximum absolute deviation of the cached from the computed values found by verification
+     */
+    public double getMaxError() {
+        return maxError;
+    }
+
+    /**
+     * Adds the counts and the maximum error of another cache to this one.
+     *
+     * @param other the other cache
+     */
+    public void add(QuantisedResultCache other) {
+        hitCount += other.hitCount;
+        missCount += other.missCount;
+        verificationCount += other.verificationCount;
+        maxError = Math.max(maxError, other.maxError);
+    }
+
+    @Override
+    public String toString() {
+        final long lookupCount = hitCount + missCount;
+        return String.format(Locale.ENGLISH,
+                             "QuantisedResultCache[hits=%d of %d (%.1f %%), max error=%.3g (%d verified)]",
+                             hitCount, lookupCount, lookupCount > 0 ? 100.0 * hitCount / lookupCount : 0.0,
+                             maxError, verificationCount);
+    }
+
+    private boolean quantise(double value, int index) {
+        final double scaled = Math.floor((value - keyMin[index]) * keyScale[index] + 0.5);
+        // NaN fails both comparisons
+        if (!(scaled >= Integer.MIN_VALUE && scaled <= Integer.MAX_VALUE)) {
+            return false;
+        }
+        quantisedKey[index] = (int) scaled;
+        return true;
+    }
+
+    private boolean find() {
+        int hash = 0;
+        for (int i = 0; i < keyLength; i++) {
+            hash = 31 * hash + quantisedKey[i];
+        }
+        // spread the bits, neighbouring keys differ in the low bits only
+        hash *= 0x9E3779B1;
+        hash ^= hash >>> 16;
+        final int homeSlot = hash & capacityMask;
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            final int slot = (homeSlot + probe) & capacityMask;
+            if (!occupied[slot]) {
+                occupied[slot] = true;
+                writeKey(slot);
+                return miss(slot);
+            }
+            if (keyEquals(slot)) {
+                currentSlot = slot;
+                hitCount++;
+                return true;
+            }
+        }
+        writeKey(homeSlot);
+        return miss(homeSlot);
+    }
+
+    private boolean miss(int slot) {
+        currentSlot = slot;
+        missCount++;
+        return false;
+    }
+
+    private boolean keyEquals(int slot) {
+        final int start = slot * keyLength;
+        for (int i = 0; i < keyLength; i++) {
+            if (keys[start + i] != quantisedKey[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeKey(int slot) {
+        System.arraycopy(quantisedKey, 0, keys, slot * keyLength, keyLength);
+    }
+}
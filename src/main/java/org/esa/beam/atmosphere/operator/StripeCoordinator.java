@@ -0,0 +1,319 @@
+package org.esa.beam.atmosphere.operator;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.beam.framework.dataio.ProductIO;
+import org.esa.beam.framework.dataio.ProductWriter;
+import org.esa.beam.framework.datamodel.Band;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.datamodel.ProductData;
+import org.esa.beam.framework.gpf.OperatorException;
+import org.esa.beam.glint.util.TileSizeTuner;
+import org.esa.beam.util.ProductUtils;
+import org.esa.beam.util.io.FileUtils;
+import org.esa.beam.util.logging.BeamLogManager;
+
+import java.awt.Dimension;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+/**
+ * Processes a MERIS scene with the AGC Glint correction in several worker processes and stitches their results
+ * into one BEAM-DIMAP product.
+ * <p/>
+ * The scene is split into stripes of rows, each stripe is processed by a {@link StripeWorker} in its own JVM. All
+ * stripes use the nadir column of the full scene, so the view angle correction is the same as if the scene was
+ * processed at once. Columns are not split, thus all other pixel computations are unaffected by the stripes.
+ * <p/>
+ * By default the workers run on the local machine. A launcher prefix, e.g. {@code ssh node1}, runs a worker
+ * through that command instead; the products, the work directory and the classpath must then be reachable under
+ * the same paths on all machines. Several launchers are assigned to the stripes in turn. The arguments of the
+ * worker are quoted for the shell the launcher passes them to.
+ * <p/>
+ * A tile size of {@code auto} is resolved once for the full scene, the workers get the resolved size.
+ * <p/>
+ * Usage: {@code StripeCoordinator [-workers <n>] [-launcher "<prefix>"]... [-J<jvm-option>]...
+ * [-P<name>=<value>]... <meris-l1b> [<aatsr-l1b>] <output.dim>}
+ */
+public class StripeCoordinator {
+
+    private static final int MIN_STRIPE_HEIGHT = 16;
+    private static final String TILE_SIZE_PREFIX = "tileSize=";
+
+    private final Logger logger = BeamLogManager.getSystemLogger();
+    private final int workerCount;
+    private final List<String> launchers;
+    private final List<String> jvmOptions;
+    private final List<String> parameterSettings;
+
+    /**
+     * @param workerCount       the number of stripes, which are processed in parallel
+     * @param launchers         the command prefixes starting the workers, empty for local workers
+     * @param jvmOptions        the options of the worker JVMs, e.g. {@code -Xmx2g}
+     * @param parameterSettings the operator parameters as {@code name=value} settings
+     */
+    public StripeCoordinator(int workerCount, List<String> launchers, List<String> jvmOptions,
+                             List<String> parameterSettings) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("workerCount < 1");
+        }
+        // fail early, before any worker is started
+        StripeWorker.parseParameters(parameterSettings);
+        this.workerCount = workerCount;
+        this.launchers = launchers;
+        this.jvmOptions = jvmOptions;
+        this.parameterSettings = parameterSettings;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int workerCount = Runtime.getRuntime().availableProcessors();
+        final List<String> launchers = new ArrayList<>();
+        final List<String> jvmOptions = new ArrayList<>();
+        final List<String> parameterSettings = new ArrayList<>();
+        final List<String> paths = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            final String arg = args[i];
+            if ("-workers".equals(arg) && i + 1 < args.length) {
+                workerCount = Integer.parseInt(args[++i]);
+            } else if ("-launcher".equals(arg) && i + 1 < args.length) {
+                launchers.add(args[++i]);
+            } else if (arg.startsWith("-J")) {
+                jvmOptions.add(arg.substring(2));
+            } else if (arg.startsWith("-P")) {
+                parameterSettings.add(arg.substring(2));
+            } else {
+                paths.add(arg);
+            }
+        }
+        if (paths.size() < 2 || paths.size() > 3) {
+            System.err.println("Usage: StripeCoordinator [-workers <n>] [-launcher \"<prefix>\"]... " +
+                               "[-J<jvm-option>]... [-P<name>=<value>]... <meris-l1b> [<aatsr-l1b>] <output.dim>");
+            System.exit(1);
+        }
+        final File merisFile = new File(paths.get(0));
+        final File aatsrFile = paths.size() == 3 ? new File(paths.get(1)) : null;
+        final File outputFile = new File(paths.get(paths.size() - 1));
+
+        final StripeCoordinator coordinator = new StripeCoordinator(workerCount, launchers, jvmOptions,
+                                                                    parameterSettings);
+        coordinator.process(merisFile, aatsrFile, outputFile);
+        System.out.printf(Locale.ENGLISH, "%d stripes written to %s%n", workerCount, outputFile);
+    }
+
+    /**
+     * Processes a scene.
+     *
+     * @param merisFile  the MERIS L1b product
+     * @param aatsrFile  the AATSR L1b product, can be {@code null}
+     * @param outputFile the BEAM-DIMAP file receiving the result
+     *
+     * @throws IOException if a product cannot be read or written, or a worker fails
+     */
+    public void process(File merisFile, File aatsrFile, File outputFile) throws IOException {
+        final Product merisProduct = ProductIO.readProduct(merisFile);
+        if (merisProduct == null) {
+            throw new IOException("Cannot read product: " + merisFile);
+        }
+        try {
+            final int nadirColumn = MerisFlightDirection.findNadirColumnIndex(merisProduct);
+            final int[][] stripes = computeStripes(merisProduct.getSceneRasterHeight(), workerCount);
+            final List<String> workerSettings = resolveTileSize(parameterSettings, merisProduct,
+                                                                Runtime.getRuntime().availableProcessors(),
+                                                                TileSizeTuner.createReadCalibration(
+                                                                        merisProduct.getBands()));
+            final File workDir = new File(outputFile.getAbsoluteFile().getParentFile(),
+                                          FileUtils.getFilenameWithoutExtension(outputFile) + ".stripes");
+            if (!workDir.isDirectory() && !workDir.mkdirs()) {
+                throw new IOException("Cannot create directory: " + workDir);
+            }
+            final File[] stripeFiles = new File[stripes.length];
+            final Process[] workers = new Process[stripes.length];
+            try {
+                for (int i = 0; i < stripes.length; i++) {
+                    stripeFiles[i] = new File(workDir, String.format(Locale.ENGLISH, "stripe_%03d.dim", i));
+                    workers[i] = startWorker(i, merisFile, aatsrFile, stripes[i], nadirColumn, workerSettings,
+                                             stripeFiles[i]);
+                }
+                for (int i = 0; i < workers.length; i++) {
+                    final int exitCode = workers[i].waitFor();
+                    workers[i] = null;
+                    if (exitCode != 0) {
+                        throw new IOException("Worker of stripe " + i + " failed with exit code " + exitCode);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the workers", e);
+            } finally {
+                for (Process worker : workers) {
+                    if (worker != null) {
+                        worker.destroy();
+                    }
+                }
+            }
+            stitchStripes(merisProduct, stripes, stripeFiles, outputFile);
+            FileUtils.deleteTree(workDir);
+        } finally {
+            merisProduct.dispose();
+        }
+    }
+
+    /**
+     * Splits the rows of a scene into stripes of about equal height.
+     *
+     * @param sceneHeight the number of rows of the scene
+     * @param stripeCount the requested number of stripes
+     *
+     * @return the first row and the number of rows of each stripe; fewer stripes than requested if the stripes
+     *         would be lower than 16 rows
+     */
+    static int[][] computeStripes(int sceneHeight, int stripeCount) {
+        final int count = Math.max(1, Math.min(stripeCount, sceneHeight / MIN_STRIPE_HEIGHT));
+        final int[][] stripes = new int[count][2];
+        int firstRow = 0;
+        for (int i = 0; i < count; i++) {
+            final int nextRow = (int) ((long) sceneHeight * (i + 1) / count);
+            stripes[i][0] = firstRow;
+            stripes[i][1] = nextRow - firstRow;
+            firstRow = nextRow;
+        }
+        return stripes;
+    }
+
+    /**
+     * Replaces a tile size of {@code auto} by the size resolved for the full scene, so that the calibration runs
+     * once and not in every worker.
+     *
+     * @param parameterSettings the operator parameters as {@code name=value} settings
+     * @param merisProduct      the MERIS L1b product of the full scene
+     * @param coreCount         the number of cores
+     * @param calibration       the calibration, may be {@code null}
+     *
+     * @return the settings passed to the workers
+     */
+    static List<String> resolveTileSize(List<String> parameterSettings, Product merisProduct, int coreCount,
+                                        TileSizeTuner.Calibration calibration) {
+        final List<String> workerSettings = new ArrayList<>(parameterSettings.size());
+        for (String setting : parameterSettings) {
+            if (setting.startsWith(TILE_SIZE_PREFIX) &&
+                TileSizeTuner.AUTO.equalsIgnoreCase(setting.substring(TILE_SIZE_PREFIX.length()).trim())) {
+                final Dimension size = TileSizeTuner.resolve(TileSizeTuner.AUTO, merisProduct, coreCount,
+                                                             calibration);
+                workerSettings.add(TILE_SIZE_PREFIX + size.width + "x" + size.height);
+            } else {
+                workerSettings.add(setting);
+            }
+        }
+        return workerSettings;
+    }
+
+    private Process startWorker(int stripeIndex, File merisFile, File aatsrFile, int[] stripe, int nadirColumn,
+                                List<String> workerSettings, File stripeFile) throws IOException {
+        final List<String> workerCommand = new ArrayList<>();
+        workerCommand.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        workerCommand.addAll(jvmOptions);
+        workerCommand.add("-cp");
+        workerCommand.add(System.getProperty("java.class.path"));
+        workerCommand.add(StripeWorker.class.getName());
+        workerCommand.add(merisFile.getAbsolutePath());
+        workerCommand.add(aatsrFile != null ? aatsrFile.getAbsolutePath() : "-");
+        workerCommand.add(String.valueOf(stripe[0]));
+        workerCommand.add(String.valueOf(stripe[1]));
+        workerCommand.add(String.valueOf(nadirColumn));
+        workerCommand.add(stripeFile.getAbsolutePath());
+        workerCommand.addAll(workerSettings);
+        final String launcher = launchers.isEmpty() ? null : launchers.get(stripeIndex % launchers.size());
+
+        logger.info(String.format(Locale.ENGLISH, "Starting worker of stripe %d, rows %d to %d",
+                                  stripeIndex, stripe[0], stripe[0] + stripe[1] - 1));
+        final ProcessBuilder processBuilder = new ProcessBuilder(createCommand(launcher, workerCommand));
+        processBuilder.inheritIO();
+        return processBuilder.start();
+    }
+
+    /**
+     * Creates the command starting a worker. A launcher like {@code ssh} passes the worker command to a shell,
+     * which splits it into words again, so the arguments of the worker command are quoted for a POSIX shell.
+     *
+     * @param launcher      the command prefix starting the worker, {@code null} for a local worker
+     * @param workerCommand the command line of the worker JVM
+     *
+     * @return the command
+     */
+    static List<String> createCommand(String launcher, List<String> workerCommand) {
+        if (launcher == null || launcher.trim().isEmpty()) {
+            return workerCommand;
+        }
+        final List<String> command = new ArrayList<>(Arrays.asList(launcher.trim().split("\\s+")));
+        for (String argument : workerCommand) {
+            command.add(quoteForShell(argument));
+        }
+        return command;
+    }
+
+    static String quoteForShell(String argument) {
+        return "'" + argument.replace("'", "'\\''") + "'";
+    }
+
+    private static void stitchStripes(Product merisProduct, int[][] stripes, File[] stripeFiles,
+                                      File outputFile) throws IOException {
+        final Product[] stripeProducts = new Product[stripeFiles.length];
+        try {
+            for (int i = 0; i < stripeFiles.length; i++) {
+                stripeProducts[i] = ProductIO.readProduct(stripeFiles[i]);
+                if (stripeProducts[i] == null) {
+                    throw new IOException("Cannot read product: " + stripeFiles[i]);
+                }
+            }
+            final Product template = stripeProducts[0];
+            final int width = merisProduct.getSceneRasterWidth();
+            final Product product = new Product(template.getName(), template.getProductType(), width,
+                                                merisProduct.getSceneRasterHeight());
+            product.setStartTime(merisProduct.getStartTime());
+            product.setEndTime(merisProduct.getEndTime());
+            // the tie-point grids and the geo-coding of the stripes cover their rows only
+            ProductUtils.copyMetadata(template, product);
+            ProductUtils.copyTiePointGrids(merisProduct, product);
+            ProductUtils.copyGeoCoding(merisProduct, product);
+            ProductUtils.copyFlagBands(template, product, false);
+            for (Band band : template.getBands()) {
+                if (!product.containsBand(band.getName())) {
+                    ProductUtils.copyBand(band.getName(), template, product, false);
+                }
+            }
+            ProductUtils.copyMasks(template, product);
+            product.setAutoGrouping(template.getAutoGrouping());
+
+            final ProductWriter writer = ProductIO.getProductWriter(ProductIO.DEFAULT_FORMAT_NAME);
+            if (writer == null) {
+                throw new OperatorException("No writer found for " + ProductIO.DEFAULT_FORMAT_NAME);
+            }
+            try {
+                writer.writeProductNodes(product, outputFile);
+                for (Band band : product.getBands()) {
+                    for (int i = 0; i < stripes.length; i++) {
+                        final Band stripeBand = stripeProducts[i].getBand(band.getName());
+                        final ProductData data = ProductData.createInstance(stripeBand.getDataType(),
+                                                                            width * stripes[i][1]);
+                        stripeBand.readRasterData(0, 0, width, stripes[i][1], data, ProgressMonitor.NULL);
+                        writer.writeBandRasterData(band, 0, stripes[i][0], width, stripes[i][1], data,
+                                                   ProgressMonitor.NULL);
+                    }
+                }
+            } finally {
+                writer.close();
+            }
+            product.dispose();
+        } finally {
+            for (Product stripeProduct : stripeProducts) {
+                if (stripeProduct != null) {
+                    stripeProduct.dispose();
+                }
+            }
+        }
+    }
+}
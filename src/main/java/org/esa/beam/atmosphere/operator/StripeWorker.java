@@ -0,0 +1,168 @@
+package org.esa.beam.atmosphere.operator;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.beam.framework.dataio.ProductIO;
+import org.esa.beam.framework.dataio.ProductSubsetDef;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.gpf.GPF;
+import org.esa.beam.framework.gpf.OperatorException;
+import org.esa.beam.framework.gpf.OperatorSpi;
+import org.esa.beam.framework.gpf.annotations.Parameter;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Processes a stripe of rows of a MERIS scene with the AGC Glint correction and writes the result as BEAM-DIMAP
+ * product. Workers are started by the {@link StripeCoordinator}, usually as separate JVMs.
+ * <p/>
+ * Usage: {@code StripeWorker <meris-l1b> <aatsr-l1b|-> <first-row> <row-count> <nadir-column> <output.dim>
+ * [<name>=<value>...]}, the settings are operator parameters.
+ */
+public class StripeWorker {
+
+    private static final List<String> UNSUPPORTED_PARAMETERS = Arrays.asList("region", "geoRegion",
+                                                                            "previewSubsampling", "nadirColumn");
+
+    private StripeWorker() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 6) {
+            System.err.println("Usage: StripeWorker <meris-l1b> <aatsr-l1b|-> <first-row> <row-count> " +
+                               "<nadir-column> <output.dim> [<name>=<value>...]");
+            System.exit(1);
+        }
+        GPF.getDefaultInstance().getOperatorSpiRegistry().loadOperatorSpis();
+
+        final Product merisProduct = readProduct(args[0]);
+        final Product aatsrProduct = "-".equals(args[1]) ? null : readProduct(args[1]);
+        final int firstRow = Integer.parseInt(args[2]);
+        final int rowCount = Integer.parseInt(args[3]);
+        final int nadirColumn = Integer.parseInt(args[4]);
+        final File outputFile = new File(args[5]);
+        final Map<String, Object> parameters = parseParameters(Arrays.asList(args).subList(6, args.length));
+        try {
+            processStripe(merisProduct, aatsrProduct, firstRow, rowCount, nadirColumn, parameters, outputFile);
+        } finally {
+            merisProduct.dispose();
+            if (aatsrProduct != null) {
+                aatsrProduct.dispose();
+            }
+        }
+    }
+
+    /**
+     * Processes a stripe of rows.
+     *
+     * @param merisProduct the MERIS L1b product of the full scene
+     * @param aatsrProduct the AATSR L1b product, can be {@code null}
+     * @param firstRow     the first row of the stripe
+     * @param rowCount     the number of rows of the stripe
+     * @param nadirColumn  the nadir column of the full scene
+     * @param parameters   the operator parameters
+     * @param outputFile   the BEAM-DIMAP file receiving the result
+     *
+     * @throws IOException if the stripe cannot be written
+     */
+    public static void processStripe(Product merisProduct, Product aatsrProduct, int firstRow, int rowCount,
+                                     int nadirColumn, Map<String, Object> parameters, File outputFile) throws
+                                                                                                        IOException {
+        final ProductSubsetDef subsetDef = new ProductSubsetDef();
+        subsetDef.setRegion(0, firstRow, merisProduct.getSceneRasterWidth(), rowCount);
+        final Product stripeProduct = merisProduct.createSubset(subsetDef, merisProduct.getName(),
+                                                                merisProduct.getDescription());
+        try {
+            final Map<String, Object> stripeParameters = new HashMap<>(parameters);
+            stripeParameters.put("nadirColumn", nadirColumn);
+            final Map<String, Product> sourceProducts = new HashMap<>(2);
+            sourceProducts.put("merisProduct", stripeProduct);
+            if (aatsrProduct != null) {
+                sourceProducts.put("aatsrProduct", aatsrProduct);
+            }
+            final Product targetProduct = GPF.createProduct(OperatorSpi.getOperatorAlias(GlintCorrectionOperator.class),
+                                                            stripeParameters, sourceProducts);
+            GPF.writeProduct(targetProduct, outputFile, ProductIO.DEFAULT_FORMAT_NAME, false, ProgressMonitor.NULL);
+            targetProduct.dispose();
+        } finally {
+            stripeProduct.dispose();
+        }
+    }
+
+    /**
+     * Converts {@code name=value} settings into operator parameters of the types of the
+     * {@link GlintCorrectionOperator} parameters.
+     *
+     * @param settings the settings
+     *
+     * @return the parameters
+     *
+     * @throws OperatorException if a setting is invalid, unknown or not supported for stripes
+     */
+    static Map<String, Object> parseParameters(List<String> settings) {
+        final Map<String, Object> parameters = new HashMap<>();
+        for (String setting : settings) {
+            final int separatorIndex = setting.indexOf('=');
+            if (separatorIndex < 0) {
+                throw new OperatorException("Invalid parameter setting '" + setting + "', expected name=value");
+            }
+            final String name = setting.substring(0, separatorIndex);
+            final String value = setting.substring(separatorIndex + 1);
+            if (UNSUPPORTED_PARAMETERS.contains(name)) {
+                throw new OperatorException("Parameter " + name + " is not supported for stripe processing");
+            }
+            parameters.put(name, convert(getParameterField(name).getType(), name, value));
+        }
+        return parameters;
+    }
+
+    private static Field getParameterField(String name) {
+        try {
+            final Field field = GlintCorrectionOperator.class.getDeclaredField(name);
+            if (field.isAnnotationPresent(Parameter.class)) {
+                return field;
+            }
+        } catch (NoSuchFieldException e) {
+            // reported below
+        }
+        throw new OperatorException("Unknown parameter: " + name);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object convert(Class<?> type, String name, String value) {
+        try {
+            if (type == boolean.class) {
+                if (!"true".equalsIgnoreCase(value) && !"false".equalsIgnoreCase(value)) {
+                    throw new IllegalArgumentException(value);
+                }
+                return Boolean.valueOf(value);
+            } else if (type == int.class) {
+                return Integer.valueOf(value);
+            } else if (type == double.class) {
+                return Double.valueOf(value);
+            } else if (type == File.class) {
+                return new File(value);
+            } else if (type == String.class) {
+                return value;
+            } else if (type.isEnum()) {
+                return Enum.valueOf((Class<? extends Enum>) type, value);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new OperatorException("Invalid value of parameter " + name + ": " + value);
+        }
+        throw new OperatorException("Parameter " + name + " is not supported for stripe processing");
+    }
+
+    private static Product readProduct(String path) throws IOException {
+        final Product product = ProductIO.readProduct(path);
+        if (product == null) {
+            throw new IOException("Cannot read product: " + path);
+        }
+        return product;
+    }
+}
@@ -14,6 +14,7 @@ import org.esa.beam.framework.gpf.Tile;
 import org.esa.beam.framework.gpf.annotations.OperatorMetadata;
 import org.esa.beam.framework.gpf.annotations.SourceProduct;
 import org.esa.beam.framework.gpf.annotations.TargetProduct;
+import org.esa.beam.glint.util.TileComputationEvent;
 import org.esa.beam.util.ProductUtils;
 
 import java.text.MessageFormat;
@@ -82,6 +83,8 @@ public class ToaReflectanceOp extends Operator {
     @Override
     public void computeTile(Band targetBand, Tile targetTile, ProgressMonitor pm) throws OperatorException {
         checkForCancellation();
+        final TileComputationEvent tileEvent = TileComputationEvent.begin(getClass().getSimpleName(),
+                                                                          targetTile.getRectangle(), 1);
         try {
             final Band sourceBand = bandMap.get(targetBand);
             final RasterDataNode solzenGrid = sourceProduct.getRasterDataNode(SOLZEN_GRID_NAME);
@@ -97,6 +100,7 @@ public class ToaReflectanceOp extends Operator {
 
             final int height = targetTile.getHeight();
             final int width = targetTile.getWidth();
+            int validPixelCount = 0;
             for (int y = 0; y < height; y++) {
                 final int lineIndex = y * width;
                 for (int x = 0; x < width; x++) {
@@ -108,10 +112,12 @@ public class ToaReflectanceOp extends Operator {
                         final double solzen = solzenGrid.scale(solzenSamples.getElemFloatAt(index));
                         final double sample = toaRadiance / (solarFlux * Math.cos(Math.toRadians(solzen)));
                         toaReflSamples.setElemDoubleAt(index, sample);
+                        validPixelCount++;
                     }
                 }
             }
             targetTile.setRawSamples(toaReflSamples);
+            tileEvent.commit(validPixelCount);
         } finally {
             pm.done();
         }
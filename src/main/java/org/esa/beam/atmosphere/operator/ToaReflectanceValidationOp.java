@@ -15,6 +15,7 @@ import org.esa.beam.framework.gpf.annotations.OperatorMetadata;
 import org.esa.beam.framework.gpf.annotations.Parameter;
 import org.esa.beam.framework.gpf.annotations.SourceProduct;
 import org.esa.beam.framework.gpf.annotations.TargetProduct;
+import org.esa.beam.glint.util.TileComputationEvent;
 import org.esa.beam.util.ProductUtils;
 
 import java.text.MessageFormat;
@@ -38,6 +39,7 @@ public class ToaReflectanceValidationOp extends Operator {
     public static final int LAND_FLAG_MASK = 0x01;
     public static final int CLOUD_ICE_FLAG_MASK = 0x02;
     public static final int RLTOA_OOR_FLAG_MASK = 0x04;
+    public static final String RLTOA_OOR_EXPRESSION = "toa_reflec_13 >  0.035";
 
     @SourceProduct(alias = "input")
     private Product sourceProduct;
@@ -51,7 +53,7 @@ public class ToaReflectanceValidationOp extends Operator {
                notNull = true)
     private String cloudIceExpression = "l1_flags.INVALID";
 
-    @Parameter(defaultValue = "toa_reflec_13 >  0.035", label = "Out of range detection expression")
+    @Parameter(defaultValue = RLTOA_OOR_EXPRESSION, label = "Out of range detection expression")
     private String rlToaOorExpression;
 
     private Band landWaterBand;
@@ -102,6 +104,8 @@ public class ToaReflectanceValidationOp extends Operator {
 
     @Override
     public void computeTile(Band targetBand, Tile targetTile, ProgressMonitor pm) throws OperatorException {
+        final TileComputationEvent tileEvent = TileComputationEvent.begin(getClass().getSimpleName(),
+                                                                          targetTile.getRectangle(), 1);
         try {
             pm.beginTask("Computing TOA_Reflectance classification", 4 * targetTile.getHeight());
             ProductData targetSamples = targetTile.getRawSamples();
@@ -114,6 +118,7 @@ public class ToaReflectanceValidationOp extends Operator {
             final ProductData rlToaOorSamples = rlToaOorTile.getRawSamples();
 
 
+            int validPixelCount = 0;
             for (int y = 0; y < targetTile.getHeight(); y++) {
                 checkForCancellation();
                 final int lineIndex = y * targetTile.getWidth();
@@ -131,10 +136,14 @@ public class ToaReflectanceValidationOp extends Operator {
                         value |= RLTOA_OOR_FLAG_MASK;
                     }
                     targetSamples.setElemIntAt(index, value);
+                    if ((value & (LAND_FLAG_MASK | CLOUD_ICE_FLAG_MASK)) == 0) {
+                        validPixelCount++;
+                    }
                 }
                 pm.worked(1);
             }
             targetTile.setRawSamples(targetSamples);
+            tileEvent.commit(validPixelCount);
         } finally {
             pm.done();
         }
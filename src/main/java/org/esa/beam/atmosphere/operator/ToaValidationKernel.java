@@ -0,0 +1,216 @@
+package org.esa.beam.atmosphere.operator;
+
+import com.bc.jexp.EvalEnv;
+import com.bc.jexp.ParseException;
+import com.bc.jexp.Term;
+import com.bc.jexp.impl.AbstractSymbol;
+import com.bc.jexp.impl.DefaultNamespace;
+import com.bc.jexp.impl.ParserImpl;
+import org.esa.beam.framework.datamodel.Band;
+import org.esa.beam.framework.datamodel.FlagCoding;
+import org.esa.beam.framework.datamodel.ProductData;
+import org.esa.beam.framework.datamodel.RasterDataNode;
+
+import java.util.Map;
+
+import static org.esa.beam.atmosphere.operator.ToaReflectanceValidationOp.*;
+
+/**
+ * Computes the flags of the {@link ToaReflectanceValidationOp} directly on the source samples of a tile, without
+ * the intermediate products of the {@link ToaReflectanceOp} and the band maths operators.
+ * <p/>
+ * The expressions can refer to the TOA reflectances {@code toa_reflec_<n>}, to the given rasters by name and to
+ * the single flags of the L1b flags band, e.g. {@code l1_flags.BRIGHT}. As in the operator, no flag is raised for
+ * pixels flagged as {@code INVALID} in the L1b product. Instances are thread-safe.
+ */
+public final class ToaValidationKernel {
+
+    private static final String TOA_REFLEC_PREFIX = "toa_reflec_";
+    private static final String INVALID_FLAG_NAME = "INVALID";
+
+    private final RasterDataNode[] rasters;
+    private final int l1FlagsSlot;
+    private final int invalidMask;
+    private final Term landTerm;
+    private final Term cloudIceTerm;
+    private final Term rlToaOorTerm;
+
+    private ToaValidationKernel(RasterDataNode[] rasters, int l1FlagsSlot, int invalidMask, Term landTerm,
+                                Term cloudIceTerm, Term rlToaOorTerm) {
+        this.rasters = rasters;
+        this.l1FlagsSlot = l1FlagsSlot;
+        this.invalidMask = invalidMask;
+        this.landTerm = landTerm;
+        this.cloudIceTerm = cloudIceTerm;
+        this.rlToaOorTerm = rlToaOorTerm;
+    }
+
+    /**
+     * Creates the kernel.
+     *
+     * @param rasters            the rasters whose samples are passed to {@link #computeFlags}, they must include
+     *                           the L1b flags band and the sun zenith angle
+     * @param spectralBands      the radiance bands, in the order of the TOA reflectances
+     * @param solzenNode         the sun zenith angle
+     * @param l1FlagsNode        the L1b flags band
+     * @param landExpression     the land detection expression
+     * @param cloudIceExpression the cloud/ice detection expression
+     * @param rlToaOorExpression the out of range detection expression
+     *
+     * @return the kernel
+     *
+     * @throws ParseException if an expression is invalid or refers to a raster which is not given
+     */
+    public static ToaValidationKernel create(RasterDataNode[] rasters, Band[] spectralBands,
+                                             RasterDataNode solzenNode, RasterDataNode l1FlagsNode,
+                                             String landExpression, String cloudIceExpression,
+                                             String rlToaOorExpression) throws ParseException {
+        final DefaultNamespace namespace = new DefaultNamespace();
+        for (int slot = 0; slot < rasters.length; slot++) {
+            namespace.registerSymbol(new RasterSymbol(rasters[slot].getName(), rasters[slot], slot));
+        }
+        final int l1FlagsSlot = indexOf(rasters, l1FlagsNode);
+        final int solzenSlot = indexOf(rasters, solzenNode);
+        for (int i = 0; i < spectralBands.length; i++) {
+            final int slot = indexOf(rasters, spectralBands[i]);
+            if (slot >= 0 && solzenSlot >= 0) {
+                final String name = TOA_REFLEC_PREFIX + (i + 1);
+                namespace.registerSymbol(new ToaReflectanceSymbol(name, spectralBands[i], slot, solzenNode,
+                                                                  solzenSlot));
+            }
+        }
+        int invalidMask = 0;
+        final FlagCoding flagCoding = l1FlagsNode.getFlagCoding();
+        if (flagCoding != null && l1FlagsSlot >= 0) {
+            for (String flagName : flagCoding.getFlagNames()) {
+                final int mask = flagCoding.getFlagMask(flagName);
+                final String name = l1FlagsNode.getName() + "." + flagName;
+                namespace.registerSymbol(new FlagSymbol(name, l1FlagsSlot, mask));
+            }
+            invalidMask = flagCoding.getFlagMask(INVALID_FLAG_NAME);
+        }
+        final ParserImpl parser = new ParserImpl(namespace, false);
+        return new ToaValidationKernel(rasters, l1FlagsSlot, invalidMask,
+                                       parser.parse(landExpression),
+                                       parser.parse(cloudIceExpression),
+                                       parser.parse(rlToaOorExpression));
+    }
+
+    /**
+     * Computes the flags of the pixels of a tile.
+     *
+     * @param sourceSamples the raw samples of the tile, by raster name
+     * @param pixelCount    the number of pixels of the tile
+     *
+     * @return the flags, with the masks of the {@link ToaReflectanceValidationOp}
+     */
+    public ProductData computeFlags(Map<String, ProductData> sourceSamples, int pixelCount) {
+        final PixelEnv env = new PixelEnv(rasters.length);
+        for (int slot = 0; slot < rasters.length; slot++) {
+            env.samples[slot] = sourceSamples.get(rasters[slot].getName());
+        }
+        final byte[] flags = new byte[pixelCount];
+        for (int index = 0; index < pixelCount; index++) {
+            if (l1FlagsSlot >= 0 && (env.samples[l1FlagsSlot].getElemIntAt(index) & invalidMask) != 0) {
+                continue;
+            }
+            env.index = index;
+            byte value = 0;
+            if (landTerm.evalB(env)) {
+                value |= LAND_FLAG_MASK;
+            }
+            if (cloudIceTerm.evalB(env)) {
+                value |= CLOUD_ICE_FLAG_MASK;
+            }
+            if (rlToaOorTerm.evalB(env)) {
+                value |= RLTOA_OOR_FLAG_MASK;
+            }
+            flags[index] = value;
+        }
+        return ProductData.createInstance(flags);
+    }
+
+    private static int indexOf(RasterDataNode[] rasters, RasterDataNode raster) {
+        for (int i = 0; i < rasters.length; i++) {
+            if (rasters[i] == raster) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static final class PixelEnv implements EvalEnv {
+
+        private final ProductData[] samples;
+        private int index;
+
+        private PixelEnv(int rasterCount) {
+            samples = new ProductData[rasterCount];
+        }
+
+        private double getSample(RasterDataNode raster, int slot) {
+            return raster.scale(samples[slot].getElemDoubleAt(index));
+        }
+    }
+
+    private static final class RasterSymbol extends AbstractSymbol.D {
+
+        private final RasterDataNode raster;
+        private final int slot;
+
+        private RasterSymbol(String name, RasterDataNode raster, int slot) {
+            super(name);
+            this.raster = raster;
+            this.slot = slot;
+        }
+
+        @Override
+        public double evalD(EvalEnv env) {
+            return ((PixelEnv) env).getSample(raster, slot);
+        }
+    }
+
+    private static final class ToaReflectanceSymbol extends AbstractSymbol.D {
+
+        private final Band radianceBand;
+        private final int radianceSlot;
+        private final RasterDataNode solzenNode;
+        private final int solzenSlot;
+
+        private ToaReflectanceSymbol(String name, Band radianceBand, int radianceSlot, RasterDataNode solzenNode,
+                                     int solzenSlot) {
+            super(name);
+            this.radianceBand = radianceBand;
+            this.radianceSlot = radianceSlot;
+            this.solzenNode = solzenNode;
+            this.solzenSlot = solzenSlot;
+        }
+
+        @Override
+        public double evalD(EvalEnv env) {
+            final PixelEnv pixelEnv = (PixelEnv) env;
+            final double toaRadiance = pixelEnv.getSample(radianceBand, radianceSlot);
+            final double solzen = pixelEnv.getSample(solzenNode, solzenSlot);
+            // rounded like the float samples of the TOA reflectance product
+            return (float) (toaRadiance / (radianceBand.getSolarFlux() * Math.cos(Math.toRadians(solzen))));
+        }
+    }
+
+    private static final class FlagSymbol extends AbstractSymbol.B {
+
+        private final int slot;
+        private final int mask;
+
+        private FlagSymbol(String name, int slot, int mask) {
+            super(name);
+            this.slot = slot;
+            this.mask = mask;
+        }
+
+        @Override
+        public boolean evalB(EvalEnv env) {
+            final PixelEnv pixelEnv = (PixelEnv) env;
+            return (pixelEnv.samples[slot].getElemIntAt(pixelEnv.index) & mask) == mask;
+        }
+    }
+}
@@ -20,6 +20,15 @@ class Tosa {
     };
 
 
+    private static final double[] TAU_RAYL_STANDARD = new double[12];
+
+    static {
+        for (int i = 0; i < TAU_RAYL_STANDARD.length; i++) {
+            TAU_RAYL_STANDARD[i] = 0.008735 * Math.pow(GlintCorrection.MERIS_WAVELENGTHS[i] / 1000.0,
+                                                       -4.08);/* lam in µm */
+        }
+    }
+
     private double[] trans_oz_toa_tosa_down_surf;
     private double[] trans_oz_toa_tosa_up_surf;
     private double[] tau_rayl_toa_tosa;
@@ -31,6 +40,8 @@ class Tosa {
     private double[] ed_toa;
     private double[] edTosa;
     private double[] lTosa;
+    private double[] sun_toa;
+    private double[] lToa;
     private SmileCorrectionAuxdata smileAuxdata;
 
     /**
@@ -55,9 +66,22 @@ class Tosa {
         ed_toa = new double[length];
         edTosa = new double[length];
         lTosa = new double[length];
+        sun_toa = new double[length];
+        lToa = new double[length];
     }
 
-    public double[] perform(PixelData pixel, double teta_view_surf_rad, double teta_sun_surf_rad, double azi_diff_rad) {
+    /**
+     * Computes the TOSA reflectances. The working arrays are allocated by {@link #init()} and reused,
+     * an instance must therefore not be shared between threads.
+     *
+     * @param pixel              the pixel input data
+     * @param teta_view_surf_rad the viewing zenith angle
+     * @param teta_sun_surf_rad  the sun zenith angle
+     * @param azi_diff_rad       the azimuth difference, not used
+     * @param rlTosa             the array receiving the 12 TOSA reflectances
+     */
+    public void perform(PixelData pixel, double teta_view_surf_rad, double teta_sun_surf_rad, double azi_diff_rad,
+                        double[] rlTosa) {
 
         /* angles */
         double cos_teta_sun_surf = cos(teta_sun_surf_rad);
@@ -70,16 +94,13 @@ class Tosa {
         double azi_diff_surf_rad = acos(cos(azi_view_surf_rad - azi_sun_surf_rad));
         double cos_azi_diff_surf = cos(azi_diff_surf_rad);
 
-        double[] rlTosa = new double[12];
-        double[] tau_rayl_standard = new double[12];
-        double[] sun_toa;
         if (smileAuxdata != null) {
-            sun_toa = retrieveToaFrom(doSmileCorrection(pixel.detectorIndex, pixel.solar_flux, smileAuxdata));
+            retrieveSmileCorrectedToa(pixel.detectorIndex, pixel.solar_flux, smileAuxdata, sun_toa);
         } else {
-            sun_toa = retrieveToaFrom(pixel.solar_flux);
+            retrieveToa(pixel.solar_flux, sun_toa);
         }
 
-        double[] lToa = retrieveToaFrom(pixel.toa_radiance);
+        retrieveToa(pixel.toa_radiance, lToa);
 
         /* compute Ed_toa from sun_toa using  cos_teta_sun */
         for (int i = 0; i < ed_toa.length; i++) {
@@ -97,10 +118,8 @@ class Tosa {
 
 
         /* calculate optical thickness of rayleigh for correction layer, lam in micrometer */
-        for (int i = 0; i < tau_rayl_standard.length; i++) {
-            tau_rayl_standard[i] = 0.008735 * Math.pow(GlintCorrection.MERIS_WAVELENGTHS[i] / 1000.0,
-                                                       -4.08);/* lam in µm */
-            tau_rayl_toa_tosa[i] = tau_rayl_standard[i] * rayl_rest_mass;
+        for (int i = 0; i < TAU_RAYL_STANDARD.length; i++) {
+            tau_rayl_toa_tosa[i] = TAU_RAYL_STANDARD[i] * rayl_rest_mass;
         }
 
         /* calculate phase function for rayleigh path radiance*/
@@ -143,27 +162,23 @@ class Tosa {
             /* Calculate Lsat_tosa radiance reflectance as input to NN */
             rlTosa[i] = lTosa[i] / edTosa[i];
         }
-
-        return rlTosa;
     }
 
-    private static double[] doSmileCorrection(int detectorIndex, double[] solarFlux,
-                                              SmileCorrectionAuxdata smileAuxData) {
+    private static void retrieveSmileCorrectedToa(int detectorIndex, double[] solarFlux,
+                                                  SmileCorrectionAuxdata smileAuxData, double[] toa) {
         /* correct solar flux for this pixel */
-        double[] solarFluxSmile = new double[solarFlux.length];
         double[] detectorSunSpectralFlux = smileAuxData.getDetectorSunSpectralFluxes()[detectorIndex];
         double[] theoreticalSunSpectralFluxes = smileAuxData.getTheoreticalSunSpectralFluxes();
-        for (int i = 0; i < solarFlux.length; i++) {
-            solarFluxSmile[i] = solarFlux[i] * (detectorSunSpectralFlux[i] / theoreticalSunSpectralFluxes[i]);
+        for (int i = 0; i < toa.length; i++) {
+            // band 11 (index 10) is skipped
+            final int bandIndex = i < 10 ? i : i + 1;
+            toa[i] = solarFlux[bandIndex] * (detectorSunSpectralFlux[bandIndex] / theoreticalSunSpectralFluxes[bandIndex]);
         }
-        return solarFluxSmile;
     }
 
-    private static double[] retrieveToaFrom(double[] values) {
-        double[] toa = new double[12];
+    private static void retrieveToa(double[] values, double[] toa) {
         System.arraycopy(values, 0, toa, 0, 10);
         System.arraycopy(values, 11, toa, 10, 2);
-        return toa;
     }
 
 }
@@ -31,15 +31,19 @@ import org.esa.beam.framework.gpf.ui.TargetProductSelectorModel;
 import org.esa.beam.framework.ui.AppContext;
 
 import javax.swing.BorderFactory;
+import javax.swing.JButton;
 import javax.swing.JCheckBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
+import javax.swing.JSpinner;
 import javax.swing.JTabbedPane;
+import javax.swing.SpinnerNumberModel;
 import javax.swing.border.EmptyBorder;
 import javax.swing.border.TitledBorder;
 import java.awt.Color;
 import java.awt.Component;
+import java.awt.FlowLayout;
 import java.awt.Font;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
@@ -57,6 +61,8 @@ import java.util.Map;
  */
 public class GlintDialog extends SingleTargetProductDialog {
 
+    private static final int DEFAULT_PREVIEW_SUBSAMPLING = 8;
+
     private String operatorName;
     private List<SourceProductSelector> sourceProductSelectorList;
     private Map<Field, SourceProductSelector> sourceProductSelectorMap;
@@ -68,6 +74,7 @@ public class GlintDialog extends SingleTargetProductDialog {
     private JPanel flintNetPanel;
     private PropertyDescriptor[] rasterDataNodeTypeProperties;
     private ProductChangedHandler productChangedHandler;
+    private JSpinner previewSubsamplingSpinner;
 
     public GlintDialog(String operatorName, AppContext appContext, String title, String helpID) {
         super(appContext, title, helpID);
@@ -105,6 +112,7 @@ public class GlintDialog extends SingleTargetProductDialog {
         resetFlintProductSelector();
 
         ioParametersPanel.add(getTargetProductSelector().createDefaultPanel());
+        ioParametersPanel.add(createPreviewPanel());
         ioParametersPanel.add(tableLayout.createVerticalSpacer());
 
         this.form = new JTabbedPane();
@@ -210,6 +218,49 @@ public class GlintDialog extends SingleTargetProductDialog {
         return panel;
     }
 
+    private JPanel createPreviewPanel() {
+        final JPanel panel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        panel.setBorder(BorderFactory.createTitledBorder(null, "Quick Preview",
+                                                         TitledBorder.DEFAULT_JUSTIFICATION,
+                                                         TitledBorder.DEFAULT_POSITION,
+                                                         new Font("Tahoma", 0, 11),
+                                                         new Color(0, 70, 213)));
+        previewSubsamplingSpinner = new JSpinner(new SpinnerNumberModel(DEFAULT_PREVIEW_SUBSAMPLING, 2, 64, 1));
+        previewSubsamplingSpinner.setToolTipText("The scene is subsampled by this factor in both directions");
+        final JButton previewButton = new JButton("Create Preview");
+        previewButton.setToolTipText("Corrects a subsampled scene with the current parameters and opens the result");
+        previewButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                createPreviewProduct();
+            }
+        });
+        panel.add(new JLabel("Subsampling:"));
+        panel.add(previewSubsamplingSpinner);
+        panel.add(previewButton);
+        return panel;
+    }
+
+    private void createPreviewProduct() {
+        final HashMap<String, Product> sourceProducts = createSourceProductsMap();
+        final Product merisProduct = sourceProductSelectorList.get(0).getSelectedProduct();
+        if (merisProduct == null) {
+            showErrorDialog("Please select a MERIS L1b product.");
+            return;
+        }
+        final int subsampling = (Integer) previewSubsamplingSpinner.getValue();
+        final Map<String, Object> previewParameters = new HashMap<>(parameterMap);
+        previewParameters.put("previewSubsampling", subsampling);
+        try {
+            // the tiles are computed when the bands are displayed, which is fast for the subsampled scene
+            final Product previewProduct = GPF.createProduct(operatorName, previewParameters, sourceProducts);
+            previewProduct.setName(String.format("%s_preview_%dx", merisProduct.getName(), subsampling));
+            getAppContext().getProductManager().addProduct(previewProduct);
+        } catch (OperatorException e) {
+            showErrorDialog(e.getMessage());
+        }
+    }
+
     private void initSourceProductSelectors(OperatorSpi operatorSpi) {
         final Field[] fields = operatorSpi.getOperatorClass().getDeclaredFields();
         for (Field field : fields) {
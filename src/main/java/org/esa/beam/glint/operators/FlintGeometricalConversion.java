@@ -5,11 +5,15 @@ import com.bc.jnn.JnnNet;
 import org.esa.beam.glint.util.GlintHelpers;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * This class provides the computation of the geometrical conversion of the specular reflection from
  * AATSR observation geometry to MERIS observation geometry.
  * (FUB MERIS/AATSR Synergy ATBD (Draft), Ch. 2)
+ * <p/>
+ * The working arrays are allocated once per instance and the returned arrays are reused by the next call,
+ * so an instance must not be shared between threads.
  *
  * @author Olaf Danne
  * @version $Revision: 5451 $ $Date: 2009-06-05 18:36:49 +0200 (Fr, 05 Jun 2009) $
@@ -19,8 +23,15 @@ public class FlintGeometricalConversion implements Cloneable {
     public static final double refractiveIndexReal037 = 1.37;
     public static final double refractiveIndexReal088 = 1.33;
 
+    private static final int NUMBER_OF_WINDSPEEDS = 151;
+
     private JnnNet neuralNetWindspeed;
 
+    private final double[][] normalizedRadianceLUT = new double[2][NUMBER_OF_WINDSPEEDS];
+    private final float[][] merisNormalizedRadianceResult = new float[2][2];
+    private final double[] nnIn = new double[3];
+    private final double[] gaussPars = new double[4];
+
     @Override
     protected FlintGeometricalConversion clone()  {
         FlintGeometricalConversion conversion = new FlintGeometricalConversion();
@@ -51,8 +62,15 @@ public class FlintGeometricalConversion implements Cloneable {
     //
     protected static float[] getAmbiguityReducedRadiance(float[][] merisNormalizedRadianceResult,
                                                   float zonalWind, float meridionalWind) {
-        float[] result = new float[]{-1.0f, -1.0f};
+        return getAmbiguityReducedRadiance(merisNormalizedRadianceResult, zonalWind, meridionalWind,
+                                           new float[2]);
+    }
 
+    //
+    // Same as above, but writes the datapair into the given array, which is returned.
+    //
+    protected static float[] getAmbiguityReducedRadiance(float[][] merisNormalizedRadianceResult,
+                                                         float zonalWind, float meridionalWind, float[] result) {
         double windSpeed = Math.sqrt(zonalWind*zonalWind + meridionalWind*meridionalWind);
 
         final double wsDiff1 = Math.abs(merisNormalizedRadianceResult[0][0] - windSpeed);
@@ -95,13 +113,15 @@ public class FlintGeometricalConversion implements Cloneable {
     //
     // (breadboard step 2.a)
     //
+    // The returned array is reused by the next call.
+    //
     protected float[][] convertAatsrRad37ToMerisRad(float aatsrRad, float merisSunZenith, float merisViewZenith,
                                                 float aatsrAzimuthDifference, float merisAzimuthDifference) {
 
-        float[][] merisNormalizedRadianceResult = new float[][]{{-1.0f, -1.0f}, {-1.0f, -1.0f}};
+        Arrays.fill(merisNormalizedRadianceResult[0], -1.0f);
+        Arrays.fill(merisNormalizedRadianceResult[1], -1.0f);
 
-        final double[][] normalizedRadianceLUT = createNormalizedRadianceLUT(merisSunZenith, merisViewZenith,
-                aatsrAzimuthDifference);
+        createNormalizedRadianceLUT(merisSunZenith, merisViewZenith, aatsrAzimuthDifference);
 
         final double maximumAcceptableDiff = getMaximumAcceptableRadianceDiffInLUT(normalizedRadianceLUT[1]);
 
@@ -109,41 +129,41 @@ public class FlintGeometricalConversion implements Cloneable {
 
         if (maximumNormalizedRadianceIndex > 0 && maximumNormalizedRadianceIndex < normalizedRadianceLUT[1].length-1) {
             // two LUT solutions possible
-            merisNormalizedRadianceResult[0] = getRadianceFromLUT(normalizedRadianceLUT, 0, maximumNormalizedRadianceIndex-1,
-                    aatsrRad, merisSunZenith, maximumAcceptableDiff, merisViewZenith, merisAzimuthDifference);
+            getRadianceFromLUT(normalizedRadianceLUT, 0, maximumNormalizedRadianceIndex-1,
+                    aatsrRad, merisSunZenith, maximumAcceptableDiff, merisViewZenith, merisAzimuthDifference,
+                    merisNormalizedRadianceResult[0]);
 
-            merisNormalizedRadianceResult[1] = getRadianceFromLUT(normalizedRadianceLUT, maximumNormalizedRadianceIndex,
+            getRadianceFromLUT(normalizedRadianceLUT, maximumNormalizedRadianceIndex,
                     normalizedRadianceLUT[0].length-1,
-                    aatsrRad, merisSunZenith, maximumAcceptableDiff, merisViewZenith, merisAzimuthDifference);
+                    aatsrRad, merisSunZenith, maximumAcceptableDiff, merisViewZenith, merisAzimuthDifference,
+                    merisNormalizedRadianceResult[1]);
         } else {
             // monotone
             final int lutLength = normalizedRadianceLUT[1].length;
-            merisNormalizedRadianceResult[0] = getRadianceFromLUT(normalizedRadianceLUT, 0, lutLength-1,
-                    aatsrRad, merisSunZenith, maximumAcceptableDiff, merisViewZenith, aatsrAzimuthDifference);
+            getRadianceFromLUT(normalizedRadianceLUT, 0, lutLength-1,
+                    aatsrRad, merisSunZenith, maximumAcceptableDiff, merisViewZenith, aatsrAzimuthDifference,
+                    merisNormalizedRadianceResult[0]);
         }
 
         return merisNormalizedRadianceResult;
     }
 
-    private float[] getRadianceFromLUT(double[][] lut, int startIndex, int endIndex, float aatsrRad,
-                                      float merisSunZenith, double maximumAcceptableDiff,
-                                      float merisViewZenith, float merisAzimuthDifference) {
-
-        float[] radianceResult = new float[]{-1.0f, -1.0f};
+    private void getRadianceFromLUT(double[][] lut, int startIndex, int endIndex, float aatsrRad,
+                                    float merisSunZenith, double maximumAcceptableDiff,
+                                    float merisViewZenith, float merisAzimuthDifference, float[] radianceResult) {
 
-        final int lutLength = endIndex - startIndex + 1;
-        double[] radianceDiffs = new double[lutLength];
+        // minimum of the radiance differences, same as GlintHelpers.getMinimumValueIndexInDoubleArray()
+        int minRadianceDiffIndexInLUT = -1;
+        double minRadianceDiffInLUT = Double.MAX_VALUE;
         for (int i=startIndex; i<=endIndex; i++) {
-            radianceDiffs[i-startIndex] = Math.abs(lut[1][i] - aatsrRad);
+            final double radianceDiff = Math.abs(lut[1][i] - aatsrRad);
+            if (radianceDiff < minRadianceDiffInLUT) {
+                minRadianceDiffInLUT = radianceDiff;
+                minRadianceDiffIndexInLUT = i - startIndex;
+            }
         }
-        final int minRadianceDiffIndexInLUT = GlintHelpers.getMinimumValueIndexInDoubleArray(radianceDiffs);
-
-        final double minRadianceDiffInLUT = GlintHelpers.getMinimumValueInDoubleArray(radianceDiffs);
         final double windspeed = lut[0][startIndex+minRadianceDiffIndexInLUT];
 
-        final double[] nnIn = new double[3];
-        final double[] gaussPars = new double[4];
-
         // apply FUB NN...
         nnIn[0] = windspeed;
         nnIn[1] = refractiveIndexReal088;
@@ -154,8 +174,6 @@ public class FlintGeometricalConversion implements Cloneable {
             applyNeuralNetWindspeed(nnIn, gaussPars);
             radianceResult[1] = applyGauss2DRecall(merisViewZenith, merisAzimuthDifference, gaussPars);
         }
-
-        return radianceResult;
     }
 
 
@@ -163,35 +181,24 @@ public class FlintGeometricalConversion implements Cloneable {
     // This method generates a 1D LUT of AATSR normalized radiances for different wind speeds
     // (breadboard step 2.a.1)
     //
-    private double[][] createNormalizedRadianceLUT(float merisSunZenith, float merisViewZenith,
-                                                     float aatsrAzimuthDifference) {
+    private void createNormalizedRadianceLUT(float merisSunZenith, float merisViewZenith,
+                                             float aatsrAzimuthDifference) {
 
-        final int numberOfWindspeeds = 151;
+        final double[][] lookupTable = normalizedRadianceLUT;
 
-        double[][] lookupTable = new double[2][numberOfWindspeeds];
-
-        double[] windspeed = new double[numberOfWindspeeds];
-        double[] aatsrReflectanceSimulated = new double[numberOfWindspeeds];
-
-        final double[] nnIn = new double[3];
-        final double[] gaussPars = new double[4];
-
-        for (int i = 0; i < numberOfWindspeeds; i++) {
-            windspeed[i] = i * 13.0 / (numberOfWindspeeds - 1) + 1.0;
+        for (int i = 0; i < NUMBER_OF_WINDSPEEDS; i++) {
+            final double windspeed = i * 13.0 / (NUMBER_OF_WINDSPEEDS - 1) + 1.0;
 
             // apply FUB NN...
-            nnIn[0] = windspeed[i];
+            nnIn[0] = windspeed;
             nnIn[1] = refractiveIndexReal037;
             nnIn[2] = Math.cos(Math.toRadians(merisSunZenith));  // angle in degree!
 
             applyNeuralNetWindspeed(nnIn, gaussPars);
 
-            aatsrReflectanceSimulated[i] = gauss2DRecall(merisViewZenith, aatsrAzimuthDifference, gaussPars);
-            lookupTable[0][i] = windspeed[i];
-            lookupTable[1][i] = aatsrReflectanceSimulated[i];
+            lookupTable[0][i] = windspeed;
+            lookupTable[1][i] = gauss2DRecall(merisViewZenith, aatsrAzimuthDifference, gaussPars);
         }
-
-        return lookupTable;
     }
 
     //
@@ -14,9 +14,20 @@ import org.esa.beam.framework.gpf.annotations.OperatorMetadata;
 import org.esa.beam.framework.gpf.annotations.Parameter;
 import org.esa.beam.framework.gpf.annotations.SourceProduct;
 import org.esa.beam.framework.gpf.annotations.TargetProduct;
+import org.esa.beam.glint.util.ProcessingStatistics;
+import org.esa.beam.glint.util.TileSizeTuner;
+import org.esa.beam.glint.util.TileComputationEvent;
 import org.esa.beam.util.ProductUtils;
 
+import java.awt.Dimension;
 import java.awt.Rectangle;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 /**
  * Operator for FUB Glint processing ('FLINT').
@@ -101,36 +112,89 @@ public class FlintOp extends Operator {
     @Parameter(defaultValue = "true", label = "Normalized Radiance (Final Result)")
     private boolean writeNormalizedRadianceFinal;
 
+    @Parameter(defaultValue = "0", interval = "[0,*)", label = "Stripe height",
+               description = "If greater than zero, the target is tiled in full-width stripes of this height.")
+    private int stripeHeight;
+
+    @Parameter(label = "Tile size",
+               description = "The size of the target tiles as <width>x<height>, 'auto' to derive it from the " +
+                             "scene size, the number of cores and a short calibration run of the source reads, " +
+                             "or empty for the tiling of the source product. Ignored if a stripe height is given.")
+    private String tileSize;
+
+    @Parameter(defaultValue = "false", label = "Collect processing statistics")
+    private boolean collectStatistics;
+
     private static final String INVALID_EXPRESSION = "l1_flags_M.INVALID";
     private Band invalidBand;
+    // the band whose tiles are counted in the statistics, every band computes the same pixels
+    private Band countedBand;
 
     /* AATSR L1 Cloud Flags (just the ones needed) */
     static final int AATSR_L1_CF_LAND = 0;
     static final int AATSR_L1_CF_CLOUDY = 1;
     static final int AATSR_L1_CF_SUNGLINT = 2;
 
+    /* pixel classes counted in the processing statistics */
+    private static final int PIXEL_NOT_USEFUL = 0x01;
+    private static final int PIXEL_NO_WINDSPEED = 0x02;
+
     private FlintPreparation preparation;
     private FlintSolarPart37 solarPart37;
     private FlintSolarPart37WaterVapour solarPart37WaterVapour;
     private FlintGeometricalConversion geometricalConversion;
+    private final Queue<FlintWorkspace> workspacePool = new ConcurrentLinkedQueue<>();
+    private final Map<Rectangle, FutureTask<ViewAzimuths>> viewAzimuthCache = createViewAzimuthCache();
 
     private float solarIrradiance37;
+    private ProcessingStatistics statistics;
 
-    private Tile vaMerisTileComplete;
-    private Tile vaAatsrNadirTileComplete;
+    /**
+     * Creates a FLINT operator with default parameters.
+     *
+     * @param collocateProduct  the MERIS/AATSR collocation product
+     * @param stripeHeight      the height of full-width target stripes, 0 for the given tile size
+     * @param tileSize          the tile size, see the parameter {@code tileSize}
+     * @param collectStatistics whether processing statistics shall be collected
+     *
+     * @return the operator
+     */
+    public static FlintOp create(Product collocateProduct, int stripeHeight, String tileSize,
+                                 boolean collectStatistics) {
+        final FlintOp flintOp = new FlintOp();
+        flintOp.setParameterDefaultValues();
+        flintOp.collocateProduct = collocateProduct;
+        flintOp.stripeHeight = stripeHeight;
+        flintOp.tileSize = tileSize;
+        flintOp.collectStatistics = collectStatistics;
+        return flintOp;
+    }
+
+    /**
+     * @return the processing statistics, only available after initialisation
+     */
+    public ProcessingStatistics getStatistics() {
+        return statistics;
+    }
 
 
     @Override
     public void initialize() throws OperatorException {
 
+        if (collectStatistics) {
+            statistics = new ProcessingStatistics(collocateProduct.getName() + "_flint",
+                                                  new String[]{"NOT_USEFUL", "NO_WINDSPEED"},
+                                                  new int[]{PIXEL_NOT_USEFUL, PIXEL_NO_WINDSPEED});
+            statistics.register();
+        } else {
+            statistics = ProcessingStatistics.DISABLED;
+        }
+
         preparation = new FlintPreparation();
         solarPart37 = new FlintSolarPart37();
         solarPart37WaterVapour = new FlintSolarPart37WaterVapour();
         geometricalConversion = new FlintGeometricalConversion();
 
-        // todo: check if we need sth. like this!
-//        collocateProduct.setPreferredTileSize(400, 400);
-
         try {
             solarPart37.loadFlintAuxData();
             solarPart37WaterVapour.loadFlintAuxData();
@@ -148,18 +212,6 @@ public class FlintOp extends Operator {
         final int dayOfYear = preparation.getDayOfYear(startTime);
 
         solarIrradiance37 = preparation.computeSolarIrradiance37(dayOfYear);
-
-        // correction of azimuth discontinuity:
-        // set up tiles for MERIS and AATSR which cover the whole scene...
-        int sceneWidth = collocateProduct.getSceneRasterWidth();
-        int sceneHeight = collocateProduct.getSceneRasterHeight();
-        Rectangle rect = new Rectangle(0, 0, sceneWidth, sceneHeight);
-        vaMerisTileComplete = getSourceTile(collocateProduct.getTiePointGrid("view_azimuth"), rect);
-        vaAatsrNadirTileComplete = getSourceTile(collocateProduct.getBand("view_azimuth_nadir_S"), rect);
-
-        // correct azimuths in these tiles for later usage...
-        preparation.correctViewAzimuthLinear(vaMerisTileComplete, rect);
-        preparation.correctViewAzimuthLinear(vaAatsrNadirTileComplete, rect);
     }
 
     //
@@ -176,11 +228,32 @@ public class FlintOp extends Operator {
         ProductUtils.copyTiePointGrids(collocateProduct, targetProduct);
         ProductUtils.copyGeoCoding(collocateProduct, targetProduct);
         ProductUtils.copyMetadata(collocateProduct, targetProduct);
+        if (stripeHeight > 0) {
+            TileSizeTuner.applyTileSize(targetProduct, new Dimension(sceneWidth, Math.min(stripeHeight, sceneHeight)),
+                                        "stripeHeight");
+        } else {
+            final TileSizeTuner.Calibration calibration = TileSizeTuner.createReadCalibration(
+                    collocateProduct.getTiePointGrid("sun_zenith"),
+                    collocateProduct.getBand("radiance_14_M"),
+                    collocateProduct.getBand("reflec_nadir_1600_S"),
+                    collocateProduct.getBand("btemp_nadir_0370_S"));
+            final Dimension size = TileSizeTuner.resolve(tileSize, collocateProduct,
+                                                         Runtime.getRuntime().availableProcessors(), calibration);
+            if (size != null) {
+                TileSizeTuner.applyTileSize(targetProduct, size, TileSizeTuner.getOrigin(tileSize));
+            }
+        }
 //        setFlagBands();
 
         invalidBand = BandMathsHelper.createBooleanExpressionBand(INVALID_EXPRESSION, collocateProduct);
 
         setTargetBands();
+        for (Band band : targetProduct.getBands()) {
+            if (!band.isFlagBand()) {
+                countedBand = band;
+                break;
+            }
+        }
     }
 
     private void setTargetBands() {
@@ -278,8 +351,15 @@ public class FlintOp extends Operator {
         }
 
         pm.beginTask("Processing frame...", rectangle.height);
+        final TileComputationEvent tileEvent = TileComputationEvent.begin(getClass().getSimpleName(), rectangle, 1);
+        FlintWorkspace workspace = null;
+        final boolean counted = targetBand == countedBand;
 
         try {
+            if (counted) {
+                statistics.countTile();
+            }
+            long stageStart = statistics.startTimer();
             Tile szMerisTile = getSourceTile(collocateProduct.getTiePointGrid("sun_zenith"), rectangle);
             Tile vzMerisTile = getSourceTile(collocateProduct.getTiePointGrid("view_zenith"), rectangle);
             Tile saMerisTile = getSourceTile(collocateProduct.getTiePointGrid("sun_azimuth"), rectangle);
@@ -299,8 +379,16 @@ public class FlintOp extends Operator {
             Tile aatsrBTNadir1200Tile = getSourceTile(collocateProduct.getBand("btemp_nadir_1200_S"), rectangle);
 
             Tile isInvalid = getSourceTile(invalidBand, rectangle);
-            FlintGeometricalConversion conversion = geometricalConversion.clone();
-            FlintSolarPart37WaterVapour waterVapour = solarPart37WaterVapour.clone();
+
+            // correction of azimuth discontinuity works on complete rows, it is shared by all bands and tiles
+            // of the same rows
+            final ViewAzimuths viewAzimuths = getViewAzimuths(rectangle.y, rectangle.height);
+            statistics.stopTimer(ProcessingStatistics.Stage.SOURCE_FETCH, stageStart);
+
+            workspace = acquireWorkspace();
+            final FlintGeometricalConversion conversion = workspace.conversion;
+            final FlintSolarPart37WaterVapour waterVapour = workspace.waterVapour;
+            int validPixelCount = 0;
 
             for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
                 for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
@@ -318,7 +406,13 @@ public class FlintOp extends Operator {
                         || !preparation.isUsefulPixel(cloudFlagNadirLand, cloudFlagNadirCloudy, cloudFlagNadirSunglint,
                                                       aatsrViewElevation, aatsrBt37)) {
                         targetTile.setSample(x, y, 0);
+                        if (counted) {
+                            statistics.countPixel(PIXEL_NOT_USEFUL);
+                        }
                     } else {
+                        validPixelCount++;
+                        int pixelClass = 0;
+                        stageStart = statistics.startTimer();
 
                         // 1. The solar part of 3.7
                         // 1.a. Thermal extrapolation of 11/12 to 3.7
@@ -329,7 +423,7 @@ public class FlintOp extends Operator {
                         // 1.b.1 Calculation of water vapour
                         final float zonalWind = zonalWindTile.getSampleFloat(x, y);
                         final float meridWind = meridWindTile.getSampleFloat(x, y);
-                        float merisViewAzimuth = vaMerisTileComplete.getSampleFloat(x, y);
+                        float merisViewAzimuth = viewAzimuths.getMeris(x, y);
                         float merisSunAzimuth = saMerisTile.getSampleFloat(x, y);
                         float merisAzimuthDifference = preparation.removeAzimuthDifferenceAmbiguity(merisViewAzimuth,
                                                                                                     merisSunAzimuth);
@@ -412,16 +506,19 @@ public class FlintOp extends Operator {
                         }
 
                         if ("va_aatsr_corr".equals(targetBand.getName())) {
-                            targetTile.setSample(x, y, vaAatsrNadirTileComplete.getSampleFloat(x, y));
+                            targetTile.setSample(x, y, viewAzimuths.getAatsr(x, y));
                         }
                         if ("va_meris_corr".equals(targetBand.getName())) {
-                            targetTile.setSample(x, y, vaMerisTileComplete.getSampleFloat(x, y));
+                            targetTile.setSample(x, y, viewAzimuths.getMeris(x, y));
                         }
 
+                        statistics.stopTimer(ProcessingStatistics.Stage.FLINT_SOLAR_PART, stageStart);
+
                         // 2. The geometrical conversion
                         if (!cloud && targetBand.getName().startsWith("result_")) {
+                            stageStart = statistics.startTimer();
                             // 2.a AATSR - MERIS conversion
-                            float aatsrViewAzimuth = vaAatsrNadirTileComplete.getSampleFloat(x, y);
+                            float aatsrViewAzimuth = viewAzimuths.getAatsr(x, y);
                             float aatsrSunAzimuth = saAatsrNadirTile.getSampleFloat(x, y);
 
                             float aatsrAzimuthDifference = preparation.removeAzimuthDifferenceAmbiguity(
@@ -444,7 +541,8 @@ public class FlintOp extends Operator {
                             // 2.b Ambiuguity reduction and final output
                             if (FlintGeometricalConversion.windspeedFound(merisNormalizedRadianceResultMatrix) > 0) {
                                 final float[] finalResultWindspeedRadiance = FlintGeometricalConversion.getAmbiguityReducedRadiance
-                                        (merisNormalizedRadianceResultMatrix, zonalWind, meridWind);
+                                        (merisNormalizedRadianceResultMatrix, zonalWind, meridWind,
+                                         workspace.windspeedRadiance);
                                 if (targetBand.getName().equals(RESULT_RADIANCE1_NAME)) {
                                     targetTile.setSample(x, y, merisNormalizedRadianceResultMatrix[0][1]);
                                 }
@@ -465,19 +563,165 @@ public class FlintOp extends Operator {
                                 if (targetBand.getName().equals(RESULT_RADIANCE_FINAL_NAME)) {
                                     targetTile.setSample(x, y, finalResultWindspeedRadiance[1]);
                                 }
+                            } else {
+                                pixelClass = PIXEL_NO_WINDSPEED;
                             }
+                            statistics.stopTimer(ProcessingStatistics.Stage.FLINT_GEOMETRICAL_CONVERSION,
+                                                 stageStart);
+                        }
+                        if (counted) {
+                            statistics.countPixel(pixelClass);
                         }
                     }
                 }
                 pm.worked(1);
             }
+            tileEvent.commit(validPixelCount);
         } catch (Exception e) {
             throw new OperatorException("Failed to process Flint algorithm:\n" + e.getMessage(), e);
         } finally {
+            if (workspace != null) {
+                workspacePool.offer(workspace);
+            }
             pm.done();
         }
     }
 
+    private ViewAzimuths getViewAzimuths(final int y, final int height) {
+        final Rectangle rowsRectangle = new Rectangle(0, y, collocateProduct.getSceneRasterWidth(), height);
+        final FutureTask<ViewAzimuths> task;
+        final boolean miss;
+        synchronized (viewAzimuthCache) {
+            final FutureTask<ViewAzimuths> cachedTask = viewAzimuthCache.get(rowsRectangle);
+            miss = cachedTask == null;
+            if (miss) {
+                task = new FutureTask<>(new Callable<ViewAzimuths>() {
+                    @Override
+                    public ViewAzimuths call() {
+                        return computeViewAzimuths(rowsRectangle);
+                    }
+                });
+                viewAzimuthCache.put(rowsRectangle, task);
+            } else {
+                task = cachedTask;
+            }
+        }
+        if (miss) {
+            task.run();
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OperatorException(e);
+        } catch (ExecutionException e) {
+            synchronized (viewAzimuthCache) {
+                // do not cache failures, the next tile tries again
+                if (viewAzimuthCache.get(rowsRectangle) == task) {
+                    viewAzimuthCache.remove(rowsRectangle);
+                }
+            }
+            throw new OperatorException(e.getCause());
+        }
+    }
+
+    private ViewAzimuths computeViewAzimuths(Rectangle rowsRectangle) {
+        // the full width rows of MERIS and AATSR, the tiles are only used to correct the azimuth discontinuity
+        final Tile vaMerisTile = getSourceTile(collocateProduct.getTiePointGrid("view_azimuth"), rowsRectangle);
+        final Tile vaAatsrNadirTile = getSourceTile(collocateProduct.getBand("view_azimuth_nadir_S"),
+                                                    rowsRectangle);
+        // source tiles may share the cached source raster, so only copies are corrected
+        final float[] vaMeris = getSamples(vaMerisTile, rowsRectangle);
+        final float[] vaAatsrNadir = getSamples(vaAatsrNadirTile, rowsRectangle);
+        preparation.correctViewAzimuthLinear(vaMeris, rowsRectangle.width, rowsRectangle.height);
+        preparation.correctViewAzimuthLinear(vaAatsrNadir, rowsRectangle.width, rowsRectangle.height);
+        return new ViewAzimuths(rowsRectangle, vaMeris, vaAatsrNadir);
+    }
+
+    private static float[] getSamples(Tile tile, Rectangle rectangle) {
+        final float[] samples = new float[rectangle.width * rectangle.height];
+        int index = 0;
+        for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+            for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                samples[index++] = tile.getSampleFloat(x, y);
+            }
+        }
+        return samples;
+    }
+
+    private static Map<Rectangle, FutureTask<ViewAzimuths>> createViewAzimuthCache() {
+        // enough row bands for the tiles in progress on all threads
+        final int maxSize = 2 * Runtime.getRuntime().availableProcessors();
+        return new LinkedHashMap<Rectangle, FutureTask<ViewAzimuths>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Rectangle, FutureTask<ViewAzimuths>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    private FlintWorkspace acquireWorkspace() {
+        final FlintWorkspace workspace = workspacePool.poll();
+        if (workspace != null) {
+            return workspace;
+        }
+        return new FlintWorkspace(geometricalConversion.clone(), solarPart37WaterVapour.clone());
+    }
+
+    @Override
+    public void dispose() {
+        workspacePool.clear();
+        synchronized (viewAzimuthCache) {
+            viewAzimuthCache.clear();
+        }
+        if (statistics != null) {
+            statistics.unregister();
+        }
+        super.dispose();
+    }
+
+    /**
+     * The per-thread working objects of the per-pixel FLINT chain. Workspaces are pooled and handed to one tile
+     * computation at a time, so the nets are cloned once per thread instead of once per tile.
+     */
+    private static final class FlintWorkspace {
+
+        private final FlintGeometricalConversion conversion;
+        private final FlintSolarPart37WaterVapour waterVapour;
+        private final float[] windspeedRadiance = new float[2];
+
+        private FlintWorkspace(FlintGeometricalConversion conversion, FlintSolarPart37WaterVapour waterVapour) {
+            this.conversion = conversion;
+            this.waterVapour = waterVapour;
+        }
+    }
+
+    /**
+     * The corrected MERIS and AATSR view azimuths of complete rows.
+     */
+    private static final class ViewAzimuths {
+
+        private final int y;
+        private final int width;
+        private final float[] meris;
+        private final float[] aatsr;
+
+        private ViewAzimuths(Rectangle rowsRectangle, float[] meris, float[] aatsr) {
+            this.y = rowsRectangle.y;
+            this.width = rowsRectangle.width;
+            this.meris = meris;
+            this.aatsr = aatsr;
+        }
+
+        private float getMeris(int x, int y) {
+            return meris[(y - this.y) * width + x];
+        }
+
+        private float getAatsr(int x, int y) {
+            return aatsr[(y - this.y) * width + x];
+        }
+    }
+
     /**
      * The Service Provider Interface (SPI) for the operator.
      * It provides operator meta-data and is a factory for new operator instances.
@@ -128,28 +128,57 @@ public class FlintPreparation {
      * A method like this should be integrated in BEAM later.
      * Discuss other choices of fitting (second order as in breadboard?)
      *
+     * The correction is done row by row, so the rectangle must span complete image rows,
+     * but does not need to cover the whole scene.
+     *
      * @param viewAzimuthRaster  - va input tile
      * @param rect - underlying rectangle
      */
     public void correctViewAzimuthLinear(Tile viewAzimuthRaster, Rectangle rect) {
+        final float[] viewAzimuths = new float[rect.width * rect.height];
+        for (int y=0; y<rect.height; y++) {
+            for (int x=0; x<rect.width; x++) {
+                viewAzimuths[y * rect.width + x] = viewAzimuthRaster.getSampleFloat(rect.x + x, rect.y + y);
+            }
+        }
+
+        correctViewAzimuthLinear(viewAzimuths, rect.width, rect.height);
 
-        double[] yArray;
         for (int y=0; y<rect.height; y++) {
+            for (int x=0; x<rect.width; x++) {
+                viewAzimuthRaster.setSample(rect.x + x, rect.y + y, viewAzimuths[y * rect.width + x]);
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #correctViewAzimuthLinear(Tile, Rectangle)}, but corrects the given
+     * row-major samples in place, so the caller can correct a copy of shared source data.
+     *
+     * @param viewAzimuths - va samples of complete image rows
+     * @param width - number of samples per row
+     * @param height - number of rows
+     */
+    public void correctViewAzimuthLinear(float[] viewAzimuths, int width, int height) {
+
+        double[] yArray;
+        for (int y=0; y<height; y++) {
+           final int rowOffset = y * width;
            int startIndex = 0;
-           int endIndex = rect.width-1;
+           int endIndex = width-1;
 
            //
-           for (int x=1; x<rect.width; x++) {
-               if (viewAzimuthRaster.getSampleDouble(x, y) != 0.0 &&
-                   viewAzimuthRaster.getSampleDouble(x-1, y) == 0.0) {
+           for (int x=1; x<width; x++) {
+               if (viewAzimuths[rowOffset + x] != 0.0 &&
+                   viewAzimuths[rowOffset + x-1] == 0.0) {
                    startIndex = x;
                    break;
                }
            }
 
-           for (int x=0; x<rect.width-1; x++) {
-               if (viewAzimuthRaster.getSampleDouble(x, y) != 0.0 &&
-                   viewAzimuthRaster.getSampleDouble(x+1, y) == 0.0) {
+           for (int x=0; x<width-1; x++) {
+               if (viewAzimuths[rowOffset + x] != 0.0 &&
+                   viewAzimuths[rowOffset + x+1] == 0.0) {
                    endIndex = x;
                    break;
                }
@@ -162,7 +191,7 @@ public class FlintPreparation {
                yArray = new double[arrayLength];
 
                for (int x=startIndex; x<=endIndex; x++) {
-                    yArray[x-startIndex] = viewAzimuthRaster.getSampleDouble(x, y);
+                    yArray[x-startIndex] = viewAzimuths[rowOffset + x];
                }
 
                final double minValue = GlintHelpers.getMinimumValueInDoubleArray(yArray);
@@ -171,7 +200,7 @@ public class FlintPreparation {
                if (minValue != 0.0 || maxValue != 0.0) {
                    double[] correctedResult = getViewAzimuthCorrectionProfile(yArray);
                    for (int x=startIndex; x<endIndex; x++) {
-                       viewAzimuthRaster.setSample(x, y, correctedResult[x-startIndex]);
+                       viewAzimuths[rowOffset + x] = (float) correctedResult[x-startIndex];
                    }
                }
            }
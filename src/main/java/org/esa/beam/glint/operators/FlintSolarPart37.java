@@ -18,6 +18,8 @@ import java.util.logging.Logger;
  */
 public class FlintSolarPart37 {
 
+    private static final float[] THERMAL_EXTRAPOLATION_PARAMETERS = new float[] {4.91348f, 0.978489f, 1.37919f};
+
     private float[][] aCoeff37;
     private float[][] hCoeff37;
     private float[] hWeight37;
@@ -59,7 +61,7 @@ public class FlintSolarPart37 {
     // This method computes the thermal part of radiance in 3.7um channel (breadboard step 1.a)
     //
     protected float extrapolateTo37(float aa11, float aa12) {
-        final float[] par = new float[] {4.91348f, 0.978489f, 1.37919f};
+        final float[] par = THERMAL_EXTRAPOLATION_PARAMETERS;
 
         return ( par[0] + par[1]*aa11 + par[2]*(aa11-aa12) );
     }
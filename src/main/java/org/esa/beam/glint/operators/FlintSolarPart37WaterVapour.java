@@ -26,8 +26,18 @@ class FlintSolarPart37WaterVapour {
 
     private static final float WATER_VAPOUR_STANDARD_VALUE = 2.8f;
 
+    private static final float[][] NN_LIMITS = new float[][]{{3.75e-02f, 1.84e+01f},
+                                                             {-6.33e-01f, 6.31e-01f},
+                                                             {7.73e-01f, 1.00e+00f},
+                                                             {1.60e-01f, 9.26e-01f},
+                                                             {-6.98e-01f, 7.62e+00f}};
+
     private JnnNet neuralNetWv;
 
+    // working arrays, an instance must therefore not be shared between threads
+    private final double[] nnIn = new double[5];
+    private final double[] nnOut = new double[1];
+
     @Override
     protected FlintSolarPart37WaterVapour clone()  {
         FlintSolarPart37WaterVapour waterVapour = new FlintSolarPart37WaterVapour();
@@ -39,6 +49,10 @@ class FlintSolarPart37WaterVapour {
         neuralNetWv = FlintAuxData.getInstance().loadNeuralNet(FlintAuxData.NEURAL_NET_WV_OCEAN_MERIS_FILE_NAME);
     }
 
+    void applyNeuralNetWv(double[] nnIn, double[] nnOut) {
+        neuralNetWv.process(nnIn, nnOut);
+    }
+
     //
     //  This method computes the water vapour column to correct for transmission in 3.7um (and 1.6um) channel..
     // Computation by FUB neural net.
@@ -50,9 +64,6 @@ class FlintSolarPart37WaterVapour {
                                      float merisRadiance14, float merisRadiance15) {
         float waterVapour = WATER_VAPOUR_STANDARD_VALUE;   // standard value
 
-        final double[] nnIn = new double[5];
-        final double[] nnOut = new double[1];
-
         double windSpeed = Math.sqrt(zonalWind*zonalWind + meridionalWind*meridionalWind);
 
         // apply FUB NN...
@@ -63,16 +74,10 @@ class FlintSolarPart37WaterVapour {
         nnIn[3] = Math.cos(Math.toRadians(merisSunZenith));  // angle in degree!
         nnIn[4] = Math.log(Math.max(merisRadiance15, 1.0E-4)/Math.max(merisRadiance14, 1.0E-4));
 
-        float[][] nnLimits = new float[][]{{3.75e-02f, 1.84e+01f},
-                                           {-6.33e-01f, 6.31e-01f},
-                                           {7.73e-01f, 1.00e+00f},
-                                           {1.60e-01f, 9.26e-01f},
-                                           {-6.98e-01f, 7.62e+00f}};
-
         for (int i=0; i<nnIn.length; i++) {
-            if (nnIn[i] >= nnLimits[i][0] && nnIn[i] >= nnLimits[i][1]) {
+            if (nnIn[i] >= NN_LIMITS[i][0] && nnIn[i] >= NN_LIMITS[i][1]) {
                 // otherwise do not apply NN, keep WV to standard value
-                neuralNetWv.process(nnIn, nnOut);
+                applyNeuralNetWv(nnIn, nnOut);
                 waterVapour = (float) nnOut[0];
             }
         }
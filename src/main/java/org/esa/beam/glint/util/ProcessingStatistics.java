@@ -0,0 +1,363 @@
+package org.esa.beam.glint.util;
+
+import org.esa.beam.util.logging.BeamLogManager;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+
+/**
+ * Collects per-stage timings, pixel counts and flag histograms of a processing run.
+ * <p/>
+ * Every thread updates its own set of counters, so the hot path neither locks nor contends on shared
+ * memory. The counters of all threads are summed up when the statistics are read, e.g. via JMX or when
+ * the run report is written. The {@link #DISABLED} instance does not record anything.
+ */
+public class ProcessingStatistics implements ProcessingStatisticsMBean {
+
+    public enum Stage {
+        SOURCE_FETCH,
+        VALIDATION,
+        TOSA,
+        ATMOSPHERE_NET,
+        AUTO_ASSOC_NET,
+        NORMALIZATION_NET,
+        FLINT_LOOKUP,
+        FLINT_SOLAR_PART,
+        FLINT_GEOMETRICAL_CONVERSION,
+        WRITE_BACK
+    }
+
+    public static final ProcessingStatistics DISABLED = new ProcessingStatistics("disabled", new String[0],
+                                                                                  new int[0], false);
+
+    private static final String OBJECT_NAME_PATTERN = "org.esa.beam.glint:type=ProcessingStatistics,name=%s,id=%d";
+    private static final AtomicInteger INSTANCE_COUNT = new AtomicInteger();
+
+    private final String name;
+    private final String[] flagNames;
+    private final int[] flagMasks;
+    private final boolean enabled;
+    private final long startTime;
+    private final List<Counters> allCounters;
+    private final ThreadLocal<Counters> threadCounters;
+    private final List<ProcessingStatistics> children;
+    private ObjectName objectName;
+
+    /**
+     * @param name      the name of the run, e.g. the name of the target product
+     * @param flagNames the names of the flags counted in the histogram
+     * @param flagMasks the masks of the flags counted in the histogram
+     */
+    public ProcessingStatistics(String name, String[] flagNames, int[] flagMasks) {
+        this(name, flagNames, flagMasks, true);
+    }
+
+    private ProcessingStatistics(String name, String[] flagNames, int[] flagMasks, boolean enabled) {
+        if (flagNames.length != flagMasks.length) {
+            throw new IllegalArgumentException("flagNames.length != flagMasks.length");
+        }
+        this.name = name;
+        this.flagNames = flagNames.clone();
+        this.flagMasks = flagMasks.clone();
+        this.enabled = enabled;
+        startTime = System.currentTimeMillis();
+        allCounters = new CopyOnWriteArrayList<>();
+        children = new CopyOnWriteArrayList<>();
+        threadCounters = new ThreadLocal<Counters>() {
+            @Override
+            protected Counters initialValue() {
+                final Counters counters = new Counters(ProcessingStatistics.this.flagMasks.length);
+                allCounters.add(counters);
+                return counters;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Adds the statistics of a sub-process, which are included in the run report.
+     *
+     * @param child the statistics of the sub-process
+     */
+    public void addChild(ProcessingStatistics child) {
+        if (enabled && child.enabled) {
+            children.add(child);
+        }
+    }
+
+    /**
+     * @return the start time to be passed to {@link #stopTimer(Stage, long)}
+     */
+    public long startTimer() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    public void stopTimer(Stage stage, long startTime) {
+        if (enabled) {
+            threadCounters.get().addStage(stage.ordinal(), System.nanoTime() - startTime);
+        }
+    }
+
+    public void countTile() {
+        if (enabled) {
+            Counters.increment(threadCounters.get().tileCount);
+        }
+    }
+
+    /**
+     * Counts a processed pixel and adds its flags to the histogram.
+     *
+     * @param flags the flags of the pixel
+     */
+    public void countPixel(int flags) {
+        if (enabled) {
+            final Counters counters = threadCounters.get();
+            Counters.increment(counters.pixelCount);
+            for (int i = 0; i < flagMasks.length; i++) {
+                if ((flags & flagMasks[i]) != 0) {
+                    Counters.increment(counters.flagCounts, i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Registers this instance at the platform MBean server. Failures are logged, but not propagated.
+     */
+    public void register() {
+        if (!enabled || objectName != null) {
+            return;
+        }
+        try {
+            final String quotedName = ObjectName.quote(name);
+            objectName = new ObjectName(String.format(OBJECT_NAME_PATTERN, quotedName, INSTANCE_COUNT.incrementAndGet()));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (Exception e) {
+            objectName = null;
+            BeamLogManager.getSystemLogger().log(Level.WARNING, "Could not register processing statistics", e);
+        }
+    }
+
+    public void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (Exception e) {
+            BeamLogManager.getSystemLogger().log(Level.WARNING, "Could not unregister processing statistics", e);
+        } finally {
+            objectName = null;
+        }
+    }
+
+    /**
+     * Writes the run report in JSON format.
+     *
+     * @param file the report file
+     *
+     * @throws IOException if the report could not be written
+     */
+    public void writeReport(File file) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+            writer.write(getReport());
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getElapsedMillis() {
+        return System.currentTimeMillis() - startTime;
+    }
+
+    @Override
+    public long getTileCount() {
+        long count = 0;
+        for (Counters counters : allCounters) {
+            count += counters.tileCount.get();
+        }
+        return count;
+    }
+
+    @Override
+    public long getPixelCount() {
+        long count = 0;
+        for (Counters counters : allCounters) {
+            count += counters.pixelCount.get();
+        }
+        return count;
+    }
+
+    @Override
+    public String[] getStageNames() {
+        final Stage[] stages = Stage.values();
+        final String[] names = new String[stages.length];
+        for (int i = 0; i < stages.length; i++) {
+            names[i] = stages[i].name();
+        }
+        return names;
+    }
+
+    @Override
+    public long[] getStageCalls() {
+        final long[] calls = new long[Stage.values().length];
+        for (Counters counters : allCounters) {
+            for (int i = 0; i < calls.length; i++) {
+                calls[i] += counters.stageCalls.get(i);
+            }
+        }
+        return calls;
+    }
+
+    @Override
+    public double[] getStageMillis() {
+        final long[] nanos = new long[Stage.values().length];
+        for (Counters counters : allCounters) {
+            for (int i = 0; i < nanos.length; i++) {
+                nanos[i] += counters.stageNanos.get(i);
+            }
+        }
+        final double[] millis = new double[nanos.length];
+        for (int i = 0; i < nanos.length; i++) {
+            millis[i] = nanos[i] / 1.0e6;
+        }
+        return millis;
+    }
+
+    @Override
+    public String[] getFlagNames() {
+        return flagNames.clone();
+    }
+
+    @Override
+    public long[] getFlagCounts() {
+        final long[] flagCounts = new long[flagMasks.length];
+        for (Counters counters : allCounters) {
+            for (int i = 0; i < flagCounts.length; i++) {
+                flagCounts[i] += counters.flagCounts.get(i);
+            }
+        }
+        return flagCounts;
+    }
+
+    @Override
+    public String getReport() {
+        final StringBuilder sb = new StringBuilder();
+        appendJson(sb, "");
+        sb.append('\n');
+        return sb.toString();
+    }
+
+    private void appendJson(StringBuilder sb, String indent) {
+        final String inner = indent + "  ";
+        sb.append("{\n");
+        sb.append(inner).append("\"name\": ").append(quote(name)).append(",\n");
+        sb.append(inner).append("\"elapsedMillis\": ").append(getElapsedMillis()).append(",\n");
+        sb.append(inner).append("\"threads\": ").append(allCounters.size()).append(",\n");
+        sb.append(inner).append("\"tiles\": ").append(getTileCount()).append(",\n");
+        sb.append(inner).append("\"pixels\": ").append(getPixelCount()).append(",\n");
+
+        sb.append(inner).append("\"stages\": {");
+        final String[] stageNames = getStageNames();
+        final long[] stageCalls = getStageCalls();
+        final double[] stageMillis = getStageMillis();
+        String separator = "\n";
+        for (int i = 0; i < stageNames.length; i++) {
+            if (stageCalls[i] > 0) {
+                sb.append(separator).append(inner).append("  ").append(quote(stageNames[i]));
+                sb.append(String.format(Locale.ENGLISH, ": {\"calls\": %d, \"millis\": %.3f}",
+                                        stageCalls[i], stageMillis[i]));
+                separator = ",\n";
+            }
+        }
+        sb.append("\n").append(inner).append("},\n");
+
+        sb.append(inner).append("\"flags\": {");
+        final long[] flagCounts = getFlagCounts();
+        separator = "\n";
+        for (int i = 0; i < flagNames.length; i++) {
+            sb.append(separator).append(inner).append("  ").append(quote(flagNames[i]));
+            sb.append(": ").append(flagCounts[i]);
+            separator = ",\n";
+        }
+        sb.append("\n").append(inner).append("},\n");
+
+        sb.append(inner).append("\"children\": [");
+        final List<ProcessingStatistics> childList = new ArrayList<>(children);
+        for (int i = 0; i < childList.size(); i++) {
+            sb.append(i == 0 ? "\n" : ",\n").append(inner).append("  ");
+            childList.get(i).appendJson(sb, inner + "  ");
+        }
+        sb.append(childList.isEmpty() ? "]\n" : "\n" + inner + "]\n");
+        sb.append(indent).append("}");
+    }
+
+    private static String quote(String value) {
+        final StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * The counters of one thread. They are only written by that thread, so an ordered write of the incremented
+     * value suffices, while the JMX and report threads read the latest values.
+     */
+    private static final class Counters {
+
+        private final AtomicLongArray stageNanos = new AtomicLongArray(Stage.values().length);
+        private final AtomicLongArray stageCalls = new AtomicLongArray(Stage.values().length);
+        private final AtomicLongArray flagCounts;
+        private final AtomicLong tileCount = new AtomicLong();
+        private final AtomicLong pixelCount = new AtomicLong();
+
+        private Counters(int flagCount) {
+            flagCounts = new AtomicLongArray(flagCount);
+        }
+
+        private void addStage(int stage, long nanos) {
+            stageNanos.lazySet(stage, stageNanos.get(stage) + nanos);
+            increment(stageCalls, stage);
+        }
+
+        private static void increment(AtomicLong counter) {
+            counter.lazySet(counter.get() + 1);
+        }
+
+        private static void increment(AtomicLongArray counters, int index) {
+            counters.lazySet(index, counters.get(index) + 1);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.esa.beam.glint.util;
+
+/**
+ * Management interface of {@link ProcessingStatistics}, published via JMX while a processing run is active.
+ */
+public interface ProcessingStatisticsMBean {
+
+    String getName();
+
+    long getElapsedMillis();
+
+    long getTileCount();
+
+    long getPixelCount();
+
+    String[] getStageNames();
+
+    long[] getStageCalls();
+
+    double[] getStageMillis();
+
+    String[] getFlagNames();
+
+    long[] getFlagCounts();
+
+    String getReport();
+}
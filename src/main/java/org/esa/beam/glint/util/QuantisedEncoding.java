@@ -0,0 +1,95 @@
+package org.esa.beam.glint.util;
+
+import org.esa.beam.framework.datamodel.Band;
+import org.esa.beam.framework.datamodel.ProductData;
+
+/**
+ * Encodes the geophysical values of a band as unsigned 16 bit integers with a linear scaling.
+ * <p/>
+ * The raw values {@code 0 ... 65534} cover the value range evenly, the raw value {@code 65535} is the no-data
+ * value and stands for NaN. Values outside the range are clamped to the range limits. The scaling is set on the
+ * band, so that readers of the product see the geophysical values again.
+ */
+public final class QuantisedEncoding {
+
+    public static final int DATA_TYPE = ProductData.TYPE_UINT16;
+    public static final int NO_DATA_VALUE = 0xFFFF;
+
+    private static final int MAX_RAW_VALUE = NO_DATA_VALUE - 1;
+
+    private final double scalingOffset;
+    private final double scalingFactor;
+
+    /**
+     * Creates an encoding for a value range.
+     *
+     * @param minValue the smallest value to be encoded
+     * @param maxValue the largest value to be encoded
+     *
+     * @return the encoding
+     *
+     * @throws IllegalArgumentException if the range is empty or not finite
+     */
+    public static QuantisedEncoding create(double minValue, double maxValue) {
+        if (!(maxValue > minValue) || Double.isInfinite(minValue) || Double.isInfinite(maxValue)) {
+            throw new IllegalArgumentException("Invalid value range [" + minValue + ", " + maxValue + "]");
+        }
+        return new QuantisedEncoding(minValue, (maxValue - minValue) / MAX_RAW_VALUE);
+    }
+
+    private QuantisedEncoding(double scalingOffset, double scalingFactor) {
+        this.scalingOffset = scalingOffset;
+        this.scalingFactor = scalingFactor;
+    }
+
+    public double getScalingOffset() {
+        return scalingOffset;
+    }
+
+    public double getScalingFactor() {
+        return scalingFactor;
+    }
+
+    /**
+     * Sets the scaling and the no-data value of a band, which must be of type {@link #DATA_TYPE}.
+     *
+     * @param band the band
+     */
+    public void applyTo(Band band) {
+        band.setScalingOffset(scalingOffset);
+        band.setScalingFactor(scalingFactor);
+        band.setNoDataValue(NO_DATA_VALUE);
+        band.setNoDataValueUsed(true);
+    }
+
+    /**
+     * @param value a geophysical value
+     *
+     * @return the raw value
+     */
+    public int encode(double value) {
+        if (Double.isNaN(value)) {
+            return NO_DATA_VALUE;
+        }
+        final double rawValue = Math.rint((value - scalingOffset) / scalingFactor);
+        if (rawValue <= 0.0) {
+            return 0;
+        }
+        if (rawValue >= MAX_RAW_VALUE) {
+            return MAX_RAW_VALUE;
+        }
+        return (int) rawValue;
+    }
+
+    /**
+     * @param rawValue a raw value
+     *
+     * @return the geophysical value, NaN for the no-data value
+     */
+    public double decode(int rawValue) {
+        if (rawValue == NO_DATA_VALUE) {
+            return Double.NaN;
+        }
+        return scalingOffset + rawValue * scalingFactor;
+    }
+}
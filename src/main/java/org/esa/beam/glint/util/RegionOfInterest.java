@@ -0,0 +1,198 @@
+package org.esa.beam.glint.util;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Polygon;
+import org.esa.beam.framework.datamodel.GeoCoding;
+import org.esa.beam.framework.datamodel.GeoPos;
+import org.esa.beam.framework.datamodel.PixelPos;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.gpf.OperatorException;
+
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.Area;
+import java.awt.geom.Path2D;
+import java.util.List;
+
+/**
+ * The part of a scene a processor computes results for, given as a pixel region, a geographical region, both, or
+ * as a set of pixel windows.
+ * <p/>
+ * The geographical region is converted into pixel coordinates once using the geo-coding of the product. A pixel
+ * belongs to the region of interest if it lies within the pixel region and its centre lies within the
+ * geographical region. Tiles which do not intersect the region of interest need not be computed at all.
+ */
+public class RegionOfInterest {
+
+    private final Rectangle bounds;
+    private final Shape pixelOutline;
+
+    /**
+     * Creates the region of interest of a product.
+     *
+     * @param product   the product
+     * @param region    the pixel region, may be {@code null}
+     * @param geoRegion the geographical region, a polygon or multi-polygon, may be {@code null}
+     *
+     * @return the region of interest, or {@code null} if neither a pixel nor a geographical region is given
+     *
+     * @throws OperatorException if the region of interest does not intersect the scene
+     */
+    public static RegionOfInterest create(Product product, Rectangle region, Geometry geoRegion) {
+        if (region == null && geoRegion == null) {
+            return null;
+        }
+        final Rectangle sceneBounds = new Rectangle(product.getSceneRasterWidth(), product.getSceneRasterHeight());
+        Rectangle bounds = region != null ? region.intersection(sceneBounds) : sceneBounds;
+        Path2D pixelOutline = null;
+        if (geoRegion != null) {
+            pixelOutline = createPixelOutline(geoRegion, product.getGeoCoding());
+            // the outline bounds are enlarged by one pixel, so that no pixel centre on the border is lost
+            final Rectangle outlineBounds = pixelOutline.getBounds();
+            outlineBounds.grow(1, 1);
+            bounds = bounds.intersection(outlineBounds);
+        }
+        if (bounds.isEmpty()) {
+            throw new OperatorException("The region of interest does not intersect the scene.");
+        }
+        return new RegionOfInterest(bounds, pixelOutline);
+    }
+
+    /**
+     * Creates the region of interest covering a set of pixel windows, e.g. the windows around in-situ stations.
+     *
+     * @param product the product
+     * @param windows the pixel windows, which may overlap
+     *
+     * @return the region of interest
+     *
+     * @throws OperatorException if none of the windows intersects the scene
+     */
+    public static RegionOfInterest create(Product product, List<Rectangle> windows) {
+        final Rectangle sceneBounds = new Rectangle(product.getSceneRasterWidth(), product.getSceneRasterHeight());
+        final Area pixelOutline = new Area();
+        for (Rectangle window : windows) {
+            final Rectangle clippedWindow = window.intersection(sceneBounds);
+            if (!clippedWindow.isEmpty()) {
+                pixelOutline.add(new Area(clippedWindow));
+            }
+        }
+        final Rectangle bounds = pixelOutline.getBounds();
+        if (bounds.isEmpty()) {
+            throw new OperatorException("The region of interest does not intersect the scene.");
+        }
+        return new RegionOfInterest(bounds, pixelOutline);
+    }
+
+    private RegionOfInterest(Rectangle bounds, Shape pixelOutline) {
+        this.bounds = bounds;
+        this.pixelOutline = pixelOutline;
+    }
+
+    /**
+     * @return the pixel bounds of the region of interest within the scene
+     */
+    public Rectangle getBounds() {
+        return new Rectangle(bounds);
+    }
+
+    /**
+     * @param rectangle a pixel rectangle
+     *
+     * @return {@code false} if no pixel of the rectangle belongs to the region of interest
+     */
+    public boolean intersects(Rectangle rectangle) {
+        return bounds.intersects(rectangle) && (pixelOutline == null || pixelOutline.intersects(rectangle));
+    }
+
+    /**
+     * @param x the pixel x coordinate
+     * @param y the pixel y coordinate
+     *
+     * @return {@code true} if the pixel belongs to the region of interest
+     */
+    public boolean contains(int x, int y) {
+        return bounds.contains(x, y) && (pixelOutline == null || pixelOutline.contains(x + 0.5, y + 0.5));
+    }
+
+    /**
+     * Creates the mask of the pixels of a rectangle which belong to the region of interest.
+     *
+     * @param rectangle a pixel rectangle
+     *
+     * @return the mask in row-major order, or {@code null} if all pixels belong to the region of interest
+     */
+    public boolean[] createMask(Rectangle rectangle) {
+        if (bounds.contains(rectangle) && (pixelOutline == null || pixelOutline.contains(rectangle))) {
+            return null;
+        }
+        final boolean[] mask = new boolean[rectangle.width * rectangle.height];
+        for (int y = 0; y < rectangle.height; y++) {
+            for (int x = 0; x < rectangle.width; x++) {
+                mask[y * rectangle.width + x] = contains(rectangle.x + x, rectangle.y + y);
+            }
+        }
+        return mask;
+    }
+
+    private static Path2D createPixelOutline(Geometry geoRegion, GeoCoding geoCoding) {
+        if (geoCoding == null || !geoCoding.canGetPixelPos()) {
+            throw new OperatorException("A geographical region requires a product with a geo-coding.");
+        }
+        // even-odd winding turns the interior rings into holes
+        final Path2D outline = new Path2D.Double(Path2D.WIND_EVEN_ODD);
+        for (int i = 0; i < geoRegion.getNumGeometries(); i++) {
+            final Geometry geometry = geoRegion.getGeometryN(i);
+            if (!(geometry instanceof Polygon)) {
+                throw new OperatorException("The geographical region must be a polygon or a multi-polygon.");
+            }
+            final Polygon polygon = (Polygon) geometry;
+            appendRing(outline, polygon.getExteriorRing(), geoCoding);
+            for (int k = 0; k < polygon.getNumInteriorRing(); k++) {
+                appendRing(outline, polygon.getInteriorRingN(k), geoCoding);
+            }
+        }
+        return outline;
+    }
+
+    private static void appendRing(Path2D outline, LineString ring, GeoCoding geoCoding) {
+        final Coordinate[] coordinates = ring.getCoordinates();
+        final GeoPos geoPos = new GeoPos();
+        PixelPos previousPixelPos = getPixelPos(coordinates[0].y, coordinates[0].x, geoCoding, geoPos);
+        outline.moveTo(previousPixelPos.x, previousPixelPos.y);
+        for (int i = 1; i < coordinates.length; i++) {
+            final Coordinate start = coordinates[i - 1];
+            final Coordinate end = coordinates[i];
+            final PixelPos endPixelPos = getPixelPos(end.y, end.x, geoCoding, geoPos);
+            // an edge is straight in geographical coordinates, but curved in the pixel coordinates of a swath,
+            // so it is followed at about pixel spacing
+            final double pixelLength = Math.max(Math.abs(endPixelPos.x - previousPixelPos.x),
+                                                Math.abs(endPixelPos.y - previousPixelPos.y));
+            final int stepCount = (int) Math.ceil(pixelLength);
+            for (int step = 1; step < stepCount; step++) {
+                final double fraction = (double) step / stepCount;
+                final PixelPos pixelPos = getPixelPos(start.y + fraction * (end.y - start.y),
+                                                      start.x + fraction * (end.x - start.x), geoCoding, geoPos);
+                outline.lineTo(pixelPos.x, pixelPos.y);
+            }
+            outline.lineTo(endPixelPos.x, endPixelPos.y);
+            previousPixelPos = endPixelPos;
+        }
+        outline.closePath();
+    }
+
+    private static PixelPos getPixelPos(double lat, double lon, GeoCoding geoCoding, GeoPos geoPos) {
+        // WKT coordinates are given as longitude latitude
+        geoPos.lat = (float) lat;
+        geoPos.lon = (float) lon;
+        final PixelPos pixelPos = geoCoding.getPixelPos(geoPos, new PixelPos());
+        if (!pixelPos.isValid()) {
+            throw new OperatorException(String.format(
+                    "The geographical region cannot be located in the scene at lat=%s, lon=%s.",
+                    geoPos.lat, geoPos.lon));
+        }
+        return pixelPos;
+    }
+}
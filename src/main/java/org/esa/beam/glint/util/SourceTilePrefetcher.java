@@ -0,0 +1,242 @@
+package org.esa.beam.glint.util;
+
+import java.awt.Rectangle;
+import java.awt.image.RenderedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Requests the source tiles of upcoming target tiles in the background, so that reading the source products
+ * overlaps with the computation of the current target tile.
+ * <p/>
+ * Target tiles are assumed to be computed in row-major order. When the computation of a target tile starts,
+ * {@link #prefetchFollowing} requests the tiles of all source images which intersect the next target tiles,
+ * up to the look-ahead. The requested tiles end up in the tile cache, so that the subsequent
+ * {@code getSourceTile} calls of the operator do not have to wait for I/O. Each target tile is prefetched only
+ * once, and at most look-ahead requests are pending at any time; further requests are dropped and retried
+ * with the next call. Failures are only logged, because the operator will request the tile again and report
+ * the error there.
+ */
+public class SourceTilePrefetcher {
+
+    private static final Logger LOGGER = Logger.getLogger(SourceTilePrefetcher.class.getName());
+
+    private final RenderedImage[] sourceImages;
+    private final Rectangle sceneBounds;
+    private final int tileWidth;
+    private final int tileHeight;
+    private final int lookAhead;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final Set<Rectangle> requested;
+    private final List<Future<?>> pending;
+    private volatile boolean cancelled;
+
+    /**
+     * Creates a prefetcher with its own background thread.
+     *
+     * @param sourceImages the images whose tiles are prefetched
+     * @param sceneBounds  the bounds of the target scene
+     * @param tileWidth    the width of the target tiles
+     * @param tileHeight   the height of the target tiles
+     * @param lookAhead    the number of target tiles prefetched ahead of the current one
+     *
+     * @return the prefetcher
+     */
+    public static SourceTilePrefetcher create(RenderedImage[] sourceImages, Rectangle sceneBounds,
+                                              int tileWidth, int tileHeight, int lookAhead) {
+        final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "SourceTilePrefetcher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        return new SourceTilePrefetcher(sourceImages, sceneBounds, tileWidth, tileHeight, lookAhead, executor,
+                                        true);
+    }
+
+    /**
+     * Creates a prefetcher which runs its requests on the given executor.
+     *
+     * @param sourceImages the images whose tiles are prefetched
+     * @param sceneBounds  the bounds of the target scene
+     * @param tileWidth    the width of the target tiles
+     * @param tileHeight   the height of the target tiles
+     * @param lookAhead    the number of target tiles prefetched ahead of the current one
+     * @param executor     the executor running the requests, it is not shut down by {@link #cancel()}
+     *
+     * @return the prefetcher
+     */
+    public static SourceTilePrefetcher create(RenderedImage[] sourceImages, Rectangle sceneBounds,
+                                              int tileWidth, int tileHeight, int lookAhead,
+                                              ExecutorService executor) {
+        return new SourceTilePrefetcher(sourceImages, sceneBounds, tileWidth, tileHeight, lookAhead, executor,
+                                        false);
+    }
+
+    private SourceTilePrefetcher(RenderedImage[] sourceImages, Rectangle sceneBounds, int tileWidth,
+                                 int tileHeight, int lookAhead, ExecutorService executor, boolean ownsExecutor) {
+        if (tileWidth <= 0 || tileHeight <= 0) {
+            throw new IllegalArgumentException("Tile size must be positive");
+        }
+        if (lookAhead < 1) {
+            throw new IllegalArgumentException("Look-ahead must be at least 1");
+        }
+        this.sourceImages = sourceImages.clone();
+        this.sceneBounds = new Rectangle(sceneBounds);
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.lookAhead = lookAhead;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        requested = Collections.newSetFromMap(new ConcurrentHashMap<Rectangle, Boolean>());
+        pending = new ArrayList<>();
+    }
+
+    /**
+     * @return the number of target tiles prefetched ahead of the current one
+     */
+    public int getLookAhead() {
+        return lookAhead;
+    }
+
+    /**
+     * Requests the source tiles of the target tiles following the given one in row-major order.
+     * Has no effect after {@link #cancel()}.
+     *
+     * @param targetRectangle the rectangle of the target tile whose computation starts
+     */
+    public void prefetchFollowing(Rectangle targetRectangle) {
+        if (cancelled) {
+            return;
+        }
+        // the current tile is requested by the operator itself
+        requested.add(getTileRectangle(getTileX(targetRectangle.x), getTileY(targetRectangle.y)));
+        final int numXTiles = getTileX(sceneBounds.x + sceneBounds.width - 1) + 1;
+        final int numYTiles = getTileY(sceneBounds.y + sceneBounds.height - 1) + 1;
+        int tileIndex = getTileY(targetRectangle.y) * numXTiles + getTileX(targetRectangle.x);
+        for (int i = 0; i < lookAhead; i++) {
+            tileIndex++;
+            if (tileIndex >= numXTiles * numYTiles) {
+                break;
+            }
+            final Rectangle rectangle = getTileRectangle(tileIndex % numXTiles, tileIndex / numXTiles);
+            if (requested.add(rectangle) && !submit(rectangle)) {
+                requested.remove(rectangle);
+            }
+        }
+    }
+
+    /**
+     * Cancels all pending requests. Further calls of {@link #prefetchFollowing} have no effect.
+     */
+    public void cancel() {
+        cancelled = true;
+        synchronized (pending) {
+            for (Future<?> future : pending) {
+                future.cancel(false);
+            }
+            pending.clear();
+        }
+        if (ownsExecutor) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return {@code true} if {@link #cancel()} has been called
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    private boolean submit(final Rectangle rectangle) {
+        synchronized (pending) {
+            if (cancelled) {
+                return false;
+            }
+            for (int i = pending.size() - 1; i >= 0; i--) {
+                if (pending.get(i).isDone()) {
+                    pending.remove(i);
+                }
+            }
+            if (pending.size() >= lookAhead) {
+                return false;
+            }
+            try {
+                pending.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        fetch(rectangle);
+                    }
+                }));
+                return true;
+            } catch (RejectedExecutionException e) {
+                // executor has been shut down, nothing to prefetch anymore
+                return false;
+            }
+        }
+    }
+
+    private void fetch(Rectangle rectangle) {
+        for (RenderedImage image : sourceImages) {
+            if (cancelled || Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            try {
+                fetchTiles(image, rectangle);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.FINE, "Failed to prefetch source tiles for " + rectangle, e);
+            }
+        }
+    }
+
+    private static void fetchTiles(RenderedImage image, Rectangle rectangle) {
+        final Rectangle bounds = rectangle.intersection(
+                new Rectangle(image.getMinX(), image.getMinY(), image.getWidth(), image.getHeight()));
+        if (bounds.isEmpty()) {
+            return;
+        }
+        final int minTileX = toTileIndex(bounds.x, image.getTileGridXOffset(), image.getTileWidth());
+        final int maxTileX = toTileIndex(bounds.x + bounds.width - 1, image.getTileGridXOffset(),
+                                         image.getTileWidth());
+        final int minTileY = toTileIndex(bounds.y, image.getTileGridYOffset(), image.getTileHeight());
+        final int maxTileY = toTileIndex(bounds.y + bounds.height - 1, image.getTileGridYOffset(),
+                                         image.getTileHeight());
+        for (int tileY = minTileY; tileY <= maxTileY; tileY++) {
+            for (int tileX = minTileX; tileX <= maxTileX; tileX++) {
+                image.getTile(tileX, tileY);
+            }
+        }
+    }
+
+    private static int toTileIndex(int position, int gridOffset, int tileSize) {
+        return (int) Math.floor((position - gridOffset) / (double) tileSize);
+    }
+
+    private int getTileX(int x) {
+        return (x - sceneBounds.x) / tileWidth;
+    }
+
+    private int getTileY(int y) {
+        return (y - sceneBounds.y) / tileHeight;
+    }
+
+    private Rectangle getTileRectangle(int tileX, int tileY) {
+        final Rectangle rectangle = new Rectangle(sceneBounds.x + tileX * tileWidth, sceneBounds.y + tileY * tileHeight,
+                                                  tileWidth, tileHeight);
+        return rectangle.intersection(sceneBounds);
+    }
+}
@@ -0,0 +1,188 @@
+package org.esa.beam.glint.util;
+
+import java.awt.Rectangle;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Java Flight Recorder event describing the computation of a single tile.
+ * <p/>
+ * The event carries the operator name, the tile rectangle, the number of computed bands and the number of
+ * valid pixels. Duration and thread are recorded by the flight recorder itself.
+ * <p/>
+ * The event type is defined at runtime via {@code jdk.jfr.EventFactory}, so the code still runs on JVMs
+ * without flight recorder. In that case, and if the event is not enabled in the recording settings,
+ * {@link #begin} returns an instance which does nothing.
+ */
+public class TileComputationEvent {
+
+    public static final String EVENT_NAME = "org.esa.beam.glint.TileComputation";
+
+    private static final int OPERATOR = 0;
+    private static final int X = 1;
+    private static final int Y = 2;
+    private static final int WIDTH = 3;
+    private static final int HEIGHT = 4;
+    private static final int BAND_COUNT = 5;
+    private static final int VALID_PIXEL_COUNT = 6;
+
+    private static final TileComputationEvent NO_EVENT = new TileComputationEvent(null);
+    private static final EventType EVENT_TYPE = EventType.create();
+
+    private final Object event;
+
+    private TileComputationEvent(Object event) {
+        this.event = event;
+    }
+
+    /**
+     * @return {@code true} if flight recorder events can be emitted in this JVM
+     */
+    public static boolean isSupported() {
+        return EVENT_TYPE != null;
+    }
+
+    /**
+     * Starts timing the computation of a tile.
+     *
+     * @param operatorName the name of the computing operator
+     * @param rectangle    the tile rectangle
+     * @param bandCount    the number of bands computed for the tile
+     *
+     * @return the started event
+     */
+    public static TileComputationEvent begin(String operatorName, Rectangle rectangle, int bandCount) {
+        if (EVENT_TYPE == null) {
+            return NO_EVENT;
+        }
+        final Object event = EVENT_TYPE.newEvent();
+        if (event == null || !EVENT_TYPE.isEnabled(event)) {
+            return NO_EVENT;
+        }
+        EVENT_TYPE.set(event, OPERATOR, operatorName);
+        EVENT_TYPE.set(event, X, rectangle.x);
+        EVENT_TYPE.set(event, Y, rectangle.y);
+        EVENT_TYPE.set(event, WIDTH, rectangle.width);
+        EVENT_TYPE.set(event, HEIGHT, rectangle.height);
+        EVENT_TYPE.set(event, BAND_COUNT, bandCount);
+        EVENT_TYPE.begin(event);
+        return new TileComputationEvent(event);
+    }
+
+    /**
+     * Ends timing and commits the event.
+     *
+     * @param validPixelCount the number of valid pixels in the tile
+     */
+    public void commit(int validPixelCount) {
+        if (event != null) {
+            EVENT_TYPE.set(event, VALID_PIXEL_COUNT, validPixelCount);
+            EVENT_TYPE.commit(event);
+        }
+    }
+
+    private static final class EventType {
+
+        private final Object factory;
+        private final Method newEventMethod;
+        private final Method isEnabledMethod;
+        private final Method beginMethod;
+        private final Method setMethod;
+        private final Method commitMethod;
+
+        private EventType(Object factory) throws Exception {
+            this.factory = factory;
+            newEventMethod = factory.getClass().getMethod("newEvent");
+            final Class<?> eventClass = Class.forName("jdk.jfr.Event");
+            isEnabledMethod = eventClass.getMethod("isEnabled");
+            beginMethod = eventClass.getMethod("begin");
+            setMethod = eventClass.getMethod("set", int.class, Object.class);
+            commitMethod = eventClass.getMethod("commit");
+        }
+
+        static EventType create() {
+            try {
+                final Class<?> annotationElementClass = Class.forName("jdk.jfr.AnnotationElement");
+                final Class<?> valueDescriptorClass = Class.forName("jdk.jfr.ValueDescriptor");
+                final Class<?> eventFactoryClass = Class.forName("jdk.jfr.EventFactory");
+                final Constructor<?> annotationConstructor =
+                        annotationElementClass.getConstructor(Class.class, Object.class);
+                final Constructor<?> fieldConstructor =
+                        valueDescriptorClass.getConstructor(Class.class, String.class, List.class);
+
+                final List<Object> eventAnnotations = new ArrayList<>();
+                eventAnnotations.add(annotationConstructor.newInstance(annotation("jdk.jfr.Name"), EVENT_NAME));
+                eventAnnotations.add(annotationConstructor.newInstance(annotation("jdk.jfr.Label"),
+                                                                       "Tile Computation"));
+                eventAnnotations.add(annotationConstructor.newInstance(annotation("jdk.jfr.Description"),
+                                                                       "Computation of a tile by a glint operator"));
+                eventAnnotations.add(annotationConstructor.newInstance(annotation("jdk.jfr.Category"),
+                                                                       new String[]{"BEAM", "Glint"}));
+                // stack traces would only show the reflective call of commit()
+                eventAnnotations.add(annotationConstructor.newInstance(annotation("jdk.jfr.StackTrace"),
+                                                                       Boolean.FALSE));
+
+                final List<Object> fields = Arrays.asList(
+                        field(fieldConstructor, annotationConstructor, String.class, "operator", "Operator"),
+                        field(fieldConstructor, annotationConstructor, int.class, "x", "X"),
+                        field(fieldConstructor, annotationConstructor, int.class, "y", "Y"),
+                        field(fieldConstructor, annotationConstructor, int.class, "width", "Width"),
+                        field(fieldConstructor, annotationConstructor, int.class, "height", "Height"),
+                        field(fieldConstructor, annotationConstructor, int.class, "bandCount", "Band Count"),
+                        field(fieldConstructor, annotationConstructor, int.class, "validPixelCount",
+                              "Valid Pixel Count"));
+
+                final Method createMethod = eventFactoryClass.getMethod("create", List.class, List.class);
+                return new EventType(createMethod.invoke(null, eventAnnotations, fields));
+            } catch (Throwable ignored) {
+                // no flight recorder available
+                return null;
+            }
+        }
+
+        private static Object field(Constructor<?> fieldConstructor, Constructor<?> annotationConstructor,
+                                    Class<?> type, String name, String label) throws Exception {
+            final Object labelAnnotation = annotationConstructor.newInstance(annotation("jdk.jfr.Label"), label);
+            return fieldConstructor.newInstance(type, name, Collections.singletonList(labelAnnotation));
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Class<? extends Annotation> annotation(String className) throws ClassNotFoundException {
+            return (Class<? extends Annotation>) Class.forName(className);
+        }
+
+        Object newEvent() {
+            return invoke(newEventMethod, factory);
+        }
+
+        boolean isEnabled(Object event) {
+            return Boolean.TRUE.equals(invoke(isEnabledMethod, event));
+        }
+
+        void begin(Object event) {
+            invoke(beginMethod, event);
+        }
+
+        void set(Object event, int index, Object value) {
+            invoke(setMethod, event, index, value);
+        }
+
+        void commit(Object event) {
+            invoke(commitMethod, event);
+        }
+
+        private static Object invoke(Method method, Object target, Object... args) {
+            try {
+                return method.invoke(target, args);
+            } catch (Exception ignored) {
+                // events are diagnostics only and must never break processing
+                return null;
+            }
+        }
+    }
+}
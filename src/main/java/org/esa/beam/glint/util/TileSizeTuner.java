@@ -0,0 +1,243 @@
+package org.esa.beam.glint.util;
+
+import org.esa.beam.framework.datamodel.MetadataAttribute;
+import org.esa.beam.framework.datamodel.MetadataElement;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.datamodel.ProductData;
+import org.esa.beam.framework.datamodel.RasterDataNode;
+import org.esa.beam.framework.datamodel.TiePointGrid;
+import org.esa.beam.framework.gpf.OperatorException;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Chooses the size of the target tiles of a processor.
+ * <p/>
+ * A tile size is given as {@code <width>x<height>}, as {@code auto}, or empty for the size chosen by the reader of
+ * the source product. For {@code auto} the width is the scene width for reduced resolution scenes and an equal
+ * part of it, at most {@value #MAX_TILE_WIDTH} pixels, for full resolution scenes. The height yields
+ * {@value #TILES_PER_CORE} tiles per core, is aligned to the rows of the tie-point grids and limits a tile to
+ * {@value #MAX_TILE_PIXELS} pixels. A short calibration run then compares the time per pixel of this height with
+ * half and twice the height and keeps the fastest.
+ * <p/>
+ * The calibration only times the reads of the source rasters, not the processing of the tiles, so it tunes the
+ * height to the tiling of the reader. It reads a few hundred rows of the scene and should run once per scene:
+ * processors working on parts of a scene, e.g. stripes, are given the resolved size instead of {@code auto}.
+ */
+public class TileSizeTuner {
+
+    public static final String AUTO = "auto";
+    public static final String METADATA_ELEMENT_NAME = "Tiling";
+
+    static final int MAX_TILE_WIDTH = 1200;
+    static final int MAX_TILE_PIXELS = 512 * 1024;
+    static final int MIN_TILE_HEIGHT = 16;
+    static final int TILES_PER_CORE = 4;
+
+    /**
+     * Measures the processing time of a region of the scene.
+     */
+    public interface Calibration {
+
+        /**
+         * @param region the region of the scene
+         *
+         * @return the time needed for the region in nanoseconds
+         */
+        long measure(Rectangle region);
+    }
+
+    private TileSizeTuner() {
+    }
+
+    /**
+     * Resolves a tile size parameter.
+     *
+     * @param tileSize    the tile size, {@code auto} or empty
+     * @param product     the source product
+     * @param coreCount   the number of cores
+     * @param calibration the calibration used for {@code auto}, may be {@code null}
+     *
+     * @return the tile size, at most the scene size, or {@code null} for the size chosen by the reader
+     *
+     * @throws OperatorException if the tile size is invalid
+     */
+    public static Dimension resolve(String tileSize, Product product, int coreCount, Calibration calibration) {
+        final int sceneWidth = product.getSceneRasterWidth();
+        final int sceneHeight = product.getSceneRasterHeight();
+        if (tileSize == null || tileSize.trim().isEmpty()) {
+            return null;
+        }
+        if (AUTO.equalsIgnoreCase(tileSize.trim())) {
+            final int rowAlignment = getRowAlignment(product);
+            final Dimension size = computeTileSize(sceneWidth, sceneHeight, coreCount, rowAlignment);
+            if (calibration != null) {
+                size.height = calibrate(size, sceneHeight, rowAlignment, calibration);
+            }
+            return size;
+        }
+        final Dimension size = parse(tileSize);
+        return new Dimension(Math.min(size.width, sceneWidth), Math.min(size.height, sceneHeight));
+    }
+
+    /**
+     * @param tileSize the tile size parameter, may be {@code null}
+     *
+     * @return how the resolved tile size was chosen, as recorded in the metadata
+     */
+    public static String getOrigin(String tileSize) {
+        return tileSize != null && AUTO.equalsIgnoreCase(tileSize.trim()) ? AUTO : "tileSize";
+    }
+
+    /**
+     * Parses a tile size given as {@code <width>x<height>}.
+     *
+     * @param tileSize the tile size
+     *
+     * @return the tile size
+     *
+     * @throws OperatorException if the tile size is invalid
+     */
+    static Dimension parse(String tileSize) {
+        final String[] parts = tileSize.trim().toLowerCase().split("x");
+        if (parts.length == 2) {
+            try {
+                final int width = Integer.parseInt(parts[0].trim());
+                final int height = Integer.parseInt(parts[1].trim());
+                if (width > 0 && height > 0) {
+                    return new Dimension(width, height);
+                }
+            } catch (NumberFormatException e) {
+                // reported below
+            }
+        }
+        throw new OperatorException("Invalid tile size '" + tileSize + "', expected <width>x<height> or " + AUTO);
+    }
+
+    /**
+     * Computes the tile size from the scene size and the number of cores.
+     *
+     * @param sceneWidth   the width of the scene
+     * @param sceneHeight  the height of the scene
+     * @param coreCount    the number of cores
+     * @param rowAlignment the tile height is a multiple of this number of rows, if possible
+     *
+     * @return the tile size
+     */
+    static Dimension computeTileSize(int sceneWidth, int sceneHeight, int coreCount, int rowAlignment) {
+        final int columnCount = (sceneWidth + MAX_TILE_WIDTH - 1) / MAX_TILE_WIDTH;
+        final int width = (sceneWidth + columnCount - 1) / columnCount;
+        final int tileCount = Math.max(1, coreCount) * TILES_PER_CORE;
+        final int tileRowCount = (tileCount + columnCount - 1) / columnCount;
+        final int maxHeight = MAX_TILE_PIXELS / width;
+        final int height = Math.min((sceneHeight + tileRowCount - 1) / tileRowCount, maxHeight);
+        return new Dimension(width, align(height, maxHeight, sceneHeight, rowAlignment));
+    }
+
+    /**
+     * Compares the time per pixel of the given tile height with half and twice the height.
+     *
+     * @return the fastest height
+     */
+    static int calibrate(Dimension tileSize, int sceneHeight, int rowAlignment, Calibration calibration) {
+        final int maxHeight = MAX_TILE_PIXELS / tileSize.width;
+        final List<Integer> heights = new ArrayList<>(3);
+        for (int height : new int[]{tileSize.height, tileSize.height / 2, tileSize.height * 2}) {
+            final int alignedHeight = align(height, maxHeight, sceneHeight, rowAlignment);
+            if (!heights.contains(alignedHeight) && (long) alignedHeight * tileSize.width <= MAX_TILE_PIXELS) {
+                heights.add(alignedHeight);
+            }
+        }
+        int totalHeight = 0;
+        for (int height : heights) {
+            totalHeight += height;
+        }
+        if (heights.size() < 2 || totalHeight + MIN_TILE_HEIGHT > sceneHeight) {
+            return tileSize.height;
+        }
+        // warms up the reader, the last rows are not used by the candidates
+        calibration.measure(new Rectangle(0, sceneHeight - MIN_TILE_HEIGHT, tileSize.width, MIN_TILE_HEIGHT));
+        // distinct rows for each candidate, so that no candidate profits from the source tiles read by another
+        int bestHeight = tileSize.height;
+        double bestTimePerRow = Double.MAX_VALUE;
+        int y = 0;
+        for (int height : heights) {
+            final double timePerRow = (double) calibration.measure(new Rectangle(0, y, tileSize.width, height)) /
+                                      height;
+            if (timePerRow < bestTimePerRow) {
+                bestTimePerRow = timePerRow;
+                bestHeight = height;
+            }
+            y += height;
+        }
+        return bestHeight;
+    }
+
+    /**
+     * Creates a calibration which reads the source images of the given rasters. Only the time of the reads is
+     * measured, the processing of the tiles is not part of the calibration.
+     *
+     * @param rasters the rasters, {@code null} elements are ignored
+     *
+     * @return the calibration
+     */
+    public static Calibration createReadCalibration(final RasterDataNode... rasters) {
+        return new Calibration() {
+            @Override
+            public long measure(Rectangle region) {
+                final long start = System.nanoTime();
+                for (RasterDataNode raster : rasters) {
+                    if (raster != null) {
+                        raster.getSourceImage().getData(region);
+                    }
+                }
+                return System.nanoTime() - start;
+            }
+        };
+    }
+
+    /**
+     * Sets the preferred tile size of a target product and records it in its metadata.
+     *
+     * @param product  the target product
+     * @param tileSize the tile size
+     * @param origin   how the tile size was chosen, e.g. {@code auto}
+     */
+    public static void applyTileSize(Product product, Dimension tileSize, String origin) {
+        product.setPreferredTileSize(tileSize.width, tileSize.height);
+        final MetadataElement element = new MetadataElement(METADATA_ELEMENT_NAME);
+        element.addAttribute(new MetadataAttribute("tile_width", ProductData.createInstance(
+                new int[]{tileSize.width}), true));
+        element.addAttribute(new MetadataAttribute("tile_height", ProductData.createInstance(
+                new int[]{tileSize.height}), true));
+        element.addAttribute(new MetadataAttribute("tile_size_origin", ProductData.createInstance(origin), true));
+        final MetadataElement metadataRoot = product.getMetadataRoot();
+        final MetadataElement previousElement = metadataRoot.getElement(METADATA_ELEMENT_NAME);
+        if (previousElement != null) {
+            metadataRoot.removeElement(previousElement);
+        }
+        metadataRoot.addElement(element);
+    }
+
+    private static int getRowAlignment(Product product) {
+        final TiePointGrid[] grids = product.getTiePointGrids();
+        if (grids.length > 0) {
+            return Math.max(1, (int) grids[0].getSubSamplingY());
+        }
+        return 1;
+    }
+
+    private static int align(int height, int maxHeight, int sceneHeight, int rowAlignment) {
+        int alignedHeight = Math.max(MIN_TILE_HEIGHT, height);
+        if (rowAlignment > 1) {
+            alignedHeight = (alignedHeight + rowAlignment - 1) / rowAlignment * rowAlignment;
+            if (alignedHeight > maxHeight && maxHeight >= rowAlignment) {
+                alignedHeight = maxHeight / rowAlignment * rowAlignment;
+            }
+        }
+        return Math.min(alignedHeight, sceneHeight);
+    }
+}
@@ -0,0 +1,193 @@
+package org.esa.beam.atmosphere.nn;
+
+import com.bc.jnn.JnnException;
+import com.bc.jnn.JnnNet;
+import org.esa.beam.glint.operators.FlintAuxData;
+import org.esa.beam.nn.NNffbpAlphaTabFast;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures the evaluation time of neural nets by {@link NeuralNetEvaluator}, in double and single precision,
+ * and compares it with the evaluators of BEAM, {@link NNffbpAlphaTabFast#calc} for the '.net' nets of the AGC
+ * Glint correction and {@link JnnNet#process} for the '.nna' nets of FLINT.
+ * <p/>
+ * Usage: {@code NeuralNetBenchmark [<net-file>...]}, by default the nets of the AGC Glint correction and of
+ * FLINT are measured. Given files must be in '.net' format.
+ */
+public class NeuralNetBenchmark {
+
+    private static final String[] DEFAULT_NETS = {
+            "/org/esa/beam/atmosphere/operator/atmo_aann/12x5x12_318.4.net",
+            "/org/esa/beam/atmosphere/operator/atmo_normalization/90_2.8.net",
+            "/org/esa/beam/atmosphere/operator/atmo_correct_meris/20x25x45_55990.1.net",
+            "/org/esa/beam/atmosphere/operator/atmo_correct_flint/25x30x40_6936.3.net"
+    };
+    // the FLINT nets with the ranges of their inputs, as computed by FlintGeometricalConversion and
+    // FlintSolarPart37WaterVapour
+    private static final String[] JNN_NETS = {
+            FlintAuxData.NEURAL_NET_WINDSPEED_FILE_NAME,
+            FlintAuxData.NEURAL_NET_WV_OCEAN_MERIS_FILE_NAME
+    };
+    private static final double[][][] JNN_INPUT_RANGES = {
+            {{1.0, 14.0}, {1.3, 1.4}, {0.2, 1.0}},
+            {{0.0, 15.0}, {-0.7, 0.7}, {0.7, 1.0}, {0.2, 1.0}, {-1.0, 0.0}}
+    };
+    private static final int[] JNN_OUTPUT_COUNTS = {4, 1};
+
+    private static final int INPUT_COUNT = 1024;
+    private static final int ROUNDS = 5;
+    private static final int EVALUATIONS_PER_ROUND = 1000000;
+
+    private NeuralNetBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException, JnnException {
+        final boolean useDefaultNets = args.length == 0;
+        final String[] netNames = useDefaultNets ? DEFAULT_NETS : args;
+        final PrintStream out = System.out;
+        for (String netName : netNames) {
+            final String text = useDefaultNets ? readResource(netName) :
+                                new String(Files.readAllBytes(Paths.get(netName)), Charset.forName("US-ASCII"));
+            final NeuralNet net = NeuralNet.parse(text);
+            final double[][] inputs = createInputs(net.getInputMin(), net.getInputMax());
+            out.printf(Locale.ENGLISH, "%s (%d weights)%n", netName, getWeightCount(net));
+            out.printf(Locale.ENGLISH, "  double:             %8.1f ns%n",
+                       measure(createEvaluation(new NeuralNetEvaluator(net), inputs)));
+            out.printf(Locale.ENGLISH, "  float:              %8.1f ns%n",
+                       measure(createFloatEvaluation(new NeuralNetEvaluator(net), inputs)));
+            out.printf(Locale.ENGLISH, "  NNffbpAlphaTabFast: %8.1f ns%n",
+                       measure(createEvaluation(new NNffbpAlphaTabFast(text), inputs)));
+        }
+        if (useDefaultNets) {
+            for (int i = 0; i < JNN_NETS.length; i++) {
+                final JnnNet net = FlintAuxData.getInstance().loadNeuralNet(JNN_NETS[i]);
+                final double[][] ranges = JNN_INPUT_RANGES[i];
+                final double[] inmin = new double[ranges.length];
+                final double[] inmax = new double[ranges.length];
+                for (int j = 0; j < ranges.length; j++) {
+                    inmin[j] = ranges[j][0];
+                    inmax[j] = ranges[j][1];
+                }
+                final double[][] inputs = createInputs(inmin, inmax);
+                out.printf(Locale.ENGLISH, "%s%n", JNN_NETS[i]);
+                out.printf(Locale.ENGLISH, "  JnnNet:             %8.1f ns%n",
+                           measure(createEvaluation(net, inputs, JNN_OUTPUT_COUNTS[i])));
+            }
+        }
+    }
+
+    private static String readResource(String name) throws IOException {
+        final StringBuilder text = new StringBuilder();
+        try (InputStream stream = NeuralNetBenchmark.class.getResourceAsStream(name)) {
+            final byte[] buffer = new byte[8192];
+            for (int count = stream.read(buffer); count >= 0; count = stream.read(buffer)) {
+                text.append(new String(buffer, 0, count, "US-ASCII"));
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * One evaluation of a net, returning the first output, so that the computation cannot be eliminated.
+     */
+    private interface Evaluation {
+
+        double evaluate(int index);
+    }
+
+    private static Evaluation createEvaluation(final NeuralNetEvaluator evaluator, final double[][] inputs) {
+        final double[] output = new double[evaluator.getNet().getOutputCount()];
+        return new Evaluation() {
+            @Override
+            public double evaluate(int index) {
+                evaluator.calc(inputs[index], output);
+                return output[0];
+            }
+        };
+    }
+
+    private static Evaluation createFloatEvaluation(final NeuralNetEvaluator evaluator, double[][] inputs) {
+        final float[][] inputsF = new float[inputs.length][];
+        for (int i = 0; i < inputs.length; i++) {
+            inputsF[i] = new float[inputs[i].length];
+            for (int j = 0; j < inputs[i].length; j++) {
+                inputsF[i][j] = (float) inputs[i][j];
+            }
+        }
+        final float[] outputF = new float[evaluator.getNet().getOutputCount()];
+        return new Evaluation() {
+            @Override
+            public double evaluate(int index) {
+                evaluator.calc(inputsF[index], outputF);
+                return outputF[0];
+            }
+        };
+    }
+
+    private static Evaluation createEvaluation(final NNffbpAlphaTabFast net, final double[][] inputs) {
+        return new Evaluation() {
+            @Override
+            public double evaluate(int index) {
+                return net.calc(inputs[index])[0];
+            }
+        };
+    }
+
+    private static Evaluation createEvaluation(final JnnNet net, final double[][] inputs, int outputCount) {
+        final double[] output = new double[outputCount];
+        return new Evaluation() {
+            @Override
+            public double evaluate(int index) {
+                net.process(inputs[index], output);
+                return output[0];
+            }
+        };
+    }
+
+    private static double measure(Evaluation evaluation) {
+        double best = Double.MAX_VALUE;
+        double checksum = 0.0;
+        // the first round warms up the JIT compiler
+        for (int round = 0; round <= ROUNDS; round++) {
+            final long start = System.nanoTime();
+            for (int i = 0; i < EVALUATIONS_PER_ROUND; i++) {
+                checksum += evaluation.evaluate(i % INPUT_COUNT);
+            }
+            final double time = (double) (System.nanoTime() - start) / EVALUATIONS_PER_ROUND;
+            if (round > 0) {
+                best = Math.min(best, time);
+            }
+        }
+        if (Double.isNaN(checksum)) {
+            System.out.println("Invalid output");
+        }
+        return best;
+    }
+
+    private static int getWeightCount(NeuralNet net) {
+        int weightCount = 0;
+        for (int layer = 1; layer < net.layerSizes.length; layer++) {
+            weightCount += net.layerSizes[layer - 1] * net.layerSizes[layer];
+        }
+        return weightCount;
+    }
+
+    private static double[][] createInputs(double[] inmin, double[] inmax) {
+        final Random random = new Random(42);
+        final double[][] inputs = new double[INPUT_COUNT][inmin.length];
+        for (double[] input : inputs) {
+            for (int i = 0; i < input.length; i++) {
+                input[i] = inmin[i] + random.nextDouble() * (inmax[i] - inmin[i]);
+            }
+        }
+        return inputs;
+    }
+}
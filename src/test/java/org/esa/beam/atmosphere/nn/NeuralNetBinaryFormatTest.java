@@ -0,0 +1,90 @@
+package org.esa.beam.atmosphere.nn;
+
+import org.esa.beam.atmosphere.operator.GlintCorrectionOperator;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class NeuralNetBinaryFormatTest {
+
+    private NeuralNet net;
+
+    @Before
+    public void setUp() throws Exception {
+        net = NeuralNet.read(GlintCorrectionOperator.class.getResourceAsStream("atmo_aann/12x5x12_318.4.net"));
+    }
+
+    @Test
+    public void testGetBinaryName() throws Exception {
+        assertEquals("atmo_aann/12x5x12_318.4.nnb", NeuralNetBinaryFormat.getBinaryName("atmo_aann/12x5x12_318.4.net"));
+        assertEquals("my_net.nnb", NeuralNetBinaryFormat.getBinaryName("my_net"));
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        final byte[] bytes = write(net);
+        final NeuralNet readNet = NeuralNetBinaryFormat.read(ByteBuffer.wrap(bytes));
+        assertTrue(NeuralNetConverter.isEqual(net, readNet));
+
+        final InputStream stream = new ByteArrayInputStream(bytes);
+        assertTrue(NeuralNetConverter.isEqual(net, NeuralNetBinaryFormat.read(stream)));
+    }
+
+    @Test
+    public void testReadMappedFile() throws Exception {
+        final File file = File.createTempFile("glint_test", NeuralNetBinaryFormat.FILE_EXTENSION);
+        try {
+            try (OutputStream stream = new FileOutputStream(file)) {
+                NeuralNetBinaryFormat.write(net, stream);
+            }
+            assertTrue(NeuralNetConverter.isEqual(net, NeuralNetBinaryFormat.read(file)));
+        } finally {
+            assertTrue(file.delete() || !file.exists());
+        }
+    }
+
+    @Test
+    public void testCorruptDataIsDetected() throws Exception {
+        final byte[] bytes = write(net);
+        bytes[bytes.length / 2] ^= 0x10;
+        try {
+            NeuralNetBinaryFormat.read(ByteBuffer.wrap(bytes));
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("checksum"));
+        }
+    }
+
+    @Test
+    public void testTruncatedDataIsDetected() throws Exception {
+        final byte[] bytes = write(net);
+        final ByteBuffer truncated = ByteBuffer.wrap(bytes, 0, bytes.length - 8);
+        try {
+            NeuralNetBinaryFormat.read(truncated);
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("expected"));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testTextNetIsRejected() throws Exception {
+        NeuralNetBinaryFormat.read(GlintCorrectionOperator.class.getResourceAsStream("atmo_aann/12x5x12_318.4.net"));
+    }
+
+    private static byte[] write(NeuralNet net) throws IOException {
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        NeuralNetBinaryFormat.write(net, stream);
+        return stream.toByteArray();
+    }
+}
@@ -0,0 +1,135 @@
+package org.esa.beam.atmosphere.nn;
+
+import org.esa.beam.atmosphere.operator.GlintCorrectionOperator;
+import org.esa.beam.nn.NNffbpAlphaTabFast;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class NeuralNetEvaluatorTest {
+
+    private NeuralNet net;
+
+    @Before
+    public void setUp() throws Exception {
+        net = NeuralNet.read(GlintCorrectionOperator.class.getResourceAsStream("atmo_aann/12x5x12_318.4.net"));
+    }
+
+    @Test
+    public void testReadNet() throws Exception {
+        assertArrayEquals(new int[]{16, 12, 5, 12, 12}, net.getLayerSizes());
+        assertEquals(16, net.getInputCount());
+        assertEquals(12, net.getOutputCount());
+        assertEquals(1.02, net.getInputMin()[0], 1.0e-12);
+        assertEquals(76.2, net.getInputMax()[0], 1.0e-12);
+        assertEquals(-6.196, net.getOutputMin()[11], 1.0e-12);
+        assertEquals(12, net.getBias(0).length);
+        assertEquals(5, net.getWeights(1).length);
+        assertEquals(12, net.getWeights(1)[0].length);
+    }
+
+    @Test(expected = IOException.class)
+    public void testParseTruncatedNet() throws Exception {
+        NeuralNet.parse("header\n#\n2\n0 1\n0 1\n1\n0 1\n$\n#planes=2 2 1\nbias 1 1\n");
+    }
+
+    @Test
+    public void testDoublePrecision() throws Exception {
+        final NeuralNetEvaluator evaluator = new NeuralNetEvaluator(net);
+        // the tabulated activation function differs from the exact one by up to 2.5e-5
+        final double[] outmin = net.getOutputMin();
+        final double[] outmax = net.getOutputMax();
+        for (double[] input : createInputs()) {
+            final double[] expected = evaluate(net, input);
+            final double[] actual = evaluator.calc(input);
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i], actual[i], (outmax[i] - outmin[i]) * 1.0e-4);
+            }
+        }
+    }
+
+    @Test
+    public void testSinglePrecision() throws Exception {
+        final NeuralNetEvaluator evaluator = new NeuralNetEvaluator(net);
+        final float[] floatInput = new float[net.getInputCount()];
+        final float[] floatOutput = new float[net.getOutputCount()];
+        for (double[] input : createInputs()) {
+            for (int i = 0; i < floatInput.length; i++) {
+                floatInput[i] = (float) input[i];
+            }
+            evaluator.calc(floatInput, floatOutput);
+            final double[] expected = evaluate(net, input);
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i], floatOutput[i], Math.abs(expected[i]) * 1.0e-4);
+            }
+        }
+    }
+
+    @Test
+    public void testAdditionalInputsAreIgnored() throws Exception {
+        final NeuralNetEvaluator evaluator = new NeuralNetEvaluator(net);
+        final double[] input = createInputs()[0];
+        final double[] extendedInput = new double[input.length + 1];
+        System.arraycopy(input, 0, extendedInput, 0, input.length);
+        extendedInput[input.length] = 42.0;
+        assertArrayEquals(evaluator.calc(input), evaluator.calc(extendedInput), 0.0);
+    }
+
+    @Test
+    public void testDoublePrecisionEqualsAlphaTabFast() throws Exception {
+        final NNffbpAlphaTabFast reference = new NNffbpAlphaTabFast(
+                GlintCorrectionOperator.class.getResourceAsStream("atmo_aann/12x5x12_318.4.net"));
+        final NeuralNetEvaluator evaluator = new NeuralNetEvaluator(net);
+        final double[] output = new double[net.getOutputCount()];
+        for (double[] input : createInputs()) {
+            evaluator.calc(input, output);
+            assertArrayEquals(reference.calc(input), output, 0.0);
+        }
+    }
+
+    private double[][] createInputs() {
+        final double[] inmin = net.getInputMin();
+        final double[] inmax = net.getInputMax();
+        final double[][] inputs = new double[5][inmin.length];
+        for (int k = 0; k < inputs.length; k++) {
+            for (int i = 0; i < inmin.length; i++) {
+                final double fraction = ((k + 1) * (i + 3) % 7) / 6.0;
+                inputs[k][i] = inmin[i] + fraction * (inmax[i] - inmin[i]);
+            }
+        }
+        return inputs;
+    }
+
+    // straightforward evaluation with the exact activation function
+    private static double[] evaluate(NeuralNet net, double[] input) {
+        final double[] inmin = net.getInputMin();
+        final double[] inmax = net.getInputMax();
+        double[] activation = new double[net.getInputCount()];
+        for (int i = 0; i < activation.length; i++) {
+            activation[i] = (input[i] - inmin[i]) / (inmax[i] - inmin[i]);
+        }
+        final int[] layerSizes = net.getLayerSizes();
+        for (int layer = 0; layer < layerSizes.length - 1; layer++) {
+            final double[] bias = net.getBias(layer);
+            final double[][] weights = net.getWeights(layer);
+            final double[] next = new double[layerSizes[layer + 1]];
+            for (int to = 0; to < next.length; to++) {
+                double sum = bias[to];
+                for (int from = 0; from < activation.length; from++) {
+                    sum += weights[to][from] * activation[from];
+                }
+                next[to] = 1.0 / (1.0 + Math.exp(-sum));
+            }
+            activation = next;
+        }
+        final double[] outmin = net.getOutputMin();
+        final double[] outmax = net.getOutputMax();
+        for (int i = 0; i < activation.length; i++) {
+            activation[i] = activation[i] * (outmax[i] - outmin[i]) + outmin[i];
+        }
+        return activation;
+    }
+}
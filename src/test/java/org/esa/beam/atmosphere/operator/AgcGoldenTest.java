@@ -0,0 +1,415 @@
+package org.esa.beam.atmosphere.operator;
+
+import org.esa.beam.FloatPixelData;
+import org.esa.beam.PixelData;
+import org.esa.beam.atmosphere.nn.NeuralNet;
+import org.esa.beam.atmosphere.nn.NeuralNetEvaluator;
+import org.esa.beam.glint.util.GoldenComparison;
+import org.esa.beam.glint.util.GoldenComparison.Tolerance;
+import org.esa.beam.glint.util.GoldenTable;
+import org.esa.beam.nn.NNffbpAlphaTabFast;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Golden output regression test of the AGC glint correction.
+ * <p/>
+ * The outputs of the current implementations are compared with outputs recorded from the reference
+ * implementation for a fixed set of synthetic MERIS pixels. The tables were recorded with the original,
+ * unoptimised {@link GlintCorrection}, whose nets are evaluated by {@link NNffbpAlphaTabFast}. The double
+ * precision correction evaluates the nets with the same activation table and must reproduce them. The single
+ * precision correction is compared with the double precision correction within a looser tolerance.
+ * <p/>
+ * Any optimisation of {@link GlintCorrection}, {@link Tosa} or the neural net evaluation must keep this test
+ * green. If an intended change of the algorithm alters the outputs, the golden tables have to be recorded
+ * again by running {@link #main}.
+ */
+public class AgcGoldenTest {
+
+    static final String MERIS_NET_NAME = "atmo_correct_meris/20x25x45_55990.1.net";
+    static final String FLINT_NET_NAME = "atmo_correct_flint/25x30x40_6936.3.net";
+    static final String NORMALIZATION_NET_NAME = "atmo_normalization/90_2.8.net";
+    static final String AANN_NET_NAME = "atmo_aann/12x5x12_318.4.net";
+
+    private static final int PIXEL_COUNT = 64;
+    private static final long SEED = 4711L;
+
+    private static final double[] MERIS_SOLAR_FLUX = {
+            1714.9, 1872.4, 1926.6, 1930.2, 1804.2, 1651.5, 1531.4, 1475.6,
+            1408.9, 1265.5, 1255.4, 1178.0, 955.1, 914.2, 882.8
+    };
+    private static final double[] MERIS_BAND_WAVELENGTHS = {
+            412.7, 442.6, 489.9, 509.8, 559.7, 619.6, 664.6, 680.8,
+            708.3, 753.4, 761.5, 778.4, 864.9, 884.9, 900.0
+    };
+
+    private static final String FLAG_COLUMN = "agc_flags";
+    private static final String[] SPECTRAL_NAMES = {"tosa_reflec", "reflec", "norm_refl", "path", "trans"};
+    private static final int[] BAND_NUMBERS = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 12, 13};
+    private static final String[] SCALAR_NAMES = {
+            "tau_550", "tau_778", "tau_865", "ang_443_865", "glint_ratio", "btsm", "atot", "tosa_quality_indicator"
+    };
+
+    private static final Tolerance RECORDED_TOLERANCE = Tolerance.relative(1.0e-9, 1.0e-12);
+    // the activation table is not interpolated, single precision sums may select a neighbouring entry
+    private static final Tolerance SINGLE_PRECISION_TOLERANCE = Tolerance.relative(5.0e-3, 1.0e-5);
+    // the settings which do not affect the nets, encoded in the bits of the variant index
+    private static final int VARIANT_COUNT = 8;
+
+    @Test
+    public void testMerisCorrectionMatchesGoldenTable() throws Exception {
+        final Setup setup = Setup.MERIS;
+        final GoldenTable golden = readGoldenTable(setup);
+        final GoldenTable actual = computeDoublePrecision(setup);
+        compare(setup + " double precision", golden, actual, RECORDED_TOLERANCE).assertPassed();
+    }
+
+    @Test
+    public void testFlintCorrectionMatchesGoldenTable() throws Exception {
+        final Setup setup = Setup.FLINT;
+        final GoldenTable golden = readGoldenTable(setup);
+        final GoldenTable actual = computeDoublePrecision(setup);
+        compare(setup + " double precision", golden, actual, RECORDED_TOLERANCE).assertPassed();
+    }
+
+    @Test
+    public void testMerisSinglePrecisionMatchesDoublePrecision() throws Exception {
+        final Setup setup = Setup.MERIS;
+        final GoldenTable expected = computeDoublePrecision(setup);
+        final GoldenTable actual = computeSinglePrecision(setup);
+        compare(setup + " single precision", expected, actual, SINGLE_PRECISION_TOLERANCE).assertPassed();
+    }
+
+    @Test
+    public void testFlintSinglePrecisionMatchesDoublePrecision() throws Exception {
+        final Setup setup = Setup.FLINT;
+        final GoldenTable expected = computeDoublePrecision(setup);
+        final GoldenTable actual = computeSinglePrecision(setup);
+        compare(setup + " single precision", expected, actual, SINGLE_PRECISION_TOLERANCE).assertPassed();
+    }
+
+    @Test
+    public void testDerivedReflectancesMatchSeparateCorrections() throws Exception {
+        // the operator computes the nets once for the variants sharing them and derives the reflectances per variant
+        final GlintCorrection shared = new GlintCorrection(loadNet(FLINT_NET_NAME), null,
+                                                           loadNet(NORMALIZATION_NET_NAME), loadNet(AANN_NET_NAME),
+                                                           ReflectanceEnum.RADIANCE_REFLECTANCES);
+        final GlintResult sharedResult = new GlintResult();
+        final GlintCorrection[] separate = new GlintCorrection[VARIANT_COUNT];
+        for (int v = 0; v < VARIANT_COUNT; v++) {
+            separate[v] = new GlintCorrection(loadNet(FLINT_NET_NAME), null,
+                                              isNormalized(v) ? loadNet(NORMALIZATION_NET_NAME) : null,
+                                              loadNet(AANN_NET_NAME), getReflectance(v));
+        }
+        final GlintResult separateResult = new GlintResult();
+        for (PixelData pixel : createPixels(true)) {
+            final boolean valid = shared.correctAtmosphere(pixel, sharedResult);
+            for (int v = 0; v < VARIANT_COUNT; v++) {
+                if (valid) {
+                    shared.deriveReflectances(isDerivedFromPath(v), getReflectance(v), isNormalized(v),
+                                              sharedResult);
+                }
+                separate[v].perform(pixel, isDerivedFromPath(v), separateResult);
+                assertArrayEquals(toRow(separateResult), toRow(sharedResult), 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testDerivedReflectancesMatchSeparateCorrectionsSinglePrecision() throws Exception {
+        final FloatGlintCorrection shared = new FloatGlintCorrection(loadNet(FLINT_NET_NAME), null,
+                                                                     loadNet(NORMALIZATION_NET_NAME),
+                                                                     loadNet(AANN_NET_NAME),
+                                                                     ReflectanceEnum.RADIANCE_REFLECTANCES);
+        final FloatGlintResult sharedResult = new FloatGlintResult();
+        final FloatGlintCorrection[] separate = new FloatGlintCorrection[VARIANT_COUNT];
+        for (int v = 0; v < VARIANT_COUNT; v++) {
+            separate[v] = new FloatGlintCorrection(loadNet(FLINT_NET_NAME), null,
+                                                   isNormalized(v) ? loadNet(NORMALIZATION_NET_NAME) : null,
+                                                   loadNet(AANN_NET_NAME), getReflectance(v));
+        }
+        final FloatGlintResult separateResult = new FloatGlintResult();
+        final FloatPixelData floatPixel = new FloatPixelData(MERIS_SOLAR_FLUX.length);
+        for (PixelData pixel : createPixels(true)) {
+            copy(pixel, floatPixel);
+            final boolean valid = shared.correctAtmosphere(floatPixel, sharedResult);
+            for (int v = 0; v < VARIANT_COUNT; v++) {
+                if (valid) {
+                    shared.deriveReflectances(isDerivedFromPath(v), getReflectance(v), isNormalized(v),
+                                              sharedResult);
+                }
+                separate[v].perform(floatPixel, isDerivedFromPath(v), separateResult);
+                assertArrayEquals(toRow(separateResult), toRow(sharedResult), 0.0);
+            }
+        }
+    }
+
+    private static boolean isDerivedFromPath(int variant) {
+        return (variant & 1) != 0;
+    }
+
+    private static ReflectanceEnum getReflectance(int variant) {
+        return (variant & 2) != 0 ? ReflectanceEnum.IRRADIANCE_REFLECTANCES : ReflectanceEnum.RADIANCE_REFLECTANCES;
+    }
+
+    private static boolean isNormalized(int variant) {
+        return (variant & 4) != 0;
+    }
+
+    /**
+     * Records the golden tables of the reference implementation.
+     *
+     * @param args the directory to write the tables to, usually
+     *             {@code src/test/resources/org/esa/beam/atmosphere/operator}
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: AgcGoldenTest <output-dir>");
+            System.exit(1);
+        }
+        for (Setup setup : Setup.values()) {
+            final File file = new File(args[0], setup.tableName);
+            computeDoublePrecision(setup).write(file, "AGC golden outputs, " + setup + " setup, " +
+                                                      PIXEL_COUNT + " synthetic pixels, seed " + SEED);
+            System.out.println("Written " + file);
+        }
+    }
+
+    static GoldenComparison compare(String name, GoldenTable golden, GoldenTable actual, Tolerance tolerance) {
+        final GoldenComparison comparison = new GoldenComparison(name);
+        final String[] columnNames = golden.getColumnNames();
+        for (int row = 0; row < golden.getRowCount(); row++) {
+            for (String columnName : columnNames) {
+                final double reference = golden.getValue(row, columnName);
+                final double candidate = actual.getValue(row, columnName);
+                if (FLAG_COLUMN.equals(columnName)) {
+                    comparison.compareFlags(columnName, row, (int) reference, (int) candidate);
+                } else {
+                    comparison.compare(columnName, tolerance, row, reference, candidate);
+                }
+            }
+        }
+        return comparison;
+    }
+
+    private static GoldenTable readGoldenTable(Setup setup) throws IOException {
+        return GoldenTable.read(AgcGoldenTest.class.getResourceAsStream(setup.tableName));
+    }
+
+    private static GoldenTable computeDoublePrecision(Setup setup) throws IOException {
+        final GlintCorrection correction = new GlintCorrection(loadNet(setup.atmosphereNetName), null,
+                                                               loadNet(NORMALIZATION_NET_NAME),
+                                                               loadNet(AANN_NET_NAME), setup.reflectance);
+        final GoldenTable table = new GoldenTable(createColumnNames());
+        for (PixelData pixel : createPixels(setup.withFlint)) {
+            table.addRow(toRow(correction.perform(pixel, setup.deriveRwFromPath)));
+        }
+        return table;
+    }
+
+    private static GoldenTable computeSinglePrecision(Setup setup) throws IOException {
+        final FloatGlintCorrection correction = new FloatGlintCorrection(loadNet(setup.atmosphereNetName), null,
+                                                                         loadNet(NORMALIZATION_NET_NAME),
+                                                                         loadNet(AANN_NET_NAME), setup.reflectance);
+        final GoldenTable table = new GoldenTable(createColumnNames());
+        final FloatPixelData floatPixel = new FloatPixelData(MERIS_SOLAR_FLUX.length);
+        final FloatGlintResult result = new FloatGlintResult();
+        for (PixelData pixel : createPixels(setup.withFlint)) {
+            copy(pixel, floatPixel);
+            result.reset();
+            correction.perform(floatPixel, setup.deriveRwFromPath, result);
+            table.addRow(toRow(result));
+        }
+        return table;
+    }
+
+    private static double[] toRow(GlintResult result) {
+        final List<Double> values = new ArrayList<>();
+        values.add((double) result.getFlag());
+        addAll(values, result.getTosaReflec());
+        addAll(values, result.getReflec());
+        addAll(values, result.getNormReflec());
+        addAll(values, result.getPath());
+        addAll(values, result.getTrans());
+        values.add(result.getTau550());
+        values.add(result.getTau778());
+        values.add(result.getTau865());
+        values.add(result.getAngstrom());
+        values.add(result.getGlintRatio());
+        values.add(result.getBtsm());
+        values.add(result.getAtot());
+        values.add(result.getTosaQualityIndicator());
+        return toArray(values);
+    }
+
+    private static double[] toRow(FloatGlintResult result) {
+        final List<Double> values = new ArrayList<>();
+        values.add((double) result.getFlag());
+        addAll(values, result.getTosaReflec());
+        addAll(values, result.getReflec());
+        addAll(values, result.getNormReflec());
+        addAll(values, result.getPath());
+        addAll(values, result.getTrans());
+        values.add((double) result.getTau550());
+        values.add((double) result.getTau778());
+        values.add((double) result.getTau865());
+        values.add((double) result.getAngstrom());
+        values.add((double) result.getGlintRatio());
+        values.add((double) result.getBtsm());
+        values.add((double) result.getAtot());
+        values.add((double) result.getTosaQualityIndicator());
+        return toArray(values);
+    }
+
+    /**
+     * Creates a deterministic set of ocean pixels covering the training range of the nets, including
+     * pixels which are flagged as land, cloud, invalid or out of range.
+     */
+    static List<PixelData> createPixels(boolean withFlint) {
+        final Random random = new Random(SEED);
+        final List<PixelData> pixels = new ArrayList<>(PIXEL_COUNT);
+        for (int k = 0; k < PIXEL_COUNT; k++) {
+            final PixelData pixel = new PixelData();
+            pixel.pixelX = random.nextInt(1121);
+            pixel.pixelY = k;
+            pixel.nadirColumnIndex = 560;
+            pixel.isFullResolution = false;
+            pixel.solzen = 5.0 + 65.0 * random.nextDouble();
+            pixel.satzen = 40.0 * random.nextDouble();
+            pixel.solazi = 360.0 * random.nextDouble();
+            pixel.satazi = 360.0 * random.nextDouble();
+            pixel.pressure = 980.0 + 50.0 * random.nextDouble();
+            pixel.ozone = 250.0 + 150.0 * random.nextDouble();
+            pixel.altitude = 0.0;
+            pixel.toa_radiance = new double[MERIS_SOLAR_FLUX.length];
+            pixel.solar_flux = MERIS_SOLAR_FLUX.clone();
+
+            final double aerosol = 0.04 + 0.08 * random.nextDouble();
+            final double exponent = 1.0 + 3.0 * random.nextDouble();
+            final double glint = 0.1 * random.nextDouble() * random.nextDouble();
+            final double cosSun = Math.cos(Math.toRadians(pixel.solzen));
+            for (int i = 0; i < pixel.toa_radiance.length; i++) {
+                final double rho = aerosol * Math.pow(MERIS_BAND_WAVELENGTHS[i] / MERIS_BAND_WAVELENGTHS[0], -exponent)
+                                   + glint;
+                pixel.toa_radiance[i] = rho * pixel.solar_flux[i] * cosSun / Math.PI;
+            }
+            if (withFlint && k % 8 != 7) {
+                pixel.flintValue = -10.0 + 8.0 * random.nextDouble();
+            }
+
+            // every ninth pixel gets one of the special cases
+            switch (k % 9 == 8 ? (k / 9) % 6 : -1) {
+                case 0:
+                    pixel.validation = ToaReflectanceValidationOp.LAND_FLAG_MASK;
+                    break;
+                case 1:
+                    pixel.validation = ToaReflectanceValidationOp.CLOUD_ICE_FLAG_MASK;
+                    break;
+                case 2:
+                    pixel.l1Flag = GlintCorrection.L1_INVALID_FLAG;
+                    break;
+                case 3:
+                    pixel.validation = ToaReflectanceValidationOp.RLTOA_OOR_FLAG_MASK;
+                    break;
+                case 4:
+                    pixel.pressure = 300.0;
+                    break;
+                case 5:
+                    pixel.solzen = 78.0;
+                    break;
+                default:
+                    break;
+            }
+            pixels.add(pixel);
+        }
+        return pixels;
+    }
+
+    private static void copy(PixelData pixel, FloatPixelData floatPixel) {
+        floatPixel.pixelX = pixel.pixelX;
+        floatPixel.pixelY = pixel.pixelY;
+        floatPixel.nadirColumnIndex = pixel.nadirColumnIndex;
+        floatPixel.isFullResolution = pixel.isFullResolution;
+        for (int i = 0; i < pixel.toa_radiance.length; i++) {
+            floatPixel.toa_radiance[i] = (float) pixel.toa_radiance[i];
+            floatPixel.solar_flux[i] = (float) pixel.solar_flux[i];
+        }
+        floatPixel.altitude = (float) pixel.altitude;
+        floatPixel.solzen = (float) pixel.solzen;
+        floatPixel.solazi = (float) pixel.solazi;
+        floatPixel.satzen = (float) pixel.satzen;
+        floatPixel.satazi = (float) pixel.satazi;
+        floatPixel.pressure = (float) pixel.pressure;
+        floatPixel.ozone = (float) pixel.ozone;
+        floatPixel.l1Flag = pixel.l1Flag;
+        floatPixel.validation = pixel.validation;
+        floatPixel.detectorIndex = pixel.detectorIndex;
+        floatPixel.flintValue = (float) pixel.flintValue;
+    }
+
+    private static String[] createColumnNames() {
+        final List<String> names = new ArrayList<>();
+        names.add(FLAG_COLUMN);
+        for (String spectralName : SPECTRAL_NAMES) {
+            for (int bandNumber : BAND_NUMBERS) {
+                names.add(spectralName + "_" + bandNumber);
+            }
+        }
+        for (String scalarName : SCALAR_NAMES) {
+            names.add(scalarName);
+        }
+        return names.toArray(new String[names.size()]);
+    }
+
+    static NeuralNetEvaluator loadNet(String name) throws IOException {
+        return new NeuralNetEvaluator(NeuralNet.read(GlintCorrectionOperator.class.getResourceAsStream(name)));
+    }
+
+    private static void addAll(List<Double> values, double[] array) {
+        for (double value : array) {
+            values.add(value);
+        }
+    }
+
+    private static void addAll(List<Double> values, float[] array) {
+        for (float value : array) {
+            values.add((double) value);
+        }
+    }
+
+    private static double[] toArray(List<Double> values) {
+        final double[] array = new double[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+    private enum Setup {
+
+        MERIS("agc_golden_meris.csv", MERIS_NET_NAME, false, false, ReflectanceEnum.RADIANCE_REFLECTANCES),
+        FLINT("agc_golden_flint.csv", FLINT_NET_NAME, true, true, ReflectanceEnum.IRRADIANCE_REFLECTANCES);
+
+        private final String tableName;
+        private final String atmosphereNetName;
+        private final boolean withFlint;
+        private final boolean deriveRwFromPath;
+        private final ReflectanceEnum reflectance;
+
+        Setup(String tableName, String atmosphereNetName, boolean withFlint, boolean deriveRwFromPath,
+              ReflectanceEnum reflectance) {
+            this.tableName = tableName;
+            this.atmosphereNetName = atmosphereNetName;
+            this.withFlint = withFlint;
+            this.deriveRwFromPath = deriveRwFromPath;
+            this.reflectance = reflectance;
+        }
+    }
+}
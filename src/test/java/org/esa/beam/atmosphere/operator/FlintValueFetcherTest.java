@@ -0,0 +1,173 @@
+package org.esa.beam.atmosphere.operator;
+
+import org.esa.beam.framework.datamodel.Band;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.datamodel.ProductData;
+import org.esa.beam.framework.datamodel.TiePointGeoCoding;
+import org.esa.beam.framework.datamodel.TiePointGrid;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class FlintValueFetcherTest {
+
+    private static final int WIDTH = 100;
+    private static final int HEIGHT = 80;
+    // the AATSR swath starts at this column
+    private static final int SWATH_START_X = 43;
+    private static final int FLINT_VALUE = 7;
+
+    private Product product;
+    private Band viewElevationBand;
+    private BlockingImage flintImage;
+    private FlintValueFetcher fetcher;
+
+    @Before
+    public void setUp() {
+        product = new Product("flint", "FLINT", WIDTH, HEIGHT);
+        product.addTiePointGrid(new TiePointGrid("latitude", 2, 2, 0.5f, 0.5f, WIDTH - 1, HEIGHT - 1,
+                                                 new float[]{49.995f, 49.995f, 49.205f, 49.205f}));
+        product.addTiePointGrid(new TiePointGrid("longitude", 2, 2, 0.5f, 0.5f, WIDTH - 1, HEIGHT - 1,
+                                                 new float[]{10.005f, 10.995f, 10.005f, 10.995f}));
+        product.setGeoCoding(new TiePointGeoCoding(product.getTiePointGrid("latitude"),
+                                                   product.getTiePointGrid("longitude")));
+
+        flintImage = new BlockingImage();
+        fill(flintImage.getRaster(), 0, FLINT_VALUE);
+        final Band flintBand = product.addBand("result_radiance_rr89", ProductData.TYPE_UINT16);
+        flintBand.setSourceImage(flintImage);
+
+        final BufferedImage viewElevationImage = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_USHORT_GRAY);
+        fill(viewElevationImage.getRaster(), SWATH_START_X, 30);
+        viewElevationBand = product.addBand("view_elev_nadir_S", ProductData.TYPE_UINT16);
+        viewElevationBand.setSourceImage(viewElevationImage);
+
+        fetcher = new FlintValueFetcher(product.getGeoCoding(), flintBand, viewElevationBand, 1);
+    }
+
+    @After
+    public void tearDown() {
+        flintImage.release();
+        fetcher.dispose();
+    }
+
+    @Test(timeout = 10000)
+    public void testPixelsOutsideSwathAreAvailableBeforeFetchCompletes() {
+        final Rectangle targetRectangle = new Rectangle(40, 20, 8, 4);
+        final FlintValueFetcher.FlintTile flintTile = fetcher.fetch(targetRectangle, null);
+        assertEquals(new Rectangle(SWATH_START_X, 20, 5, 4), flintTile.getFlintRectangle());
+
+        // the background request is still blocked
+        for (int y = 0; y < targetRectangle.height; y++) {
+            for (int x = 0; x < SWATH_START_X - targetRectangle.x; x++) {
+                final int pixelIndex = y * targetRectangle.width + x;
+                assertTrue(flintTile.isCovered(pixelIndex));
+                assertFalse(flintTile.isPending(pixelIndex));
+                assertEquals(FlintValueFetcher.OUTSIDE_SWATH_VALUE, flintTile.getFlintValue(pixelIndex), 0.0);
+            }
+        }
+        assertFalse(flintImage.isReleased());
+
+        flintImage.release();
+        for (int y = 0; y < targetRectangle.height; y++) {
+            for (int x = SWATH_START_X - targetRectangle.x; x < targetRectangle.width; x++) {
+                final int pixelIndex = y * targetRectangle.width + x;
+                assertTrue(flintTile.isPending(pixelIndex));
+                assertEquals(FLINT_VALUE, flintTile.getFlintValue(pixelIndex), 0.0);
+            }
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testTileOutsideSwathIsNotFetched() {
+        final Rectangle targetRectangle = new Rectangle(0, 0, 16, 16);
+        final FlintValueFetcher.FlintTile flintTile = fetcher.fetch(targetRectangle, null);
+        assertNull(flintTile.getFlintRectangle());
+        for (int pixelIndex = 0; pixelIndex < targetRectangle.width * targetRectangle.height; pixelIndex++) {
+            assertFalse(flintTile.isPending(pixelIndex));
+            assertEquals(FlintValueFetcher.OUTSIDE_SWATH_VALUE, flintTile.getFlintValue(pixelIndex), 0.0);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testWithoutViewElevationAllCoveredPixelsArePending() {
+        final FlintValueFetcher allPixelsFetcher = new FlintValueFetcher(product.getGeoCoding(),
+                                                                         product.getBand("result_radiance_rr89"),
+                                                                         null, 1);
+        try {
+            final Rectangle targetRectangle = new Rectangle(40, 20, 8, 4);
+            final boolean[] regionMask = new boolean[targetRectangle.width * targetRectangle.height];
+            regionMask[1] = true;
+            regionMask[regionMask.length - 1] = true;
+            final FlintValueFetcher.FlintTile flintTile = allPixelsFetcher.fetch(targetRectangle, regionMask);
+            assertEquals(new Rectangle(41, 20, 7, 4), flintTile.getFlintRectangle());
+            assertFalse(flintTile.isCovered(0));
+            assertEquals(GlintCorrectionOperator.NO_FLINT_VALUE, flintTile.getFlintValue(0), 0.0);
+            assertTrue(flintTile.isPending(1));
+            flintImage.release();
+            assertEquals(FLINT_VALUE, flintTile.getFlintValue(1), 0.0);
+        } finally {
+            allPixelsFetcher.dispose();
+        }
+    }
+
+    private static void fill(WritableRaster raster, int startX, int value) {
+        for (int y = 0; y < raster.getHeight(); y++) {
+            for (int x = startX; x < raster.getWidth(); x++) {
+                raster.setSample(x, y, 0, value);
+            }
+        }
+    }
+
+    /**
+     * An image whose data are only delivered after {@link #release}.
+     */
+    private static final class BlockingImage extends BufferedImage {
+
+        private final CountDownLatch latch = new CountDownLatch(1);
+
+        private BlockingImage() {
+            super(WIDTH, HEIGHT, BufferedImage.TYPE_USHORT_GRAY);
+        }
+
+        private void release() {
+            latch.countDown();
+        }
+
+        private boolean isReleased() {
+            return latch.getCount() == 0;
+        }
+
+        @Override
+        public Raster getTile(int tileX, int tileY) {
+            await();
+            return super.getTile(tileX, tileY);
+        }
+
+        @Override
+        public Raster getData(Rectangle rect) {
+            await();
+            return super.getData(rect);
+        }
+
+        private void await() {
+            try {
+                if (!latch.await(5, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("Image data were not released");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
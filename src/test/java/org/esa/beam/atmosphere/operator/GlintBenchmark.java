@@ -0,0 +1,153 @@
+package org.esa.beam.atmosphere.operator;
+
+import org.esa.beam.framework.datamodel.Band;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.gpf.GPF;
+import org.esa.beam.glint.util.SyntheticProductFactory;
+
+import java.awt.image.RenderedImage;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures the throughput of the AGC Glint correction, optionally including FLINT, on synthetic products
+ * created by {@link SyntheticProductFactory}.
+ * <p/>
+ * All tiles of all target bands are computed by the given number of threads. The elapsed time, the throughput,
+ * the peak heap usage and the garbage collection activity are reported.
+ * <p/>
+ * Usage: {@code GlintBenchmark <RR|FR> [<scene-height>] [<threads>] [flint]}
+ */
+public class GlintBenchmark {
+
+    private GlintBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length > 4) {
+            System.err.println("Usage: GlintBenchmark <RR|FR> [<scene-height>] [<threads>] [flint]");
+            System.exit(1);
+        }
+        final SyntheticProductFactory.Resolution resolution = SyntheticProductFactory.Resolution.valueOf(args[0]);
+        final int sceneHeight = args.length > 1 ? Integer.parseInt(args[1]) : resolution.getSceneWidth();
+        final int threadCount = args.length > 2 ? Integer.parseInt(args[2]) :
+                                Runtime.getRuntime().availableProcessors();
+        final boolean useFlint = args.length > 3 && "flint".equals(args[3]);
+
+        GPF.getDefaultInstance().getOperatorSpiRegistry().loadOperatorSpis();
+        final SyntheticProductFactory factory = new SyntheticProductFactory(resolution, sceneHeight);
+        final Map<String, Product> sourceProducts = new HashMap<>(2);
+        sourceProducts.put("merisProduct", factory.createMerisProduct());
+        if (useFlint) {
+            sourceProducts.put("aatsrProduct", factory.createAatsrProduct());
+        }
+        final Map<String, Object> parameters = new HashMap<>(2);
+        parameters.put("useFlint", useFlint);
+        final Product targetProduct = GPF.createProduct("Meris.GlintCorrection", parameters, sourceProducts);
+
+        try {
+            resetPeakUsage();
+            final long gcCountBefore = getGcCount();
+            final long gcTimeBefore = getGcTime();
+            final long start = System.nanoTime();
+            computeAllTiles(targetProduct, threadCount);
+            final double seconds = (System.nanoTime() - start) / 1.0e9;
+
+            final long pixelCount = (long) targetProduct.getSceneRasterWidth() * targetProduct.getSceneRasterHeight();
+            final PrintStream out = System.out;
+            out.printf(Locale.ENGLISH, "scene:          %s %d x %d%s%n", resolution,
+                       targetProduct.getSceneRasterWidth(), targetProduct.getSceneRasterHeight(),
+                       useFlint ? " with FLINT" : "");
+            out.printf(Locale.ENGLISH, "threads:        %d%n", threadCount);
+            out.printf(Locale.ENGLISH, "elapsed:        %.2f s%n", seconds);
+            out.printf(Locale.ENGLISH, "throughput:     %.0f pixels/s%n", pixelCount / seconds);
+            out.printf(Locale.ENGLISH, "peak heap:      %d MB%n", getPeakHeapUsage() / (1024 * 1024));
+            out.printf(Locale.ENGLISH, "gc:             %d collections, %d ms%n",
+                       getGcCount() - gcCountBefore, getGcTime() - gcTimeBefore);
+        } finally {
+            targetProduct.dispose();
+            for (Product product : sourceProducts.values()) {
+                product.dispose();
+            }
+        }
+    }
+
+    private static void computeAllTiles(Product product, int threadCount) throws InterruptedException,
+                                                                                  ExecutionException {
+        final List<RenderedImage> images = new ArrayList<>();
+        for (Band band : product.getBands()) {
+            images.add(band.getSourceImage());
+        }
+        final RenderedImage layout = images.get(0);
+        final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            final List<Future<Object>> futures = new ArrayList<>();
+            for (int tileY = layout.getMinTileY(); tileY < layout.getMinTileY() + layout.getNumYTiles(); tileY++) {
+                for (int tileX = layout.getMinTileX(); tileX < layout.getMinTileX() + layout.getNumXTiles(); tileX++) {
+                    final int x = tileX;
+                    final int y = tileY;
+                    futures.add(executor.submit(new Callable<Object>() {
+                        @Override
+                        public Object call() {
+                            // the first band triggers the computation of the tile stack, the others are cached
+                            for (RenderedImage image : images) {
+                                image.getTile(x, y);
+                            }
+                            return null;
+                        }
+                    }));
+                }
+            }
+            for (Future<Object> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void resetPeakUsage() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+    }
+
+    private static long getPeakHeapUsage() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private static long getGcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long getGcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return time;
+    }
+}
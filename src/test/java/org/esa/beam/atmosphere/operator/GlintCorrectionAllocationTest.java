@@ -0,0 +1,111 @@
+package org.esa.beam.atmosphere.operator;
+
+import org.esa.beam.PixelData;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+/**
+ * Ensures that the per-pixel path of the AGC glint correction does not allocate memory, i.e. that the memory
+ * allocated for a tile does not depend on the number of pixels in the tile.
+ */
+public class GlintCorrectionAllocationTest {
+
+    private static final int SMALL_TILE = 64;
+    private static final int LARGE_TILE = 16384;
+    // the measurement itself may allocate a few bytes
+    private static final long MAX_ALLOCATION_DIFFERENCE = 1024;
+
+    private com.sun.management.ThreadMXBean threadMXBean;
+    private List<PixelData> pixels;
+    private double checksum;
+
+    @Before
+    public void setUp() {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threadMXBean = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+        pixels = AgcGoldenTest.createPixels(true);
+    }
+
+    @Test
+    public void testMerisCorrectionDoesNotAllocatePerPixel() throws Exception {
+        final GlintCorrection correction = new GlintCorrection(AgcGoldenTest.loadNet(AgcGoldenTest.MERIS_NET_NAME),
+                                                               null,
+                                                               AgcGoldenTest.loadNet(AgcGoldenTest.NORMALIZATION_NET_NAME),
+                                                               AgcGoldenTest.loadNet(AgcGoldenTest.AANN_NET_NAME),
+                                                               ReflectanceEnum.RADIANCE_REFLECTANCES);
+        assertAllocationIndependentOfPixelCount(correction, false);
+    }
+
+    @Test
+    public void testFlintCorrectionDoesNotAllocatePerPixel() throws Exception {
+        final GlintCorrection correction = new GlintCorrection(AgcGoldenTest.loadNet(AgcGoldenTest.FLINT_NET_NAME),
+                                                               null,
+                                                               AgcGoldenTest.loadNet(AgcGoldenTest.NORMALIZATION_NET_NAME),
+                                                               AgcGoldenTest.loadNet(AgcGoldenTest.AANN_NET_NAME),
+                                                               ReflectanceEnum.IRRADIANCE_REFLECTANCES);
+        assertAllocationIndependentOfPixelCount(correction, true);
+    }
+
+    private void assertAllocationIndependentOfPixelCount(GlintCorrection correction, boolean deriveRwFromPath) {
+        // warm up, so that class loading and compilation do not show up in the measurement
+        for (int i = 0; i < 5; i++) {
+            correctTile(correction, deriveRwFromPath, LARGE_TILE);
+        }
+        final long smallTileBytes = measureAllocatedBytes(correction, deriveRwFromPath, SMALL_TILE);
+        final long largeTileBytes = measureAllocatedBytes(correction, deriveRwFromPath, LARGE_TILE);
+        assertTrue("Allocated " + smallTileBytes + " bytes for " + SMALL_TILE + " pixels, but " + largeTileBytes +
+                   " bytes for " + LARGE_TILE + " pixels",
+                   largeTileBytes - smallTileBytes < MAX_ALLOCATION_DIFFERENCE);
+        assertFalse(Double.isInfinite(checksum));
+    }
+
+    private long measureAllocatedBytes(GlintCorrection correction, boolean deriveRwFromPath, int pixelCount) {
+        final long threadId = Thread.currentThread().getId();
+        final long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        correctTile(correction, deriveRwFromPath, pixelCount);
+        return threadMXBean.getThreadAllocatedBytes(threadId) - before;
+    }
+
+    /**
+     * Processes a tile the way {@link GlintCorrectionOperator} does, with one workspace for all pixels.
+     */
+    private void correctTile(GlintCorrection correction, boolean deriveRwFromPath, int pixelCount) {
+        final PixelData pixel = new PixelData(15);
+        final GlintResult result = new GlintResult();
+        for (int i = 0; i < pixelCount; i++) {
+            copy(pixels.get(i % pixels.size()), pixel);
+            correction.perform(pixel, deriveRwFromPath, result);
+            checksum += result.getFlag() + result.getReflec()[4] + result.getTau550();
+        }
+    }
+
+    private static void copy(PixelData source, PixelData target) {
+        target.pixelX = source.pixelX;
+        target.pixelY = source.pixelY;
+        target.nadirColumnIndex = source.nadirColumnIndex;
+        target.isFullResolution = source.isFullResolution;
+        System.arraycopy(source.toa_radiance, 0, target.toa_radiance, 0, source.toa_radiance.length);
+        System.arraycopy(source.solar_flux, 0, target.solar_flux, 0, source.solar_flux.length);
+        target.altitude = source.altitude;
+        target.solzen = source.solzen;
+        target.solazi = source.solazi;
+        target.satzen = source.satzen;
+        target.satazi = source.satazi;
+        target.pressure = source.pressure;
+        target.ozone = source.ozone;
+        target.l1Flag = source.l1Flag;
+        target.validation = source.validation;
+        target.detectorIndex = source.detectorIndex;
+        target.flintValue = source.flintValue;
+    }
+}
@@ -4,8 +4,13 @@ import org.esa.beam.framework.datamodel.MetadataAttribute;
 import org.esa.beam.framework.datamodel.MetadataElement;
 import org.esa.beam.framework.datamodel.Product;
 import org.esa.beam.framework.datamodel.ProductData;
+import org.esa.beam.framework.gpf.GPF;
+import org.esa.beam.glint.util.ProcessingStatistics;
+import org.esa.beam.glint.util.SyntheticProductFactory;
 import org.junit.Test;
 
+import java.awt.image.Raster;
+
 import static org.junit.Assert.*;
 
 public class GlintCorrectionOperatorTest {
@@ -55,4 +60,79 @@ public class GlintCorrectionOperatorTest {
         assertTrue(GlintCorrectionOperator.isProductMerisFullResolution(product));
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testComputeStripeHeight() throws Exception {
+        // 4865 pixels * 400 bytes per pixel ~ 1.86 MB per row
+        assertEquals(53, GlintCorrectionOperator.computeStripeHeight(4865, 40000, 400, 100 * 1024 * 1024));
+        // never more than the scene
+        assertEquals(2000, GlintCorrectionOperator.computeStripeHeight(1121, 2000, 400, 4096L * 1024 * 1024));
+        // never less than a single row
+        assertEquals(1, GlintCorrectionOperator.computeStripeHeight(4865, 40000, 400, 1024));
+    }
+
+    @Test
+    public void testAuxiliaryBandsOnDemandAreOnlyComputedWhenRead() throws Exception {
+        final Product merisProduct = createMerisProduct();
+        final GlintCorrectionOperator op = createOperator(merisProduct, true);
+        try {
+            final Product targetProduct = op.getTargetProduct();
+            readSamples(targetProduct, "reflec_1");
+            readSamples(targetProduct, "tosa_reflec_1");
+            readSamples(targetProduct, "agc_flags");
+            // the normalised reflectances are only computed by the auxiliary pass
+            assertEquals(0, getStageCalls(op, ProcessingStatistics.Stage.NORMALIZATION_NET));
+            final long mainTosaCalls = getStageCalls(op, ProcessingStatistics.Stage.TOSA);
+            assertTrue(mainTosaCalls > 0);
+
+            readSamples(targetProduct, "norm_refl_1");
+            assertTrue(getStageCalls(op, ProcessingStatistics.Stage.NORMALIZATION_NET) > 0);
+            assertTrue(getStageCalls(op, ProcessingStatistics.Stage.TOSA) > mainTosaCalls);
+        } finally {
+            op.dispose();
+            merisProduct.dispose();
+        }
+    }
+
+    @Test
+    public void testAuxiliaryBandsOnDemandEqualEagerBands() throws Exception {
+        final Product merisProduct = createMerisProduct();
+        final GlintCorrectionOperator eagerOp = createOperator(merisProduct, false);
+        final GlintCorrectionOperator onDemandOp = createOperator(merisProduct, true);
+        try {
+            for (String bandName : new String[]{"tosa_reflec_auto_1", "norm_refl_1", "path_5", "trans_13"}) {
+                final float[] expected = readSamples(eagerOp.getTargetProduct(), bandName);
+                final float[] actual = readSamples(onDemandOp.getTargetProduct(), bandName);
+                assertArrayEquals(bandName, expected, actual, 0.0f);
+            }
+        } finally {
+            eagerOp.dispose();
+            onDemandOp.dispose();
+            merisProduct.dispose();
+        }
+    }
+
+    private static Product createMerisProduct() {
+        GPF.getDefaultInstance().getOperatorSpiRegistry().loadOperatorSpis();
+        return new SyntheticProductFactory(SyntheticProductFactory.Resolution.RR, 16).createMerisProduct();
+    }
+
+    private static GlintCorrectionOperator createOperator(Product merisProduct, boolean auxiliaryBandsOnDemand) {
+        final GlintCorrectionOperator op = new GlintCorrectionOperator();
+        op.setSourceProduct("merisProduct", merisProduct);
+        op.setParameter("outputAutoTosa", true);
+        op.setParameter("outputNormReflec", true);
+        op.setParameter("collectStatistics", true);
+        op.setParameter("auxiliaryBandsOnDemand", auxiliaryBandsOnDemand);
+        return op;
+    }
+
+    private static float[] readSamples(Product product, String bandName) {
+        final Raster data = product.getBand(bandName).getSourceImage().getData();
+        return data.getSamples(0, 0, data.getWidth(), data.getHeight(), 0, (float[]) null);
+    }
+
+    private static long getStageCalls(GlintCorrectionOperator op, ProcessingStatistics.Stage stage) {
+        return op.getStatistics().getStageCalls()[stage.ordinal()];
+    }
+}
@@ -0,0 +1,108 @@
+package org.esa.beam.atmosphere.operator;
+
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.datamodel.ProductData;
+import org.esa.beam.framework.datamodel.TiePointGeoCoding;
+import org.esa.beam.framework.datamodel.TiePointGrid;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MatchupExtractorTest {
+
+    private Product product;
+
+    @Before
+    public void setUp() throws Exception {
+        // the scene covers 49.2 - 50.0 N and 10.0 - 11.0 E with 0.01 degree pixels
+        product = new Product("test", "MER_RR__1P", 100, 80);
+        product.addTiePointGrid(new TiePointGrid("latitude", 2, 2, 0.5f, 0.5f, 99.0f, 79.0f,
+                                                 new float[]{49.995f, 49.995f, 49.205f, 49.205f}));
+        product.addTiePointGrid(new TiePointGrid("longitude", 2, 2, 0.5f, 0.5f, 99.0f, 79.0f,
+                                                 new float[]{10.005f, 10.995f, 10.005f, 10.995f}));
+        product.setGeoCoding(new TiePointGeoCoding(product.getTiePointGrid("latitude"),
+                                                   product.getTiePointGrid("longitude")));
+        product.setStartTime(ProductData.UTC.parse("2003-06-14 09:55:22", "yyyy-MM-dd HH:mm:ss"));
+        product.setEndTime(ProductData.UTC.parse("2003-06-14 09:57:00", "yyyy-MM-dd HH:mm:ss"));
+    }
+
+    @Test
+    public void testReadMatchups() throws Exception {
+        final List<MatchupExtractor.Matchup> matchups = MatchupExtractor.readMatchups(new StringReader(
+                "# in-situ stations\n" +
+                "name,lat,lon,time\n" +
+                "Helgoland,54.18,7.9,2003-06-14 10:30:00\n" +
+                "\n" +
+                "AAOT, 45.31, 12.51, 2003-06-14T09:00:00Z\n" +
+                "Buoy,43.5,-9.2,\n"));
+        assertEquals(3, matchups.size());
+        assertEquals("Helgoland", matchups.get(0).getName());
+        assertEquals(54.18f, matchups.get(0).getLat(), 1.0e-6f);
+        assertEquals(7.9f, matchups.get(0).getLon(), 1.0e-6f);
+        assertEquals(ProductData.UTC.parse("2003-06-14 10:30:00", "yyyy-MM-dd HH:mm:ss").getAsDate(),
+                     matchups.get(0).getTime());
+        assertEquals(12.51f, matchups.get(1).getLon(), 1.0e-6f);
+        assertNotNull(matchups.get(1).getTime());
+        assertNull(matchups.get(2).getTime());
+    }
+
+    @Test
+    public void testReadMatchupsWithTabsAndWithoutName() throws IOException {
+        final List<MatchupExtractor.Matchup> matchups = MatchupExtractor.readMatchups(new StringReader(
+                "Latitude\tLongitude\n49.5\t10.5\n49.6\t10.6\n"));
+        assertEquals(2, matchups.size());
+        assertEquals("1", matchups.get(0).getName());
+        assertEquals("2", matchups.get(1).getName());
+        assertNull(matchups.get(0).getTime());
+    }
+
+    @Test(expected = IOException.class)
+    public void testMissingColumnIsRejected() throws IOException {
+        MatchupExtractor.readMatchups(new StringReader("name,lat\nA,49.5\n"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidRecordIsRejected() throws IOException {
+        MatchupExtractor.readMatchups(new StringReader("lat,lon\n49.5,east\n"));
+    }
+
+    @Test
+    public void testLocate() throws Exception {
+        final MatchupExtractor extractor = new MatchupExtractor(5, 3.0);
+        final List<MatchupExtractor.MatchupWindow> windows = extractor.locate(product, Arrays.asList(
+                new MatchupExtractor.Matchup("inside", 49.755f, 10.255f, null),
+                new MatchupExtractor.Matchup("border", 49.995f, 10.005f, null),
+                new MatchupExtractor.Matchup("outside", 48.0f, 10.5f, null)));
+        assertEquals(2, windows.size());
+        assertEquals("inside", windows.get(0).matchup.getName());
+        assertEquals(new Rectangle(23, 22, 5, 5), windows.get(0).rectangle);
+        // the window is clipped at the scene border
+        assertEquals(new Rectangle(0, 0, 3, 3), windows.get(1).rectangle);
+    }
+
+    @Test
+    public void testLocateSkipsCoordinatesOutsideTimeDifference() throws Exception {
+        final MatchupExtractor extractor = new MatchupExtractor(3, 1.0);
+        final List<MatchupExtractor.MatchupWindow> windows = extractor.locate(product, Arrays.asList(
+                new MatchupExtractor.Matchup("before", 49.5f, 10.5f,
+                                             ProductData.UTC.parse("2003-06-14 08:30:00", "yyyy-MM-dd HH:mm:ss").getAsDate()),
+                new MatchupExtractor.Matchup("within", 49.5f, 10.5f,
+                                             ProductData.UTC.parse("2003-06-14 10:30:00", "yyyy-MM-dd HH:mm:ss").getAsDate()),
+                new MatchupExtractor.Matchup("after", 49.5f, 10.5f,
+                                             ProductData.UTC.parse("2003-06-14 11:00:00", "yyyy-MM-dd HH:mm:ss").getAsDate())));
+        assertEquals(1, windows.size());
+        assertEquals("within", windows.get(0).matchup.getName());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWindowSizeMustBeOdd() {
+        new MatchupExtractor(4, 3.0);
+    }
+}
@@ -0,0 +1,55 @@
+package org.esa.beam.atmosphere.operator;
+
+import org.esa.beam.framework.gpf.OperatorException;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ProcessingVariantTest {
+
+    private static final ProcessingVariant MAIN = new ProcessingVariant("", false,
+                                                                        ReflectanceEnum.RADIANCE_REFLECTANCES,
+                                                                        false, null);
+
+    @Test
+    public void testNoVariants() {
+        assertTrue(ProcessingVariant.parse(null, MAIN).isEmpty());
+        assertTrue(ProcessingVariant.parse("  ", MAIN).isEmpty());
+    }
+
+    @Test
+    public void testVariantsOverrideMainConfiguration() {
+        final List<ProcessingVariant> variants = ProcessingVariant.parse(
+                "deriveRwFromPath=true; outputReflecAs=IRRADIANCE_REFLECTANCES, doSmileCorrection=TRUE;" +
+                "atmoNetMerisFile=old/25x30x40_5365.2.net", MAIN);
+        assertEquals(3, variants.size());
+
+        final ProcessingVariant first = variants.get(0);
+        assertEquals("_v1", first.getSuffix());
+        assertTrue(first.isDeriveRwFromPath());
+        assertEquals(ReflectanceEnum.RADIANCE_REFLECTANCES, first.getOutputReflecAs());
+        assertFalse(first.isDoSmileCorrection());
+        assertNull(first.getAtmoNetMeris());
+
+        final ProcessingVariant second = variants.get(1);
+        assertEquals("_v2", second.getSuffix());
+        assertFalse(second.isDeriveRwFromPath());
+        assertEquals(ReflectanceEnum.IRRADIANCE_REFLECTANCES, second.getOutputReflecAs());
+        assertTrue(second.isDoSmileCorrection());
+
+        assertEquals("_v3", variants.get(2).getSuffix());
+        assertEquals("old/25x30x40_5365.2.net", variants.get(2).getAtmoNetMeris());
+    }
+
+    @Test(expected = OperatorException.class)
+    public void testUnknownSettingIsRejected() {
+        ProcessingVariant.parse("useFlint=true", MAIN);
+    }
+
+    @Test(expected = OperatorException.class)
+    public void testInvalidValueIsRejected() {
+        ProcessingVariant.parse("deriveRwFromPath=yes", MAIN);
+    }
+}
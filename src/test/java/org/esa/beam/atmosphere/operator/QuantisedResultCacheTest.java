@@ -0,0 +1,89 @@
+package org.esa.beam.atmosphere.operator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class QuantisedResultCacheTest {
+
+    private QuantisedResultCache cache;
+
+    @Before
+    public void setUp() {
+        // inputs in [0,10] and [-1,1], quantised to 1 % of the range
+        cache = new QuantisedResultCache(16, new double[]{0.0, -1.0}, new double[]{10.0, 1.0}, 3, 0.01, 2);
+    }
+
+    @Test
+    public void testMissStoreAndHit() {
+        assertFalse(cache.lookup(new double[]{5.0, 0.5}));
+        cache.store(new double[]{1.0, 2.0}, 0);
+        cache.store(new double[]{3.0}, 2);
+
+        // differs by less than half a step in both inputs
+        assertTrue(cache.lookup(new double[]{5.04, 0.509}));
+        final double[] values = new double[2];
+        cache.load(values, 0);
+        assertArrayEquals(new double[]{1.0, 2.0}, values, 0.0);
+        final double[] value = new double[1];
+        cache.load(value, 2);
+        assertEquals(3.0, value[0], 0.0);
+
+        assertFalse(cache.lookup(new double[]{5.06, 0.5}));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testSinglePrecision() {
+        assertFalse(cache.lookup(new float[]{2.0f, -0.25f}));
+        cache.store(new float[]{1.5f, 2.5f, 3.5f}, 0);
+        assertTrue(cache.lookup(new float[]{2.01f, -0.25f}));
+        final float[] values = new float[3];
+        cache.load(values, 0);
+        assertArrayEquals(new float[]{1.5f, 2.5f, 3.5f}, values, 0.0f);
+    }
+
+    @Test
+    public void testVerificationRecordsMaxError() {
+        cache.lookup(new double[]{1.0, 0.0});
+        cache.store(new double[]{1.0, 2.0, 3.0}, 0);
+        assertTrue(cache.lookup(new double[]{1.0, 0.0}));
+        assertFalse(cache.isVerificationDue());
+        assertTrue(cache.lookup(new double[]{1.0, 0.0}));
+        assertTrue(cache.isVerificationDue());
+        cache.verify(new double[]{1.1, 2.0}, 0);
+        cache.verify(new double[]{2.75}, 2);
+        assertEquals(1, cache.getVerificationCount());
+        assertEquals(0.25, cache.getMaxError(), 1.0e-12);
+    }
+
+    @Test
+    public void testInvalidInputsAreNotCached() {
+        assertFalse(cache.lookup(new double[]{Double.NaN, 0.0}));
+        cache.store(new double[]{1.0, 2.0, 3.0}, 0);
+        assertFalse(cache.lookup(new double[]{Double.NaN, 0.0}));
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    public void testCollidingEntriesAreReplaced() {
+        // more distinct inputs than entries, the cache keeps working and returns the stored values only
+        for (int i = 0; i < 100; i++) {
+            final double[] input = {i * 0.1, 0.0};
+            if (!cache.lookup(input)) {
+                cache.store(new double[]{i, i, i}, 0);
+            }
+        }
+        final double[] values = new double[3];
+        for (int i = 0; i < 100; i++) {
+            if (cache.lookup(new double[]{i * 0.1, 0.0})) {
+                cache.load(values, 0);
+                assertEquals(i, values[0], 0.0);
+            } else {
+                cache.store(new double[]{i, i, i}, 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package org.esa.beam.atmosphere.operator;
+
+import org.esa.beam.framework.dataio.ProductIO;
+import org.esa.beam.framework.datamodel.Band;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.gpf.GPF;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Validates the single precision mode of the AGC Glint correction against the double precision computation.
+ * <p/>
+ * The MERIS L1b product (and optionally an AATSR L1b product for FLINT) is processed twice, with and without
+ * {@code singlePrecision}. For every output band the maximum absolute and relative deviation over the pixels
+ * which are valid in both results is reported, together with the number of pixels whose flags differ.
+ * <p/>
+ * Usage: {@code SinglePrecisionValidator <meris-l1b> [<aatsr-l1b>] [<report-file>]}
+ */
+public class SinglePrecisionValidator {
+
+    private static final String AGC_FLAG_BAND_NAME = "agc_flags";
+
+    private SinglePrecisionValidator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 3) {
+            System.err.println("Usage: SinglePrecisionValidator <meris-l1b> [<aatsr-l1b>] [<report-file>]");
+            System.exit(1);
+        }
+        GPF.getDefaultInstance().getOperatorSpiRegistry().loadOperatorSpis();
+
+        final Product merisProduct = ProductIO.readProduct(args[0]);
+        final Product aatsrProduct = args.length > 1 ? ProductIO.readProduct(args[1]) : null;
+        final Map<String, Product> sourceProducts = new HashMap<>(2);
+        sourceProducts.put("merisProduct", merisProduct);
+        if (aatsrProduct != null) {
+            sourceProducts.put("aatsrProduct", aatsrProduct);
+        }
+
+        final Product reference = createProduct(sourceProducts, aatsrProduct != null, false);
+        final Product candidate = createProduct(sourceProducts, aatsrProduct != null, true);
+        try {
+            final Comparison comparison = compare(reference, candidate);
+            if (args.length > 2) {
+                try (PrintStream stream = new PrintStream(new File(args[2]), "UTF-8")) {
+                    comparison.print(stream);
+                }
+            }
+            comparison.print(System.out);
+        } finally {
+            reference.dispose();
+            candidate.dispose();
+            merisProduct.dispose();
+            if (aatsrProduct != null) {
+                aatsrProduct.dispose();
+            }
+        }
+    }
+
+    /**
+     * Compares the output bands of the double precision and the single precision result.
+     *
+     * @param reference the result of the double precision computation
+     * @param candidate the result of the single precision computation
+     *
+     * @return the comparison
+     *
+     * @throws IOException if the band data could not be read
+     */
+    public static Comparison compare(Product reference, Product candidate) throws IOException {
+        final int width = reference.getSceneRasterWidth();
+        final int height = reference.getSceneRasterHeight();
+        final Band referenceFlags = reference.getBand(AGC_FLAG_BAND_NAME);
+        final Band candidateFlags = candidate.getBand(AGC_FLAG_BAND_NAME);
+
+        final List<Band> referenceBands = new ArrayList<>();
+        final List<Band> candidateBands = new ArrayList<>();
+        final List<Deviation> deviations = new ArrayList<>();
+        for (Band band : reference.getBands()) {
+            final Band candidateBand = candidate.getBand(band.getName());
+            if (band.isFlagBand() || candidateBand == null) {
+                continue;
+            }
+            referenceBands.add(band);
+            candidateBands.add(candidateBand);
+            deviations.add(new Deviation(band.getName()));
+        }
+
+        final int[] referenceFlagLine = new int[width];
+        final int[] candidateFlagLine = new int[width];
+        final double[] referenceLine = new double[width];
+        final double[] candidateLine = new double[width];
+        long flagMismatchCount = 0;
+        for (int y = 0; y < height; y++) {
+            referenceFlags.readPixels(0, y, width, 1, referenceFlagLine);
+            candidateFlags.readPixels(0, y, width, 1, candidateFlagLine);
+            for (int x = 0; x < width; x++) {
+                if (referenceFlagLine[x] != candidateFlagLine[x]) {
+                    flagMismatchCount++;
+                }
+            }
+            for (int i = 0; i < deviations.size(); i++) {
+                referenceBands.get(i).readPixels(0, y, width, 1, referenceLine);
+                candidateBands.get(i).readPixels(0, y, width, 1, candidateLine);
+                final Deviation deviation = deviations.get(i);
+                for (int x = 0; x < width; x++) {
+                    if (isValid(referenceFlagLine[x]) && isValid(candidateFlagLine[x])) {
+                        deviation.add(x, y, referenceLine[x], candidateLine[x]);
+                    }
+                }
+            }
+        }
+        return new Comparison(deviations, flagMismatchCount, (long) width * height);
+    }
+
+    private static Product createProduct(Map<String, Product> sourceProducts, boolean useFlint,
+                                         boolean singlePrecision) {
+        final Map<String, Object> parameters = new HashMap<>(3);
+        parameters.put("useFlint", useFlint);
+        parameters.put("outputNormReflec", true);
+        parameters.put("singlePrecision", singlePrecision);
+        return GPF.createProduct("Meris.GlintCorrection", parameters, sourceProducts);
+    }
+
+    private static boolean isValid(int flags) {
+        return (flags & GlintCorrection.INVALID) == 0;
+    }
+
+    /**
+     * The result of comparing two products.
+     */
+    public static class Comparison {
+
+        private final List<Deviation> deviations;
+        private final long flagMismatchCount;
+        private final long pixelCount;
+
+        Comparison(List<Deviation> deviations, long flagMismatchCount, long pixelCount) {
+            this.deviations = deviations;
+            this.flagMismatchCount = flagMismatchCount;
+            this.pixelCount = pixelCount;
+        }
+
+        public List<Deviation> getDeviations() {
+            return deviations;
+        }
+
+        public long getFlagMismatchCount() {
+            return flagMismatchCount;
+        }
+
+        public void print(PrintStream stream) {
+            stream.printf(Locale.ENGLISH, "%-24s %12s %14s %14s %12s%n",
+                          "band", "valid pixels", "max abs dev", "max rel dev", "at x,y");
+            for (Deviation deviation : deviations) {
+                stream.printf(Locale.ENGLISH, "%-24s %12d %14.6e %14.6e %12s%n",
+                              deviation.getBandName(), deviation.getValidPixelCount(),
+                              deviation.getMaxAbsoluteDeviation(), deviation.getMaxRelativeDeviation(),
+                              deviation.getX() + "," + deviation.getY());
+            }
+            stream.printf(Locale.ENGLISH, "pixels with different flags: %d of %d%n", flagMismatchCount, pixelCount);
+        }
+    }
+
+    /**
+     * The deviation of a single band. NaN values are only counted as deviation if they occur in one
+     * of the results.
+     */
+    public static class Deviation {
+
+        private final String bandName;
+        private long validPixelCount;
+        private double maxAbsoluteDeviation;
+        private double maxRelativeDeviation;
+        private int x = -1;
+        private int y = -1;
+
+        public Deviation(String bandName) {
+            this.bandName = bandName;
+        }
+
+        public void add(int pixelX, int pixelY, double referenceValue, double candidateValue) {
+            validPixelCount++;
+            final boolean referenceNaN = Double.isNaN(referenceValue);
+            final boolean candidateNaN = Double.isNaN(candidateValue);
+            if (referenceNaN && candidateNaN) {
+                return;
+            }
+            double absoluteDeviation = Math.abs(candidateValue - referenceValue);
+            double relativeDeviation = referenceValue != 0.0 ? absoluteDeviation / Math.abs(referenceValue) : 0.0;
+            if (referenceNaN || candidateNaN) {
+                absoluteDeviation = Double.POSITIVE_INFINITY;
+                relativeDeviation = Double.POSITIVE_INFINITY;
+            }
+            if (absoluteDeviation > maxAbsoluteDeviation) {
+                maxAbsoluteDeviation = absoluteDeviation;
+                x = pixelX;
+                y = pixelY;
+            }
+            if (relativeDeviation > maxRelativeDeviation) {
+                maxRelativeDeviation = relativeDeviation;
+            }
+        }
+
+        public String getBandName() {
+            return bandName;
+        }
+
+        public long getValidPixelCount() {
+            return validPixelCount;
+        }
+
+        public double getMaxAbsoluteDeviation() {
+            return maxAbsoluteDeviation;
+        }
+
+        public double getMaxRelativeDeviation() {
+            return maxRelativeDeviation;
+        }
+
+        /**
+         * @return the x coordinate of the pixel with the maximum absolute deviation, -1 if there is none
+         */
+        public int getX() {
+            return x;
+        }
+
+        /**
+         * @return the y coordinate of the pixel with the maximum absolute deviation, -1 if there is none
+         */
+        public int getY() {
+            return y;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package org.esa.beam.atmosphere.operator;
+
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.datamodel.TiePointGrid;
+import org.esa.beam.framework.gpf.OperatorException;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class StripeCoordinatorTest {
+
+    @Test
+    public void testStripesCoverAllRows() {
+        final int[][] stripes = StripeCoordinator.computeStripes(2241, 4);
+        assertEquals(4, stripes.length);
+        int nextRow = 0;
+        for (int[] stripe : stripes) {
+            assertEquals(nextRow, stripe[0]);
+            assertTrue(stripe[1] == 560 || stripe[1] == 561);
+            nextRow += stripe[1];
+        }
+        assertEquals(2241, nextRow);
+    }
+
+    @Test
+    public void testLowScenesGetFewerStripes() {
+        assertEquals(2, StripeCoordinator.computeStripes(40, 8).length);
+        final int[][] stripes = StripeCoordinator.computeStripes(10, 8);
+        assertEquals(1, stripes.length);
+        assertArrayEquals(new int[]{0, 10}, stripes[0]);
+    }
+
+    @Test
+    public void testLocalWorkerArgumentsAreNotQuoted() {
+        final List<String> workerCommand = Arrays.asList("java", "-cp", "a b.jar", "variants=x;y");
+        assertEquals(workerCommand, StripeCoordinator.createCommand(null, workerCommand));
+        assertEquals(workerCommand, StripeCoordinator.createCommand(" ", workerCommand));
+    }
+
+    @Test
+    public void testLauncherWorkerArgumentsAreQuotedForShell() {
+        final List<String> command = StripeCoordinator.createCommand(
+                " ssh  node1 ", Arrays.asList("java", "/data/my scene.N1", "geoRegion=it's $HOME; rm -rf *"));
+        assertEquals(Arrays.asList("ssh", "node1", "'java'", "'/data/my scene.N1'",
+                                   "'geoRegion=it'\\''s $HOME; rm -rf *'"), command);
+    }
+
+    @Test
+    public void testAutoTileSizeIsResolvedForTheFullScene() {
+        final Product product = new Product("test", "MER_RR__1P", 1121, 2241);
+        product.addTiePointGrid(new TiePointGrid("sun_zenith", 71, 141, 0.5f, 0.5f, 16.0f, 16.0f,
+                                                 new float[71 * 141]));
+        final List<String> settings = Arrays.asList("useFlint=true", "tileSize=auto");
+        assertEquals(Arrays.asList("useFlint=true", "tileSize=1121x80"),
+                     StripeCoordinator.resolveTileSize(settings, product, 8, null));
+        final List<String> fixedSettings = Arrays.asList("tileSize=512x64");
+        assertEquals(fixedSettings, StripeCoordinator.resolveTileSize(fixedSettings, product, 8, null));
+    }
+
+    @Test
+    public void testParametersAreConvertedToFieldTypes() {
+        final Map<String, Object> parameters = StripeWorker.parseParameters(
+                Arrays.asList("useFlint=true", "memoisationStep=0.01", "outputReflecAs=IRRADIANCE_REFLECTANCES",
+                              "atmoNetMerisFile=/nets/meris.net", "variants=deriveRwFromPath=true"));
+        assertEquals(Boolean.TRUE, parameters.get("useFlint"));
+        assertEquals(0.01, (Double) parameters.get("memoisationStep"), 0.0);
+        assertEquals(ReflectanceEnum.IRRADIANCE_REFLECTANCES, parameters.get("outputReflecAs"));
+        assertEquals(new File("/nets/meris.net"), parameters.get("atmoNetMerisFile"));
+        assertEquals("deriveRwFromPath=true", parameters.get("variants"));
+    }
+
+    @Test(expected = OperatorException.class)
+    public void testRegionIsRejected() {
+        StripeWorker.parseParameters(Arrays.asList("region=0,0,100,100"));
+    }
+
+    @Test(expected = OperatorException.class)
+    public void testUnknownParameterIsRejected() {
+        StripeWorker.parseParameters(Arrays.asList("noSuchParameter=1"));
+    }
+}
@@ -0,0 +1,94 @@
+package org.esa.beam.atmosphere.operator;
+
+import com.bc.jexp.ParseException;
+import org.esa.beam.framework.datamodel.Band;
+import org.esa.beam.framework.datamodel.FlagCoding;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.datamodel.ProductData;
+import org.esa.beam.framework.datamodel.RasterDataNode;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ToaValidationKernelTest {
+
+    private static final int INVALID = 0x80;
+    private static final int COASTLINE = 0x40;
+
+    private Band[] spectralBands;
+    private Band solzenBand;
+    private Band l1FlagsBand;
+    private RasterDataNode[] rasters;
+    private Map<String, ProductData> samples;
+
+    @Before
+    public void setUp() {
+        final Product product = new Product("test", "MER_RR__1P", 3, 1);
+        spectralBands = new Band[15];
+        rasters = new RasterDataNode[17];
+        samples = new HashMap<>();
+        for (int i = 0; i < spectralBands.length; i++) {
+            spectralBands[i] = product.addBand("radiance_" + (i + 1), ProductData.TYPE_FLOAT32);
+            spectralBands[i].setSolarFlux(1000.0f);
+            rasters[i] = spectralBands[i];
+            // TOA reflectance 0.01 for all bands and pixels
+            samples.put(spectralBands[i].getName(), ProductData.createInstance(new float[]{5.0f, 5.0f, 5.0f}));
+        }
+        solzenBand = product.addBand("sun_zenith", ProductData.TYPE_FLOAT32);
+        rasters[15] = solzenBand;
+        samples.put(solzenBand.getName(), ProductData.createInstance(new float[]{60.0f, 60.0f, 60.0f}));
+
+        final FlagCoding flagCoding = new FlagCoding("l1_flags");
+        flagCoding.addFlag("INVALID", INVALID, "Pixel is invalid");
+        flagCoding.addFlag("COASTLINE", COASTLINE, "Pixel is part of a coastline");
+        l1FlagsBand = product.addBand("l1_flags", ProductData.TYPE_UINT8);
+        l1FlagsBand.setSampleCoding(flagCoding);
+        rasters[16] = l1FlagsBand;
+        samples.put(l1FlagsBand.getName(), ProductData.createInstance(new int[]{0, COASTLINE, INVALID}));
+    }
+
+    @Test
+    public void testDefaultExpressions() throws ParseException {
+        // pixel 0 is water, pixel 1 is land and cloud, pixel 2 is invalid
+        setRadiance(10, new float[]{4.0f, 30.0f, 30.0f});
+        setRadiance(13, new float[]{20.0f, 30.0f, 30.0f});
+        setRadiance(14, new float[]{5.0f, 150.0f, 150.0f});
+        final ToaValidationKernel kernel = createKernel("toa_reflec_10 > toa_reflec_6 AND toa_reflec_13 > 0.0475",
+                                                        "toa_reflec_14 > 0.2");
+
+        final ProductData flags = kernel.computeFlags(samples, 3);
+        assertEquals(ToaReflectanceValidationOp.RLTOA_OOR_FLAG_MASK, flags.getElemIntAt(0));
+        assertEquals(ToaReflectanceValidationOp.LAND_FLAG_MASK | ToaReflectanceValidationOp.CLOUD_ICE_FLAG_MASK |
+                     ToaReflectanceValidationOp.RLTOA_OOR_FLAG_MASK, flags.getElemIntAt(1));
+        assertEquals(0, flags.getElemIntAt(2));
+    }
+
+    @Test
+    public void testExpressionsCanReferToRastersAndFlags() throws ParseException {
+        final ToaValidationKernel kernel = createKernel("l1_flags.COASTLINE", "radiance_1 > 4.5 AND sun_zenith < 70");
+
+        final ProductData flags = kernel.computeFlags(samples, 3);
+        assertEquals(ToaReflectanceValidationOp.CLOUD_ICE_FLAG_MASK, flags.getElemIntAt(0));
+        assertEquals(ToaReflectanceValidationOp.LAND_FLAG_MASK | ToaReflectanceValidationOp.CLOUD_ICE_FLAG_MASK,
+                     flags.getElemIntAt(1));
+    }
+
+    @Test(expected = ParseException.class)
+    public void testUnknownRasterIsRejected() throws ParseException {
+        createKernel("reflec_10 > 0.1", "toa_reflec_14 > 0.2");
+    }
+
+    private ToaValidationKernel createKernel(String landExpression, String cloudIceExpression) throws
+                                                                                                ParseException {
+        return ToaValidationKernel.create(rasters, spectralBands, solzenBand, l1FlagsBand, landExpression,
+                                          cloudIceExpression, ToaReflectanceValidationOp.RLTOA_OOR_EXPRESSION);
+    }
+
+    private void setRadiance(int bandNumber, float[] radiances) {
+        samples.put("radiance_" + bandNumber, ProductData.createInstance(radiances));
+    }
+}
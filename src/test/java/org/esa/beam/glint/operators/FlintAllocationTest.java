@@ -0,0 +1,148 @@
+package org.esa.beam.glint.operators;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+/**
+ * Ensures that the per-pixel FLINT chain (solar part, water vapour and geometrical conversion) does not allocate
+ * memory, i.e. that the memory allocated for a tile does not depend on the number of pixels in the tile.
+ * <p/>
+ * The FUB nets are replaced by simple analytic functions, so that only the allocations of the FLINT code
+ * itself are measured.
+ */
+public class FlintAllocationTest {
+
+    private static final int SMALL_TILE = 16;
+    private static final int LARGE_TILE = 1024;
+    // the measurement itself may allocate a few bytes
+    private static final long MAX_ALLOCATION_DIFFERENCE = 1024;
+    private static final int PIXEL_COUNT = 64;
+
+    private com.sun.management.ThreadMXBean threadMXBean;
+    private FlintSolarPart37 solarPart37;
+    private FlintSolarPart37WaterVapour waterVapour;
+    private FlintGeometricalConversion conversion;
+    private float[][] pixels;
+    private double checksum;
+
+    @Before
+    public void setUp() throws Exception {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threadMXBean = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+
+        solarPart37 = new FlintSolarPart37();
+        solarPart37.loadFlintAuxData();
+        waterVapour = new FlintSolarPart37WaterVapour() {
+            @Override
+            void applyNeuralNetWv(double[] nnIn, double[] nnOut) {
+                nnOut[0] = 1.0 + 0.1 * nnIn[0];
+            }
+        };
+        conversion = new FlintGeometricalConversion() {
+            @Override
+            protected void applyNeuralNetWindspeed(double[] nnIn, double[] gaussPars) {
+                // a glint pattern getting wider with the wind speed
+                gaussPars[0] = 0.5 / nnIn[0];
+                gaussPars[1] = 0.05 + 0.02 * nnIn[0];
+                gaussPars[2] = 0.05 + 0.02 * nnIn[0];
+                gaussPars[3] = 0.3 * nnIn[2];
+            }
+        };
+        pixels = createPixels();
+    }
+
+    @Test
+    public void testFlintChainDoesNotAllocatePerPixel() {
+        // warm up, so that class loading and compilation do not show up in the measurement
+        for (int i = 0; i < 3; i++) {
+            processTile(LARGE_TILE);
+        }
+        final long smallTileBytes = measureAllocatedBytes(SMALL_TILE);
+        final long largeTileBytes = measureAllocatedBytes(LARGE_TILE);
+        assertTrue("Allocated " + smallTileBytes + " bytes for " + SMALL_TILE + " pixels, but " + largeTileBytes +
+                   " bytes for " + LARGE_TILE + " pixels",
+                   largeTileBytes - smallTileBytes < MAX_ALLOCATION_DIFFERENCE);
+        assertFalse(Double.isInfinite(checksum));
+    }
+
+    private long measureAllocatedBytes(int pixelCount) {
+        final long threadId = Thread.currentThread().getId();
+        final long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        processTile(pixelCount);
+        return threadMXBean.getThreadAllocatedBytes(threadId) - before;
+    }
+
+    /**
+     * Runs the per-pixel steps of {@link FlintOp#computeTile} with one workspace for all pixels.
+     */
+    private void processTile(int pixelCount) {
+        final float[] windspeedRadiance = new float[2];
+        for (int i = 0; i < pixelCount; i++) {
+            final float[] pixel = pixels[i % pixels.length];
+            final float bt11 = pixel[0];
+            final float bt12 = pixel[1];
+            final float bt37 = pixel[2];
+            final float zonalWind = pixel[3];
+            final float meridWind = pixel[4];
+            final float merisSunZenith = pixel[5];
+            final float merisViewZenith = pixel[6];
+            final float merisAzimuthDifference = pixel[7];
+            final float aatsrSunElevation = pixel[8];
+            final float aatsrViewElevation = pixel[9];
+            final float aatsrAzimuthDifference = pixel[10];
+
+            final float thermalPart37 = solarPart37.extrapolateTo37(bt11, bt12);
+            final float waterVapourColumn = waterVapour.computeWaterVapour(zonalWind, meridWind,
+                                                                           merisAzimuthDifference, merisViewZenith,
+                                                                           merisSunZenith, 80.0f, 70.0f);
+            final float trans37 = solarPart37.computeTransmission(37, waterVapourColumn, 90.0f - aatsrSunElevation,
+                                                                  90.0f - aatsrViewElevation);
+            final float rad37 = solarPart37.convertBT2Radiance(bt37);
+            final float radThermalPart37 = solarPart37.convertBT2Radiance(thermalPart37);
+            final float solarPart = solarPart37.computeSolarPart(rad37, radThermalPart37, trans37);
+
+            final float[][] result = conversion.convertAatsrRad37ToMerisRad(solarPart, merisSunZenith,
+                                                                            merisViewZenith,
+                                                                            180.0f - aatsrAzimuthDifference,
+                                                                            180.0f - merisAzimuthDifference);
+            if (FlintGeometricalConversion.windspeedFound(result) > 0) {
+                FlintGeometricalConversion.getAmbiguityReducedRadiance(result, zonalWind, meridWind,
+                                                                       windspeedRadiance);
+                checksum += windspeedRadiance[1];
+            }
+            checksum += waterVapourColumn + solarPart;
+        }
+    }
+
+    private static float[][] createPixels() {
+        final Random random = new Random(4711L);
+        final float[][] pixels = new float[PIXEL_COUNT][];
+        for (int k = 0; k < PIXEL_COUNT; k++) {
+            final float bt11 = 270.0f + 30.0f * random.nextFloat();
+            pixels[k] = new float[]{
+                    bt11,
+                    bt11 - 0.5f - 2.0f * random.nextFloat(),
+                    bt11 + 15.0f * random.nextFloat(),
+                    -15.0f + 30.0f * random.nextFloat(),
+                    -15.0f + 30.0f * random.nextFloat(),
+                    10.0f + 60.0f * random.nextFloat(),
+                    30.0f * random.nextFloat(),
+                    180.0f * random.nextFloat(),
+                    20.0f + 65.0f * random.nextFloat(),
+                    60.0f + 30.0f * random.nextFloat(),
+                    180.0f * random.nextFloat()
+            };
+        }
+        return pixels;
+    }
+}
@@ -0,0 +1,179 @@
+package org.esa.beam.glint.operators;
+
+import org.esa.beam.glint.util.GoldenComparison;
+import org.esa.beam.glint.util.GoldenComparison.Tolerance;
+import org.esa.beam.glint.util.GoldenTable;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Golden output regression test of the per-pixel FLINT chain of {@link FlintOp}, from the solar part of the
+ * 3.7 micron channel (breadboard steps 1.a to 1.d) through the geometrical conversion (steps 2.a and 2.b) to
+ * {@link FlintOp#RESULT_RADIANCE_FINAL_NAME}.
+ * <p/>
+ * The outputs are compared with outputs recorded from the original, unoptimised implementation for a fixed set
+ * of synthetic MERIS/AATSR pixels. The water vapour net and the wind speed net are Jnn nets, they are replaced
+ * by fixed analytic functions, so that the table depends only on the code of this module. If an intended change
+ * of the algorithm alters the outputs, the golden table has to be recorded again by running {@link #main}.
+ */
+public class FlintGoldenTest {
+
+    private static final String TABLE_NAME = "flint_golden.csv";
+    private static final int PIXEL_COUNT = 64;
+    private static final long SEED = 4711L;
+    private static final int DAY_OF_YEAR = 172;
+
+    private static final String[] COLUMN_NAMES = {
+            "water_vapour_column", "thermal_part_37", "trans_37", "trans_16", "rad_37", "rad_thermal_part_37",
+            "solar_part_37", "solar_part_37_aatsr_units",
+            FlintOp.RESULT_NUMBERWINDSPEEDS_NAME, FlintOp.RESULT_WINDSPEED1_NAME, FlintOp.RESULT_RADIANCE1_NAME,
+            FlintOp.RESULT_WINDSPEED2_NAME, FlintOp.RESULT_RADIANCE2_NAME,
+            FlintOp.RESULT_WINDSPEED_FINAL_NAME, FlintOp.RESULT_RADIANCE_FINAL_NAME
+    };
+
+    private static final Tolerance RECORDED_TOLERANCE = Tolerance.relative(1.0e-6, 1.0e-9);
+
+    @Test
+    public void testFlintChainMatchesGoldenTable() throws Exception {
+        final GoldenTable golden = GoldenTable.read(FlintGoldenTest.class.getResourceAsStream(TABLE_NAME));
+        assertEquals(PIXEL_COUNT, golden.getRowCount());
+        final GoldenTable actual = compute();
+
+        final GoldenComparison comparison = new GoldenComparison("FLINT chain");
+        for (int row = 0; row < golden.getRowCount(); row++) {
+            for (String columnName : COLUMN_NAMES) {
+                comparison.compare(columnName, RECORDED_TOLERANCE, row,
+                                   golden.getValue(row, columnName), actual.getValue(row, columnName));
+            }
+        }
+        comparison.assertPassed();
+    }
+
+    @Test
+    public void testTableCoversBothConversionBranches() throws Exception {
+        final GoldenTable golden = GoldenTable.read(FlintGoldenTest.class.getResourceAsStream(TABLE_NAME));
+        final int[] pixelsPerWindspeedCount = new int[3];
+        for (int row = 0; row < golden.getRowCount(); row++) {
+            pixelsPerWindspeedCount[(int) golden.getValue(row, FlintOp.RESULT_NUMBERWINDSPEEDS_NAME)]++;
+        }
+        assertTrue(pixelsPerWindspeedCount[0] > 0);
+        assertTrue(pixelsPerWindspeedCount[1] > 0);
+        assertTrue(pixelsPerWindspeedCount[2] > 0);
+    }
+
+    /**
+     * Records the golden table of the reference implementation.
+     *
+     * @param args the directory to write the table to, usually
+     *             {@code src/test/resources/org/esa/beam/glint/operators}
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: FlintGoldenTest <output-dir>");
+            System.exit(1);
+        }
+        final File file = new File(args[0], TABLE_NAME);
+        compute().write(file, "FLINT chain golden outputs, " + PIXEL_COUNT + " synthetic pixels, seed " + SEED);
+        System.out.println("Written " + file);
+    }
+
+    private static GoldenTable compute() throws IOException {
+        final FlintPreparation preparation = new FlintPreparation();
+        final FlintSolarPart37 solarPart37 = new FlintSolarPart37();
+        solarPart37.loadFlintAuxData();
+        final FlintSolarPart37WaterVapour waterVapour = new AnalyticWaterVapour();
+        final FlintGeometricalConversion conversion = new AnalyticGeometricalConversion();
+        final float solarIrradiance37 = preparation.computeSolarIrradiance37(DAY_OF_YEAR);
+
+        final Random random = new Random(SEED);
+        final GoldenTable table = new GoldenTable(COLUMN_NAMES);
+        for (int k = 0; k < PIXEL_COUNT; k++) {
+            final float bt11 = 270.0f + 30.0f * random.nextFloat();
+            final float bt12 = bt11 - 0.5f - 2.0f * random.nextFloat();
+            final float bt37 = bt11 + 15.0f * random.nextFloat();
+            final float zonalWind = -15.0f + 30.0f * random.nextFloat();
+            final float meridWind = -15.0f + 30.0f * random.nextFloat();
+            final float merisSunZenith = 15.0f + 55.0f * random.nextFloat();
+            final float merisViewZenith = 40.0f * random.nextFloat();
+            final float merisSunAzimuth = 360.0f * random.nextFloat();
+            final float merisViewAzimuth = 360.0f * random.nextFloat();
+            final float merisRad14 = 20.0f + 60.0f * random.nextFloat();
+            final float merisRad15 = merisRad14 * (0.5f + 0.4f * random.nextFloat());
+            final float aatsrSunElevation = 20.0f + 65.0f * random.nextFloat();
+            final float aatsrViewElevation = 60.0f + 30.0f * random.nextFloat();
+            final float aatsrSunAzimuth = 360.0f * random.nextFloat();
+            final float aatsrViewAzimuth = 360.0f * random.nextFloat();
+
+            // 1. the solar part of 3.7, as in FlintOp
+            final float thermalPart37 = solarPart37.extrapolateTo37(bt11, bt12);
+            final float merisAzimuthDifference = preparation.removeAzimuthDifferenceAmbiguity(merisViewAzimuth,
+                                                                                              merisSunAzimuth);
+            final float waterVapourColumn = waterVapour.computeWaterVapour(zonalWind, meridWind,
+                                                                           merisAzimuthDifference, merisViewZenith,
+                                                                           merisSunZenith, merisRad14, merisRad15);
+            final float trans37 = solarPart37.computeTransmission(37, waterVapourColumn, 90.0f - aatsrSunElevation,
+                                                                  90.0f - aatsrViewElevation);
+            final float trans16 = solarPart37.computeTransmission(16, waterVapourColumn, 90.0f - aatsrSunElevation,
+                                                                  90.0f - aatsrViewElevation);
+            final float rad37 = solarPart37.convertBT2Radiance(bt37) / solarIrradiance37;
+            final float radThermalPart37 = solarPart37.convertBT2Radiance(thermalPart37) / solarIrradiance37;
+            final float solarPart = solarPart37.computeSolarPart(rad37, radThermalPart37, trans37);
+            final float solarPartAatsrUnits = solarPart37.convertToAatsrUnits(solarPart, aatsrSunElevation);
+
+            // 2. the geometrical conversion, as in FlintOp
+            final float aatsrAzimuthDifference = preparation.removeAzimuthDifferenceAmbiguity(aatsrViewAzimuth,
+                                                                                              aatsrSunAzimuth);
+            final float[][] radianceResult = conversion.convertAatsrRad37ToMerisRad(solarPart, merisSunZenith,
+                                                                                    merisViewZenith,
+                                                                                    180.0f - aatsrAzimuthDifference,
+                                                                                    180.0f - merisAzimuthDifference);
+            final int windspeedCount = FlintGeometricalConversion.windspeedFound(radianceResult);
+            float finalWindspeed = 0.0f;
+            float finalRadiance = 0.0f;
+            if (windspeedCount > 0) {
+                final float[] finalResult = FlintGeometricalConversion.getAmbiguityReducedRadiance(
+                        radianceResult, zonalWind, meridWind);
+                finalWindspeed = finalResult[0];
+                finalRadiance = finalResult[1];
+            }
+            table.addRow(new double[]{
+                    waterVapourColumn, thermalPart37, trans37, trans16, rad37, radThermalPart37, solarPart,
+                    solarPartAatsrUnits, windspeedCount, radianceResult[0][0], radianceResult[0][1],
+                    radianceResult[1][0], radianceResult[1][1], finalWindspeed, finalRadiance
+            });
+        }
+        return table;
+    }
+
+    /**
+     * Replaces the water vapour net by a linear function of its inputs.
+     */
+    private static final class AnalyticWaterVapour extends FlintSolarPart37WaterVapour {
+
+        @Override
+        void applyNeuralNetWv(double[] nnIn, double[] nnOut) {
+            nnOut[0] = 1.0 + 0.1 * nnIn[0] + 0.5 * nnIn[3] - 0.3 * nnIn[4];
+        }
+    }
+
+    /**
+     * Replaces the wind speed net by smooth functions of its inputs. The amplitude of the Gaussian has its
+     * maximum at a wind speed of 3 m/s, so that the radiances of the lookup table are not monotone.
+     */
+    private static final class AnalyticGeometricalConversion extends FlintGeometricalConversion {
+
+        @Override
+        protected void applyNeuralNetWindspeed(double[] nnIn, double[] gaussPars) {
+            final double windspeed = nnIn[0];
+            gaussPars[0] = 0.02 * nnIn[1] * nnIn[2] * (1.0 + 0.2 * windspeed) * Math.exp(-windspeed / 8.0);
+            gaussPars[1] = 0.05 + 0.02 * windspeed;
+            gaussPars[2] = 0.08 + 0.025 * windspeed;
+            gaussPars[3] = 0.2 * nnIn[2];
+        }
+    }
+}
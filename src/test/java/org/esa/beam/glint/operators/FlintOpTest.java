@@ -1,11 +1,17 @@
 package org.esa.beam.glint.operators;
 
 import com.bc.jnn.JnnException;
+import org.esa.beam.framework.gpf.Tile;
 import org.jfree.data.statistics.Regression;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.awt.Rectangle;
 import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
 
 import static org.junit.Assert.*;
 
@@ -201,6 +207,82 @@ public class FlintOpTest {
         assertEquals(13.0, result[19], 1.0e-8);
     }
 
+    @Test
+    public void testCorrectViewAzimuthLinearSamples() {
+        final float[] viewAzimuths = createViewAzimuthRow();
+
+        flintPreparationUnderTest.correctViewAzimuthLinear(viewAzimuths, viewAzimuths.length, 1);
+        // the swath starts at x=2, the fill values at the border are kept
+        assertEquals(0.0f, viewAzimuths[1], 0.0f);
+        assertEquals(16.0f, viewAzimuths[8], 1.0e-6f);
+        assertEquals(17.0f, viewAzimuths[9], 1.0e-6f);
+        assertEquals(20.0f, viewAzimuths[12], 1.0e-6f);
+        assertEquals(5.0f, viewAzimuths[13], 1.0e-6f);
+        assertEquals(9.0f, viewAzimuths[17], 1.0e-6f);
+        assertEquals(0.0f, viewAzimuths[22], 0.0f);
+    }
+
+    @Test
+    public void testCorrectViewAzimuthLinearTileWithOffset() {
+        final float[] row = createViewAzimuthRow();
+        final Rectangle rect = new Rectangle(3, 2, row.length, 2);
+        final float[][] raster = new float[5][rect.x + rect.width + 2];
+        for (float[] rasterRow : raster) {
+            Arrays.fill(rasterRow, -1.0f);
+        }
+        for (int y = rect.y; y < rect.y + rect.height; y++) {
+            System.arraycopy(row, 0, raster[y], rect.x, row.length);
+        }
+
+        flintPreparationUnderTest.correctViewAzimuthLinear(createTile(raster), rect);
+
+        final float[] expected = row.clone();
+        flintPreparationUnderTest.correctViewAzimuthLinear(expected, expected.length, 1);
+        for (int y = 0; y < raster.length; y++) {
+            for (int x = 0; x < raster[y].length; x++) {
+                if (rect.contains(x, y)) {
+                    assertEquals(expected[x - rect.x], raster[y][x], 0.0f);
+                } else {
+                    assertEquals(-1.0f, raster[y][x], 0.0f);
+                }
+            }
+        }
+    }
+
+    private static float[] createViewAzimuthRow() {
+        // same profile as in testGetViewAzimuthCorrectionProfile, with two fill values on each side
+        final float[] row = new float[24];
+        for (int i = 0; i <= 6; i++) {
+            row[2 + i] = 10.0f + i;
+        }
+        for (int i = 7; i <= 13; i++) {
+            row[2 + i] = 22.0f - i;
+        }
+        for (int i = 14; i < 20; i++) {
+            row[2 + i] = 8.0f + (i - 14);
+        }
+        return row;
+    }
+
+    private static Tile createTile(final float[][] raster) {
+        return (Tile) Proxy.newProxyInstance(Tile.class.getClassLoader(), new Class<?>[]{Tile.class},
+                                             new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                final String name = method.getName();
+                if ("getSampleFloat".equals(name)) {
+                    return raster[(Integer) args[1]][(Integer) args[0]];
+                } else if ("getSampleDouble".equals(name)) {
+                    return (double) raster[(Integer) args[1]][(Integer) args[0]];
+                } else if ("setSample".equals(name)) {
+                    raster[(Integer) args[1]][(Integer) args[0]] = ((Number) args[2]).floatValue();
+                    return null;
+                }
+                throw new UnsupportedOperationException(name);
+            }
+        });
+    }
+
     @Test
     public void testConvertBT2Radiance() {
         float temp = 272.663f;
@@ -0,0 +1,210 @@
+package org.esa.beam.glint.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the outputs of a candidate implementation with the outputs of the reference implementation,
+ * band by band and pixel by pixel.
+ * <p/>
+ * Every band has a {@link Tolerance}, flag bands are compared exactly. For each band the pixels with the
+ * largest deviations are kept, so that a failing comparison reports where and by how much the candidate
+ * deviates.
+ */
+public class GoldenComparison {
+
+    private static final int WORST_PIXEL_COUNT = 5;
+
+    private final String name;
+    private final Map<String, BandResult> results = new LinkedHashMap<>();
+
+    public GoldenComparison(String name) {
+        this.name = name;
+    }
+
+    public void compare(String bandName, Tolerance tolerance, int pixelIndex, double reference, double candidate) {
+        final BandResult result = getResult(bandName, tolerance.toString());
+        result.pixelCount++;
+        final double score = tolerance.score(reference, candidate);
+        if (score > 1.0) {
+            result.failureCount++;
+        }
+        if (score > 0.0) {
+            result.addDeviation(new Deviation(pixelIndex, reference, candidate, score));
+        }
+    }
+
+    public void compareFlags(String bandName, int pixelIndex, int reference, int candidate) {
+        final BandResult result = getResult(bandName, "exact");
+        result.pixelCount++;
+        if (reference != candidate) {
+            result.failureCount++;
+            result.addDeviation(new Deviation(pixelIndex, reference, candidate, Integer.bitCount(reference ^ candidate)));
+        }
+    }
+
+    public boolean hasPassed() {
+        for (BandResult result : results.values()) {
+            if (result.failureCount > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void assertPassed() {
+        if (!hasPassed()) {
+            fail(getReport());
+        }
+    }
+
+    public String getReport() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("Comparison '").append(name).append("'\n");
+        for (Map.Entry<String, BandResult> entry : results.entrySet()) {
+            final BandResult result = entry.getValue();
+            sb.append(String.format(Locale.ENGLISH, "  %-24s %-26s %6d pixels, %6d outside tolerance%n",
+                                    entry.getKey(), result.tolerance, result.pixelCount, result.failureCount));
+            if (result.failureCount > 0) {
+                for (Deviation deviation : result.worstDeviations) {
+                    sb.append(String.format(Locale.ENGLISH,
+                                            "      pixel %6d: reference %.10g, candidate %.10g, score %.3g%n",
+                                            deviation.pixelIndex, deviation.reference, deviation.candidate,
+                                            deviation.score));
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private BandResult getResult(String bandName, String tolerance) {
+        BandResult result = results.get(bandName);
+        if (result == null) {
+            result = new BandResult(tolerance);
+            results.put(bandName, result);
+        }
+        return result;
+    }
+
+    /**
+     * The allowed deviation of a candidate value from the reference value. NaN values are only equal
+     * to NaN values.
+     */
+    public abstract static class Tolerance {
+
+        /**
+         * @return a value less or equal to 1.0 if the candidate is within tolerance, 0.0 if the values are equal
+         */
+        abstract double score(double reference, double candidate);
+
+        static double scoreSpecialValues(double reference, double candidate) {
+            if (Double.isNaN(reference) || Double.isNaN(candidate)) {
+                return Double.isNaN(reference) && Double.isNaN(candidate) ? 0.0 : Double.POSITIVE_INFINITY;
+            }
+            if (reference == candidate) {
+                return 0.0;
+            }
+            if (Double.isInfinite(reference) || Double.isInfinite(candidate)) {
+                return Double.POSITIVE_INFINITY;
+            }
+            return -1.0;
+        }
+
+        /**
+         * @param maxRelative the maximum relative deviation
+         * @param maxAbsolute the maximum absolute deviation, which is accepted for values close to zero
+         */
+        public static Tolerance relative(final double maxRelative, final double maxAbsolute) {
+            return new Tolerance() {
+                @Override
+                double score(double reference, double candidate) {
+                    final double special = scoreSpecialValues(reference, candidate);
+                    if (special >= 0.0) {
+                        return special;
+                    }
+                    final double difference = Math.abs(candidate - reference);
+                    final double allowed = Math.max(maxRelative * Math.abs(reference), maxAbsolute);
+                    return allowed > 0.0 ? difference / allowed : Double.POSITIVE_INFINITY;
+                }
+
+                @Override
+                public String toString() {
+                    return String.format(Locale.ENGLISH, "rel %.1e, abs %.1e", maxRelative, maxAbsolute);
+                }
+            };
+        }
+
+        /**
+         * @param maxUlps the maximum distance in units in the last place of a double value
+         */
+        public static Tolerance ulps(final long maxUlps) {
+            return new Tolerance() {
+                @Override
+                double score(double reference, double candidate) {
+                    final double special = scoreSpecialValues(reference, candidate);
+                    if (special >= 0.0) {
+                        return special;
+                    }
+                    final long distance = Math.abs(ordered(reference) - ordered(candidate));
+                    return maxUlps > 0 ? (double) distance / maxUlps : Double.POSITIVE_INFINITY;
+                }
+
+                @Override
+                public String toString() {
+                    return maxUlps + " ulps";
+                }
+            };
+        }
+
+        // maps the bits of a double onto a monotonic integer scale
+        private static long ordered(double value) {
+            final long bits = Double.doubleToLongBits(value);
+            return bits < 0 ? Long.MIN_VALUE - bits : bits;
+        }
+    }
+
+    private static class BandResult {
+
+        private final String tolerance;
+        private final List<Deviation> worstDeviations = new ArrayList<>();
+        private int pixelCount;
+        private int failureCount;
+
+        private BandResult(String tolerance) {
+            this.tolerance = tolerance;
+        }
+
+        private void addDeviation(Deviation deviation) {
+            int index = worstDeviations.size();
+            while (index > 0 && worstDeviations.get(index - 1).score < deviation.score) {
+                index--;
+            }
+            if (index < WORST_PIXEL_COUNT) {
+                worstDeviations.add(index, deviation);
+                if (worstDeviations.size() > WORST_PIXEL_COUNT) {
+                    worstDeviations.remove(WORST_PIXEL_COUNT);
+                }
+            }
+        }
+    }
+
+    private static class Deviation {
+
+        private final int pixelIndex;
+        private final double reference;
+        private final double candidate;
+        private final double score;
+
+        private Deviation(int pixelIndex, double reference, double candidate, double score) {
+            this.pixelIndex = pixelIndex;
+            this.reference = reference;
+            this.candidate = candidate;
+            this.score = score;
+        }
+    }
+}
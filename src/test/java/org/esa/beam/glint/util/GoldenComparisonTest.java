@@ -0,0 +1,70 @@
+package org.esa.beam.glint.util;
+
+import org.esa.beam.glint.util.GoldenComparison.Tolerance;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class GoldenComparisonTest {
+
+    @Test
+    public void testRelativeTolerance() {
+        final Tolerance tolerance = Tolerance.relative(1.0e-3, 1.0e-6);
+        assertEquals(0.0, tolerance.score(2.0, 2.0), 0.0);
+        assertTrue(tolerance.score(2.0, 2.001) <= 1.0);
+        assertTrue(tolerance.score(2.0, 2.003) > 1.0);
+        assertTrue(tolerance.score(0.0, 5.0e-7) <= 1.0);
+        assertTrue(tolerance.score(0.0, 5.0e-6) > 1.0);
+    }
+
+    @Test
+    public void testUlpTolerance() {
+        final Tolerance tolerance = Tolerance.ulps(2);
+        assertTrue(tolerance.score(1.0, Math.nextUp(Math.nextUp(1.0))) <= 1.0);
+        assertTrue(tolerance.score(1.0, 1.0 + 3 * Math.ulp(1.0)) > 1.0);
+        assertTrue(tolerance.score(0.0, -0.0) <= 1.0);
+        assertTrue(tolerance.score(Double.MIN_VALUE, -Double.MIN_VALUE) <= 1.0);
+        assertTrue(tolerance.score(1.0, -1.0) > 1.0);
+    }
+
+    @Test
+    public void testSpecialValues() {
+        final Tolerance tolerance = Tolerance.relative(1.0, 1.0);
+        assertEquals(0.0, tolerance.score(Double.NaN, Double.NaN), 0.0);
+        assertTrue(tolerance.score(Double.NaN, 1.0) > 1.0);
+        assertTrue(tolerance.score(1.0, Double.NaN) > 1.0);
+        assertEquals(0.0, tolerance.score(Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY), 0.0);
+        assertTrue(tolerance.score(Double.POSITIVE_INFINITY, 1.0e300) > 1.0);
+    }
+
+    @Test
+    public void testReportContainsWorstPixels() {
+        final GoldenComparison comparison = new GoldenComparison("test");
+        final Tolerance tolerance = Tolerance.relative(1.0e-3, 0.0);
+        for (int i = 0; i < 100; i++) {
+            comparison.compare("reflec_1", tolerance, i, 1.0, i == 42 ? 1.5 : (i == 7 ? 1.01 : 1.0));
+            comparison.compareFlags("agc_flags", i, 0x10, i == 13 ? 0x18 : 0x10);
+        }
+        assertFalse(comparison.hasPassed());
+        final String report = comparison.getReport();
+        assertTrue(report.contains("reflec_1"));
+        assertTrue(report.contains("100 pixels,      2 outside tolerance"));
+        assertTrue(report.indexOf("pixel     42") < report.indexOf("pixel      7"));
+        assertTrue(report.contains("pixel     13"));
+        try {
+            comparison.assertPassed();
+            fail("AssertionError expected");
+        } catch (AssertionError expected) {
+            assertEquals(report, expected.getMessage());
+        }
+    }
+
+    @Test
+    public void testPassedComparison() {
+        final GoldenComparison comparison = new GoldenComparison("test");
+        comparison.compare("tau_550", Tolerance.ulps(1), 0, 0.1, 0.1);
+        comparison.compareFlags("agc_flags", 0, 3, 3);
+        assertTrue(comparison.hasPassed());
+        comparison.assertPassed();
+    }
+}
@@ -0,0 +1,120 @@
+package org.esa.beam.glint.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A table of recorded reference values, one row per pixel and one named column per output band.
+ * <p/>
+ * The table is stored as comma separated text. Lines starting with '#' are comments, the first other
+ * line holds the column names. Values are written with {@link Double#toString(double)}, which preserves
+ * them exactly.
+ */
+public class GoldenTable {
+
+    private final String[] columnNames;
+    private final List<double[]> rows;
+
+    public GoldenTable(String... columnNames) {
+        this.columnNames = columnNames.clone();
+        rows = new ArrayList<>();
+    }
+
+    public String[] getColumnNames() {
+        return columnNames.clone();
+    }
+
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    public void addRow(double[] values) {
+        if (values.length != columnNames.length) {
+            throw new IllegalArgumentException("Expected " + columnNames.length + " values, but got " + values.length);
+        }
+        rows.add(values.clone());
+    }
+
+    public double getValue(int row, String columnName) {
+        return rows.get(row)[getColumnIndex(columnName)];
+    }
+
+    public double[] getRow(int row) {
+        return rows.get(row).clone();
+    }
+
+    public int getColumnIndex(String columnName) {
+        final int index = Arrays.asList(columnNames).indexOf(columnName);
+        if (index < 0) {
+            throw new IllegalArgumentException("Unknown column '" + columnName + "'");
+        }
+        return index;
+    }
+
+    public void write(File file, String comment) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"))) {
+            writer.println("# " + comment);
+            writer.println(join(columnNames));
+            final String[] values = new String[columnNames.length];
+            for (double[] row : rows) {
+                for (int i = 0; i < row.length; i++) {
+                    values[i] = Double.toString(row[i]);
+                }
+                writer.println(join(values));
+            }
+        }
+    }
+
+    /**
+     * Reads a table. The stream is closed afterwards.
+     */
+    public static GoldenTable read(InputStream stream) throws IOException {
+        if (stream == null) {
+            throw new IOException("Golden table not found");
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, "UTF-8"))) {
+            GoldenTable table = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                final String[] tokens = line.split(",");
+                if (table == null) {
+                    table = new GoldenTable(tokens);
+                } else {
+                    final double[] values = new double[tokens.length];
+                    for (int i = 0; i < tokens.length; i++) {
+                        values[i] = Double.parseDouble(tokens[i]);
+                    }
+                    table.addRow(values);
+                }
+            }
+            if (table == null) {
+                throw new IOException("Golden table is empty");
+            }
+            return table;
+        }
+    }
+
+    private static String join(String[] values) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(values[i]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,88 @@
+package org.esa.beam.glint.util;
+
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class ProcessingStatisticsTest {
+
+    @Test
+    public void testCountersAreSummedOverThreads() throws Exception {
+        final ProcessingStatistics statistics = new ProcessingStatistics("test", new String[]{"LAND", "INVALID"},
+                                                                         new int[]{0x01, 0x8000});
+        final Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    statistics.countTile();
+                    for (int p = 0; p < 1000; p++) {
+                        final long start = statistics.startTimer();
+                        statistics.countPixel(p % 2 == 0 ? 0x8001 : 0);
+                        statistics.stopTimer(ProcessingStatistics.Stage.TOSA, start);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(4, statistics.getTileCount());
+        assertEquals(4000, statistics.getPixelCount());
+        assertArrayEquals(new long[]{2000, 2000}, statistics.getFlagCounts());
+        assertEquals(4000, statistics.getStageCalls()[ProcessingStatistics.Stage.TOSA.ordinal()]);
+        assertEquals(0, statistics.getStageCalls()[ProcessingStatistics.Stage.ATMOSPHERE_NET.ordinal()]);
+    }
+
+    @Test
+    public void testDisabledStatisticsRecordNothing() throws Exception {
+        final ProcessingStatistics statistics = ProcessingStatistics.DISABLED;
+        assertFalse(statistics.isEnabled());
+        statistics.countTile();
+        statistics.countPixel(0xFFFF);
+        statistics.stopTimer(ProcessingStatistics.Stage.TOSA, statistics.startTimer());
+        assertEquals(0, statistics.getTileCount());
+        assertEquals(0, statistics.getPixelCount());
+        assertEquals(0, statistics.getStageCalls()[ProcessingStatistics.Stage.TOSA.ordinal()]);
+    }
+
+    @Test
+    public void testReport() throws Exception {
+        final ProcessingStatistics statistics = new ProcessingStatistics("MER_\"RR\"", new String[]{"LAND"},
+                                                                         new int[]{0x01});
+        final ProcessingStatistics child = new ProcessingStatistics("flint", new String[0], new int[0]);
+        statistics.addChild(child);
+        statistics.countPixel(0x01);
+        statistics.stopTimer(ProcessingStatistics.Stage.ATMOSPHERE_NET, statistics.startTimer());
+
+        final String report = statistics.getReport();
+        assertTrue(report.contains("\"name\": \"MER_\\\"RR\\\"\""));
+        assertTrue(report.contains("\"pixels\": 1"));
+        assertTrue(report.contains("\"ATMOSPHERE_NET\": {\"calls\": 1"));
+        assertFalse(report.contains("\"TOSA\""));
+        assertTrue(report.contains("\"LAND\": 1"));
+        assertTrue(report.contains("\"name\": \"flint\""));
+    }
+
+    @Test
+    public void testRegisterAndUnregister() throws Exception {
+        final ProcessingStatistics statistics = new ProcessingStatistics("jmx_test", new String[0], new int[0]);
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName query = new ObjectName("org.esa.beam.glint:type=ProcessingStatistics,name=\"jmx_test\",*");
+
+        statistics.register();
+        final Set<ObjectName> names = server.queryNames(query, null);
+        assertEquals(1, names.size());
+        assertEquals(0L, server.getAttribute(names.iterator().next(), "PixelCount"));
+
+        statistics.unregister();
+        assertTrue(server.queryNames(query, null).isEmpty());
+    }
+}
@@ -0,0 +1,51 @@
+package org.esa.beam.glint.util;
+
+import org.esa.beam.framework.datamodel.Band;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class QuantisedEncodingTest {
+
+    @Test
+    public void testRoundTrip() {
+        final QuantisedEncoding encoding = QuantisedEncoding.create(1.0e-4, 0.2);
+        final double maxError = encoding.getScalingFactor() / 2;
+        for (double value = 1.0e-4; value <= 0.2; value += 0.00123) {
+            assertEquals(value, encoding.decode(encoding.encode(value)), maxError);
+        }
+        assertEquals(1.0e-4, encoding.decode(encoding.encode(1.0e-4)), 1.0e-12);
+        assertEquals(0.2, encoding.decode(encoding.encode(0.2)), 1.0e-12);
+    }
+
+    @Test
+    public void testValuesOutsideRangeAreClamped() {
+        final QuantisedEncoding encoding = QuantisedEncoding.create(-1.0, 1.0);
+        assertEquals(0, encoding.encode(-5.0));
+        assertEquals(QuantisedEncoding.NO_DATA_VALUE - 1, encoding.encode(5.0));
+        assertEquals(QuantisedEncoding.NO_DATA_VALUE - 1, encoding.encode(Double.POSITIVE_INFINITY));
+    }
+
+    @Test
+    public void testNaNIsEncodedAsNoData() {
+        final QuantisedEncoding encoding = QuantisedEncoding.create(0.0, 1.0);
+        assertEquals(QuantisedEncoding.NO_DATA_VALUE, encoding.encode(Double.NaN));
+        assertTrue(Double.isNaN(encoding.decode(QuantisedEncoding.NO_DATA_VALUE)));
+    }
+
+    @Test
+    public void testApplyTo() {
+        final QuantisedEncoding encoding = QuantisedEncoding.create(0.5, 2.5);
+        final Band band = new Band("reflec_1", QuantisedEncoding.DATA_TYPE, 10, 10);
+        encoding.applyTo(band);
+        assertTrue(band.isNoDataValueUsed());
+        assertEquals(QuantisedEncoding.NO_DATA_VALUE, band.getNoDataValue(), 0.0);
+        assertEquals(0.5, encoding.getScalingOffset(), 0.0);
+        assertEquals(2.0 / 65534, encoding.getScalingFactor(), 1.0e-15);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyRangeIsRejected() {
+        QuantisedEncoding.create(1.0, 1.0);
+    }
+}
@@ -0,0 +1,158 @@
+package org.esa.beam.glint.util;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.WKTReader;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.datamodel.TiePointGeoCoding;
+import org.esa.beam.framework.datamodel.TiePointGrid;
+import org.esa.beam.framework.gpf.OperatorException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class RegionOfInterestTest {
+
+    // the scene covers 49.2 - 50.0 N and 10.0 - 11.0 E with 0.01 degree pixels
+    private static final String BOX_WKT = "POLYGON((10.2 49.9, 10.4 49.9, 10.4 49.7, 10.2 49.7, 10.2 49.9))";
+
+    private Product product;
+
+    @Before
+    public void setUp() {
+        product = new Product("test", "MER_RR__1P", 100, 80);
+        product.addTiePointGrid(new TiePointGrid("latitude", 2, 2, 0.5f, 0.5f, 99.0f, 79.0f,
+                                                 new float[]{49.995f, 49.995f, 49.205f, 49.205f}));
+        product.addTiePointGrid(new TiePointGrid("longitude", 2, 2, 0.5f, 0.5f, 99.0f, 79.0f,
+                                                 new float[]{10.005f, 10.995f, 10.005f, 10.995f}));
+        product.setGeoCoding(new TiePointGeoCoding(product.getTiePointGrid("latitude"),
+                                                   product.getTiePointGrid("longitude")));
+    }
+
+    @Test
+    public void testNoRegion() {
+        assertNull(RegionOfInterest.create(product, null, null));
+    }
+
+    @Test
+    public void testPixelRegion() {
+        final RegionOfInterest roi = RegionOfInterest.create(product, new Rectangle(90, 10, 50, 20), null);
+        assertEquals(new Rectangle(90, 10, 10, 20), roi.getBounds());
+        assertTrue(roi.contains(95, 15));
+        assertFalse(roi.contains(85, 15));
+        assertTrue(roi.intersects(new Rectangle(80, 0, 16, 16)));
+        assertFalse(roi.intersects(new Rectangle(64, 0, 16, 16)));
+
+        assertNull(roi.createMask(new Rectangle(92, 12, 4, 4)));
+        final boolean[] mask = roi.createMask(new Rectangle(88, 8, 4, 4));
+        assertFalse(mask[0]);
+        assertFalse(mask[2 * 4 + 1]);
+        assertTrue(mask[2 * 4 + 2]);
+        assertTrue(mask[3 * 4 + 3]);
+    }
+
+    @Test
+    public void testGeoRegion() throws Exception {
+        final RegionOfInterest roi = RegionOfInterest.create(product, null, new WKTReader().read(BOX_WKT));
+        final Rectangle bounds = roi.getBounds();
+        assertTrue(bounds.contains(new Rectangle(20, 10, 20, 20)));
+        assertTrue(new Rectangle(18, 8, 24, 24).contains(bounds));
+        assertTrue(roi.contains(25, 15));
+        assertTrue(roi.contains(39, 29));
+        assertFalse(roi.contains(41, 15));
+        assertFalse(roi.contains(25, 31));
+        assertTrue(roi.intersects(new Rectangle(32, 0, 16, 16)));
+        assertFalse(roi.intersects(new Rectangle(48, 32, 16, 16)));
+    }
+
+    @Test
+    public void testGeoRegionIsCombinedWithPixelRegion() throws Exception {
+        final RegionOfInterest roi = RegionOfInterest.create(product, new Rectangle(0, 0, 30, 80),
+                                                             new WKTReader().read(BOX_WKT));
+        assertTrue(roi.contains(25, 15));
+        assertFalse(roi.contains(35, 15));
+        assertTrue(roi.getBounds().x + roi.getBounds().width <= 30);
+    }
+
+    @Test
+    public void testGeoRegionWithHole() throws Exception {
+        final Geometry geometry = new WKTReader().read(
+                "POLYGON((10.2 49.9, 10.6 49.9, 10.6 49.5, 10.2 49.5, 10.2 49.9), " +
+                "(10.3 49.8, 10.5 49.8, 10.5 49.6, 10.3 49.6, 10.3 49.8))");
+        final RegionOfInterest roi = RegionOfInterest.create(product, null, geometry);
+        assertTrue(roi.contains(25, 15));
+        assertFalse(roi.contains(40, 30));
+        // a tile within the hole
+        assertFalse(roi.intersects(new Rectangle(36, 26, 8, 8)));
+        final boolean[] mask = roi.createMask(new Rectangle(26, 26, 8, 8));
+        assertTrue(mask[0]);
+        assertFalse(mask[4 * 8 + 6]);
+    }
+
+    @Test
+    public void testMultiPolygon() throws Exception {
+        final Geometry geometry = new WKTReader().read(
+                "MULTIPOLYGON(((10.1 49.9, 10.2 49.9, 10.2 49.8, 10.1 49.8, 10.1 49.9)), " +
+                "((10.7 49.4, 10.8 49.4, 10.8 49.3, 10.7 49.3, 10.7 49.4)))");
+        final RegionOfInterest roi = RegionOfInterest.create(product, null, geometry);
+        assertTrue(roi.contains(15, 15));
+        assertTrue(roi.contains(75, 65));
+        assertFalse(roi.contains(45, 40));
+        assertFalse(roi.intersects(new Rectangle(40, 30, 16, 16)));
+    }
+
+    @Test
+    public void testEdgesFollowCurvedSwathColumns() throws Exception {
+        // the columns of this swath are curved, longitude 10.5 E is at x = 41 in rows 10 and 70, but at x = 50 in
+        // row 40
+        final Product swathProduct = new Product("swath", "MER_RR__1P", 100, 80);
+        final float[] lats = new float[11 * 9];
+        final float[] lons = new float[11 * 9];
+        for (int j = 0; j < 9; j++) {
+            for (int i = 0; i < 11; i++) {
+                final double x = 0.5 + 10 * i;
+                final double y = 0.5 + 10 * j;
+                lats[j * 11 + i] = (float) (50.0 - 0.01 * y);
+                lons[j * 11 + i] = (float) (10.0 + 0.01 * x + 1.0e-4 * (y - 40.0) * (y - 40.0));
+            }
+        }
+        swathProduct.addTiePointGrid(new TiePointGrid("latitude", 11, 9, 0.5f, 0.5f, 10.0f, 10.0f, lats));
+        swathProduct.addTiePointGrid(new TiePointGrid("longitude", 11, 9, 0.5f, 0.5f, 10.0f, 10.0f, lons));
+        swathProduct.setGeoCoding(new TiePointGeoCoding(swathProduct.getTiePointGrid("latitude"),
+                                                        swathProduct.getTiePointGrid("longitude")));
+
+        final RegionOfInterest roi = RegionOfInterest.create(swathProduct, null, new WKTReader().read(
+                "POLYGON((10.1 49.9, 10.5 49.9, 10.5 49.3, 10.1 49.3, 10.1 49.9))"));
+        // the straight lines between the projected corners would exclude the first and include the second pixel
+        assertTrue(roi.contains(45, 40));
+        assertFalse(roi.contains(5, 40));
+        assertTrue(roi.contains(15, 40));
+        assertFalse(roi.contains(52, 40));
+    }
+
+    @Test
+    public void testPixelWindows() {
+        final RegionOfInterest roi = RegionOfInterest.create(product, Arrays.asList(new Rectangle(10, 10, 3, 3),
+                                                                                    new Rectangle(11, 11, 3, 3),
+                                                                                    new Rectangle(98, 78, 5, 5)));
+        assertEquals(new Rectangle(10, 10, 90, 70), roi.getBounds());
+        assertTrue(roi.contains(10, 10));
+        assertTrue(roi.contains(13, 13));
+        assertFalse(roi.contains(13, 10));
+        assertTrue(roi.contains(99, 79));
+        assertFalse(roi.intersects(new Rectangle(32, 32, 32, 32)));
+    }
+
+    @Test(expected = OperatorException.class)
+    public void testRegionOutsideSceneIsRejected() {
+        RegionOfInterest.create(product, new Rectangle(200, 200, 10, 10), null);
+    }
+
+    @Test(expected = OperatorException.class)
+    public void testPointIsRejected() throws Exception {
+        RegionOfInterest.create(product, null, new WKTReader().read("POINT(10.5 49.5)"));
+    }
+}
@@ -0,0 +1,259 @@
+package org.esa.beam.glint.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.Rectangle;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SourceTilePrefetcherTest {
+
+    // a scene of 4 x 3 target tiles of 10 x 10 pixels
+    private static final Rectangle SCENE = new Rectangle(0, 0, 40, 30);
+    private static final int TILE_SIZE = 10;
+
+    private ExecutorService executor;
+    private RecordingImage image;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadExecutor();
+        image = new RecordingImage(null);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testPrefetchesFollowingTilesInRowMajorOrder() throws Exception {
+        final SourceTilePrefetcher prefetcher = createPrefetcher(2);
+        prefetcher.prefetchFollowing(tile(1, 0));
+        waitForPendingRequests();
+        prefetcher.prefetchFollowing(tile(3, 0));
+        waitForPendingRequests();
+        assertEquals(list("2,0", "3,0", "0,1", "1,1"), image.getRequestedTiles());
+    }
+
+    @Test
+    public void testTilesAreRequestedOnlyOnce() throws Exception {
+        final SourceTilePrefetcher prefetcher = createPrefetcher(2);
+        prefetcher.prefetchFollowing(tile(0, 0));
+        waitForPendingRequests();
+        prefetcher.prefetchFollowing(tile(1, 0));
+        waitForPendingRequests();
+        prefetcher.prefetchFollowing(tile(1, 0));
+        waitForPendingRequests();
+        assertEquals(list("1,0", "2,0", "3,0"), image.getRequestedTiles());
+    }
+
+    @Test
+    public void testStopsAtEndOfScene() throws Exception {
+        final SourceTilePrefetcher prefetcher = createPrefetcher(4);
+        prefetcher.prefetchFollowing(tile(2, 2));
+        waitForPendingRequests();
+        assertEquals(list("3,2"), image.getRequestedTiles());
+    }
+
+    @Test
+    public void testLookAheadIsBounded() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        image = new RecordingImage(latch);
+        final SourceTilePrefetcher prefetcher = createPrefetcher(2);
+        prefetcher.prefetchFollowing(tile(0, 0));
+        // tiles 1 and 2 are still pending, so tile 3 is dropped
+        prefetcher.prefetchFollowing(tile(1, 0));
+        latch.countDown();
+        waitForPendingRequests();
+        assertEquals(list("1,0", "2,0"), image.getRequestedTiles());
+
+        // the dropped tile is requested again with the next call
+        prefetcher.prefetchFollowing(tile(2, 0));
+        waitForPendingRequests();
+        assertEquals(list("1,0", "2,0", "3,0", "0,1"), image.getRequestedTiles());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        final SourceTilePrefetcher prefetcher = createPrefetcher(2);
+        prefetcher.cancel();
+        assertTrue(prefetcher.isCancelled());
+        prefetcher.prefetchFollowing(tile(0, 0));
+        waitForPendingRequests();
+        assertTrue(image.getRequestedTiles().isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLookAheadMustBePositive() {
+        createPrefetcher(0);
+    }
+
+    private SourceTilePrefetcher createPrefetcher(int lookAhead) {
+        return SourceTilePrefetcher.create(new RenderedImage[]{image}, SCENE, TILE_SIZE, TILE_SIZE, lookAhead,
+                                           executor);
+    }
+
+    private void waitForPendingRequests() throws Exception {
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get(10, TimeUnit.SECONDS);
+    }
+
+    private static Rectangle tile(int tileX, int tileY) {
+        return new Rectangle(tileX * TILE_SIZE, tileY * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+    }
+
+    private static List<String> list(String... tiles) {
+        final List<String> list = new ArrayList<>();
+        Collections.addAll(list, tiles);
+        return list;
+    }
+
+    /**
+     * Image with the tile layout of the target scene, which records the requested tiles.
+     */
+    private static class RecordingImage implements RenderedImage {
+
+        private final List<String> requestedTiles = Collections.synchronizedList(new ArrayList<String>());
+        private final CountDownLatch latch;
+
+        RecordingImage(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        List<String> getRequestedTiles() {
+            return new ArrayList<>(requestedTiles);
+        }
+
+        @Override
+        public Raster getTile(int tileX, int tileY) {
+            if (latch != null) {
+                try {
+                    latch.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            requestedTiles.add(tileX + "," + tileY);
+            return null;
+        }
+
+        @Override
+        public Vector<RenderedImage> getSources() {
+            return null;
+        }
+
+        @Override
+        public Object getProperty(String name) {
+            return null;
+        }
+
+        @Override
+        public String[] getPropertyNames() {
+            return null;
+        }
+
+        @Override
+        public ColorModel getColorModel() {
+            return null;
+        }
+
+        @Override
+        public SampleModel getSampleModel() {
+            return null;
+        }
+
+        @Override
+        public int getWidth() {
+            return SCENE.width;
+        }
+
+        @Override
+        public int getHeight() {
+            return SCENE.height;
+        }
+
+        @Override
+        public int getMinX() {
+            return 0;
+        }
+
+        @Override
+        public int getMinY() {
+            return 0;
+        }
+
+        @Override
+        public int getNumXTiles() {
+            return SCENE.width / TILE_SIZE;
+        }
+
+        @Override
+        public int getNumYTiles() {
+            return SCENE.height / TILE_SIZE;
+        }
+
+        @Override
+        public int getMinTileX() {
+            return 0;
+        }
+
+        @Override
+        public int getMinTileY() {
+            return 0;
+        }
+
+        @Override
+        public int getTileWidth() {
+            return TILE_SIZE;
+        }
+
+        @Override
+        public int getTileHeight() {
+            return TILE_SIZE;
+        }
+
+        @Override
+        public int getTileGridXOffset() {
+            return 0;
+        }
+
+        @Override
+        public int getTileGridYOffset() {
+            return 0;
+        }
+
+        @Override
+        public Raster getData() {
+            return null;
+        }
+
+        @Override
+        public Raster getData(Rectangle rect) {
+            return null;
+        }
+
+        @Override
+        public WritableRaster copyData(WritableRaster raster) {
+            return null;
+        }
+    }
+}
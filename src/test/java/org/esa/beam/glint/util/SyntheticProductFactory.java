@@ -0,0 +1,602 @@
+package org.esa.beam.glint.util;
+
+import org.esa.beam.framework.datamodel.Band;
+import org.esa.beam.framework.datamodel.FlagCoding;
+import org.esa.beam.framework.datamodel.MetadataAttribute;
+import org.esa.beam.framework.datamodel.MetadataElement;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.datamodel.ProductData;
+import org.esa.beam.framework.datamodel.TiePointGeoCoding;
+import org.esa.beam.framework.datamodel.TiePointGrid;
+
+import java.text.ParseException;
+import java.util.Random;
+
+import static org.esa.beam.dataio.envisat.EnvisatConstants.*;
+
+/**
+ * Creates in-memory MERIS L1b and AATSR L1b products with synthetic but physically plausible content, so that
+ * the AGC and FLINT processors can be run end to end without access to Envisat data.
+ * <p/>
+ * The products contain all bands and tie-point grids required by the processors. The scene is a descending
+ * overpass on 14 June 2003 starting at 45&deg;N, 15&deg;E. Sun angles are computed from the position and time,
+ * view angles from the distance to the sub-satellite track. The surface is divided into blocks of 0.1&deg; which
+ * are either water, land, cloud or sun glint, according to the configured fractions. The classes are derived
+ * from the geographical position, so that MERIS and AATSR products created by the same factory agree after
+ * collocation. The raster data is computed when the products are created and held in memory.
+ */
+public class SyntheticProductFactory {
+
+    public enum Resolution {
+
+        RR(1121, 16, 1.04, 1.2),
+        FR(2241, 64, 0.26, 0.3);
+
+        private final int sceneWidth;
+        private final int tiePointSubSampling;
+        private final double acrossTrackKm;
+        private final double alongTrackKm;
+
+        Resolution(int sceneWidth, int tiePointSubSampling, double acrossTrackKm, double alongTrackKm) {
+            this.sceneWidth = sceneWidth;
+            this.tiePointSubSampling = tiePointSubSampling;
+            this.acrossTrackKm = acrossTrackKm;
+            this.alongTrackKm = alongTrackKm;
+        }
+
+        public int getSceneWidth() {
+            return sceneWidth;
+        }
+    }
+
+    private static final double[] MERIS_WAVELENGTHS = {
+            412.7, 442.6, 489.9, 509.8, 559.7, 619.6, 664.6, 680.8,
+            708.3, 753.4, 761.5, 778.4, 864.9, 884.9, 900.0
+    };
+    private static final double[] MERIS_BANDWIDTHS = {
+            9.9, 9.9, 9.9, 10.0, 9.9, 9.9, 9.9, 7.5, 9.9, 7.5, 3.7, 15.0, 20.0, 10.0, 10.0
+    };
+    private static final double[] MERIS_SOLAR_FLUXES = {
+            1714.9, 1872.4, 1926.6, 1930.2, 1804.2, 1651.5, 1531.4, 1475.6,
+            1408.9, 1265.5, 1255.4, 1178.0, 955.1, 914.2, 882.8
+    };
+    // gaseous transmission of the absorption bands 11 (O2) and 15 (H2O)
+    private static final double[] MERIS_GAS_TRANSMISSION = {
+            1.0, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0, 0.45, 1.0, 1.0, 1.0, 0.85
+    };
+    private static final double[] LAND_REFLECTANCES = {
+            0.09, 0.085, 0.075, 0.07, 0.08, 0.07, 0.065, 0.065, 0.11, 0.17, 0.08, 0.18, 0.19, 0.19, 0.16
+    };
+    private static final double[] CLOUD_REFLECTANCES = {
+            0.68, 0.67, 0.66, 0.65, 0.64, 0.62, 0.61, 0.61, 0.6, 0.59, 0.3, 0.58, 0.56, 0.55, 0.47
+    };
+    private static final double[] WATER_LEAVING_REFLECTANCES = {
+            0.012, 0.011, 0.009, 0.007, 0.004, 0.001, 0.0008, 0.0008, 0.0005, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0
+    };
+
+    private static final int L1_FLAG_GLINT_RISK = 0x04;
+    private static final int L1_FLAG_LAND_OCEAN = 0x10;
+    private static final int L1_FLAG_BRIGHT = 0x20;
+    private static final int AATSR_CF_LAND = 0x01;
+    private static final int AATSR_CF_CLOUDY = 0x02;
+    private static final int AATSR_CF_SUN_GLINT = 0x04;
+
+    private static final int AATSR_SCENE_WIDTH = 512;
+    private static final int AATSR_TIE_POINT_SUB_SAMPLING = 32;
+    private static final double AATSR_PIXEL_KM = 1.0;
+    private static final double SATELLITE_ALTITUDE_KM = 800.0;
+    private static final double KM_PER_DEGREE = 111.2;
+    private static final double BLOCKS_PER_DEGREE = 10.0;
+    private static final double START_LAT = 45.0;
+    private static final double START_LON = 15.0;
+    private static final double SOLAR_DECLINATION = 23.2;
+    private static final double UTC_HOURS = 9.9228;
+    private static final String DATE_STRING = "20030614_095522";
+
+    private final Resolution resolution;
+    private final int sceneHeight;
+    private double landFraction;
+    private double cloudFraction;
+    private double glintFraction;
+    private long seed;
+
+    /**
+     * @param resolution  the MERIS resolution
+     * @param sceneHeight the height of the MERIS scene, the AATSR scene covers the same distance along track
+     */
+    public SyntheticProductFactory(Resolution resolution, int sceneHeight) {
+        if (sceneHeight < 2) {
+            throw new IllegalArgumentException("sceneHeight < 2");
+        }
+        this.resolution = resolution;
+        this.sceneHeight = sceneHeight;
+        landFraction = 0.1;
+        cloudFraction = 0.1;
+        glintFraction = 0.2;
+        seed = 1L;
+    }
+
+    public void setLandFraction(double landFraction) {
+        this.landFraction = checkFraction(landFraction);
+    }
+
+    public void setCloudFraction(double cloudFraction) {
+        this.cloudFraction = checkFraction(cloudFraction);
+    }
+
+    public void setGlintFraction(double glintFraction) {
+        this.glintFraction = checkFraction(glintFraction);
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @return a MERIS L1b product with radiances, flags, detector index and tie-point grids
+     */
+    public Product createMerisProduct() {
+        checkFractions();
+        final int width = resolution.sceneWidth;
+        final String productType = "MER_" + resolution.name() + "__1P";
+        final Swath swath = new Swath(width, resolution.acrossTrackKm, resolution.alongTrackKm);
+        final Product product = new Product(productType + "NPDE" + DATE_STRING + "_SYNTHETIC", productType,
+                                            width, sceneHeight);
+        addMetadata(product, productType);
+        for (String name : MERIS_TIE_POINT_GRID_NAMES) {
+            product.addTiePointGrid(createMerisTiePointGrid(name, swath));
+        }
+        product.setGeoCoding(new TiePointGeoCoding(product.getTiePointGrid(MERIS_LAT_DS_NAME),
+                                                   product.getTiePointGrid(MERIS_LON_DS_NAME)));
+
+        final int pixelCount = width * sceneHeight;
+        final float[][] radiances = new float[MERIS_L1B_SPECTRAL_BAND_NAMES.length][pixelCount];
+        final ProductData l1Flags = ProductData.createInstance(ProductData.TYPE_UINT8, pixelCount);
+        final ProductData detectorIndex = ProductData.createInstance(ProductData.TYPE_INT16, pixelCount);
+        final int detectorCount = resolution == Resolution.RR ? 925 : 3700;
+        final Random random = new Random(seed);
+        for (int y = 0; y < sceneHeight; y++) {
+            final double lat = swath.getLat(y + 0.5);
+            for (int x = 0; x < width; x++) {
+                final int i = y * width + x;
+                final double lon = swath.getLon(x + 0.5, lat);
+                final double classValue = getClassValue(lat, lon);
+                final double cosSun = Math.cos(Math.toRadians(getSunZenith(lat, lon)));
+                final double aerosol = 0.025 * (1.0 + 0.3 * Math.sin(lat * 7.0) * Math.cos(lon * 5.0));
+                for (int b = 0; b < radiances.length; b++) {
+                    final double rho;
+                    if (isLand(classValue)) {
+                        rho = LAND_REFLECTANCES[b];
+                    } else if (isCloud(classValue)) {
+                        rho = CLOUD_REFLECTANCES[b];
+                    } else {
+                        rho = getWaterReflectance(b, aerosol, getGlintReflectance(classValue));
+                    }
+                    final double noise = 1.0 + 0.005 * random.nextGaussian();
+                    radiances[b][i] = (float) (rho * noise * MERIS_GAS_TRANSMISSION[b] * MERIS_SOLAR_FLUXES[b] *
+                                               cosSun / Math.PI);
+                }
+                l1Flags.setElemIntAt(i, getMerisFlags(classValue));
+                detectorIndex.setElemIntAt(i, x * detectorCount / width);
+            }
+        }
+
+        for (int b = 0; b < radiances.length; b++) {
+            final Band band = new Band(MERIS_L1B_SPECTRAL_BAND_NAMES[b], ProductData.TYPE_FLOAT32, width, sceneHeight);
+            band.setSpectralBandIndex(b);
+            band.setSpectralWavelength((float) MERIS_WAVELENGTHS[b]);
+            band.setSpectralBandwidth((float) MERIS_BANDWIDTHS[b]);
+            band.setSolarFlux((float) MERIS_SOLAR_FLUXES[b]);
+            band.setUnit("mW/(m^2*sr*nm)");
+            band.setRasterData(ProductData.createInstance(radiances[b]));
+            product.addBand(band);
+        }
+        final FlagCoding l1FlagCoding = new FlagCoding(MERIS_L1B_FLAGS_DS_NAME);
+        l1FlagCoding.addFlag("COSMETIC", 0x01, "Pixel is cosmetic");
+        l1FlagCoding.addFlag("DUPLICATED", 0x02, "Pixel has been duplicated (filled in)");
+        l1FlagCoding.addFlag("GLINT_RISK", L1_FLAG_GLINT_RISK, "Pixel has glint risk");
+        l1FlagCoding.addFlag("SUSPECT", 0x08, "Pixel is suspect");
+        l1FlagCoding.addFlag("LAND_OCEAN", L1_FLAG_LAND_OCEAN, "Pixel is over land, not ocean");
+        l1FlagCoding.addFlag("BRIGHT", L1_FLAG_BRIGHT, "Pixel is bright");
+        l1FlagCoding.addFlag("COASTLINE", 0x40, "Pixel is part of a coastline");
+        l1FlagCoding.addFlag("INVALID", 0x80, "Pixel is invalid");
+        product.getFlagCodingGroup().add(l1FlagCoding);
+        addBand(product, MERIS_L1B_FLAGS_DS_NAME, l1Flags).setSampleCoding(l1FlagCoding);
+        addBand(product, MERIS_DETECTOR_INDEX_DS_NAME, detectorIndex);
+        return product;
+    }
+
+    /**
+     * @return an AATSR L1b product with brightness temperatures, reflectances, flags and tie-point grids,
+     *         centred on the same sub-satellite track as the MERIS product
+     */
+    public Product createAatsrProduct() {
+        checkFractions();
+        final int height = (int) Math.ceil(sceneHeight * resolution.alongTrackKm / AATSR_PIXEL_KM);
+        final Swath swath = new Swath(AATSR_SCENE_WIDTH, AATSR_PIXEL_KM, AATSR_PIXEL_KM);
+        final Product product = new Product("ATS_TOA_1PNPDE" + DATE_STRING + "_SYNTHETIC", "ATS_TOA_1P",
+                                            AATSR_SCENE_WIDTH, height);
+        addMetadata(product, "ATS_TOA_1P");
+        for (String name : AATSR_TIE_POINT_GRID_NAMES) {
+            product.addTiePointGrid(createAatsrTiePointGrid(name, swath, height));
+        }
+        product.setGeoCoding(new TiePointGeoCoding(product.getTiePointGrid("latitude"),
+                                                   product.getTiePointGrid("longitude")));
+
+        final FlagCoding confidFlagCoding = createAatsrConfidFlagCoding();
+        final FlagCoding cloudFlagCoding = createAatsrCloudFlagCoding();
+        final int pixelCount = AATSR_SCENE_WIDTH * height;
+        final Random random = new Random(seed);
+        for (String name : AATSR_L1B_BAND_NAMES) {
+            final ProductData data;
+            if (name.startsWith("btemp") || name.startsWith("reflec")) {
+                final float[] samples = new float[pixelCount];
+                for (int y = 0; y < height; y++) {
+                    final double lat = swath.getLat(y + 0.5);
+                    for (int x = 0; x < AATSR_SCENE_WIDTH; x++) {
+                        final double classValue = getClassValue(lat, swath.getLon(x + 0.5, lat));
+                        final double noise = 0.002 * random.nextGaussian();
+                        samples[y * AATSR_SCENE_WIDTH + x] = (float) getAatsrSample(name, classValue, lat, noise);
+                    }
+                }
+                data = ProductData.createInstance(samples);
+            } else {
+                data = ProductData.createInstance(ProductData.TYPE_INT16, pixelCount);
+                if (name.startsWith("cloud_flags")) {
+                    for (int y = 0; y < height; y++) {
+                        final double lat = swath.getLat(y + 0.5);
+                        for (int x = 0; x < AATSR_SCENE_WIDTH; x++) {
+                            final double classValue = getClassValue(lat, swath.getLon(x + 0.5, lat));
+                            data.setElemIntAt(y * AATSR_SCENE_WIDTH + x, getAatsrCloudFlags(classValue));
+                        }
+                    }
+                }
+            }
+            final Band band = addBand(product, name, data);
+            if (name.startsWith("btemp")) {
+                band.setUnit("K");
+            } else if (name.startsWith("reflec")) {
+                band.setUnit("%");
+            } else if (name.startsWith("cloud_flags")) {
+                band.setSampleCoding(cloudFlagCoding);
+            } else {
+                band.setSampleCoding(confidFlagCoding);
+            }
+        }
+        product.getFlagCodingGroup().add(confidFlagCoding);
+        product.getFlagCodingGroup().add(cloudFlagCoding);
+        return product;
+    }
+
+    private TiePointGrid createMerisTiePointGrid(String name, Swath swath) {
+        final int subSampling = resolution.tiePointSubSampling;
+        final int gridWidth = (resolution.sceneWidth - 1) / subSampling + 1;
+        final int gridHeight = (sceneHeight - 1) / subSampling + 2;
+        final float[] tiePoints = new float[gridWidth * gridHeight];
+        for (int j = 0; j < gridHeight; j++) {
+            final double lat = swath.getLat(0.5 + j * subSampling);
+            for (int i = 0; i < gridWidth; i++) {
+                final double x = 0.5 + i * subSampling;
+                final double lon = swath.getLon(x, lat);
+                final double value;
+                switch (name) {
+                    case MERIS_LAT_DS_NAME:
+                        value = lat;
+                        break;
+                    case MERIS_LON_DS_NAME:
+                        value = lon;
+                        break;
+                    case MERIS_SUN_ZENITH_DS_NAME:
+                        value = getSunZenith(lat, lon);
+                        break;
+                    case MERIS_SUN_AZIMUTH_DS_NAME:
+                        value = getSunAzimuth(lat, lon);
+                        break;
+                    case MERIS_VIEW_ZENITH_DS_NAME:
+                        value = swath.getViewZenith(x);
+                        break;
+                    case MERIS_VIEW_AZIMUTH_DS_NAME:
+                        value = swath.getViewAzimuth(x);
+                        break;
+                    default:
+                        value = getAncillaryValue(name, lat, lon);
+                        break;
+                }
+                tiePoints[j * gridWidth + i] = (float) value;
+            }
+        }
+        return createTiePointGrid(name, gridWidth, gridHeight, subSampling, tiePoints);
+    }
+
+    private TiePointGrid createAatsrTiePointGrid(String name, Swath swath, int height) {
+        final int gridWidth = (AATSR_SCENE_WIDTH - 1) / AATSR_TIE_POINT_SUB_SAMPLING + 2;
+        final int gridHeight = (height - 1) / AATSR_TIE_POINT_SUB_SAMPLING + 2;
+        final float[] tiePoints = new float[gridWidth * gridHeight];
+        for (int j = 0; j < gridHeight; j++) {
+            final double lat = swath.getLat(0.5 + j * AATSR_TIE_POINT_SUB_SAMPLING);
+            for (int i = 0; i < gridWidth; i++) {
+                final double x = 0.5 + i * AATSR_TIE_POINT_SUB_SAMPLING;
+                final double lon = swath.getLon(x, lat);
+                final double value;
+                switch (name) {
+                    case "latitude":
+                        value = lat;
+                        break;
+                    case "longitude":
+                        value = lon;
+                        break;
+                    case "sun_elev_nadir":
+                    case "sun_elev_fward":
+                        value = 90.0 - getSunZenith(lat, lon);
+                        break;
+                    case "sun_azimuth_nadir":
+                    case "sun_azimuth_fward":
+                        value = getSunAzimuth(lat, lon);
+                        break;
+                    case "view_elev_nadir":
+                        value = 90.0 - swath.getViewZenith(x);
+                        break;
+                    case "view_azimuth_nadir":
+                        value = swath.getViewAzimuth(x);
+                        break;
+                    case "view_elev_fward":
+                        value = 35.0 - 0.01 * Math.abs(x - swath.nadirColumn);
+                        break;
+                    case "view_azimuth_fward":
+                        value = 12.0;
+                        break;
+                    default:
+                        value = 0.0; // altitude and geolocation corrections
+                        break;
+                }
+                tiePoints[j * gridWidth + i] = (float) value;
+            }
+        }
+        return createTiePointGrid(name, gridWidth, gridHeight, AATSR_TIE_POINT_SUB_SAMPLING, tiePoints);
+    }
+
+    private static TiePointGrid createTiePointGrid(String name, int gridWidth, int gridHeight, int subSampling,
+                                                   float[] tiePoints) {
+        if (name.contains("azimuth")) {
+            return new TiePointGrid(name, gridWidth, gridHeight, 0.5f, 0.5f, subSampling, subSampling, tiePoints,
+                                    TiePointGrid.DISCONT_AT_360);
+        }
+        if (name.startsWith("longitude")) {
+            return new TiePointGrid(name, gridWidth, gridHeight, 0.5f, 0.5f, subSampling, subSampling, tiePoints,
+                                    TiePointGrid.DISCONT_AT_180);
+        }
+        return new TiePointGrid(name, gridWidth, gridHeight, 0.5f, 0.5f, subSampling, subSampling, tiePoints);
+    }
+
+    private static double getAncillaryValue(String name, double lat, double lon) {
+        switch (name) {
+            case "atm_press":
+                return 1013.0 + 8.0 * Math.sin(lat * 3.0) * Math.cos(lon * 2.0);
+            case "ozone":
+                return 320.0 + 25.0 * Math.sin(lat * 2.0 + lon);
+            case "zonal_wind":
+                return 4.0 + 3.0 * Math.sin(lat * 5.0) * Math.cos(lon * 4.0);
+            case "merid_wind":
+                return -2.0 + 2.5 * Math.cos(lat * 4.0 + lon * 3.0);
+            case "rel_hum":
+                return 70.0 + 10.0 * Math.sin(lon * 3.0);
+            default:
+                return 0.0; // sea level elevation, roughness and geolocation corrections
+        }
+    }
+
+    private double getWaterReflectance(int band, double aerosol, double glint) {
+        final double wavelengthMicron = MERIS_WAVELENGTHS[band] / 1000.0;
+        final double rayleigh = 0.0032 / Math.pow(wavelengthMicron, 4.0);
+        final double aerosolReflectance = aerosol * Math.pow(wavelengthMicron / 0.865, -1.2);
+        return rayleigh + aerosolReflectance + WATER_LEAVING_REFLECTANCES[band] + glint;
+    }
+
+    private double getAatsrSample(String name, double classValue, double lat, double noise) {
+        final boolean forward = name.contains("fward");
+        final double glint = forward ? 0.0 : getGlintReflectance(classValue);
+        final double bt11;
+        final double reflec16;
+        final double reflecVisible;
+        final double solarPart37;
+        if (isLand(classValue)) {
+            bt11 = 298.0;
+            reflec16 = 25.0;
+            reflecVisible = name.endsWith("0870") ? 30.0 : 9.0;
+            solarPart37 = 8.0;
+        } else if (isCloud(classValue)) {
+            bt11 = 245.0;
+            reflec16 = 45.0;
+            reflecVisible = 60.0;
+            solarPart37 = 16.0;
+        } else {
+            bt11 = 292.0 - 0.3 * Math.abs(lat - 40.0);
+            reflec16 = 0.3 + 80.0 * glint;
+            reflecVisible = (name.endsWith("0550") ? 5.0 : 3.0) + 100.0 * glint;
+            solarPart37 = 1.5 + 120.0 * glint;
+        }
+        final double viewOffset = forward ? -1.0 : 0.0;
+        if (name.endsWith("1100")) {
+            return bt11 + viewOffset + 100.0 * noise;
+        } else if (name.endsWith("1200")) {
+            return bt11 - 0.8 + 1.5 * viewOffset + 100.0 * noise;
+        } else if (name.endsWith("0370")) {
+            return bt11 + solarPart37 + viewOffset + 100.0 * noise;
+        } else if (name.endsWith("1600")) {
+            return reflec16 * (1.0 + noise);
+        }
+        return reflecVisible * (1.0 + noise);
+    }
+
+    private int getMerisFlags(double classValue) {
+        if (isLand(classValue)) {
+            return L1_FLAG_LAND_OCEAN;
+        } else if (isCloud(classValue)) {
+            return L1_FLAG_BRIGHT;
+        } else if (isGlint(classValue)) {
+            return L1_FLAG_GLINT_RISK;
+        }
+        return 0;
+    }
+
+    private int getAatsrCloudFlags(double classValue) {
+        if (isLand(classValue)) {
+            return AATSR_CF_LAND;
+        } else if (isCloud(classValue)) {
+            return AATSR_CF_CLOUDY;
+        } else if (isGlint(classValue)) {
+            return AATSR_CF_SUN_GLINT;
+        }
+        return 0;
+    }
+
+    private boolean isLand(double classValue) {
+        return classValue < landFraction;
+    }
+
+    private boolean isCloud(double classValue) {
+        return classValue >= landFraction && classValue < landFraction + cloudFraction;
+    }
+
+    private boolean isGlint(double classValue) {
+        final double glintStart = landFraction + cloudFraction;
+        return classValue >= glintStart && classValue < glintStart + glintFraction;
+    }
+
+    // the glint reflectance varies between 0.01 and 0.08 over the glint blocks
+    private double getGlintReflectance(double classValue) {
+        if (!isGlint(classValue)) {
+            return 0.0;
+        }
+        return 0.01 + 0.07 * (classValue - landFraction - cloudFraction) / glintFraction;
+    }
+
+    // uniformly distributed value in [0, 1) for the block containing the given position
+    private double getClassValue(double lat, double lon) {
+        long hash = mix(seed ^ (long) Math.floor(lat * BLOCKS_PER_DEGREE));
+        hash = mix(hash ^ ((long) Math.floor(lon * BLOCKS_PER_DEGREE) << 32));
+        return (hash >>> 11) * 0x1.0p-53;
+    }
+
+    private static long mix(long value) {
+        long z = value;
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+
+    private static double getSunZenith(double lat, double lon) {
+        final double latRad = Math.toRadians(lat);
+        final double declination = Math.toRadians(SOLAR_DECLINATION);
+        final double hourAngle = Math.toRadians(getHourAngle(lon));
+        final double cosZenith = Math.sin(latRad) * Math.sin(declination) +
+                                 Math.cos(latRad) * Math.cos(declination) * Math.cos(hourAngle);
+        return Math.toDegrees(Math.acos(cosZenith));
+    }
+
+    private static double getSunAzimuth(double lat, double lon) {
+        final double latRad = Math.toRadians(lat);
+        final double declination = Math.toRadians(SOLAR_DECLINATION);
+        final double hourAngle = Math.toRadians(getHourAngle(lon));
+        final double azimuth = Math.toDegrees(Math.atan2(Math.sin(hourAngle),
+                                                         Math.cos(hourAngle) * Math.sin(latRad) -
+                                                         Math.tan(declination) * Math.cos(latRad)));
+        return azimuth + 180.0;
+    }
+
+    private static double getHourAngle(double lon) {
+        return (UTC_HOURS + lon / 15.0 - 12.0) * 15.0;
+    }
+
+    private static void addMetadata(Product product, String productType) {
+        final MetadataElement mph = new MetadataElement("MPH");
+        mph.addAttribute(new MetadataAttribute("PRODUCT", ProductData.createInstance(product.getName()), true));
+        product.getMetadataRoot().addElement(mph);
+        final MetadataElement sph = new MetadataElement("SPH");
+        sph.addAttribute(new MetadataAttribute("SPH_DESCRIPTOR",
+                                               ProductData.createInstance(productType + " SPECIFIC HEADER"), true));
+        product.getMetadataRoot().addElement(sph);
+        try {
+            product.setStartTime(ProductData.UTC.parse(DATE_STRING, "yyyyMMdd_HHmmss"));
+        } catch (ParseException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Band addBand(Product product, String name, ProductData data) {
+        final Band band = new Band(name, data.getType(), product.getSceneRasterWidth(),
+                                   product.getSceneRasterHeight());
+        band.setRasterData(data);
+        product.addBand(band);
+        return band;
+    }
+
+    private static FlagCoding createAatsrConfidFlagCoding() {
+        final FlagCoding flagCoding = new FlagCoding("confid_flags");
+        flagCoding.addFlag("BLANKING", 0x01, "Blanking pulse");
+        flagCoding.addFlag("COSMETIC", 0x02, "Cosmetic fill pixel");
+        flagCoding.addFlag("SCAN_ABSENT", 0x04, "Entire scan absent from telemetry");
+        flagCoding.addFlag("ABSENT", 0x08, "Pixel absent from telemetry");
+        flagCoding.addFlag("NOT_DECOMPR", 0x10, "Not decompressed owing to error in packet validation");
+        flagCoding.addFlag("NO_SIGNAL", 0x20, "Zero signal in at least one channel");
+        flagCoding.addFlag("SATURATION", 0x40, "Saturation in at least one channel");
+        flagCoding.addFlag("OUT_OF_RANGE", 0x80, "Derived radiance of any channel outside range of calibration");
+        flagCoding.addFlag("NO_CALIB_PARAM", 0x100, "Calibration parameters unavailable");
+        flagCoding.addFlag("UNFILLED", 0x200, "Pixel unfilled");
+        return flagCoding;
+    }
+
+    private static FlagCoding createAatsrCloudFlagCoding() {
+        final FlagCoding flagCoding = new FlagCoding("cloud_flags");
+        flagCoding.addFlag("LAND", AATSR_CF_LAND, "Pixel is over land");
+        flagCoding.addFlag("CLOUDY", AATSR_CF_CLOUDY, "Pixel is cloudy (result of all cloud tests)");
+        flagCoding.addFlag("SUN_GLINT", AATSR_CF_SUN_GLINT, "Sunglint detected in pixel");
+        return flagCoding;
+    }
+
+    private static double checkFraction(double fraction) {
+        if (fraction < 0.0 || fraction > 1.0) {
+            throw new IllegalArgumentException("Fraction must be in the range [0, 1]: " + fraction);
+        }
+        return fraction;
+    }
+
+    private void checkFractions() {
+        if (landFraction + cloudFraction + glintFraction > 1.0) {
+            throw new IllegalArgumentException("Sum of land, cloud and glint fractions exceeds 1");
+        }
+    }
+
+    // a descending overpass with the sub-satellite track in the centre of the swath
+    private static class Swath {
+
+        private final double nadirColumn;
+        private final double acrossTrackKm;
+        private final double alongTrackKm;
+
+        private Swath(int width, double acrossTrackKm, double alongTrackKm) {
+            nadirColumn = width / 2.0;
+            this.acrossTrackKm = acrossTrackKm;
+            this.alongTrackKm = alongTrackKm;
+        }
+
+        private double getLat(double y) {
+            return START_LAT - y * alongTrackKm / KM_PER_DEGREE;
+        }
+
+        private double getLon(double x, double lat) {
+            return START_LON + (x - nadirColumn) * acrossTrackKm / (KM_PER_DEGREE * Math.cos(Math.toRadians(lat)));
+        }
+
+        private double getViewZenith(double x) {
+            final double distanceKm = Math.abs(x - nadirColumn) * acrossTrackKm;
+            // the earth curvature increases the zenith angle at the surface by roughly 10 percent
+            return 1.1 * Math.toDegrees(Math.atan(distanceKm / SATELLITE_ALTITUDE_KM));
+        }
+
+        // the satellite is east of the pixels left of the track and west of the pixels right of it
+        private double getViewAzimuth(double x) {
+            return x < nadirColumn ? 101.5 : 281.5;
+        }
+    }
+}
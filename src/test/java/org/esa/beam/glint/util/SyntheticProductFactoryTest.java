@@ -0,0 +1,92 @@
+package org.esa.beam.glint.util;
+
+import org.esa.beam.framework.datamodel.Band;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.datamodel.ProductData;
+import org.junit.Test;
+
+import static org.esa.beam.dataio.envisat.EnvisatConstants.*;
+import static org.junit.Assert.*;
+
+public class SyntheticProductFactoryTest {
+
+    @Test
+    public void testMerisProductContainsRequiredRasters() {
+        final SyntheticProductFactory factory = new SyntheticProductFactory(SyntheticProductFactory.Resolution.RR, 64);
+        final Product product = factory.createMerisProduct();
+        assertEquals(1121, product.getSceneRasterWidth());
+        assertEquals(64, product.getSceneRasterHeight());
+        assertEquals("MER_RR__1P", product.getProductType());
+        for (String bandName : MERIS_L1B_SPECTRAL_BAND_NAMES) {
+            final Band band = product.getBand(bandName);
+            assertNotNull(bandName, band);
+            assertTrue(band.getSolarFlux() > 0.0f);
+            assertTrue(band.getSpectralWavelength() > 400.0f);
+        }
+        assertTrue(product.containsBand(MERIS_L1B_FLAGS_DS_NAME));
+        assertTrue(product.getBand(MERIS_L1B_FLAGS_DS_NAME).isFlagBand());
+        assertTrue(product.containsBand(MERIS_DETECTOR_INDEX_DS_NAME));
+        for (String tpgName : MERIS_TIE_POINT_GRID_NAMES) {
+            assertTrue(tpgName, product.containsTiePointGrid(tpgName));
+        }
+        assertNotNull(product.getGeoCoding());
+        assertEquals("20030614_095522", product.getMetadataRoot().getElement("MPH").getAttribute("PRODUCT")
+                .getData().getElemString().substring(14, 29));
+    }
+
+    @Test
+    public void testAatsrProductContainsRequiredRasters() {
+        final SyntheticProductFactory factory = new SyntheticProductFactory(SyntheticProductFactory.Resolution.FR, 100);
+        final Product product = factory.createAatsrProduct();
+        assertEquals(512, product.getSceneRasterWidth());
+        assertEquals(30, product.getSceneRasterHeight());
+        for (String bandName : AATSR_L1B_BAND_NAMES) {
+            assertTrue(bandName, product.containsBand(bandName));
+        }
+        for (String tpgName : AATSR_TIE_POINT_GRID_NAMES) {
+            assertTrue(tpgName, product.containsTiePointGrid(tpgName));
+        }
+    }
+
+    @Test
+    public void testSurfaceFractions() {
+        final SyntheticProductFactory factory = new SyntheticProductFactory(SyntheticProductFactory.Resolution.RR, 400);
+        factory.setLandFraction(0.3);
+        factory.setCloudFraction(0.2);
+        factory.setGlintFraction(0.1);
+        final Product product = factory.createMerisProduct();
+        final ProductData flags = product.getBand(MERIS_L1B_FLAGS_DS_NAME).getRasterData();
+        int landCount = 0;
+        int cloudCount = 0;
+        int glintCount = 0;
+        for (int i = 0; i < flags.getNumElems(); i++) {
+            final int flag = flags.getElemIntAt(i);
+            landCount += (flag & 0x10) != 0 ? 1 : 0;
+            cloudCount += (flag & 0x20) != 0 ? 1 : 0;
+            glintCount += (flag & 0x04) != 0 ? 1 : 0;
+        }
+        final double pixelCount = flags.getNumElems();
+        assertEquals(0.3, landCount / pixelCount, 0.06);
+        assertEquals(0.2, cloudCount / pixelCount, 0.06);
+        assertEquals(0.1, glintCount / pixelCount, 0.06);
+    }
+
+    @Test
+    public void testProductsAreReproducible() {
+        final Product product1 = new SyntheticProductFactory(SyntheticProductFactory.Resolution.RR, 16).createMerisProduct();
+        final Product product2 = new SyntheticProductFactory(SyntheticProductFactory.Resolution.RR, 16).createMerisProduct();
+        final ProductData data1 = product1.getBand("radiance_13").getRasterData();
+        final ProductData data2 = product2.getBand("radiance_13").getRasterData();
+        for (int i = 0; i < data1.getNumElems(); i++) {
+            assertEquals(data1.getElemFloatAt(i), data2.getElemFloatAt(i), 0.0f);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFractionsMustNotExceedOne() {
+        final SyntheticProductFactory factory = new SyntheticProductFactory(SyntheticProductFactory.Resolution.RR, 16);
+        factory.setLandFraction(0.6);
+        factory.setCloudFraction(0.5);
+        factory.createMerisProduct();
+    }
+}
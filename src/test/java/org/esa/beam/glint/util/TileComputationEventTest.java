@@ -0,0 +1,66 @@
+package org.esa.beam.glint.util;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TileComputationEventTest {
+
+    @Test
+    public void testBeginAndCommitWithoutRecording() throws Exception {
+        // no recording is active, so the event is not enabled, but must be usable anyway
+        final TileComputationEvent event = TileComputationEvent.begin("TestOp", new Rectangle(0, 0, 10, 10), 3);
+        assertNotNull(event);
+        event.commit(100);
+    }
+
+    @Test
+    public void testEventIsRecorded() throws Exception {
+        Assume.assumeTrue(TileComputationEvent.isSupported());
+        // the flight recorder API is not part of the Java version the sources are compiled for
+        final Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+        final Object recording = recordingClass.newInstance();
+        final File file = File.createTempFile("tile-computation", ".jfr");
+        try {
+            recordingClass.getMethod("enable", String.class).invoke(recording, TileComputationEvent.EVENT_NAME);
+            recordingClass.getMethod("start").invoke(recording);
+            TileComputationEvent.begin("TestOp", new Rectangle(10, 20, 30, 40), 3).commit(1100);
+            recordingClass.getMethod("stop").invoke(recording);
+            recordingClass.getMethod("dump", Path.class).invoke(recording, file.toPath());
+
+            final Object event = findEvent(file);
+            assertNotNull("no " + TileComputationEvent.EVENT_NAME + " event recorded", event);
+            final Method getValue = event.getClass().getMethod("getValue", String.class);
+            assertEquals("TestOp", getValue.invoke(event, "operator"));
+            assertEquals(10, getValue.invoke(event, "x"));
+            assertEquals(20, getValue.invoke(event, "y"));
+            assertEquals(30, getValue.invoke(event, "width"));
+            assertEquals(40, getValue.invoke(event, "height"));
+            assertEquals(3, getValue.invoke(event, "bandCount"));
+            assertEquals(1100, getValue.invoke(event, "validPixelCount"));
+        } finally {
+            recordingClass.getMethod("close").invoke(recording);
+            assertTrue(file.delete());
+        }
+    }
+
+    private static Object findEvent(File file) throws Exception {
+        final Class<?> recordingFileClass = Class.forName("jdk.jfr.consumer.RecordingFile");
+        final List<?> events = (List<?>) recordingFileClass.getMethod("readAllEvents", Path.class)
+                .invoke(null, file.toPath());
+        for (Object event : events) {
+            final Object eventType = event.getClass().getMethod("getEventType").invoke(event);
+            if (TileComputationEvent.EVENT_NAME.equals(eventType.getClass().getMethod("getName").invoke(eventType))) {
+                return event;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,94 @@
+package org.esa.beam.glint.util;
+
+import org.esa.beam.framework.datamodel.MetadataElement;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.datamodel.TiePointGrid;
+import org.esa.beam.framework.gpf.OperatorException;
+import org.junit.Test;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+
+import static org.junit.Assert.*;
+
+public class TileSizeTunerTest {
+
+    @Test
+    public void testReducedResolutionScenesAreTiledInFullWidthStripes() {
+        final Dimension size = TileSizeTuner.computeTileSize(1121, 2241, 8, 16);
+        assertEquals(1121, size.width);
+        // 32 tiles of 71 rows, aligned to the tie-point rows
+        assertEquals(80, size.height);
+    }
+
+    @Test
+    public void testFullResolutionScenesAreSplitIntoColumns() {
+        assertEquals(new Dimension(1121, 320), TileSizeTuner.computeTileSize(2241, 2241, 4, 64));
+        // limited to 512 K pixels per tile
+        assertEquals(new Dimension(973, 512), TileSizeTuner.computeTileSize(4865, 3000, 4, 64));
+    }
+
+    @Test
+    public void testSmallScenes() {
+        assertEquals(new Dimension(100, 16), TileSizeTuner.computeTileSize(100, 40, 16, 16));
+        assertEquals(new Dimension(100, 10), TileSizeTuner.computeTileSize(100, 10, 1, 1));
+    }
+
+    @Test
+    public void testCalibrationPrefersLargerTilesIfOverheadDominates() {
+        final int height = TileSizeTuner.calibrate(new Dimension(1121, 80), 2241, 16, new TileSizeTuner.Calibration() {
+            @Override
+            public long measure(Rectangle region) {
+                return 1000000L + 1000L * region.height;
+            }
+        });
+        assertEquals(160, height);
+    }
+
+    @Test
+    public void testCalibrationPrefersSmallerTilesIfCostPerRowGrows() {
+        final int height = TileSizeTuner.calibrate(new Dimension(1121, 80), 2241, 16, new TileSizeTuner.Calibration() {
+            @Override
+            public long measure(Rectangle region) {
+                return (long) region.height * region.height;
+            }
+        });
+        assertEquals(48, height);
+    }
+
+    @Test
+    public void testResolve() {
+        final Product product = new Product("test", "MER_RR__1P", 1121, 2241);
+        product.addTiePointGrid(new TiePointGrid("sun_zenith", 71, 141, 0.5f, 0.5f, 16.0f, 16.0f,
+                                                 new float[71 * 141]));
+        assertNull(TileSizeTuner.resolve("", product, 8, null));
+        assertNull(TileSizeTuner.resolve(null, product, 8, null));
+        assertEquals(new Dimension(1121, 100), TileSizeTuner.resolve("2000x100", product, 8, null));
+        assertEquals(new Dimension(1121, 80), TileSizeTuner.resolve("auto", product, 8, null));
+    }
+
+    @Test
+    public void testOrigin() {
+        assertEquals(TileSizeTuner.AUTO, TileSizeTuner.getOrigin(" Auto"));
+        assertEquals("tileSize", TileSizeTuner.getOrigin("512x64"));
+        assertEquals("tileSize", TileSizeTuner.getOrigin(null));
+    }
+
+    @Test(expected = OperatorException.class)
+    public void testInvalidTileSize() {
+        TileSizeTuner.parse("512");
+    }
+
+    @Test
+    public void testTileSizeIsRecordedInMetadata() {
+        final Product product = new Product("test", "MERIS_L2_AC", 1121, 2241);
+        TileSizeTuner.applyTileSize(product, new Dimension(1121, 80), TileSizeTuner.AUTO);
+        TileSizeTuner.applyTileSize(product, new Dimension(1121, 96), TileSizeTuner.AUTO);
+
+        final MetadataElement element = product.getMetadataRoot().getElement(TileSizeTuner.METADATA_ELEMENT_NAME);
+        assertEquals(1, product.getMetadataRoot().getNumElements());
+        assertEquals(1121, element.getAttribute("tile_width").getData().getElemInt());
+        assertEquals(96, element.getAttribute("tile_height").getData().getElemInt());
+        assertEquals(TileSizeTuner.AUTO, element.getAttribute("tile_size_origin").getData().getElemString());
+    }
+}